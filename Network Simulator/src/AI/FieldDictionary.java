@@ -0,0 +1,126 @@
+package AI;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Dictionary that stores low-cardinality packet fields (protocol, flags,
+ * application, ...) as small codes. Every value is kept once and handed back
+ * as the same String instance, so materializing a field for the UI or CSV
+ * export never allocates.
+ *
+ * Each dictionary starts from a known vocabulary and takes new values, e.g.
+ * an application the LLM named, as they turn up. It holds at most
+ * {@link #CAPACITY} values: once full, further unknown values all map to the
+ * dictionary's "other" value, so free text cannot grow it without bound.
+ */
+public final class FieldDictionary {
+
+    public static final short NONE = -1;
+
+    /** Most values a dictionary holds, its vocabulary and "other" value included. */
+    public static final int CAPACITY = 256;
+
+    public static final FieldDictionary PROTOCOLS = new FieldDictionary("Other", UnaryOperator.identity(),
+            "TCP", "UDP", "ICMP");
+    public static final FieldDictionary APPLICATIONS = new FieldDictionary("Other", UnaryOperator.identity(),
+            "HTTP", "HTTPS", "SSH", "FTP", "Telnet", "DNS", "DHCP", "Custom", "ICMP", "SMTP", "NTP");
+    public static final FieldDictionary FLAGS = new FieldDictionary("Other", FieldDictionary::canonicalFlags,
+            "", "SYN", "ACK", "RST", "FIN", "PSH-ACK", "SYN-ACK", "FIN-ACK");
+    public static final FieldDictionary TRAFFIC_TYPES = new FieldDictionary("Other", UnaryOperator.identity(),
+            "Normal", "Attack", "Anomaly");
+    public static final FieldDictionary ATTACK_TYPES = new FieldDictionary("Other", UnaryOperator.identity(),
+            "DoS", "DDoS", "PortScan", "Probe", "BruteForce", "SQLInjection", "XSS", "Malware", "Botnet");
+    public static final FieldDictionary SERVICE_TYPES = new FieldDictionary("other", UnaryOperator.identity(),
+            "http", "https", "ssh", "ftp", "telnet", "dns", "dhcp", "custom", "icmp", "smtp", "ntp");
+
+    /** TCP flags in the order {@link #canonicalFlags(String)} writes them, ACK last as in "SYN-ACK". */
+    private static final String[] FLAG_ORDER = { "SYN", "FIN", "RST", "PSH", "URG", "ECE", "CWR", "ACK" };
+
+    private final ConcurrentHashMap<String, Short> codes = new ConcurrentHashMap<>();
+    /** Codes by lower-case value, for values that differ from a known one only in case. */
+    private final ConcurrentHashMap<String, Short> folded = new ConcurrentHashMap<>();
+    private final UnaryOperator<String> normalizer;
+    private volatile String[] values = new String[0];
+    private final short other;
+
+    private FieldDictionary(String other, UnaryOperator<String> normalizer, String... vocabulary) {
+        this.normalizer = normalizer;
+        for (String s : vocabulary)
+            add(s);
+        this.other = add(other);
+    }
+
+    /**
+     * Returns the code for {@code value}, ignoring case and surrounding
+     * blanks, adding it on first use while there is room and returning the
+     * code of the "other" value once the dictionary is full. {@code null}
+     * maps to {@link #NONE}.
+     */
+    public short code(String value) {
+        if (value == null)
+            return NONE;
+        Short c = codes.get(value);
+        if (c != null)
+            return c;
+        String v = normalizer.apply(value.trim());
+        c = codes.get(v);
+        if (c == null)
+            c = folded.get(v.toLowerCase(Locale.ROOT));
+        return c != null ? c : add(v);
+    }
+
+    private synchronized short add(String value) {
+        Short c = folded.get(value.toLowerCase(Locale.ROOT));
+        if (c != null)
+            return c;
+        String[] current = values;
+        if (current.length == CAPACITY)
+            return other;
+        String[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = value;
+        values = grown;
+        short code = (short) current.length;
+        codes.put(value, code);
+        folded.put(value.toLowerCase(Locale.ROOT), code);
+        return code;
+    }
+
+    /**
+     * Writes a combination of TCP flags, e.g. "PSH|ACK", "ack, psh" or
+     * "PSH ACK", as "PSH-ACK": upper case, in {@link #FLAG_ORDER}, joined by
+     * '-'. Anything that is not a list of flag names is returned unchanged.
+     */
+    static String canonicalFlags(String flags) {
+        if (flags.isEmpty())
+            return flags;
+        boolean[] present = new boolean[FLAG_ORDER.length];
+        for (String token : flags.split("[^A-Za-z]+")) {
+            if (token.isEmpty())
+                continue;
+            int i = Arrays.asList(FLAG_ORDER).indexOf(token.toUpperCase(Locale.ROOT));
+            if (i < 0)
+                return flags;
+            present[i] = true;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < FLAG_ORDER.length; i++) {
+            if (present[i])
+                sb.append(sb.length() == 0 ? "" : "-").append(FLAG_ORDER[i]);
+        }
+        return sb.length() == 0 ? flags : sb.toString();
+    }
+
+    /** Returns the canonical String for {@code code}, or {@code null} for {@link #NONE}. */
+    public String value(short code) {
+        if (code < 0)
+            return null;
+        return values[code];
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,361 @@
+package AI;
+
+import AI.GeminiPacketGenerator.NetworkPacket;
+import org.json.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Requests packets from Gemini in chunks. Chunks run concurrently behind a
+ * shared rate limiter, failed requests are retried with exponential backoff,
+ * and every successful response is cached on disk so a repeated run with the
+ * same prompt, scenario and seed does not call the API again.
+ *
+ * Settings are read from system properties first, then config.properties:
+ * <ul>
+ * <li>{@code gemini.api.key} - required only for the default endpoint</li>
+ * <li>{@code gemini.api.url} - endpoint, e.g. a local stub server</li>
+ * <li>{@code gemini.batch.size} - packets per request (default 50)</li>
+ * <li>{@code gemini.batch.threads} - concurrent requests (default 4)</li>
+ * <li>{@code gemini.requests.per.minute} - rate limit (default 60)</li>
+ * <li>{@code gemini.cache.dir} - response cache, empty to disable</li>
+ * </ul>
+ */
+final class GeminiBatchClient {
+
+    static final String DEFAULT_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-2.5-flash:generateContent";
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    private static GeminiBatchClient instance;
+
+    private final String apiUrl;
+    private final String apiKey;
+    private final int chunkSize;
+    private final int threads;
+    private final long permitIntervalNanos;
+    private final Path cacheDir;
+    private long nextPermit;
+
+    private static final class Chunk {
+        final int index;
+        final List<NetworkPacket> packets;
+
+        Chunk(int index, List<NetworkPacket> packets) {
+            this.index = index;
+            this.packets = packets;
+        }
+    }
+
+    /** A non-200 reply; 429 and 5xx are worth retrying. */
+    private static final class HttpStatusException extends IOException {
+        final int status;
+        final long retryAfterMs;
+
+        HttpStatusException(int status, long retryAfterMs, String body) {
+            super("Gemini API returned HTTP " + status + ": " + body);
+            this.status = status;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        boolean retryable() {
+            return status == 429 || status >= 500;
+        }
+    }
+
+    private GeminiBatchClient(Properties settings) {
+        apiUrl = setting(settings, "gemini.api.url", DEFAULT_API_URL);
+        String key = setting(settings, "gemini.api.key", "").trim();
+        if (key.equals("YOUR_GEMINI_API_KEY_HERE"))
+            key = "";
+        if (key.isEmpty() && apiUrl.equals(DEFAULT_API_URL)) {
+            throw new RuntimeException(
+                    "⚠️ Gemini API key not found!\n" +
+                            "Please:\n" +
+                            "1. Copy 'config.properties.template' to 'config.properties'\n" +
+                            "2. Add your Gemini API key from https://makersuite.google.com/app/apikey\n" +
+                            "3. Replace 'YOUR_GEMINI_API_KEY_HERE' with your actual key");
+        }
+        apiKey = key;
+        chunkSize = Math.max(1, Integer.parseInt(setting(settings, "gemini.batch.size", "50").trim()));
+        threads = Math.max(1, Integer.parseInt(setting(settings, "gemini.batch.threads", "4").trim()));
+        double perMinute = Double.parseDouble(setting(settings, "gemini.requests.per.minute", "60").trim());
+        permitIntervalNanos = perMinute > 0 ? (long) (60e9 / perMinute) : 0;
+        String cache = setting(settings, "gemini.cache.dir",
+                System.getProperty("user.home") + File.separator + ".network-simulator"
+                        + File.separator + "gemini-cache").trim();
+        cacheDir = cache.isEmpty() ? null : Paths.get(cache);
+    }
+
+    /** The shared client; settings are loaded on first use so they are only required once the API is used. */
+    static synchronized GeminiBatchClient get() {
+        if (instance == null)
+            instance = new GeminiBatchClient(loadSettings());
+        return instance;
+    }
+
+    private static Properties loadSettings() {
+        Properties props = new Properties();
+
+        // Try multiple locations for config.properties
+        String[] possiblePaths = {
+                "config.properties",                           // Current directory
+                "Network Simulator/config.properties",         // From project root
+                "app/config.properties",                       // In jpackage app folder
+                System.getProperty("user.dir") + "/config.properties"
+        };
+
+        for (String path : possiblePaths) {
+            try (InputStream input = new FileInputStream(path)) {
+                props.load(input);
+                return props;
+            } catch (FileNotFoundException e) {
+                // Try next path
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading configuration file: " + e.getMessage(), e);
+            }
+        }
+        return props;
+    }
+
+    private static String setting(Properties settings, String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null)
+            value = settings.getProperty(name, defaultValue);
+        return value;
+    }
+
+    /**
+     * Generates {@code count} packets. {@code onChunk} (may be null) receives
+     * each chunk's packets on the calling thread as chunks complete, in
+     * completion order; the returned list holds all packets in sequence order.
+     */
+    List<NetworkPacket> generate(int count, String scenario, long seed,
+            Consumer<List<NetworkPacket>> onChunk) throws IOException {
+        int chunks = (count + chunkSize - 1) / chunkSize;
+        if (chunks == 0)
+            return new ArrayList<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunks), r -> {
+            Thread t = new Thread(r, "gemini-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<Chunk> completion = new ExecutorCompletionService<>(pool);
+        for (int c = 0; c < chunks; c++) {
+            int index = c;
+            int first = c * chunkSize + 1;
+            int size = Math.min(chunkSize, count - c * chunkSize);
+            completion.submit(() -> new Chunk(index, generateChunk(index, first, size, scenario, seed)));
+        }
+
+        List<List<NetworkPacket>> results = new ArrayList<>(Collections.nCopies(chunks, null));
+        try {
+            for (int done = 0; done < chunks; done++) {
+                Chunk chunk = completion.take().get();
+                results.set(chunk.index, chunk.packets);
+                if (onChunk != null)
+                    onChunk.accept(chunk.packets);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Packet generation interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Packet generation failed", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<NetworkPacket> packets = new ArrayList<>(count);
+        for (List<NetworkPacket> chunk : results)
+            packets.addAll(chunk);
+        return packets;
+    }
+
+    private List<NetworkPacket> generateChunk(int index, int first, int size, String scenario, long seed)
+            throws IOException {
+        String prompt = GeminiPacketGenerator.buildPrompt(size, scenario);
+        String key = cacheKey(prompt, scenario, seed, index);
+        String text = readCache(key);
+        if (text == null) {
+            text = request(prompt);
+            // Only well-formed replies are cached; anything else would pin this chunk to fallback packets.
+            if (text != null && GeminiPacketGenerator.isPacketArray(text))
+                writeCache(key, text);
+        }
+        // Each chunk gets its own stream so results do not depend on completion order.
+        Random random = new Random(seed + index * 0x9E3779B97F4A7C15L);
+        return GeminiPacketGenerator.parsePacketsFromResponse(text != null ? text : "", size, first, random);
+    }
+
+    private String request(String prompt) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                acquirePermit();
+                return post(prompt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Gemini request interrupted");
+            } catch (IOException e) {
+                boolean retryable = !(e instanceof HttpStatusException) || ((HttpStatusException) e).retryable();
+                if (!retryable || attempt == MAX_ATTEMPTS)
+                    throw new IOException("Failed to call Gemini API after " + attempt + " attempt(s)", e);
+                long backoff = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (attempt - 1));
+                backoff = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                if (e instanceof HttpStatusException)
+                    backoff = Math.max(backoff, ((HttpStatusException) e).retryAfterMs);
+                System.err.println("Gemini request failed (" + e.getMessage() + "), retrying in " + backoff + " ms");
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Gemini request interrupted");
+                }
+            }
+        }
+    }
+
+    /** Spaces request starts at least {@code permitIntervalNanos} apart across all threads. */
+    private void acquirePermit() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextPermit);
+            nextPermit = slot + permitIntervalNanos;
+            wait = slot - now;
+        }
+        if (wait > 0)
+            TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    private String post(String prompt) throws IOException {
+        URL url = new URL(apiKey.isEmpty() ? apiUrl : apiUrl + "?key=" + URLEncoder.encode(apiKey, "UTF-8"));
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setConnectTimeout(10000);
+        conn.setReadTimeout(120000);
+        conn.setDoOutput(true);
+
+        JSONObject requestBody = new JSONObject();
+        JSONArray contents = new JSONArray();
+        JSONObject content = new JSONObject();
+        JSONArray parts = new JSONArray();
+        JSONObject part = new JSONObject();
+        part.put("text", prompt);
+        parts.put(part);
+        content.put("parts", parts);
+        contents.put(content);
+        requestBody.put("contents", contents);
+
+        JSONObject generationConfig = new JSONObject();
+        generationConfig.put("temperature", 0.7);
+        generationConfig.put("topK", 40);
+        generationConfig.put("topP", 0.95);
+        generationConfig.put("maxOutputTokens", 8192);
+        requestBody.put("generationConfig", generationConfig);
+
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(requestBody.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        int responseCode = conn.getResponseCode();
+        if (responseCode == 200) {
+            return extractTextFromResponse(readAll(conn.getInputStream()));
+        }
+        long retryAfterMs = 0;
+        String retryAfter = conn.getHeaderField("Retry-After");
+        if (retryAfter != null) {
+            try {
+                retryAfterMs = Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                // HTTP-date form; fall back to the computed backoff
+            }
+        }
+        InputStream error = conn.getErrorStream();
+        throw new HttpStatusException(responseCode, retryAfterMs, error != null ? readAll(error) : "");
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** The text of the first candidate, or {@code null} if the response has none. */
+    private static String extractTextFromResponse(String response) {
+        try {
+            JSONObject json = new JSONObject(response);
+            JSONArray candidates = json.getJSONArray("candidates");
+            JSONObject firstCandidate = candidates.getJSONObject(0);
+            JSONObject content = firstCandidate.getJSONObject("content");
+            JSONArray parts = content.getJSONArray("parts");
+            JSONObject firstPart = parts.getJSONObject(0);
+            return firstPart.getString("text");
+        } catch (Exception e) {
+            System.err.println("Failed to parse Gemini response: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // The chunk index is part of the key: chunks of equal size share a prompt
+    // but must not share a response.
+    private static String cacheKey(String prompt, String scenario, long seed, int chunk) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(prompt.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(scenario.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update((seed + ":" + chunk).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : sha.digest())
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String readCache(String key) {
+        if (cacheDir == null)
+            return null;
+        Path file = cacheDir.resolve(key + ".txt");
+        try {
+            return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCache(String key, String text) {
+        if (cacheDir == null)
+            return;
+        try {
+            Files.createDirectories(cacheDir);
+            Path tmp = Files.createTempFile(cacheDir, key, ".tmp");
+            Files.writeString(tmp, text, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, cacheDir.resolve(key + ".txt"), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, cacheDir.resolve(key + ".txt"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not cache Gemini response: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package AI;
+
+/**
+ * Helpers for IPv4 addresses packed into a single int (big-endian, so
+ * {@code 192.168.1.2} is {@code 0xC0A80102}).
+ */
+public final class IPv4 {
+
+    private IPv4() {
+    }
+
+    public static int of(int a, int b, int c, int d) {
+        return (a & 0xFF) << 24 | (b & 0xFF) << 16 | (c & 0xFF) << 8 | (d & 0xFF);
+    }
+
+    /**
+     * Parses a dotted-quad address. Returns -1L if {@code s} is not a valid
+     * IPv4 address, otherwise the packed address as an unsigned value.
+     */
+    public static long parse(String s) {
+        if (s == null)
+            return -1L;
+        int len = s.length();
+        long result = 0;
+        int octets = 0;
+        int i = 0;
+        while (i < len) {
+            int start = i;
+            int v = 0;
+            while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                v = v * 10 + (s.charAt(i) - '0');
+                if (v > 255)
+                    return -1L;
+                i++;
+            }
+            if (i == start || i - start > 3)
+                return -1L;
+            result = result << 8 | v;
+            octets++;
+            if (i < len) {
+                if (s.charAt(i) != '.' || octets == 4)
+                    return -1L;
+                i++;
+                if (i == len)
+                    return -1L;
+            }
+        }
+        return octets == 4 ? result : -1L;
+    }
+
+    public static String toString(int address) {
+        StringBuilder sb = new StringBuilder(15);
+        sb.append((address >>> 24) & 0xFF).append('.')
+                .append((address >>> 16) & 0xFF).append('.')
+                .append((address >>> 8) & 0xFF).append('.')
+                .append(address & 0xFF);
+        return sb.toString();
+    }
+}
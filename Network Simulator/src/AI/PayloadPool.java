@@ -0,0 +1,250 @@
+package AI;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shared store for packet payload templates. Each template is kept once as
+ * bytes; a packet only records {@code (templateId, seed, length)} and the
+ * payload text is rendered on demand.
+ *
+ * Templates may contain slots of the form {@code ${...}} that are filled
+ * deterministically from the packet's seed:
+ * <ul>
+ * <li>{@code ${N}} - integer in [0, N)</li>
+ * <li>{@code ${A-B}} - integer in [A, B]</li>
+ * <li>{@code ${hex}} - 32-bit value in hex</li>
+ * <li>{@code ${a|b|c}} - one of the alternatives</li>
+ * <li>{@code ${*C:N}} - the character C repeated min(N, size) times</li>
+ * <li>{@code ${len}} - the nominal payload size</li>
+ * </ul>
+ * A slot may be prefixed with a label ({@code ${user:admin|root}}); slots
+ * sharing a label render the same value. Once the template is exhausted the
+ * payload is padded with {@code [...]} up to its size.
+ *
+ * Only the built-in templates live here; text returned by the LLM is nearly
+ * always unique, so packets keep it themselves rather than growing the pool
+ * for the rest of the session.
+ */
+public final class PayloadPool {
+
+    public static final int NONE = -1;
+
+    private static final byte[] PADDING = "[...]".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int NUMBER = 0;
+    private static final int HEX = 1;
+    private static final int CHOICE = 2;
+    private static final int REPEAT = 3;
+    private static final int LENGTH = 4;
+
+    private static final class Slot {
+        int kind;
+        int key;
+        int min;
+        int bound;
+        byte[][] choices;
+        byte fill;
+    }
+
+    private static final class Template {
+        final byte[][] parts;
+        final Slot[] slots;
+
+        Template(byte[][] parts, Slot[] slots) {
+            this.parts = parts;
+            this.slots = slots;
+        }
+    }
+
+    private static volatile Template[] templates = new Template[16];
+    private static int count;
+
+    private PayloadPool() {
+    }
+
+    /** Registers a template containing {@code ${...}} slots and returns its id. */
+    public static int register(String source) {
+        List<byte[]> parts = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("${", pos);
+            if (open < 0)
+                break;
+            int close = source.indexOf('}', open + 2);
+            if (close < 0)
+                throw new IllegalArgumentException("Unterminated slot in payload template: " + source);
+            parts.add(source.substring(pos, open).getBytes(StandardCharsets.UTF_8));
+            slots.add(parseSlot(source.substring(open + 2, close), slots.size()));
+            pos = close + 1;
+        }
+        parts.add(source.substring(pos).getBytes(StandardCharsets.UTF_8));
+        return add(new Template(parts.toArray(new byte[0][]), slots.toArray(new Slot[0])));
+    }
+
+    /** Registers each source with {@link #register(String)}. */
+    public static int[] registerAll(String... sources) {
+        int[] ids = new int[sources.length];
+        for (int i = 0; i < sources.length; i++)
+            ids[i] = register(sources[i]);
+        return ids;
+    }
+
+    private static synchronized int add(Template template) {
+        Template[] current = templates;
+        if (count == current.length)
+            current = Arrays.copyOf(current, current.length * 2);
+        current[count] = template;
+        templates = current; // volatile write publishes the new slot
+        return count++;
+    }
+
+    private static Slot parseSlot(String spec, int position) {
+        Slot slot = new Slot();
+        slot.key = position;
+        int colon = spec.indexOf(':');
+        if (colon > 0 && spec.charAt(0) >= 'a' && spec.charAt(0) <= 'z'
+                && spec.substring(0, colon).chars().allMatch(Character::isLetterOrDigit)) {
+            slot.key = spec.substring(0, colon).hashCode() ^ 0x5bd1e995;
+            spec = spec.substring(colon + 1);
+        }
+        if (spec.equals("hex")) {
+            slot.kind = HEX;
+        } else if (spec.equals("len")) {
+            slot.kind = LENGTH;
+        } else if (spec.startsWith("*")) {
+            slot.kind = REPEAT;
+            slot.fill = (byte) spec.charAt(1);
+            slot.bound = Integer.parseInt(spec.substring(spec.indexOf(':') + 1));
+        } else if (spec.indexOf('|') >= 0) {
+            slot.kind = CHOICE;
+            String[] options = spec.split("\\|", -1);
+            slot.choices = new byte[options.length][];
+            for (int i = 0; i < options.length; i++)
+                slot.choices[i] = options[i].getBytes(StandardCharsets.UTF_8);
+        } else if (spec.indexOf('-') > 0) {
+            slot.kind = NUMBER;
+            int dash = spec.indexOf('-');
+            slot.min = Integer.parseInt(spec.substring(0, dash));
+            slot.bound = Integer.parseInt(spec.substring(dash + 1)) - slot.min + 1;
+        } else {
+            slot.kind = NUMBER;
+            slot.bound = Integer.parseInt(spec);
+        }
+        if (slot.kind == NUMBER && slot.bound <= 0)
+            throw new IllegalArgumentException("Empty range in payload slot: " + spec);
+        return slot;
+    }
+
+    /** Renders the whole payload of the given nominal {@code size}. */
+    public static String render(int templateId, int seed, int size) {
+        return render(templateId, seed, size, size);
+    }
+
+    /** Renders at most {@code limit} bytes of the payload of the given nominal {@code size}. */
+    public static String render(int templateId, int seed, int size, int limit) {
+        if (templateId == NONE)
+            return null;
+        int n = Math.max(0, Math.min(size, limit));
+        byte[] out = new byte[n];
+        int len = fill(templates[templateId], seed, size, out);
+        return new String(out, 0, utf8Boundary(out, len), StandardCharsets.UTF_8);
+    }
+
+    /** At most {@code limit} bytes of {@code text} as UTF-8, cut between characters. */
+    public static String truncate(String text, int limit) {
+        if (text == null || text.length() * 3 <= limit)
+            return text;
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= limit)
+            return text;
+        return new String(bytes, 0, utf8Boundary(bytes, Math.max(0, limit)), StandardCharsets.UTF_8);
+    }
+
+    /** {@code len}, or less so that {@code b[0 .. len)} does not end inside a multi-byte character. */
+    private static int utf8Boundary(byte[] b, int len) {
+        int lead = len - 1;
+        while (lead >= 0 && lead > len - 4 && (b[lead] & 0xc0) == 0x80)
+            lead--;
+        if (lead < 0)
+            return len;
+        int v = b[lead] & 0xff;
+        int need = v < 0x80 ? 1 : v >= 0xf0 ? 4 : v >= 0xe0 ? 3 : v >= 0xc0 ? 2 : 1;
+        return lead + need > len ? lead : len;
+    }
+
+    private static int fill(Template t, int seed, int size, byte[] out) {
+        int pos = 0;
+        for (int i = 0; i < t.parts.length && pos < out.length; i++) {
+            pos = put(t.parts[i], out, pos);
+            if (i < t.slots.length && pos < out.length)
+                pos = putSlot(t.slots[i], seed, size, out, pos);
+        }
+        while (pos < out.length)
+            pos = put(PADDING, out, pos);
+        return pos;
+    }
+
+    private static int put(byte[] src, byte[] out, int pos) {
+        int n = Math.min(src.length, out.length - pos);
+        System.arraycopy(src, 0, out, pos, n);
+        return pos + n;
+    }
+
+    private static int putSlot(Slot slot, int seed, int size, byte[] out, int pos) {
+        int v = mix(seed, slot.key);
+        switch (slot.kind) {
+            case NUMBER:
+                return putDecimal(slot.min + (v & 0x7fffffff) % slot.bound, out, pos);
+            case LENGTH:
+                return putDecimal(size, out, pos);
+            case HEX:
+                return putAscii(Integer.toHexString(v), out, pos);
+            case CHOICE:
+                return put(slot.choices[(v & 0x7fffffff) % slot.choices.length], out, pos);
+            default:
+                int end = Math.min(out.length, pos + Math.min(slot.bound, size));
+                Arrays.fill(out, pos, end, slot.fill);
+                return end;
+        }
+    }
+
+    private static int putDecimal(int value, byte[] out, int pos) {
+        if (value == 0) {
+            if (pos < out.length)
+                out[pos++] = '0';
+            return pos;
+        }
+        int digits = 0;
+        for (int v = value; v != 0; v /= 10)
+            digits++;
+        if (value < 0)
+            return putAscii(Integer.toString(value), out, pos);
+        int end = pos + digits;
+        for (int i = end - 1, v = value; i >= pos; i--, v /= 10) {
+            if (i < out.length)
+                out[i] = (byte) ('0' + v % 10);
+        }
+        return Math.min(end, out.length);
+    }
+
+    private static int putAscii(String s, byte[] out, int pos) {
+        int n = Math.min(s.length(), out.length - pos);
+        for (int i = 0; i < n; i++)
+            out[pos + i] = (byte) s.charAt(i);
+        return pos + n;
+    }
+
+    private static int mix(int seed, int key) {
+        int h = seed * 0x9E3779B9 + key * 0x85EBCA6B;
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        h *= 0x846CA68B;
+        h ^= h >>> 16;
+        return h;
+    }
+}
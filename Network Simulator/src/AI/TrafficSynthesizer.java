@@ -0,0 +1,488 @@
+package AI;
+
+import AI.GeminiPacketGenerator.NetworkPacket;
+import Components.CompactGraph;
+import Components.Units;
+import Simulation.CalendarQueue;
+import Simulation.Scheduler;
+import UI.RoutingConfigDialog.TrafficFlow;
+import UI.SimulationConfigDialog.SimulationConfig;
+
+import java.util.*;
+
+/**
+ * Discrete-event traffic synthesizer. Packets belong to flows that follow
+ * shortest (hop-count) paths through the topology; each hop serializes the
+ * packet on a FIFO link whose transmission time comes from the link
+ * bandwidth, so latency includes load-dependent queueing delay. Links use
+ * their own bandwidth and delay where set, else the configured ones, and
+ * drop packets arriving at a full queue when they set a queue limit (every
+ * queue type is treated as DropTail). Dropped packets stay in the output,
+ * marked {@code dropped}, with no latency or jitter.
+ *
+ * The configured traffic flows carry the normal traffic. Attack traffic for
+ * the selected scenario is added as separate attacker flows aimed at the
+ * nodes receiving normal traffic. Packets are emitted in send-time order.
+ */
+class TrafficSynthesizer {
+
+    private static final double DEFAULT_SIM_TIME = 100.0;
+    private static final double DEFAULT_BANDWIDTH = 100e6;
+    private static final double DEFAULT_DELAY = 0.010;
+    private static final int DEFAULT_PACKET_SIZE = 1000;
+
+    private static final short FTP = FieldDictionary.APPLICATIONS.code("FTP");
+    private static final short TELNET = FieldDictionary.APPLICATIONS.code("Telnet");
+    private static final short CUSTOM = FieldDictionary.APPLICATIONS.code("Custom");
+    private static final short HTTP = FieldDictionary.APPLICATIONS.code("HTTP");
+    private static final short SSH = FieldDictionary.APPLICATIONS.code("SSH");
+    private static final short SYN = FieldDictionary.FLAGS.code("SYN");
+    private static final short ACK = FieldDictionary.FLAGS.code("ACK");
+    private static final short PSH_ACK = FieldDictionary.FLAGS.code("PSH-ACK");
+    private static final short FIN_ACK = FieldDictionary.FLAGS.code("FIN-ACK");
+    private static final short RST = FieldDictionary.FLAGS.code("RST");
+
+    private static final class Flow {
+        int src, dst;
+        int[] hops; // link index * 2 + direction (0: node1 -> node2, 1: node2 -> node1)
+        double start, stop;
+        boolean poisson;
+        int packets;
+        int sent;
+
+        short protocol, application, attackType = FieldDictionary.NONE;
+        int srcPort, dstPort;
+        int minSize, maxSize;
+        int initialTtl;
+        boolean scan;
+
+        long bytesSent, bytesDelivered;
+        double lastLatency = -1, jitter;
+        int sameHost, sameSrcPort;
+    }
+
+    private final Random random;
+    private final CompactGraph graph;
+    private final int nodeCount;
+    private final long[] nodeIds;
+    private final int[] adjStart, adjNode, adjLink;
+    private final double[] bandwidth;
+    private final double[] delay;
+    private final int[] queueLimit; // packets; -1 for no limit
+    private final double[] busyUntil;
+
+    private TrafficSynthesizer(CompactGraph graph, SimulationConfig config, Random random) {
+        this.random = random;
+        this.graph = graph;
+        nodeCount = graph.nodeCount;
+        nodeIds = graph.nodeIds;
+        adjStart = graph.adjStart;
+        adjNode = graph.adjNode;
+        adjLink = graph.adjLink;
+        int linkCount = graph.linkCount;
+
+        double bw = DEFAULT_BANDWIDTH;
+        double d = DEFAULT_DELAY;
+        if (config != null) {
+            try {
+                bw = Units.parseBandwidth(config.bandwidth);
+                d = Units.parseTime(config.delay);
+            } catch (RuntimeException e) {
+                System.err.println("Using default link parameters: " + e.getMessage());
+            }
+        }
+        bandwidth = new double[linkCount];
+        delay = new double[linkCount];
+        queueLimit = new int[linkCount];
+        for (int l = 0; l < linkCount; l++) {
+            double own = graph.bandwidth(l);
+            bandwidth[l] = Double.isNaN(own) ? bw : own;
+            own = graph.delay(l);
+            delay[l] = Double.isNaN(own) ? d : own;
+            queueLimit[l] = graph.queueLimit(l);
+        }
+        busyUntil = new double[2 * linkCount];
+    }
+
+    static List<NetworkPacket> synthesize(CompactGraph graph, List<TrafficFlow> trafficFlows, int count,
+            String scenario, SimulationConfig config, Random random) {
+        TrafficSynthesizer s = new TrafficSynthesizer(graph, config, random);
+        return s.run(trafficFlows, count, scenario, config);
+    }
+
+    private List<NetworkPacket> run(List<TrafficFlow> trafficFlows, int count, String scenario,
+            SimulationConfig config) {
+        double simTime = config != null ? config.simTime : DEFAULT_SIM_TIME;
+        int packetSize = config != null && config.packetSize > 0 ? config.packetSize : DEFAULT_PACKET_SIZE;
+
+        double attackProbability = GeminiPacketGenerator.getAttackProbability(scenario);
+        int attackBudget = (int) Math.round(count * attackProbability);
+        int normalBudget = count - attackBudget;
+
+        List<Flow> normal = buildNormalFlows(trafficFlows, simTime, packetSize);
+        if (normal.isEmpty()) {
+            normalBudget = 0;
+            attackBudget = 0;
+        }
+        List<Flow> attacks = buildAttackFlows(normal, GeminiPacketGenerator.getAttackTypes(scenario), simTime);
+        if (attacks.isEmpty()) {
+            normalBudget += attackBudget;
+            attackBudget = 0;
+        }
+        distribute(normal, normalBudget);
+        distribute(attacks, attackBudget);
+
+        List<Flow> flows = new ArrayList<>(normal);
+        flows.addAll(attacks);
+        flows.removeIf(f -> f.packets == 0);
+        countSharedEndpoints(flows);
+        return simulate(flows);
+    }
+
+    private List<Flow> buildNormalFlows(List<TrafficFlow> trafficFlows, double simTime, int packetSize) {
+        List<Flow> flows = new ArrayList<>();
+        if (nodeCount < 2)
+            return flows;
+        if (trafficFlows != null) {
+            for (TrafficFlow tf : trafficFlows) {
+                int src = graph.indexOf(tf.srcNodeId);
+                int dst = graph.indexOf(tf.dstNodeId);
+                if (src < 0 || dst < 0 || src == dst)
+                    continue;
+                Flow f = newFlow(src, dst, tf.startTime, tf.stopTime);
+                if (f == null)
+                    continue;
+                boolean tcp = tf.flowType.startsWith("TCP");
+                f.protocol = tcp ? GeminiPacketGenerator.TCP : GeminiPacketGenerator.UDP;
+                f.application = tf.flowType.endsWith("Telnet") ? TELNET : tcp ? FTP : CUSTOM;
+                f.dstPort = f.application == TELNET ? 23 : f.application == FTP ? 21 : 8080;
+                f.poisson = f.application != CUSTOM || tf.flowType.endsWith("Exponential");
+                f.minSize = f.application == TELNET ? 64 : packetSize;
+                f.maxSize = f.minSize;
+                flows.add(f);
+            }
+        }
+        if (!flows.isEmpty())
+            return flows;
+
+        // No usable configured flows: spread conversations across the topology,
+        // mostly between neighbours like the original per-packet sampling did.
+        int conversations = Math.max(1, Math.min(64, nodeCount * 2));
+        for (int c = 0; c < conversations; c++) {
+            int src = random.nextInt(nodeCount);
+            int dst;
+            if (adjStart[src + 1] > adjStart[src] && random.nextDouble() < 0.7) {
+                dst = adjNode[adjStart[src] + random.nextInt(adjStart[src + 1] - adjStart[src])];
+            } else {
+                dst = random.nextInt(nodeCount);
+            }
+            if (dst == src)
+                continue;
+            double start = random.nextDouble() * simTime * 0.5;
+            Flow f = newFlow(src, dst, start, start + simTime * (0.1 + 0.4 * random.nextDouble()));
+            if (f == null)
+                continue;
+            boolean tcp = random.nextInt(5) < 3;
+            f.protocol = tcp ? GeminiPacketGenerator.TCP : GeminiPacketGenerator.UDP;
+            short[] apps = tcp ? GeminiPacketGenerator.TCP_APPS : GeminiPacketGenerator.UDP_APPS;
+            int[] ports = tcp ? GeminiPacketGenerator.TCP_PORTS : GeminiPacketGenerator.UDP_PORTS;
+            int app = random.nextInt(apps.length);
+            f.application = apps[app];
+            f.dstPort = ports[app];
+            f.poisson = true;
+            f.minSize = 200;
+            f.maxSize = 999;
+            flows.add(f);
+        }
+        return flows;
+    }
+
+    private List<Flow> buildAttackFlows(List<Flow> normal, short[] attackTypes, double simTime) {
+        List<Flow> flows = new ArrayList<>();
+        if (normal.isEmpty())
+            return flows;
+        for (short attackType : attackTypes) {
+            String name = FieldDictionary.ATTACK_TYPES.value(attackType);
+            int victim = normal.get(random.nextInt(normal.size())).dst;
+            int sources = name.equals("DDoS") ? Math.min(8, nodeCount - 1) : 1;
+            double start = random.nextDouble() * simTime * 0.5;
+            double stop = start + simTime * (0.2 + 0.3 * random.nextDouble());
+            for (int s = 0; s < sources; s++) {
+                int src = random.nextInt(nodeCount);
+                if (src == victim)
+                    continue;
+                Flow f = newFlow(src, victim, start, stop);
+                if (f == null)
+                    continue;
+                f.attackType = attackType;
+                f.poisson = !name.equals("Malware") && !name.equals("Botnet");
+                switch (name) {
+                    case "PortScan", "Probe" -> {
+                        f.protocol = GeminiPacketGenerator.TCP;
+                        f.application = HTTP;
+                        f.dstPort = 20;
+                        f.scan = true;
+                        f.minSize = 60;
+                        f.maxSize = 64;
+                    }
+                    case "BruteForce" -> {
+                        f.protocol = GeminiPacketGenerator.TCP;
+                        f.application = SSH;
+                        f.dstPort = 22;
+                        f.minSize = 100;
+                        f.maxSize = 300;
+                    }
+                    case "DoS", "DDoS" -> {
+                        f.protocol = random.nextBoolean() ? GeminiPacketGenerator.TCP : GeminiPacketGenerator.UDP;
+                        f.application = f.protocol == GeminiPacketGenerator.TCP ? HTTP : CUSTOM;
+                        f.dstPort = f.protocol == GeminiPacketGenerator.TCP ? 80 : 8080;
+                        f.minSize = random.nextBoolean() ? 64 : 1200;
+                        f.maxSize = f.minSize + 100;
+                    }
+                    default -> {
+                        f.protocol = GeminiPacketGenerator.TCP;
+                        f.application = HTTP;
+                        f.dstPort = 80;
+                        f.minSize = 200;
+                        f.maxSize = 900;
+                    }
+                }
+                flows.add(f);
+            }
+        }
+        return flows;
+    }
+
+    private Flow newFlow(int src, int dst, double start, double stop) {
+        int[] hops = shortestPath(src, dst);
+        if (hops == null)
+            return null;
+        Flow f = new Flow();
+        f.src = src;
+        f.dst = dst;
+        f.hops = hops;
+        f.start = start;
+        f.stop = Math.max(stop, start + 1e-3);
+        f.srcPort = 1024 + random.nextInt(60000);
+        f.initialTtl = random.nextBoolean() ? 64 : 128;
+        return f;
+    }
+
+    /** BFS over the adjacency arrays; returns direction-encoded link hops or null if unreachable. */
+    private int[] shortestPath(int src, int dst) {
+        int[] viaLink = new int[nodeCount];
+        Arrays.fill(viaLink, -1);
+        int[] queue = new int[nodeCount];
+        int head = 0, tail = 0;
+        queue[tail++] = src;
+        viaLink[src] = Integer.MAX_VALUE;
+        while (head < tail && viaLink[dst] == -1) {
+            int u = queue[head++];
+            for (int e = adjStart[u]; e < adjStart[u + 1]; e++) {
+                int v = adjNode[e];
+                if (viaLink[v] == -1) {
+                    viaLink[v] = adjLink[e];
+                    queue[tail++] = v;
+                }
+            }
+        }
+        if (viaLink[dst] == -1)
+            return null;
+        int length = 0;
+        for (int v = dst; v != src; v = graph.opposite(viaLink[v], v))
+            length++;
+        int[] hops = new int[length];
+        for (int v = dst, i = length - 1; v != src; i--) {
+            int l = viaLink[v];
+            int u = graph.opposite(l, v);
+            hops[i] = l * 2 + (graph.linkSrc[l] == u ? 0 : 1);
+            v = u;
+        }
+        return hops;
+    }
+
+    private static void distribute(List<Flow> flows, int budget) {
+        if (flows.isEmpty() || budget <= 0)
+            return;
+        double total = 0;
+        for (Flow f : flows)
+            total += f.stop - f.start;
+        int assigned = 0;
+        for (Flow f : flows) {
+            f.packets = (int) Math.floor(budget * (f.stop - f.start) / total);
+            assigned += f.packets;
+        }
+        for (int i = 0; assigned < budget; i = (i + 1) % flows.size(), assigned++)
+            flows.get(i).packets++;
+    }
+
+    private void countSharedEndpoints(List<Flow> flows) {
+        int[] byDst = new int[nodeCount];
+        int[] bySrc = new int[nodeCount];
+        for (Flow f : flows) {
+            byDst[f.dst]++;
+            bySrc[f.src]++;
+        }
+        for (Flow f : flows) {
+            f.sameHost = byDst[f.dst];
+            f.sameSrcPort = bySrc[f.src];
+        }
+    }
+
+    private List<NetworkPacket> simulate(List<Flow> flows) {
+        int total = 0;
+        for (Flow f : flows)
+            total += f.packets;
+        List<NetworkPacket> out = new ArrayList<>(total);
+
+        // In-flight packets live in parallel arrays indexed by slot.
+        NetworkPacket[] inFlight = new NetworkPacket[Math.max(16, flows.size())];
+        int[] slotFlow = new int[inFlight.length];
+        int[] slotHop = new int[inFlight.length];
+        double[] slotSent = new double[inFlight.length];
+        int[] freeSlots = new int[inFlight.length];
+        int freeCount = 0;
+        int nextSlot = 0;
+
+        Scheduler events = new CalendarQueue();
+        for (int i = 0; i < flows.size(); i++)
+            events.push(flows.get(i).start, -(i + 1));
+
+        while (!events.isEmpty()) {
+            double t = events.peekTime();
+            int item = (int) events.pop();
+            int slot;
+
+            if (item < 0) {
+                int fi = -item - 1;
+                Flow f = flows.get(fi);
+                NetworkPacket p = createPacket(f, t);
+                p.sequenceNumber = out.size() + 1;
+                out.add(p);
+                f.sent++;
+                f.bytesSent += p.packetSize;
+                if (f.sent < f.packets)
+                    events.push(nextSendTime(f, t), item);
+
+                if (freeCount > 0) {
+                    slot = freeSlots[--freeCount];
+                } else {
+                    if (nextSlot == inFlight.length) {
+                        int grown = inFlight.length * 2;
+                        inFlight = Arrays.copyOf(inFlight, grown);
+                        slotFlow = Arrays.copyOf(slotFlow, grown);
+                        slotHop = Arrays.copyOf(slotHop, grown);
+                        slotSent = Arrays.copyOf(slotSent, grown);
+                        freeSlots = Arrays.copyOf(freeSlots, grown);
+                    }
+                    slot = nextSlot++;
+                }
+                inFlight[slot] = p;
+                slotFlow[slot] = fi;
+                slotHop[slot] = 0;
+                slotSent[slot] = t;
+            } else {
+                slot = item;
+            }
+
+            Flow f = flows.get(slotFlow[slot]);
+            NetworkPacket p = inFlight[slot];
+            int hop = slotHop[slot];
+            if (hop == f.hops.length) {
+                deliver(f, p, t - slotSent[slot]);
+                inFlight[slot] = null;
+                freeSlots[freeCount++] = slot;
+                continue;
+            }
+            int directed = f.hops[hop];
+            int link = directed >>> 1;
+            double transmit = p.packetSize * 8.0 / bandwidth[link];
+            if (queueLimit[link] >= 0 && busyUntil[directed] - t >= (queueLimit[link] + 1) * transmit) {
+                // Tail drop: the queue ahead already holds queueLimit packets of this size.
+                p.dropped = true;
+                p.latency = Double.NaN;
+                p.jitter = Double.NaN;
+                inFlight[slot] = null;
+                freeSlots[freeCount++] = slot;
+                continue;
+            }
+            double begin = Math.max(t, busyUntil[directed]);
+            double done = begin + transmit;
+            busyUntil[directed] = done;
+            slotHop[slot] = hop + 1;
+            events.push(done + delay[link], slot);
+        }
+        return out;
+    }
+
+    private double nextSendTime(Flow f, double now) {
+        double mean = (f.stop - f.start) / f.packets;
+        if (!f.poisson)
+            return now + mean;
+        return now - mean * Math.log(1.0 - random.nextDouble());
+    }
+
+    private NetworkPacket createPacket(Flow f, double t) {
+        NetworkPacket p = new NetworkPacket();
+        boolean isAttack = f.attackType != FieldDictionary.NONE;
+        p.timestamp = t;
+        p.sourceAddress = GeminiPacketGenerator.generateNodeIP(nodeIds[f.src]);
+        p.destAddress = GeminiPacketGenerator.generateNodeIP(nodeIds[f.dst]);
+        p.protocolCode = f.protocol;
+        p.setApplicationCode(f.application);
+        p.sourcePort = f.srcPort;
+        p.destPort = f.scan ? Math.min(65535, f.dstPort + f.sent) : f.dstPort;
+        p.trafficTypeCode = isAttack ? GeminiPacketGenerator.ATTACK : GeminiPacketGenerator.NORMAL;
+        p.attackTypeCode = f.attackType;
+
+        if (f.protocol == GeminiPacketGenerator.TCP) {
+            if (isAttack)
+                p.flagsCode = f.scan || f.sent % 4 != 3 ? SYN : RST;
+            else if (f.sent == 0)
+                p.flagsCode = SYN;
+            else if (f.sent == f.packets - 1)
+                p.flagsCode = FIN_ACK;
+            else
+                p.flagsCode = f.sent % 3 == 0 ? ACK : PSH_ACK;
+            p.headerLength = 20 + 4 * random.nextInt(11);
+        } else {
+            p.flagsCode = GeminiPacketGenerator.NO_FLAGS;
+            p.headerLength = 20;
+        }
+
+        p.packetSize = f.minSize + (f.maxSize > f.minSize ? random.nextInt(f.maxSize - f.minSize + 1) : 0);
+        p.payloadSize = Math.max(0, p.packetSize - p.headerLength);
+        if (isAttack)
+            GeminiPacketGenerator.generateAttackPayload(p, f.attackType, random);
+        else
+            GeminiPacketGenerator.generatePayload(p, random);
+
+        p.ttl = f.initialTtl - f.hops.length;
+        p.packetRate = f.packets / (f.stop - f.start);
+        p.connectionDuration = Math.max(1, (int) Math.ceil(f.stop - f.start));
+        p.bytesSent = (int) Math.min(Integer.MAX_VALUE, f.bytesSent + p.packetSize);
+        p.bytesReceived = (int) Math.min(Integer.MAX_VALUE, f.bytesDelivered);
+        p.sameHostConnections = f.sameHost;
+        p.sameSrcPortConnections = f.sameSrcPort;
+        p.isFragmented = false;
+
+        // The model has no link errors, so these keep the randomized ranges of per-packet sampling.
+        if (isAttack) {
+            p.retransmissions = random.nextInt(5);
+            p.errorRate = 0.05 + random.nextDouble() * 0.05;
+        } else {
+            p.retransmissions = random.nextInt(2);
+            p.errorRate = random.nextDouble() * 0.02;
+        }
+        return p;
+    }
+
+    private static void deliver(Flow f, NetworkPacket p, double latency) {
+        p.latency = latency;
+        if (f.lastLatency >= 0)
+            f.jitter += (Math.abs(latency - f.lastLatency) - f.jitter) / 16.0;
+        f.lastLatency = latency;
+        p.jitter = f.jitter;
+        f.bytesDelivered += p.packetSize;
+    }
+}
@@ -1,17 +1,20 @@
 package Components;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Agent extends NetworkComponent {
-    public static long serialVersionUID = 1l;
-    public String type;
+    private static final AtomicLong nextId = new AtomicLong(1);
+    /** Transport protocol, "TCP" or "UDP"; {@link #type} is the component kind, AGENT. */
+    public String agentType;
     public long id;
 
     public void convertToAgent(int choice) {
         switch (choice) {
             case 1:
-                type = "TCP";
+                agentType = "TCP";
                 break;
             case 2:
-                type = "UDP";
+                agentType = "UDP";
                 break;
             default:
                 System.out.println("Error, The choice does not correspond to any agent!");
@@ -20,6 +23,6 @@ public class Agent extends NetworkComponent {
 
     public Agent() {
         super(3);
-        this.id = serialVersionUID++;
+        this.id = nextId.getAndIncrement();
     }
 }
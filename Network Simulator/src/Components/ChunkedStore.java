@@ -0,0 +1,291 @@
+package Components;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Insertion-ordered element store whose contents can be frozen into a
+ * {@link View} in O(1). Elements, their ids and (for nodes) positions live in
+ * fixed-size chunks; a view keeps references to the chunks that existed when
+ * it was taken, and the store copies a chunk before its first write after
+ * that. Editing after a snapshot therefore costs one chunk copy per touched
+ * chunk rather than a copy of the whole topology.
+ *
+ * Removal leaves a hole that iteration skips; the store is rebuilt without
+ * holes once more than half its slots are empty.
+ *
+ * Each element records its own slot number (through the accessors given to
+ * the constructor), so membership tests and removal need no hash lookup.
+ */
+final class ChunkedStore<T> {
+
+    private static final int SHIFT = 10;
+    private static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private final boolean positions;
+    private Object[][] items = new Object[0][];
+    private long[][] ids = new long[0][];
+    private int[][] xs = new int[0][];
+    private int[][] ys = new int[0][];
+    private int[] chunkEpoch = new int[0];
+    private int epoch;
+    private boolean directoryShared;
+    private int end;
+    private int live;
+    private int modCount;
+    private final Class<T> type;
+    private final ToIntFunction<T> slotOf;
+    private final ObjIntConsumer<T> setSlot;
+
+    ChunkedStore(Class<T> type, boolean positions, ToIntFunction<T> slotOf, ObjIntConsumer<T> setSlot) {
+        this.type = type;
+        this.positions = positions;
+        this.slotOf = slotOf;
+        this.setSlot = setSlot;
+    }
+
+    /** The element's slot in this store, or -1 if it is not stored here. */
+    private int slot(Object item) {
+        if (!type.isInstance(item))
+            return -1;
+        int i = slotOf.applyAsInt(type.cast(item));
+        return i >= 0 && i < end && items[i >>> SHIFT][i & MASK] == item ? i : -1;
+    }
+
+    int size() {
+        return live;
+    }
+
+    boolean contains(T item) {
+        return slot(item) >= 0;
+    }
+
+    void add(T item, long id, int x, int y) {
+        int i = end;
+        int c = i >>> SHIFT;
+        // Views only see slots below their own end, so appending never needs a copy.
+        if (c == items.length)
+            grow();
+        items[c][i & MASK] = item;
+        ids[c][i & MASK] = id;
+        if (positions) {
+            xs[c][i & MASK] = x;
+            ys[c][i & MASK] = y;
+        }
+        setSlot.accept(item, i);
+        end++;
+        live++;
+        modCount++;
+    }
+
+    boolean remove(T item) {
+        int i = slot(item);
+        if (i < 0)
+            return false;
+        setSlot.accept(item, -1);
+        int c = i >>> SHIFT;
+        own(c);
+        items[c][i & MASK] = null;
+        live--;
+        modCount++;
+        if (end > CHUNK && live < end / 2)
+            compact();
+        return true;
+    }
+
+    void setPosition(T item, int x, int y) {
+        int i = slot(item);
+        if (i < 0 || !positions)
+            return;
+        int c = i >>> SHIFT;
+        own(c);
+        xs[c][i & MASK] = x;
+        ys[c][i & MASK] = y;
+    }
+
+    /** Freezes the current contents. Later writes copy the chunks they touch. */
+    View<T> view() {
+        View<T> v = new View<>(items, ids, positions ? xs : null, positions ? ys : null, end, live);
+        epoch++;
+        directoryShared = true;
+        return v;
+    }
+
+    /** Live read-only view; iterating it while the store changes fails fast. */
+    AbstractCollection<T> live() {
+        return new AbstractCollection<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                int expected = modCount;
+                Iterator<T> it = new SlotIterator<>(items, end);
+                return new Iterator<T>() {
+                    @Override
+                    public boolean hasNext() {
+                        if (modCount != expected)
+                            throw new ConcurrentModificationException();
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public T next() {
+                        if (modCount != expected)
+                            throw new ConcurrentModificationException();
+                        return it.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return live;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return slot(o) >= 0;
+            }
+        };
+    }
+
+    private void own(int c) {
+        if (directoryShared) {
+            items = items.clone();
+            ids = ids.clone();
+            xs = xs.clone();
+            ys = ys.clone();
+            chunkEpoch = chunkEpoch.clone();
+            directoryShared = false;
+        }
+        if (chunkEpoch[c] != epoch) {
+            items[c] = items[c].clone();
+            ids[c] = ids[c].clone();
+            if (positions) {
+                xs[c] = xs[c].clone();
+                ys[c] = ys[c].clone();
+            }
+            chunkEpoch[c] = epoch;
+        }
+    }
+
+    private void grow() {
+        int c = items.length;
+        items = Arrays.copyOf(items, c + 1);
+        ids = Arrays.copyOf(ids, c + 1);
+        xs = Arrays.copyOf(xs, c + 1);
+        ys = Arrays.copyOf(ys, c + 1);
+        chunkEpoch = Arrays.copyOf(chunkEpoch, c + 1);
+        directoryShared = false;
+        items[c] = new Object[CHUNK];
+        ids[c] = new long[CHUNK];
+        if (positions) {
+            xs[c] = new int[CHUNK];
+            ys[c] = new int[CHUNK];
+        }
+        chunkEpoch[c] = epoch;
+    }
+
+    /** Rebuilds into fresh chunks without holes, keeping the order. */
+    private void compact() {
+        Object[][] oldItems = items;
+        long[][] oldIds = ids;
+        int[][] oldXs = xs, oldYs = ys;
+        int oldEnd = end;
+        items = new Object[0][];
+        ids = new long[0][];
+        xs = new int[0][];
+        ys = new int[0][];
+        chunkEpoch = new int[0];
+        end = 0;
+        live = 0;
+        for (int i = 0; i < oldEnd; i++) {
+            int c = i >>> SHIFT, k = i & MASK;
+            @SuppressWarnings("unchecked")
+            T item = (T) oldItems[c][k];
+            if (item != null)
+                add(item, oldIds[c][k], positions ? oldXs[c][k] : 0, positions ? oldYs[c][k] : 0);
+        }
+    }
+
+    private static final class SlotIterator<T> implements Iterator<T> {
+        private final Object[][] items;
+        private final int end;
+        private int i = -1;
+        private int nextSlot;
+
+        SlotIterator(Object[][] items, int end) {
+            this.items = items;
+            this.end = end;
+            advance();
+        }
+
+        private void advance() {
+            i++;
+            while (i < end && items[i >>> SHIFT][i & MASK] == null)
+                i++;
+            nextSlot = i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextSlot < end;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (nextSlot >= end)
+                throw new NoSuchElementException();
+            T item = (T) items[nextSlot >>> SHIFT][nextSlot & MASK];
+            advance();
+            return item;
+        }
+    }
+
+    /** Frozen contents of a store; safe to read from any thread. */
+    static final class View<T> extends AbstractCollection<T> {
+        private final Object[][] items;
+        private final long[][] ids;
+        private final int[][] xs, ys;
+        private final int end, live;
+
+        View(Object[][] items, long[][] ids, int[][] xs, int[][] ys, int end, int live) {
+            this.items = items;
+            this.ids = ids;
+            this.xs = xs;
+            this.ys = ys;
+            this.end = end;
+            this.live = live;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new SlotIterator<>(items, end);
+        }
+
+        @Override
+        public int size() {
+            return live;
+        }
+
+        /** Calls {@code out} with each element and its id and position as of the snapshot. */
+        void forEachSlot(SlotConsumer<T> out) {
+            for (int i = 0; i < end; i++) {
+                int c = i >>> SHIFT, k = i & MASK;
+                @SuppressWarnings("unchecked")
+                T item = (T) items[c][k];
+                if (item != null)
+                    out.accept(item, ids[c][k], xs != null ? xs[c][k] : 0, ys != null ? ys[c][k] : 0);
+            }
+        }
+    }
+
+    interface SlotConsumer<T> {
+        void accept(T item, long id, int x, int y);
+    }
+}
@@ -0,0 +1,275 @@
+package Components;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+/**
+ * Immutable array form of a topology for exporters, generators and other
+ * read-only traversals. Nodes and links are numbered 0..n-1 / 0..m-1 in the
+ * iteration order of the source collections; adjacency is stored CSR-style:
+ * the neighbours of node {@code i} are {@code adjNode[adjStart[i] ..
+ * adjStart[i + 1] - 1]}, reached over the links in the same slots of
+ * {@code adjLink}.
+ *
+ * The arrays are shared, not copied: callers must not write to them.
+ */
+public final class CompactGraph {
+
+    public final int nodeCount;
+    public final int linkCount;
+
+    public final long[] nodeIds;
+    public final int[] nodeX;
+    public final int[] nodeY;
+
+    public final long[] linkIds;
+    /** Endpoint node indices; both -1 when the link touches a node outside the graph. */
+    public final int[] linkSrc;
+    public final int[] linkDst;
+
+    public final int[] adjStart;
+    public final int[] adjNode;
+    public final int[] adjLink;
+
+    /**
+     * Per-link parameters: link {@code l} uses entry {@code linkProfile[l]}
+     * of the profile arrays, where NaN or -1 means the simulation's default.
+     * Null when every link uses the defaults; see {@link #bandwidth(int)} and
+     * the other accessors.
+     */
+    public final int[] linkProfile;
+    public final double[] profileBandwidth;
+    public final double[] profileDelay;
+    public final byte[] profileQueueType;
+    public final int[] profileQueueLimit;
+
+    private final int[] byId; // node indices sorted by id
+
+    private CompactGraph(long[] nodeIds, int[] nodeX, int[] nodeY, long[] linkIds, int[] linkSrc, int[] linkDst,
+            int[] adjStart, int[] adjNode, int[] adjLink, int[] byId) {
+        this(nodeIds, nodeX, nodeY, linkIds, linkSrc, linkDst, adjStart, adjNode, adjLink, byId, null,
+                NO_BANDWIDTH, NO_DELAY, NO_QUEUE_TYPE, NO_QUEUE_LIMIT);
+    }
+
+    private static final double[] NO_BANDWIDTH = { Double.NaN }, NO_DELAY = { Double.NaN };
+    private static final byte[] NO_QUEUE_TYPE = { -1 };
+    private static final int[] NO_QUEUE_LIMIT = { -1 };
+
+    private CompactGraph(long[] nodeIds, int[] nodeX, int[] nodeY, long[] linkIds, int[] linkSrc, int[] linkDst,
+            int[] adjStart, int[] adjNode, int[] adjLink, int[] byId, int[] linkProfile, double[] profileBandwidth,
+            double[] profileDelay, byte[] profileQueueType, int[] profileQueueLimit) {
+        this.nodeCount = nodeIds.length;
+        this.linkCount = linkIds.length;
+        this.nodeIds = nodeIds;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.linkIds = linkIds;
+        this.linkSrc = linkSrc;
+        this.linkDst = linkDst;
+        this.adjStart = adjStart;
+        this.adjNode = adjNode;
+        this.adjLink = adjLink;
+        this.byId = byId;
+        this.linkProfile = linkProfile;
+        this.profileBandwidth = profileBandwidth;
+        this.profileDelay = profileDelay;
+        this.profileQueueType = profileQueueType;
+        this.profileQueueLimit = profileQueueLimit;
+    }
+
+    public static CompactGraph of(Collection<Node> nodes, Collection<Link> links) {
+        int n = nodes.size();
+        long[] nodeIds = new long[n];
+        int[] nodeX = new int[n];
+        int[] nodeY = new int[n];
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>(n);
+        int i = 0;
+        for (Node node : nodes) {
+            nodeIds[i] = node.id;
+            nodeX[i] = node.x;
+            nodeY[i] = node.y;
+            index.put(node, i++);
+        }
+        Link[] linkArray = links.toArray(new Link[0]);
+        long[] linkIds = new long[linkArray.length];
+        LinkProfiles profiles = new LinkProfiles();
+        int[] linkProfile = new int[linkArray.length];
+        boolean any = false;
+        for (int l = 0; l < linkArray.length; l++) {
+            linkIds[l] = linkArray[l].id;
+            linkProfile[l] = profiles.intern(linkArray[l]);
+            any |= linkProfile[l] != 0;
+        }
+        CompactGraph g = build(nodeIds, nodeX, nodeY, index, linkArray, linkIds);
+        return any ? profiles.withProfiles(g, linkProfile) : g;
+    }
+
+    /**
+     * Uses the ids, positions and link profiles recorded in the snapshot
+     * rather than the current element fields.
+     */
+    static CompactGraph of(ChunkedStore.View<Node> nodes, ChunkedStore.View<Link> links, LinkProfiles profiles) {
+        int n = nodes.size();
+        long[] nodeIds = new long[n];
+        int[] nodeX = new int[n];
+        int[] nodeY = new int[n];
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>(n);
+        nodes.forEachSlot((node, id, x, y) -> {
+            int i = index.size();
+            nodeIds[i] = id;
+            nodeX[i] = x;
+            nodeY[i] = y;
+            index.put(node, i);
+        });
+        Link[] linkArray = new Link[links.size()];
+        long[] linkIds = new long[linkArray.length];
+        int[] linkProfile = new int[linkArray.length];
+        int[] l = { 0 };
+        boolean[] any = { false };
+        links.forEachSlot((link, id, profile, unused) -> {
+            linkArray[l[0]] = link;
+            linkProfile[l[0]] = profile;
+            any[0] |= profile != 0;
+            linkIds[l[0]++] = id;
+        });
+        CompactGraph g = build(nodeIds, nodeX, nodeY, index, linkArray, linkIds);
+        return any[0] ? profiles.withProfiles(g, linkProfile) : g;
+    }
+
+    /**
+     * Builds a graph from arrays already in index form, e.g. as read from a
+     * project file. The arrays are adopted, not copied; endpoints must be
+     * valid node indices or -1 on both ends.
+     */
+    public static CompactGraph of(long[] nodeIds, int[] nodeX, int[] nodeY, long[] linkIds, int[] linkSrc,
+            int[] linkDst) {
+        int n = nodeIds.length;
+        int m = linkIds.length;
+        int[] adjStart = new int[n + 1];
+        for (int l = 0; l < m; l++) {
+            if (linkSrc[l] < 0)
+                continue;
+            adjStart[linkSrc[l] + 1]++;
+            adjStart[linkDst[l] + 1]++;
+        }
+        for (int i = 0; i < n; i++)
+            adjStart[i + 1] += adjStart[i];
+
+        int[] adjNode = new int[adjStart[n]];
+        int[] adjLink = new int[adjStart[n]];
+        int[] fill = Arrays.copyOf(adjStart, n);
+        for (int l = 0; l < m; l++) {
+            int a = linkSrc[l], b = linkDst[l];
+            if (a < 0)
+                continue;
+            adjNode[fill[a]] = b;
+            adjLink[fill[a]++] = l;
+            adjNode[fill[b]] = a;
+            adjLink[fill[b]++] = l;
+        }
+
+        return new CompactGraph(nodeIds, nodeX, nodeY, linkIds, linkSrc, linkDst, adjStart, adjNode, adjLink,
+                sortById(nodeIds));
+    }
+
+    private static CompactGraph build(long[] nodeIds, int[] nodeX, int[] nodeY, IdentityHashMap<Node, Integer> index,
+            Link[] links, long[] linkIds) {
+        int m = links.length;
+        int[] linkSrc = new int[m];
+        int[] linkDst = new int[m];
+        for (int l = 0; l < m; l++) {
+            Integer a = index.get(links[l].node1);
+            Integer b = index.get(links[l].node2);
+            linkSrc[l] = a != null && b != null ? a : -1;
+            linkDst[l] = a != null && b != null ? b : -1;
+        }
+        return of(nodeIds, nodeX, nodeY, linkIds, linkSrc, linkDst);
+    }
+
+    /**
+     * This graph with per-link parameters; the arrays are adopted, not
+     * copied. {@code linkProfile} (one entry per link, or null for all
+     * defaults) indexes the four profile arrays.
+     */
+    public CompactGraph withLinkParameters(int[] linkProfile, double[] bandwidth, double[] delay, byte[] queueType,
+            int[] queueLimit) {
+        if (linkProfile != null && linkProfile.length != linkCount)
+            throw new IllegalArgumentException("Expected " + linkCount + " link profiles, got " + linkProfile.length);
+        return new CompactGraph(nodeIds, nodeX, nodeY, linkIds, linkSrc, linkDst, adjStart, adjNode, adjLink, byId,
+                linkProfile, bandwidth, delay, queueType, queueLimit);
+    }
+
+    /** Bandwidth of {@code link} in bits per second, or NaN for the default. */
+    public double bandwidth(int link) {
+        return linkProfile == null ? Double.NaN : profileBandwidth[linkProfile[link]];
+    }
+
+    /** Propagation delay of {@code link} in seconds, or NaN for the default. */
+    public double delay(int link) {
+        return linkProfile == null ? Double.NaN : profileDelay[linkProfile[link]];
+    }
+
+    /** Queue type of {@code link} as an index into {@link Link#QUEUE_TYPES}, or -1 for the default. */
+    public int queueType(int link) {
+        return linkProfile == null ? -1 : profileQueueType[linkProfile[link]];
+    }
+
+    /** Queue limit of {@code link} in packets, or -1 for the default. */
+    public int queueLimit(int link) {
+        return linkProfile == null ? -1 : profileQueueLimit[linkProfile[link]];
+    }
+
+    /** Profile number of {@code link}; 0 (all defaults) when there are no per-link parameters. */
+    public int profile(int link) {
+        return linkProfile == null ? 0 : linkProfile[link];
+    }
+
+    private static int[] sortById(long[] nodeIds) {
+        int n = nodeIds.length;
+        int[] order = new int[n];
+        // Ids below 2^32 pack with their index into one sortable long.
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (nodeIds[i] < 0 || nodeIds[i] > 0xFFFFFFFFL) {
+                Integer[] boxed = new Integer[n];
+                for (int j = 0; j < n; j++)
+                    boxed[j] = j;
+                Arrays.sort(boxed, (x, y) -> Long.compare(nodeIds[x], nodeIds[y]));
+                for (int j = 0; j < n; j++)
+                    order[j] = boxed[j];
+                return order;
+            }
+            packed[i] = nodeIds[i] << 31 | i;
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < n; i++)
+            order[i] = (int) (packed[i] & 0x7FFFFFFFL);
+        return order;
+    }
+
+    public int degree(int node) {
+        return adjStart[node + 1] - adjStart[node];
+    }
+
+    /** Index of the node with the given id, or -1. */
+    public int indexOf(long nodeId) {
+        int lo = 0, hi = nodeCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long v = nodeIds[byId[mid]];
+            if (v < nodeId)
+                lo = mid + 1;
+            else if (v > nodeId)
+                hi = mid - 1;
+            else
+                return byId[mid];
+        }
+        return -1;
+    }
+
+    /** The endpoint of {@code link} that is not {@code node}. */
+    public int opposite(int link, int node) {
+        return linkSrc[link] == node ? linkDst[link] : linkSrc[link];
+    }
+}
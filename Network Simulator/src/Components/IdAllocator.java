@@ -0,0 +1,69 @@
+package Components;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+/**
+ * Thread-safe source of positive ids for one document. Released ids are
+ * handed out again lowest first, so node numbers stay compact as the user
+ * deletes and adds nodes; otherwise new ids go above the highest id claimed
+ * so far.
+ *
+ * The ids in use are tracked, so any id that is not, including one below
+ * the highest, can be claimed with {@link #reserve(long)}: loading a
+ * document keeps its ids whatever order they come in.
+ */
+public final class IdAllocator {
+
+    /** Ids below this are tracked in a bit set, larger (e.g. imported) ones in a hash set. */
+    private static final long DENSE_LIMIT = 1L << 26;
+
+    private long next = 1;
+    private final TreeSet<Long> free = new TreeSet<>();
+    private final BitSet used = new BitSet();
+    private final HashSet<Long> usedSparse = new HashSet<>();
+
+    public synchronized long next() {
+        Long id = free.pollFirst();
+        long n = id != null ? id : next++;
+        setUsed(n, true);
+        return n;
+    }
+
+    /** Returns {@code id} to the pool; ids not in use are ignored. */
+    public synchronized void release(long id) {
+        if (id > 0 && isUsed(id)) {
+            setUsed(id, false);
+            free.add(id);
+        }
+    }
+
+    /**
+     * Claims a specific id, e.g. when undo restores a node or a file is
+     * loaded. Returns false if the id is already in use.
+     */
+    public synchronized boolean reserve(long id) {
+        if (id <= 0 || isUsed(id))
+            return false;
+        setUsed(id, true);
+        free.remove(id);
+        // Ids skipped over are not added to the free list: a large imported
+        // id would otherwise fill it with millions of entries.
+        next = Math.max(next, id + 1);
+        return true;
+    }
+
+    private boolean isUsed(long id) {
+        return id < DENSE_LIMIT ? used.get((int) id) : usedSparse.contains(id);
+    }
+
+    private void setUsed(long id, boolean inUse) {
+        if (id < DENSE_LIMIT)
+            used.set((int) id, inUse);
+        else if (inUse)
+            usedSparse.add(id);
+        else
+            usedSparse.remove(id);
+    }
+}
@@ -1,24 +1,44 @@
 package Components;
 
-import java.util.HashSet;
-
 public class Link extends NetworkComponent {
-    public static long serialVersionUID = 1l;
     public Node node1;
     public Node node2;
-    public final long id;
+    /** Positive once the link belongs to a topology; 0 until then. */
+    public long id;
+
+    /** Queue disciplines, indexed by {@link #queueType}. */
+    public static final String[] QUEUE_TYPES = { "DropTail", "RED", "FQ", "SFQ", "DRR", "CBQ" };
+
+    // Optional parameters; NaN or -1 means the simulation's default. Change
+    // them through Topology.setLinkParameters so snapshots record the edit.
+    /** Capacity in bits per second. */
+    public double bandwidth = Double.NaN;
+    /** One-way propagation delay in seconds. */
+    public double delay = Double.NaN;
+    /** Index into {@link #QUEUE_TYPES}. */
+    public byte queueType = -1;
+    /** Maximum number of queued packets. */
+    public int queueLimit = -1;
+
+    int slot = -1; // position in the owning Topology's link store
 
     public Link(Node node1, Node node2) {
+        this(node1, node2, 0);
+    }
+
+    public Link(Node node1, Node node2, long id) {
         super(2);
-        this.id = serialVersionUID++;
+        this.id = id;
         this.node1 = node1;
-        if (node1.neighbors == null)
-            node1.neighbors = new HashSet<Node>();
-        node1.neighbors.add(node2);
-
-        if (node2.neighbors == null)
-            node2.neighbors = new HashSet<Node>();
-        node2.neighbors.add(node1);
         this.node2 = node2;
     }
+
+    /** Index of {@code name} in {@link #QUEUE_TYPES}, or -1. */
+    public static int queueTypeCode(String name) {
+        for (int i = 0; i < QUEUE_TYPES.length; i++) {
+            if (QUEUE_TYPES[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
 }
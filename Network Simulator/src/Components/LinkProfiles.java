@@ -0,0 +1,65 @@
+package Components;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Append-only table of the distinct sets of link parameters in use, so a
+ * link's bandwidth, delay and queue settings are recorded as one int (in the
+ * topology's link store and in {@link CompactGraph}) and links with equal
+ * settings share an entry. Profile 0 is "all defaults". Entries never change
+ * once added, so a profile number taken from a snapshot stays valid while the
+ * topology keeps adding profiles.
+ *
+ * Profiles are added on the editing thread and copied by whichever thread
+ * builds a CompactGraph, hence the locking.
+ */
+final class LinkProfiles {
+
+    private record Key(long bandwidth, long delay, int queueType, int queueLimit) {
+    }
+
+    private double[] bandwidth = { Double.NaN };
+    private double[] delay = { Double.NaN };
+    private byte[] queueType = { -1 };
+    private int[] queueLimit = { -1 };
+    private int size = 1;
+    private final HashMap<Key, Integer> index = new HashMap<>();
+
+    static boolean isDefault(double bandwidth, double delay, int queueType, int queueLimit) {
+        return Double.isNaN(bandwidth) && Double.isNaN(delay) && queueType < 0 && queueLimit < 0;
+    }
+
+    int intern(Link l) {
+        return intern(l.bandwidth, l.delay, l.queueType, l.queueLimit);
+    }
+
+    synchronized int intern(double bw, double d, int queue, int limit) {
+        if (isDefault(bw, d, queue, limit))
+            return 0;
+        // All NaNs are one "default" value; -0.0 and 0.0 are not worth telling apart.
+        Key key = new Key(Double.doubleToLongBits(bw + 0.0), Double.doubleToLongBits(d + 0.0), Math.max(queue, -1),
+                Math.max(limit, -1));
+        Integer p = index.get(key);
+        if (p != null)
+            return p;
+        if (size == bandwidth.length) {
+            bandwidth = Arrays.copyOf(bandwidth, size * 2);
+            delay = Arrays.copyOf(delay, size * 2);
+            queueType = Arrays.copyOf(queueType, size * 2);
+            queueLimit = Arrays.copyOf(queueLimit, size * 2);
+        }
+        bandwidth[size] = bw;
+        delay[size] = d;
+        queueType[size] = (byte) Math.max(queue, -1);
+        queueLimit[size] = Math.max(limit, -1);
+        index.put(key, size);
+        return size++;
+    }
+
+    /** Exact-size copies of the table, for a CompactGraph. */
+    synchronized CompactGraph withProfiles(CompactGraph g, int[] linkProfile) {
+        return g.withLinkParameters(linkProfile, Arrays.copyOf(bandwidth, size), Arrays.copyOf(delay, size),
+                Arrays.copyOf(queueType, size), Arrays.copyOf(queueLimit, size));
+    }
+}
@@ -5,10 +5,11 @@ public class NetworkComponent {
     public static final int LINK = 2;
     public static final int AGENT = 3;
 
-    public static int type;
+    /** NODE, LINK or AGENT; fixed per instance. */
+    public final int type;
 
     public NetworkComponent(int type) {
-        NetworkComponent.type = type;
+        this.type = type;
     }
 
 }
@@ -1,20 +1,18 @@
 package Components;
 
-import java.util.Set;
-
 public class Node extends NetworkComponent {
-    public static long serialVersionUID = 1l;
-    private static final java.util.PriorityQueue<Long> freeIds = new java.util.PriorityQueue<>();
+    /** Positive once the node belongs to a topology; 0 until then. */
     public long id;
-    public Set<Node> neighbors;
     public int x;
     public int y;
 
+    // Bookkeeping for the one Topology holding this node.
+    int slot = -1;
+    Link[] incident = Topology.NO_LINKS;
+    int degree;
+
     public Node(int x, int y) {
-        super(1);
-        this.id = nextId();
-        this.x = x;
-        this.y = y;
+        this(x, y, 0);
     }
 
     public Node(int x, int y, long id) {
@@ -22,32 +20,5 @@ public class Node extends NetworkComponent {
         this.id = id;
         this.x = x;
         this.y = y;
-        if (serialVersionUID <= id)
-            serialVersionUID = id + 1;
-    }
-
-    public static synchronized long nextId() {
-        Long v = freeIds.poll();
-        if (v != null)
-            return v;
-        return serialVersionUID++;
-    }
-
-    public static synchronized void releaseId(long id) {
-        if (id <= 0)
-            return;
-        freeIds.add(id);
-    }
-
-    public static synchronized boolean reserveId(long id) {
-        if (id <= 0)
-            return false;
-        if (freeIds.remove(id))
-            return true;
-        if (serialVersionUID <= id) {
-            serialVersionUID = id + 1;
-            return true;
-        }
-        return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,282 @@
+package Components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The nodes and links of a network together with an incidence index, so the
+ * links at a node, or between two nodes, are found without scanning every
+ * link. Iteration follows insertion order.
+ *
+ * Every change made through this class bumps {@link #version()}; node
+ * positions must be changed with {@link #moveNode}, and link parameters with
+ * {@link #setLinkParameters}, so snapshots record the change.
+ *
+ * Ids are owned by the topology: a node or link added with id 0 gets a
+ * fresh one, a removed node's id is released for reuse, and a node put back
+ * by undo keeps its old id unless another node has taken it. Link ids are
+ * never reused.
+ *
+ * A node or link belongs to at most one topology at a time; the incidence
+ * list and store position are kept on the element itself.
+ *
+ * A topology is confined to the thread that edits it (the EDT for the
+ * canvas). Other threads work on {@link #snapshot()}s, which are immutable
+ * and cost O(1) to take.
+ */
+public class Topology {
+
+    static final Link[] NO_LINKS = new Link[0];
+
+    private final ChunkedStore<Node> nodes = new ChunkedStore<>(Node.class, true, n -> n.slot, (n, i) -> n.slot = i);
+    // Links keep their parameter profile number in the store's x column.
+    private final ChunkedStore<Link> links = new ChunkedStore<>(Link.class, true, l -> l.slot, (l, i) -> l.slot = i);
+    private final LinkProfiles profiles = new LinkProfiles();
+    private final Collection<Node> nodeView = nodes.live();
+    private final Collection<Link> linkView = links.live();
+    private final PairTable byPair = new PairTable();
+    private final IdAllocator nodeIds = new IdAllocator();
+    private final IdAllocator linkIds = new IdAllocator();
+    private long version;
+    private TopologySnapshot snapshot;
+
+    /**
+     * Open-addressing table of links keyed on their unordered endpoint pair,
+     * compared by identity. Parallel links all have entries; lookups return
+     * the one found first. Each entry's hash is kept beside it so probing and
+     * resizing need not touch the endpoint nodes.
+     */
+    private static final class PairTable {
+        private Link[] table = new Link[16];
+        private int[] hashes = new int[16];
+        private int size;
+
+        private static int hash(Node a, Node b) {
+            int h = (System.identityHashCode(a) + System.identityHashCode(b)) * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean joins(Link l, Node a, Node b) {
+            return (l.node1 == a && l.node2 == b) || (l.node1 == b && l.node2 == a);
+        }
+
+        Link find(Node a, Node b) {
+            int h = hash(a, b);
+            int mask = table.length - 1;
+            for (int i = h & mask;; i = (i + 1) & mask) {
+                Link l = table[i];
+                if (l == null || (hashes[i] == h && joins(l, a, b)))
+                    return l;
+            }
+        }
+
+        void add(Link l) {
+            if (2 * (size + 1) > table.length)
+                resize(table.length * 2);
+            insert(table, hashes, hash(l.node1, l.node2), l);
+            size++;
+        }
+
+        private static void insert(Link[] t, int[] hs, int h, Link l) {
+            int mask = t.length - 1;
+            int i = h & mask;
+            while (t[i] != null)
+                i = (i + 1) & mask;
+            t[i] = l;
+            hs[i] = h;
+        }
+
+        void remove(Link l) {
+            int mask = table.length - 1;
+            int i = hash(l.node1, l.node2) & mask;
+            while (table[i] != l) {
+                if (table[i] == null)
+                    return;
+                i = (i + 1) & mask;
+            }
+            // Backward-shift deletion keeps every probe chain unbroken.
+            for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+                int home = hashes[j] & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    table[i] = table[j];
+                    hashes[i] = hashes[j];
+                    i = j;
+                }
+            }
+            table[i] = null;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            Link[] t = new Link[capacity];
+            int[] hs = new int[capacity];
+            for (int i = 0; i < table.length; i++) {
+                if (table[i] != null)
+                    insert(t, hs, hashes[i], table[i]);
+            }
+            table = t;
+            hashes = hs;
+        }
+    }
+
+    /** The current nodes; a read-only view that follows later edits. */
+    public Collection<Node> getNodes() {
+        return nodeView;
+    }
+
+    /** The current links; a read-only view that follows later edits. */
+    public Collection<Link> getLinks() {
+        return linkView;
+    }
+
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    public int linkCount() {
+        return links.size();
+    }
+
+    public boolean contains(Node n) {
+        return nodes.contains(n);
+    }
+
+    public boolean contains(Link l) {
+        return links.contains(l);
+    }
+
+    public void addNode(Node n) {
+        if (nodes.contains(n))
+            return;
+        if (!nodeIds.reserve(n.id))
+            n.id = nodeIds.next();
+        n.incident = NO_LINKS;
+        n.degree = 0;
+        nodes.add(n, n.id, n.x, n.y);
+        version++;
+    }
+
+    public void moveNode(Node n, int x, int y) {
+        if (n.x == x && n.y == y)
+            return;
+        n.x = x;
+        n.y = y;
+        nodes.setPosition(n, x, y);
+        version++;
+    }
+
+    /**
+     * Sets the optional parameters of {@code l} (NaN or -1 for the default,
+     * see {@link Link}); the change is recorded like a move.
+     */
+    public void setLinkParameters(Link l, double bandwidth, double delay, int queueType, int queueLimit) {
+        if (sameBits(l.bandwidth, bandwidth) && sameBits(l.delay, delay) && l.queueType == queueType
+                && l.queueLimit == queueLimit)
+            return;
+        l.bandwidth = bandwidth;
+        l.delay = delay;
+        l.queueType = (byte) queueType;
+        l.queueLimit = queueLimit;
+        if (links.contains(l)) {
+            links.setPosition(l, profiles.intern(l), 0);
+            version++;
+        }
+    }
+
+    private static boolean sameBits(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    /** Incremented by every structural change, node move and link parameter change. */
+    public long version() {
+        return version;
+    }
+
+    /** Immutable view of the current contents; repeated calls between edits return the same snapshot. */
+    public TopologySnapshot snapshot() {
+        if (snapshot == null || snapshot.version() != version)
+            snapshot = new TopologySnapshot(version, nodes.view(), links.view(), profiles);
+        return snapshot;
+    }
+
+    /** Array form of the current topology; rebuilt only after a change. */
+    public CompactGraph compact() {
+        return snapshot().compact();
+    }
+
+    /** Removes {@code n} and its links; returns the removed links. */
+    public List<Link> removeNode(Node n) {
+        if (!nodes.contains(n))
+            return new ArrayList<>();
+        List<Link> removed = new ArrayList<>(linksOf(n));
+        for (Link l : removed)
+            removeLink(l);
+        nodes.remove(n);
+        nodeIds.release(n.id);
+        n.incident = NO_LINKS;
+        version++;
+        return removed;
+    }
+
+    public void addLink(Link l) {
+        if (!nodes.contains(l.node1) || !nodes.contains(l.node2))
+            throw new IllegalArgumentException("Link " + l.id + " connects a node outside the topology");
+        if (links.contains(l))
+            return;
+        if (l.id <= 0)
+            l.id = linkIds.next();
+        else
+            linkIds.reserve(l.id); // keeps later ids above it; a link re-added by undo keeps its id
+        links.add(l, l.id, profiles.intern(l), 0);
+        attach(l.node1, l);
+        if (l.node2 != l.node1)
+            attach(l.node2, l);
+        byPair.add(l);
+        version++;
+    }
+
+    public void removeLink(Link l) {
+        if (!links.remove(l))
+            return;
+        detach(l.node1, l);
+        if (l.node2 != l.node1)
+            detach(l.node2, l);
+        byPair.remove(l);
+        version++;
+    }
+
+    private static void attach(Node n, Link l) {
+        if (n.degree == n.incident.length)
+            n.incident = Arrays.copyOf(n.incident, Math.max(2, n.degree * 2));
+        n.incident[n.degree++] = l;
+    }
+
+    private static void detach(Node n, Link l) {
+        for (int i = 0; i < n.degree; i++) {
+            if (n.incident[i] == l) {
+                System.arraycopy(n.incident, i + 1, n.incident, i, n.degree - i - 1);
+                n.incident[--n.degree] = null;
+                return;
+            }
+        }
+    }
+
+    /** The links attached to {@code n}, in the order they were added; a read-only view. */
+    public Collection<Link> linksOf(Node n) {
+        if (!nodes.contains(n) || n.degree == 0)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(n.incident).subList(0, n.degree));
+    }
+
+    public int degree(Node n) {
+        return nodes.contains(n) ? n.degree : 0;
+    }
+
+    /** A link between {@code a} and {@code b} in either direction, or null. */
+    public Link findLink(Node a, Node b) {
+        return byPair.find(a, b);
+    }
+}
@@ -0,0 +1,65 @@
+package Components;
+
+import java.util.Collection;
+
+/**
+ * Frozen view of a {@link Topology} at one version. Taking a snapshot is
+ * O(1) and shares storage with the topology; it can be handed to any thread.
+ *
+ * The node and link collections hold the editor's objects, whose fields
+ * keep changing after the snapshot is taken. Ids, positions and link
+ * parameters as of the snapshot are in {@link #compact()}.
+ */
+public final class TopologySnapshot {
+
+    private final long version;
+    private final ChunkedStore.View<Node> nodes;
+    private final ChunkedStore.View<Link> links;
+    private final LinkProfiles profiles;
+    private volatile CompactGraph compact;
+
+    TopologySnapshot(long version, ChunkedStore.View<Node> nodes, ChunkedStore.View<Link> links,
+            LinkProfiles profiles) {
+        this.version = version;
+        this.nodes = nodes;
+        this.links = links;
+        this.profiles = profiles;
+    }
+
+    /**
+     * The topology version this snapshot was taken at. Equal versions of the
+     * same topology mean equal contents, so caches keyed on it stay valid.
+     */
+    public long version() {
+        return version;
+    }
+
+    public Collection<Node> nodes() {
+        return nodes;
+    }
+
+    public Collection<Link> links() {
+        return links;
+    }
+
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    public int linkCount() {
+        return links.size();
+    }
+
+    /** Array form of the snapshot, built on first use. */
+    public CompactGraph compact() {
+        CompactGraph g = compact;
+        if (g == null) {
+            synchronized (this) {
+                g = compact;
+                if (g == null)
+                    compact = g = CompactGraph.of(nodes, links, profiles);
+            }
+        }
+        return g;
+    }
+}
@@ -0,0 +1,106 @@
+package Components;
+
+/**
+ * Parsing of NS-2 style quantities such as "100.0Mb" or "10ms".
+ */
+public final class Units {
+
+    private Units() {
+    }
+
+    /**
+     * Parses a bandwidth into bits per second. Accepts an optional k/K, m/M,
+     * g/G multiplier followed by "b" (bits, the default) or "B" (bytes), e.g.
+     * "100Mb", "1.5Gb", "64KB", "1e6".
+     */
+    public static double parseBandwidth(String s) {
+        String v = s.trim();
+        int end = numberEnd(v);
+        double value = Double.parseDouble(v.substring(0, end));
+        String unit = v.substring(end).trim();
+        double scale = 1;
+        if (!unit.isEmpty()) {
+            char prefix = unit.charAt(0);
+            if (prefix == 'k' || prefix == 'K') {
+                scale = 1e3;
+                unit = unit.substring(1);
+            } else if (prefix == 'm' || prefix == 'M') {
+                scale = 1e6;
+                unit = unit.substring(1);
+            } else if (prefix == 'g' || prefix == 'G') {
+                scale = 1e9;
+                unit = unit.substring(1);
+            }
+            if (unit.startsWith("B"))
+                scale *= 8;
+            else if (!unit.isEmpty() && !unit.startsWith("b"))
+                throw new NumberFormatException("Unknown bandwidth unit in \"" + s + "\"");
+        }
+        return value * scale;
+    }
+
+    /** Parses a time such as "10ms", "250us", "2s" or "0.5" into seconds. */
+    public static double parseTime(String s) {
+        String v = s.trim();
+        int end = numberEnd(v);
+        double value = Double.parseDouble(v.substring(0, end));
+        switch (v.substring(end).trim()) {
+            case "":
+            case "s":
+                return value;
+            case "ms":
+                return value * 1e-3;
+            case "us":
+                return value * 1e-6;
+            case "ns":
+                return value * 1e-9;
+            default:
+                throw new NumberFormatException("Unknown time unit in \"" + s + "\"");
+        }
+    }
+
+    /** Formats bits per second the way {@link #parseBandwidth} reads it, e.g. "1.5Gb" or "64Kb". */
+    public static String formatBandwidth(double bps) {
+        if (bps >= 1e9)
+            return plain(bps / 1e9) + "Gb";
+        if (bps >= 1e6)
+            return plain(bps / 1e6) + "Mb";
+        if (bps >= 1e3)
+            return plain(bps / 1e3) + "Kb";
+        return plain(bps) + "b";
+    }
+
+    /** Formats seconds the way {@link #parseTime} reads them, e.g. "10ms" or "2s". */
+    public static String formatTime(double seconds) {
+        if (seconds == 0 || seconds >= 1)
+            return plain(seconds) + "s";
+        if (seconds >= 1e-3)
+            return plain(seconds * 1e3) + "ms";
+        if (seconds >= 1e-6)
+            return plain(seconds * 1e6) + "us";
+        return plain(seconds * 1e9) + "ns";
+    }
+
+    /** Shortest decimal form without exponent or trailing zeros; rounding noise from scaling is dropped. */
+    private static String plain(double v) {
+        java.math.BigDecimal d = new java.math.BigDecimal(v).round(new java.math.MathContext(12));
+        return d.stripTrailingZeros().toPlainString();
+    }
+
+    private static int numberEnd(String v) {
+        int i = 0;
+        while (i < v.length()) {
+            char c = v.charAt(i);
+            boolean exponent = (c == 'e' || c == 'E') && i + 1 < v.length()
+                    && (Character.isDigit(v.charAt(i + 1)) || v.charAt(i + 1) == '-' || v.charAt(i + 1) == '+');
+            if (Character.isDigit(c) || c == '.' || c == '-' || c == '+' || exponent) {
+                i += exponent ? 2 : 1;
+            } else {
+                break;
+            }
+        }
+        if (i == 0)
+            throw new NumberFormatException("Missing number in \"" + v + "\"");
+        return i;
+    }
+}
@@ -1,16 +1,13 @@
 package Exporters;
 
+import Components.CompactGraph;
 import Components.Link;
 import Components.Node;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Lightweight exporter that converts a network (Nodes + Links) built with
@@ -18,15 +15,19 @@ import java.util.Map;
  * or the user's existing processing pipeline.
  *
  * This class intentionally has no Swing/UI code. Use it by passing your
- * Node/Link collections and calling writeTcl(...).
+ * Node/Link collections (or a CompactGraph snapshot) and calling writeTcl(...).
+ * The bandwidth and delay given to writeTcl apply to links that do not set
+ * their own.
  */
 public class ItmTclFrame {
-    private final Collection<Node> nodes;
-    private final Collection<Link> links;
+    private final CompactGraph graph;
 
     public ItmTclFrame(Collection<Node> nodes, Collection<Link> links) {
-        this.nodes = nodes;
-        this.links = links;
+        this(CompactGraph.of(nodes, links));
+    }
+
+    public ItmTclFrame(CompactGraph graph) {
+        this.graph = graph;
     }
 
     public void writeTcl(File outFile, int simTimeSec, String bandwidth, String delay) throws IOException {
@@ -35,49 +36,37 @@ public class ItmTclFrame {
         if (delay == null || delay.isEmpty())
             delay = "1ms";
 
-        // map Node.id -> tcl variable name (n<ID>)
-        Map<Long, String> nodeVar = new HashMap<>();
-        PrintStream out = null;
-        try {
-            out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outFile)));
-
-            out.println("# Generated by ItmTclFrame exporter");
-            out.println("# Nodes: " + nodes.size() + "  Links: " + links.size());
-            out.println();
-            out.println("# ===== Initialization =====");
-            out.println("set ns [new Simulator]");
-            out.println();
+        // each node becomes the tcl variable n<ID>
+        try (TclWriter out = new TclWriter(new FileOutputStream(outFile))) {
+            out.line("# Generated by ItmTclFrame exporter");
+            out.text("# Nodes: ").number(graph.nodeCount).text("  Links: ").number(graph.linkCount).line();
+            out.line();
+            out.line("# ===== Initialization =====");
+            out.line("set ns [new Simulator]");
+            out.line();
 
-            out.println("# ===== Create nodes =====");
-            for (Node n : nodes) {
-                String var = "n" + n.id; // e.g. n1, n2, ...
-                nodeVar.put(n.id, var);
-                out.println("set " + var + " [$ns node]");
+            out.line("# ===== Create nodes =====");
+            for (int n = 0; n < graph.nodeCount; n++) {
+                out.text("set n").number(graph.nodeIds[n]).line(" [$ns node]"); // e.g. n1, n2, ...
             }
-            out.println();
+            out.line();
 
-            out.println("# ===== Create links =====");
-            for (Link l : links) {
-                String v1 = nodeVar.get(l.node1.id);
-                String v2 = nodeVar.get(l.node2.id);
-                if (v1 == null || v2 == null) {
+            out.line("# ===== Create links =====");
+            String[] linkParams = NS2TclGenerator.linkParameters(graph, bandwidth, delay, "DropTail");
+            for (int l = 0; l < graph.linkCount; l++) {
+                if (graph.linkSrc[l] < 0) {
                     // skip links that reference unknown nodes
-                    out.println("# Skipping link " + l.id + " (unknown node)");
+                    out.text("# Skipping link ").number(graph.linkIds[l]).line(" (unknown node)");
                     continue;
                 }
-                out.println("$ns duplex-link $" + v1 + " $" + v2 + " " + bandwidth + " " + delay + " DropTail");
+                NS2TclGenerator.writeLink(out, graph, l, linkParams);
             }
-            out.println();
+            out.line();
 
-            out.println("# ===== Optional: stop and run =====");
-            out.println("# stop all applications and halt the simulator at t=" + simTimeSec + "s");
-            out.println("$ns at " + simTimeSec + ".0 \"$ns halt\"");
-            out.println("$ns run");
-
-            out.flush();
-        } finally {
-            if (out != null)
-                out.close();
+            out.line("# ===== Optional: stop and run =====");
+            out.text("# stop all applications and halt the simulator at t=").number(simTimeSec).line("s");
+            out.text("$ns at ").number(simTimeSec).line(".0 \"$ns halt\"");
+            out.line("$ns run");
         }
     }
 
@@ -88,4 +77,9 @@ public class ItmTclFrame {
             String bandwidth, String delay) throws IOException {
         new ItmTclFrame(nodes, links).writeTcl(outFile, simTimeSec, bandwidth, delay);
     }
+
+    public static void writeTcl(File outFile, CompactGraph graph, int simTimeSec, String bandwidth, String delay)
+            throws IOException {
+        new ItmTclFrame(graph).writeTcl(outFile, simTimeSec, bandwidth, delay);
+    }
 }
@@ -1,7 +1,12 @@
 package Exporters;
 
+import Components.CompactGraph;
 import Components.Link;
 import Components.Node;
+import Components.Units;
+import Partitioning.Partition;
+import Routing.RoutingEngine;
+import Routing.RoutingTable;
 import UI.SimulationConfigDialog.SimulationConfig;
 import UI.RoutingConfigDialog.TrafficFlow;
 
@@ -10,197 +15,488 @@ import java.util.*;
 
 public class NS2TclGenerator {
 
+    /** Nodes or links per cached block of script text. */
+    private static final int BLOCK = 4096;
+    /** NAM colour of links between partitions, as on the canvas. */
+    private static final String CUT_LINK = "#ff00a0";
+
+    /**
+     * Rendered script text kept between runs, so that after an edit only the
+     * blocks of nodes or links that changed are formatted again. The
+     * node, position and link sections are cut into blocks of BLOCK elements,
+     * each stored with a hash of everything it was rendered from; a block
+     * whose hash still matches is copied as is. Given the same CompactGraph
+     * again (the topology version is unchanged) even the hashing is skipped.
+     * Flows are few and are rendered every time.
+     *
+     * Use one cache per canvas; it is not thread-safe.
+     */
+    public static final class Cache {
+        private final Map<String, Section> sections = new HashMap<>();
+        private final TclWriter scratch = new TclWriter();
+        /** Precomputed routes, kept per topology version; may also be used on its own (it is thread-safe). */
+        public final RoutingEngine routing = new RoutingEngine();
+    }
+
+    private static final class Section {
+        CompactGraph graph; // rendered from, with
+        Object[] inputs;
+        long[] keys = new long[0];
+        byte[][] blocks = new byte[0][];
+    }
+
+    private interface BlockKey {
+        long hash(int from, int to);
+    }
+
+    private interface BlockText {
+        void render(TclWriter out, int from, int to) throws IOException;
+    }
+
     public static void generateTcl(File outFile, Collection<Node> nodes, Collection<Link> links,
             SimulationConfig config, List<TrafficFlow> flows) throws IOException {
+        generateTcl(outFile, CompactGraph.of(nodes, links), config, flows);
+    }
 
-        Map<Long, String> nodeVar = new HashMap<>();
+    public static void generateTcl(File outFile, CompactGraph graph, SimulationConfig config,
+            List<TrafficFlow> flows) throws IOException {
+        generateTcl(outFile, graph, config, flows, null);
+    }
+
+    /** Writes the script, reusing and updating the text kept in {@code cache} (may be null). */
+    public static void generateTcl(File outFile, CompactGraph graph, SimulationConfig config,
+            List<TrafficFlow> flows, Cache cache) throws IOException {
+        generateTcl(outFile, graph, config, flows, cache, null);
+    }
+
+    /**
+     * As above; with NAM enabled, nodes are also coloured by their part of
+     * {@code partition} (may be null) and links between parts marked.
+     */
+    public static void generateTcl(File outFile, CompactGraph graph, SimulationConfig config,
+            List<TrafficFlow> flows, Cache cache, Partition partition) throws IOException {
 
-        try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outFile)))) {
+        try (TclWriter out = new TclWriter(new FileOutputStream(outFile))) {
 
-            out.println("# NS-2 Simulation Script");
-            out.println("# Generated by Network Simulator");
-            out.println("# Nodes: " + nodes.size() + "  Links: " + links.size());
-            out.println();
+            out.line("# NS-2 Simulation Script");
+            out.line("# Generated by Network Simulator");
+            out.text("# Nodes: ").number(graph.nodeCount).text("  Links: ").number(graph.linkCount).line();
+            out.line();
 
-            out.println("# Create simulator");
-            out.println("set ns [new Simulator]");
-            out.println();
+            out.line("# Create simulator");
+            out.line("set ns [new Simulator]");
+            out.line();
 
             if (config.enableTracing) {
-                out.println("# Enable trace file");
-                out.println("set tracefile [open network.tr w]");
-                out.println("$ns trace-all $tracefile");
-                out.println();
+                out.line("# Enable trace file");
+                out.line("set tracefile [open network.tr w]");
+                out.line("$ns trace-all $tracefile");
+                out.line();
             }
 
             if (config.enableNam) {
-                out.println("# Enable NAM animation");
-                out.println("set namfile [open network.nam w]");
-                out.println("$ns namtrace-all $namfile");
-                out.println();
+                out.line("# Enable NAM animation");
+                out.line("set namfile [open network.nam w]");
+                out.line("$ns namtrace-all $namfile");
+                out.line();
             }
 
-            out.println("# Create nodes");
-            for (Node n : nodes) {
-                String var = "n" + n.id;
-                nodeVar.put(n.id, var);
-                out.println("set " + var + " [$ns node]");
-            }
-            out.println();
+            out.line("# Create nodes");
+            section(out, cache, graph, "nodes", graph.nodeCount, null,
+                    (from, to) -> hash(0, graph.nodeIds, from, to),
+                    (w, from, to) -> {
+                        for (int n = from; n < to; n++)
+                            w.text("set n").number(graph.nodeIds[n]).line(" [$ns node]");
+                    });
+            out.line();
 
             if (config.enableNam) {
-                out.println("# Set node positions for NAM visualization (using actual canvas positions)");
-                for (Node n : nodes) {
-                    String var = "n" + n.id;
-                    // Use actual canvas coordinates - NAM will scale them appropriately
-                    out.println("$" + var + " set X_ " + n.x);
-                    out.println("$" + var + " set Y_ " + n.y);
-                    out.println("$" + var + " set Z_ 0");
-                    out.println("$" + var + " label \"Node " + n.id + "\"");
-                }
-                out.println();
+                out.line("# Set node positions for NAM visualization (using actual canvas positions)");
+                // Use actual canvas coordinates - NAM will scale them appropriately
+                section(out, cache, graph, "positions", graph.nodeCount, null,
+                        (from, to) -> hash(hash(hash(0, graph.nodeIds, from, to),
+                                graph.nodeX, from, to), graph.nodeY, from, to),
+                        (w, from, to) -> {
+                            for (int n = from; n < to; n++) {
+                                long id = graph.nodeIds[n];
+                                w.text("$n").number(id).text(" set X_ ").number(graph.nodeX[n]).line();
+                                w.text("$n").number(id).text(" set Y_ ").number(graph.nodeY[n]).line();
+                                w.text("$n").number(id).line(" set Z_ 0");
+                                w.text("$n").number(id).text(" label \"Node ").number(id).line("\"");
+                            }
+                        });
+                out.line();
             }
 
-            out.println("# Create links");
-            for (Link l : links) {
-                String v1 = nodeVar.get(l.node1.id);
-                String v2 = nodeVar.get(l.node2.id);
-                if (v1 == null || v2 == null) {
-                    out.println("# Skipping link " + l.id + " (unknown node)");
-                    continue;
-                }
-                out.println("$ns duplex-link $" + v1 + " $" + v2 + " " +
-                        config.bandwidth + " " + config.delay + " " + config.queueType);
+            // Parts by node index; -1 for nodes added since the partition was made.
+            int[] partOf = null;
+            if (config.enableNam && partition != null) {
+                partOf = new int[graph.nodeCount];
+                for (int n = 0; n < graph.nodeCount; n++)
+                    partOf[n] = partition.partOfId(graph.nodeIds[n]);
             }
-            out.println();
-
-            // Setup traffic flows
-            if (flows != null && !flows.isEmpty()) {
-                out.println("# Setup custom traffic flows");
-                int flowIdx = 0;
-                for (TrafficFlow flow : flows) {
-                    String srcVar = "n" + flow.srcNodeId;
-                    String dstVar = "n" + flow.dstNodeId;
-
-                    if (!nodeVar.containsKey(flow.srcNodeId) || !nodeVar.containsKey(flow.dstNodeId)) {
-                        out.println("# Skipping flow (invalid nodes)");
-                        continue;
-                    }
 
-                    setupTrafficFlow(out, srcVar, dstVar, flow.flowType, flow.startTime,
-                            flow.stopTime, config, flowIdx);
-                    flowIdx++;
-                }
-            } else {
-                // Default: Setup traffic between first and last nodes
-                List<Node> nodeList = new ArrayList<>(nodes);
-                if (nodeList.size() >= 2) {
-                    out.println("# Setup default traffic between first and last nodes");
-                    Node src = nodeList.get(0);
-                    Node dst = nodeList.get(nodeList.size() - 1);
-                    String srcVar = nodeVar.get(src.id);
-                    String dstVar = nodeVar.get(dst.id);
-
-                    setupDefaultTraffic(out, srcVar, dstVar, config);
-                }
+            out.line("# Create links");
+            String[] linkParams = linkParameters(graph, config.bandwidth, config.delay, config.queueType);
+            // The profiles' text and queue limits are compared as is, so blocks only need the profile index.
+            section(out, cache, graph, "links", graph.linkCount,
+                    new Object[] { linkParams, graph.profileQueueLimit },
+                    (from, to) -> {
+                        long h = 0;
+                        for (int l = from; l < to; l++) {
+                            int src = graph.linkSrc[l];
+                            h = mix(h, src < 0 ? ~graph.linkIds[l] : graph.nodeIds[src]);
+                            h = mix(h, src < 0 ? 0 : graph.nodeIds[graph.linkDst[l]]);
+                            h = mix(h, graph.profile(l));
+                        }
+                        return h;
+                    },
+                    (w, from, to) -> {
+                        for (int l = from; l < to; l++) {
+                            if (graph.linkSrc[l] < 0) {
+                                w.text("# Skipping link ").number(graph.linkIds[l]).line(" (unknown node)");
+                                continue;
+                            }
+                            writeLink(w, graph, l, linkParams);
+                        }
+                    });
+            out.line();
+
+            if (partOf != null) {
+                int[] parts = partOf;
+                out.text("# Partitions for NAM: ").line(partition.summary());
+                section(out, cache, null, "partition-nodes", graph.nodeCount, null,
+                        (from, to) -> hash(hash(0, graph.nodeIds, from, to), parts, from, to),
+                        (w, from, to) -> {
+                            for (int n = from; n < to; n++) {
+                                if (parts[n] >= 0)
+                                    w.text("$n").number(graph.nodeIds[n]).text(" color \"")
+                                            .text(Partition.hex(parts[n])).line("\"");
+                            }
+                        });
+                section(out, cache, null, "partition-links", graph.linkCount, null,
+                        (from, to) -> {
+                            long h = 0;
+                            for (int l = from; l < to; l++) {
+                                boolean cut = isCut(graph, parts, l);
+                                h = mix(h, cut ? graph.nodeIds[graph.linkSrc[l]] : -1);
+                                h = mix(h, cut ? graph.nodeIds[graph.linkDst[l]] : -1);
+                            }
+                            return h;
+                        },
+                        (w, from, to) -> {
+                            for (int l = from; l < to; l++) {
+                                if (isCut(graph, parts, l))
+                                    w.text("$ns duplex-link-op $n").number(graph.nodeIds[graph.linkSrc[l]])
+                                            .text(" $n").number(graph.nodeIds[graph.linkDst[l]])
+                                            .line(" color \"" + CUT_LINK + "\"");
+                            }
+                        });
+                out.line();
+            }
+
+            RoutingEngine.Metric metric = RoutingEngine.Metric.of(config.routing);
+            if (metric != null) {
+                writeRoutes(out, graph, flows, metric, config.delay,
+                        cache != null ? cache.routing : new RoutingEngine());
+                out.line();
             }
-            out.println();
 
-            out.println("# Define finish procedure");
-            out.println("proc finish {} {");
-            out.println("    global ns");
+            writeFlows(out, graph, config, flows);
+            out.line();
+
+            out.line("# Define finish procedure");
+            out.line("proc finish {} {");
+            out.line("    global ns");
             if (config.enableTracing) {
-                out.println("    global tracefile");
+                out.line("    global tracefile");
             }
             if (config.enableNam) {
-                out.println("    global namfile");
+                out.line("    global namfile");
             }
-            out.println("    $ns flush-trace");
+            out.line("    $ns flush-trace");
             if (config.enableTracing) {
-                out.println("    close $tracefile");
+                out.line("    close $tracefile");
             }
             if (config.enableNam) {
-                out.println("    close $namfile");
+                out.line("    close $namfile");
             }
-            out.println("    exit 0");
-            out.println("}");
-            out.println();
+            out.line("    exit 0");
+            out.line("}");
+            out.line();
+
+            out.line("# Schedule finish");
+            out.text("$ns at ").number(config.simTime).line(" \"finish\"");
+            out.line();
 
-            out.println("# Schedule finish");
-            out.println("$ns at " + config.simTime + " \"finish\"");
-            out.println();
+            out.line("# Run simulation");
+            out.line("$ns run");
+        }
+    }
+
+    /**
+     * Writes {@code count} elements block by block, taking each block from
+     * the cache when its key is unchanged. {@code inputs} holds whatever
+     * else the text depends on, e.g. default link parameters; when it differs
+     * from the last run (by {@link Arrays#deepEquals}) every block is
+     * rendered again. If the section was last rendered from the same
+     * {@code graph} and inputs the keys are not even recomputed; a null graph
+     * always recomputes them.
+     */
+    private static void section(TclWriter out, Cache cache, CompactGraph graph, String name, int count,
+            Object[] inputs, BlockKey key, BlockText text) throws IOException {
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        if (cache == null) {
+            text.render(out, 0, count);
+            return;
+        }
+        Section s = cache.sections.computeIfAbsent(name, k -> new Section());
+        boolean sameInputs = Arrays.deepEquals(s.inputs, inputs);
+        boolean clean = graph != null && s.graph == graph && sameInputs && s.blocks.length == blocks;
+        if (s.blocks.length != blocks) {
+            s.keys = Arrays.copyOf(s.keys, blocks);
+            s.blocks = Arrays.copyOf(s.blocks, blocks);
+        }
+        if (!sameInputs) {
+            Arrays.fill(s.blocks, null);
+            s.inputs = inputs;
+        }
+        s.graph = null; // until every block is up to date
+        for (int b = 0; b < blocks; b++) {
+            int from = b * BLOCK, to = Math.min(count, from + BLOCK);
+            if (clean && s.blocks[b] != null) {
+                out.bytes(s.blocks[b]);
+                continue;
+            }
+            long k = key.hash(from, to);
+            if (s.blocks[b] == null || s.keys[b] != k) {
+                cache.scratch.reset();
+                text.render(cache.scratch, from, to);
+                s.blocks[b] = cache.scratch.toByteArray();
+                s.keys[b] = k;
+            }
+            out.bytes(s.blocks[b]);
+        }
+        s.graph = graph;
+    }
 
-            out.println("# Run simulation");
-            out.println("$ns run");
+    /**
+     * The text after "duplex-link $a $b" for each link profile of
+     * {@code graph}; parameters a link leaves at the default take the given
+     * values.
+     */
+    static String[] linkParameters(CompactGraph graph, String bandwidth, String delay, String queueType) {
+        String[] text = new String[graph.profileBandwidth.length];
+        for (int p = 0; p < text.length; p++) {
+            double bw = graph.profileBandwidth[p], d = graph.profileDelay[p];
+            int q = graph.profileQueueType[p];
+            text[p] = " " + (Double.isNaN(bw) ? bandwidth : Units.formatBandwidth(bw))
+                    + " " + (Double.isNaN(d) ? delay : Units.formatTime(d))
+                    + " " + (q < 0 ? queueType : Link.QUEUE_TYPES[q]);
+        }
+        return text;
+    }
+
+    /** A duplex-link command, and queue-limit commands for both directions if the link sets a limit. */
+    static void writeLink(TclWriter out, CompactGraph graph, int l, String[] params) throws IOException {
+        long a = graph.nodeIds[graph.linkSrc[l]], b = graph.nodeIds[graph.linkDst[l]];
+        out.text("$ns duplex-link $n").number(a).text(" $n").number(b).line(params[graph.profile(l)]);
+        int limit = graph.queueLimit(l);
+        if (limit >= 0) {
+            out.text("$ns queue-limit $n").number(a).text(" $n").number(b).text(' ').number(limit).line();
+            out.text("$ns queue-limit $n").number(b).text(" $n").number(a).text(' ').number(limit).line();
+        }
+    }
+
+    /**
+     * Manual routing: turns off NS-2's route computation at startup and
+     * installs precomputed routes instead. Routes are written only along
+     * the flows' paths, both ways so acknowledgements find their way back,
+     * which keeps the script proportional to the paths rather than to the
+     * square of the node count.
+     */
+    private static void writeRoutes(TclWriter out, CompactGraph graph, List<TrafficFlow> flows,
+            RoutingEngine.Metric metric, String delay, RoutingEngine engine) throws IOException {
+        List<int[]> pairs = new ArrayList<>();
+        if (flows != null && !flows.isEmpty()) {
+            for (TrafficFlow flow : flows) {
+                int src = graph.indexOf(flow.srcNodeId), dst = graph.indexOf(flow.dstNodeId);
+                if (src >= 0 && dst >= 0)
+                    pairs.add(new int[] { src, dst });
+            }
+        } else if (graph.nodeCount >= 2) {
+            pairs.add(new int[] { 0, graph.nodeCount - 1 });
+        }
+        int[] ends = new int[pairs.size() * 2];
+        for (int i = 0; i < pairs.size(); i++) {
+            ends[2 * i] = pairs.get(i)[0];
+            ends[2 * i + 1] = pairs.get(i)[1];
+        }
+
+        double defaultDelay;
+        try {
+            defaultDelay = metric == RoutingEngine.Metric.DELAY ? Units.parseTime(delay) : 0;
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid link delay: " + ex.getMessage());
+        }
+        RoutingTable table;
+        try {
+            table = engine.table(graph, metric, defaultDelay, ends);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Route computation interrupted");
+        }
+
+        out.line("# Static routes: " + metric.label);
+        out.line("$ns rtproto Manual");
+        out.line("proc route {src dst via} {");
+        out.line("    global ns");
+        out.line("    $src add-route [$dst id] [[$ns link $src $via] head]");
+        out.line("}");
+        Map<Integer, BitSet> routed = new HashMap<>();
+        for (int[] pair : pairs) {
+            for (int k = 0; k < 2; k++) {
+                int from = pair[k], to = pair[1 - k];
+                BitSet done = routed.computeIfAbsent(to, d -> new BitSet(graph.nodeCount));
+                if (table.distance(from, to) == RoutingTable.UNREACHABLE) {
+                    out.text("# No route from $n").number(graph.nodeIds[from]).text(" to $n")
+                            .number(graph.nodeIds[to]).line();
+                    continue;
+                }
+                // Stop where an earlier flow's route toward the same node joins in.
+                for (int u = from; u != to && !done.get(u); u = table.nextHop(u, to)) {
+                    done.set(u);
+                    out.text("route $n").number(graph.nodeIds[u]).text(" $n").number(graph.nodeIds[to])
+                            .text(" $n").number(graph.nodeIds[table.nextHop(u, to)]).line();
+                }
+            }
+        }
+    }
+
+    /** Whether link {@code l} joins two different known parts. */
+    private static boolean isCut(CompactGraph graph, int[] partOf, int l) {
+        int src = graph.linkSrc[l];
+        if (src < 0)
+            return false;
+        int a = partOf[src], b = partOf[graph.linkDst[l]];
+        return a >= 0 && b >= 0 && a != b;
+    }
+
+    private static long mix(long h, long v) {
+        h = (h ^ v) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static long hash(long h, long[] v, int from, int to) {
+        for (int i = from; i < to; i++)
+            h = mix(h, v[i]);
+        return mix(h, to - from);
+    }
+
+    private static long hash(long h, int[] v, int from, int to) {
+        for (int i = from; i < to; i++)
+            h = mix(h, v[i]);
+        return mix(h, to - from);
+    }
+
+    private static void writeFlows(TclWriter out, CompactGraph graph, SimulationConfig config,
+            List<TrafficFlow> flows) throws IOException {
+        // Setup traffic flows
+        if (flows != null && !flows.isEmpty()) {
+            out.line("# Setup custom traffic flows");
+            int flowIdx = 0;
+            for (TrafficFlow flow : flows) {
+                String srcVar = "n" + flow.srcNodeId;
+                String dstVar = "n" + flow.dstNodeId;
+
+                if (graph.indexOf(flow.srcNodeId) < 0 || graph.indexOf(flow.dstNodeId) < 0) {
+                    out.line("# Skipping flow (invalid nodes)");
+                    continue;
+                }
+
+                setupTrafficFlow(out, srcVar, dstVar, flow.flowType, flow.startTime,
+                        flow.stopTime, config, flowIdx);
+                flowIdx++;
+            }
+        } else {
+            // Default: Setup traffic between first and last nodes
+            if (graph.nodeCount >= 2) {
+                out.line("# Setup default traffic between first and last nodes");
+                String srcVar = "n" + graph.nodeIds[0];
+                String dstVar = "n" + graph.nodeIds[graph.nodeCount - 1];
+
+                setupDefaultTraffic(out, srcVar, dstVar, config);
+            }
         }
     }
 
-    private static void setupDefaultTraffic(PrintStream out, String srcVar, String dstVar, SimulationConfig config) {
+    private static void setupDefaultTraffic(TclWriter out, String srcVar, String dstVar, SimulationConfig config)
+            throws IOException {
         if (config.protocol.startsWith("TCP")) {
             String tcpVariant = config.protocol.contains("/")
                     ? config.protocol.substring(config.protocol.indexOf("/") + 1)
                     : "Reno";
 
-            out.println("# Create TCP agent");
-            out.println("set tcp [new Agent/TCP/" + tcpVariant + "]");
-            out.println("$ns attach-agent $" + srcVar + " $tcp");
-            out.println("$tcp set packetSize_ " + config.packetSize);
-            out.println();
+            out.line("# Create TCP agent");
+            out.line("set tcp [new Agent/TCP/" + tcpVariant + "]");
+            out.line("$ns attach-agent $" + srcVar + " $tcp");
+            out.line("$tcp set packetSize_ " + config.packetSize);
+            out.line();
 
-            out.println("# Create TCP sink");
-            out.println("set sink [new Agent/TCPSink]");
-            out.println("$ns attach-agent $" + dstVar + " $sink");
-            out.println("$ns connect $tcp $sink");
-            out.println();
+            out.line("# Create TCP sink");
+            out.line("set sink [new Agent/TCPSink]");
+            out.line("$ns attach-agent $" + dstVar + " $sink");
+            out.line("$ns connect $tcp $sink");
+            out.line();
 
             if (config.application.equals("FTP")) {
-                out.println("# Create FTP application");
-                out.println("set ftp [new Application/FTP]");
-                out.println("$ftp attach-agent $tcp");
-                out.println("$ns at 0.5 \"$ftp start\"");
-                out.println("$ns at " + (config.simTime - 0.5) + " \"$ftp stop\"");
+                out.line("# Create FTP application");
+                out.line("set ftp [new Application/FTP]");
+                out.line("$ftp attach-agent $tcp");
+                out.line("$ns at 0.5 \"$ftp start\"");
+                out.line("$ns at " + (config.simTime - 0.5) + " \"$ftp stop\"");
             } else if (config.application.equals("Telnet")) {
-                out.println("# Create Telnet application");
-                out.println("set telnet [new Application/Telnet]");
-                out.println("$telnet attach-agent $tcp");
-                out.println("$ns at 0.5 \"$telnet start\"");
-                out.println("$ns at " + (config.simTime - 0.5) + " \"$telnet stop\"");
+                out.line("# Create Telnet application");
+                out.line("set telnet [new Application/Telnet]");
+                out.line("$telnet attach-agent $tcp");
+                out.line("$ns at 0.5 \"$telnet start\"");
+                out.line("$ns at " + (config.simTime - 0.5) + " \"$telnet stop\"");
             }
 
         } else if (config.protocol.equals("UDP")) {
-            out.println("# Create UDP agent");
-            out.println("set udp [new Agent/UDP]");
-            out.println("$ns attach-agent $" + srcVar + " $udp");
-            out.println();
+            out.line("# Create UDP agent");
+            out.line("set udp [new Agent/UDP]");
+            out.line("$ns attach-agent $" + srcVar + " $udp");
+            out.line();
 
-            out.println("# Create Null agent (UDP sink)");
-            out.println("set null [new Agent/Null]");
-            out.println("$ns attach-agent $" + dstVar + " $null");
-            out.println("$ns connect $udp $null");
-            out.println();
+            out.line("# Create Null agent (UDP sink)");
+            out.line("set null [new Agent/Null]");
+            out.line("$ns attach-agent $" + dstVar + " $null");
+            out.line("$ns connect $udp $null");
+            out.line();
 
             if (config.application.equals("CBR")) {
-                out.println("# Create CBR traffic");
-                out.println("set cbr [new Application/Traffic/CBR]");
-                out.println("$cbr attach-agent $udp");
-                out.println("$cbr set packetSize_ " + config.packetSize);
-                out.println("$cbr set rate_ " + config.dataRate);
-                out.println("$ns at 0.5 \"$cbr start\"");
-                out.println("$ns at " + (config.simTime - 0.5) + " \"$cbr stop\"");
+                out.line("# Create CBR traffic");
+                out.line("set cbr [new Application/Traffic/CBR]");
+                out.line("$cbr attach-agent $udp");
+                out.line("$cbr set packetSize_ " + config.packetSize);
+                out.line("$cbr set rate_ " + config.dataRate);
+                out.line("$ns at 0.5 \"$cbr start\"");
+                out.line("$ns at " + (config.simTime - 0.5) + " \"$cbr stop\"");
             } else if (config.application.equals("Exponential")) {
-                out.println("# Create Exponential traffic");
-                out.println("set exp [new Application/Traffic/Exponential]");
-                out.println("$exp attach-agent $udp");
-                out.println("$exp set packetSize_ " + config.packetSize);
-                out.println("$exp set rate_ " + config.dataRate);
-                out.println("$ns at 0.5 \"$exp start\"");
-                out.println("$ns at " + (config.simTime - 0.5) + " \"$exp stop\"");
+                out.line("# Create Exponential traffic");
+                out.line("set exp [new Application/Traffic/Exponential]");
+                out.line("$exp attach-agent $udp");
+                out.line("$exp set packetSize_ " + config.packetSize);
+                out.line("$exp set rate_ " + config.dataRate);
+                out.line("$ns at 0.5 \"$exp start\"");
+                out.line("$ns at " + (config.simTime - 0.5) + " \"$exp stop\"");
             }
         }
     }
 
-    private static void setupTrafficFlow(PrintStream out, String srcVar, String dstVar,
-            String flowType, double startTime, double stopTime, SimulationConfig config, int flowIdx) {
+    private static void setupTrafficFlow(TclWriter out, String srcVar, String dstVar,
+            String flowType, double startTime, double stopTime, SimulationConfig config, int flowIdx) throws IOException {
 
         String agentVar = "agent" + flowIdx;
         String sinkVar = "sink" + flowIdx;
@@ -220,27 +516,27 @@ public class NS2TclGenerator {
                 }
             }
 
-            out.println("# Flow " + flowIdx + ": TCP " + appType + " from $" + srcVar + " to $" + dstVar);
-            out.println("set " + agentVar + " [new Agent/TCP/" + tcpVariant + "]");
-            out.println("$ns attach-agent $" + srcVar + " $" + agentVar);
-            out.println("$" + agentVar + " set packetSize_ " + config.packetSize);
-            out.println();
+            out.line("# Flow " + flowIdx + ": TCP " + appType + " from $" + srcVar + " to $" + dstVar);
+            out.line("set " + agentVar + " [new Agent/TCP/" + tcpVariant + "]");
+            out.line("$ns attach-agent $" + srcVar + " $" + agentVar);
+            out.line("$" + agentVar + " set packetSize_ " + config.packetSize);
+            out.line();
 
-            out.println("set " + sinkVar + " [new Agent/TCPSink]");
-            out.println("$ns attach-agent $" + dstVar + " $" + sinkVar);
-            out.println("$ns connect $" + agentVar + " $" + sinkVar);
-            out.println();
+            out.line("set " + sinkVar + " [new Agent/TCPSink]");
+            out.line("$ns attach-agent $" + dstVar + " $" + sinkVar);
+            out.line("$ns connect $" + agentVar + " $" + sinkVar);
+            out.line();
 
             if (appType.equals("FTP")) {
-                out.println("set " + appVar + " [new Application/FTP]");
-                out.println("$" + appVar + " attach-agent $" + agentVar);
-                out.println("$ns at " + startTime + " \"$" + appVar + " start\"");
-                out.println("$ns at " + stopTime + " \"$" + appVar + " stop\"");
+                out.line("set " + appVar + " [new Application/FTP]");
+                out.line("$" + appVar + " attach-agent $" + agentVar);
+                out.line("$ns at " + startTime + " \"$" + appVar + " start\"");
+                out.line("$ns at " + stopTime + " \"$" + appVar + " stop\"");
             } else if (appType.equals("Telnet")) {
-                out.println("set " + appVar + " [new Application/Telnet]");
-                out.println("$" + appVar + " attach-agent $" + agentVar);
-                out.println("$ns at " + startTime + " \"$" + appVar + " start\"");
-                out.println("$ns at " + stopTime + " \"$" + appVar + " stop\"");
+                out.line("set " + appVar + " [new Application/Telnet]");
+                out.line("$" + appVar + " attach-agent $" + agentVar);
+                out.line("$ns at " + startTime + " \"$" + appVar + " start\"");
+                out.line("$ns at " + stopTime + " \"$" + appVar + " stop\"");
             }
 
         } else if (flowType.startsWith("UDP")) {
@@ -252,32 +548,32 @@ public class NS2TclGenerator {
                 }
             }
 
-            out.println("# Flow " + flowIdx + ": UDP " + appType + " from $" + srcVar + " to $" + dstVar);
-            out.println("set " + agentVar + " [new Agent/UDP]");
-            out.println("$ns attach-agent $" + srcVar + " $" + agentVar);
-            out.println();
+            out.line("# Flow " + flowIdx + ": UDP " + appType + " from $" + srcVar + " to $" + dstVar);
+            out.line("set " + agentVar + " [new Agent/UDP]");
+            out.line("$ns attach-agent $" + srcVar + " $" + agentVar);
+            out.line();
 
-            out.println("set " + sinkVar + " [new Agent/Null]");
-            out.println("$ns attach-agent $" + dstVar + " $" + sinkVar);
-            out.println("$ns connect $" + agentVar + " $" + sinkVar);
-            out.println();
+            out.line("set " + sinkVar + " [new Agent/Null]");
+            out.line("$ns attach-agent $" + dstVar + " $" + sinkVar);
+            out.line("$ns connect $" + agentVar + " $" + sinkVar);
+            out.line();
 
             if (appType.equals("CBR")) {
-                out.println("set " + appVar + " [new Application/Traffic/CBR]");
-                out.println("$" + appVar + " attach-agent $" + agentVar);
-                out.println("$" + appVar + " set packetSize_ " + config.packetSize);
-                out.println("$" + appVar + " set rate_ " + config.dataRate);
-                out.println("$ns at " + startTime + " \"$" + appVar + " start\"");
-                out.println("$ns at " + stopTime + " \"$" + appVar + " stop\"");
+                out.line("set " + appVar + " [new Application/Traffic/CBR]");
+                out.line("$" + appVar + " attach-agent $" + agentVar);
+                out.line("$" + appVar + " set packetSize_ " + config.packetSize);
+                out.line("$" + appVar + " set rate_ " + config.dataRate);
+                out.line("$ns at " + startTime + " \"$" + appVar + " start\"");
+                out.line("$ns at " + stopTime + " \"$" + appVar + " stop\"");
             } else if (appType.equals("Exponential")) {
-                out.println("set " + appVar + " [new Application/Traffic/Exponential]");
-                out.println("$" + appVar + " attach-agent $" + agentVar);
-                out.println("$" + appVar + " set packetSize_ " + config.packetSize);
-                out.println("$" + appVar + " set rate_ " + config.dataRate);
-                out.println("$ns at " + startTime + " \"$" + appVar + " start\"");
-                out.println("$ns at " + stopTime + " \"$" + appVar + " stop\"");
+                out.line("set " + appVar + " [new Application/Traffic/Exponential]");
+                out.line("$" + appVar + " attach-agent $" + agentVar);
+                out.line("$" + appVar + " set packetSize_ " + config.packetSize);
+                out.line("$" + appVar + " set rate_ " + config.dataRate);
+                out.line("$ns at " + startTime + " \"$" + appVar + " start\"");
+                out.line("$ns at " + stopTime + " \"$" + appVar + " stop\"");
             }
         }
-        out.println();
+        out.line();
     }
 }
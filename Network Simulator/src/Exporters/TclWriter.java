@@ -0,0 +1,207 @@
+package Exporters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Buffered script writer that encodes text and numbers straight into a byte
+ * array: no per-line strings, no charset encoder for ASCII, and integers are
+ * formatted digit by digit. Writes to an OutputStream when full, or, created
+ * without one, grows in memory so the result can be kept with
+ * {@link #toByteArray()}. Lines end with '\n'.
+ */
+public final class TclWriter implements AutoCloseable {
+    private final OutputStream out;
+    private byte[] buf;
+    private int pos;
+
+    public TclWriter(OutputStream out) {
+        this.out = out;
+        this.buf = new byte[1 << 16];
+    }
+
+    /** In-memory writer. */
+    public TclWriter() {
+        this.out = null;
+        this.buf = new byte[1 << 12];
+    }
+
+    private void ensure(int n) throws IOException {
+        if (pos + n <= buf.length)
+            return;
+        if (out != null) {
+            out.write(buf, 0, pos);
+            pos = 0;
+            if (n <= buf.length)
+                return;
+        }
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+    }
+
+    public TclWriter text(String s) throws IOException {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80)
+                return utf8(s, i);
+            buf[pos++] = (byte) c;
+        }
+        return this;
+    }
+
+    /** Slow path for text with non-ASCII characters from index {@code from} on. */
+    private TclWriter utf8(String s, int from) throws IOException {
+        return bytes(s.substring(from).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public TclWriter text(char c) throws IOException {
+        if (c >= 0x80)
+            return text(String.valueOf(c));
+        ensure(1);
+        buf[pos++] = (byte) c;
+        return this;
+    }
+
+    public TclWriter number(long v) throws IOException {
+        ensure(20);
+        if (v < 0) {
+            if (v == Long.MIN_VALUE)
+                return text(Long.toString(v));
+            buf[pos++] = '-';
+            v = -v;
+        }
+        int end = pos + digits(v);
+        for (int i = end - 1; i >= pos; --i) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        pos = end;
+        return this;
+    }
+
+    /** Same text as string concatenation of a double. */
+    public TclWriter number(double v) throws IOException {
+        return text(Double.toString(v));
+    }
+
+    /**
+     * Plain decimal notation rounded to {@code places} (at most 9) decimals,
+     * without trailing zeros, as trace files expect: 0.0001 rather than
+     * 1.0E-4, and 2 rather than 2.0.
+     */
+    public TclWriter decimal(double v, int places) throws IOException {
+        long scale = POW10[places];
+        if (!(Math.abs(v) < (double) Long.MAX_VALUE / scale))
+            return text(Double.toString(v));
+        long scaled = Math.round(v * scale);
+        if (scaled < 0) {
+            text('-');
+            scaled = -scaled;
+        }
+        number(scaled / scale);
+        long frac = scaled % scale;
+        if (frac == 0)
+            return this;
+        while (frac % 10 == 0) {
+            frac /= 10;
+            places--;
+        }
+        ensure(places + 1);
+        buf[pos++] = '.';
+        for (int i = pos + places - 1; i >= pos; --i) {
+            buf[i] = (byte) ('0' + frac % 10);
+            frac /= 10;
+        }
+        pos += places;
+        return this;
+    }
+
+    private static final long[] POW10 = { 1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000,
+            100_000_000, 1_000_000_000 };
+
+    private static int digits(long v) {
+        int d = 1;
+        while (v >= 10) {
+            v /= 10;
+            d++;
+        }
+        return d;
+    }
+
+    public TclWriter line(String s) throws IOException {
+        return text(s).line();
+    }
+
+    public TclWriter line() throws IOException {
+        ensure(1);
+        buf[pos++] = '\n';
+        return this;
+    }
+
+    public TclWriter bytes(byte[] b) throws IOException {
+        return bytes(b, 0, b.length);
+    }
+
+    public TclWriter bytes(byte[] b, int off, int len) throws IOException {
+        if (out != null && len > buf.length) {
+            ensure(buf.length);
+            out.write(b, off, len);
+            return this;
+        }
+        ensure(len);
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+        return this;
+    }
+
+    /** Bytes written so far; in-memory writers only. */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    /** Number of bytes written so far; in-memory writers only. */
+    public int size() {
+        return pos;
+    }
+
+    /** Writes bytes {@code from} to {@code to} of this in-memory writer to {@code target}. */
+    public void copyTo(TclWriter target, int from, int to) throws IOException {
+        int len = to - from;
+        if (target.out != null && len > target.buf.length) {
+            target.ensure(target.buf.length);
+            target.out.write(buf, from, len);
+            return;
+        }
+        target.ensure(len);
+        System.arraycopy(buf, from, target.buf, target.pos, len);
+        target.pos += len;
+    }
+
+    /** Writes everything written so far to {@code target}; in-memory writers only. */
+    public void writeTo(OutputStream target) throws IOException {
+        target.write(buf, 0, pos);
+    }
+
+    /** Empties an in-memory writer for reuse. */
+    public void reset() {
+        pos = 0;
+    }
+
+    public void flush() throws IOException {
+        if (out != null) {
+            out.write(buf, 0, pos);
+            pos = 0;
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (out != null)
+            out.close();
+    }
+}
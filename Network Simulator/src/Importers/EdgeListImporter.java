@@ -0,0 +1,121 @@
+package Importers;
+
+import Components.CompactGraph;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads edge lists: one link per line as two node keys separated by
+ * whitespace, commas or semicolons. Further columns (weights, labels) are
+ * ignored, a line with a single key declares an isolated node, and blank
+ * lines and lines starting with '#' or '%' are skipped. Edge lists carry no
+ * coordinates, so every node is placed on a grid.
+ *
+ * The file is scanned byte by byte from a large buffer and integer keys are
+ * parsed without creating strings, so multi-million-line files read at disk
+ * speed.
+ */
+public class EdgeListImporter {
+
+    public static CompactGraph read(File file, int spacing) throws IOException {
+        GraphBuilder graph = new GraphBuilder();
+        try (InputStream in = new FileInputStream(file)) {
+            new Scanner(in, graph).run();
+        }
+        return graph.build(spacing);
+    }
+
+    private static final class Scanner {
+        private final InputStream in;
+        private final GraphBuilder graph;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos, limit;
+
+        Scanner(InputStream in, GraphBuilder graph) {
+            this.in = in;
+            this.graph = graph;
+        }
+
+        private int peek() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buf[pos];
+        }
+
+        private static boolean separator(int c) {
+            return c == ' ' || c == '\t' || c == ',' || c == ';' || c == '\r';
+        }
+
+        void run() throws IOException {
+            int c;
+            while ((c = peek()) != -1) {
+                if (c == '#' || c == '%') {
+                    skipLine();
+                    continue;
+                }
+                int a = token();
+                if (a < 0) {
+                    skipLine();
+                    continue;
+                }
+                int b = token();
+                if (b >= 0)
+                    graph.link(a, b);
+                skipLine();
+            }
+        }
+
+        /** Reads the next key on this line; -1 at the end of the line. */
+        private int token() throws IOException {
+            int c;
+            while ((c = peek()) != -1 && separator(c))
+                pos++;
+            if (c == -1 || c == '\n')
+                return -1;
+
+            // Fast path: an unsigned integer that fits in a long.
+            long v = 0;
+            int digits = 0;
+            StringBuilder text = null;
+            while ((c = peek()) != -1 && c != '\n' && !separator(c)) {
+                if (text == null && c >= '0' && c <= '9' && digits < 18) {
+                    v = v * 10 + (c - '0');
+                    digits++;
+                } else {
+                    if (text == null) {
+                        text = new StringBuilder();
+                        String lead = digits > 0 ? Long.toString(v) : "";
+                        for (int z = lead.length(); z < digits; z++)
+                            text.append('0');
+                        text.append(lead);
+                    }
+                    text.append((char) (c & 0xFF));
+                }
+                pos++;
+            }
+            if (text == null)
+                return graph.node(v);
+            String key = new String(text.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+            return graph.node(key);
+        }
+
+        private void skipLine() throws IOException {
+            int c;
+            while ((c = peek()) != -1) {
+                pos++;
+                if (c == '\n')
+                    return;
+            }
+        }
+    }
+}
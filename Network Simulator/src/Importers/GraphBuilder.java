@@ -0,0 +1,199 @@
+package Importers;
+
+import Components.CompactGraph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Accumulates nodes and links in primitive arrays while a file is parsed and
+ * turns them into a {@link CompactGraph}. Nodes are named by the key the
+ * source file uses; a key seen for the first time (in a node declaration or
+ * as a link endpoint) creates the node.
+ *
+ * Keys that are plain integers, optionally written "n42" as the exporters
+ * do, become the node ids when every key is a positive integer; otherwise
+ * nodes are numbered 1..n in the order they were first seen. Nodes the
+ * source gave no position are laid out on a grid by {@link #build}.
+ */
+public final class GraphBuilder {
+
+    private static final long NO_KEY = Long.MIN_VALUE;
+
+    private int nodeCount;
+    private long[] keys = new long[1024];
+    private int[] x = new int[1024];
+    private int[] y = new int[1024];
+    private boolean[] placed = new boolean[1024];
+    private boolean numericIds = true;
+
+    private int linkCount;
+    private int[] src = new int[1024];
+    private int[] dst = new int[1024];
+
+    // Numeric keys: open addressing from key to node index + 1 (0 = empty).
+    private long[] slotKeys = new long[2048];
+    private int[] slotNodes = new int[2048];
+    private int numericCount;
+    private HashMap<String, Integer> named;
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int linkCount() {
+        return linkCount;
+    }
+
+    /** Index of the node with this key, creating it if new. */
+    public int node(long key) {
+        if (key == NO_KEY)
+            return node(Long.toString(key));
+        int mask = slotKeys.length - 1;
+        int i = (int) mix(key) & mask;
+        while (slotNodes[i] != 0) {
+            if (slotKeys[i] == key)
+                return slotNodes[i] - 1;
+            i = (i + 1) & mask;
+        }
+        int n = newNode(key);
+        slotKeys[i] = key;
+        slotNodes[i] = n + 1;
+        if (key <= 0)
+            numericIds = false;
+        if (2 * ++numericCount > slotKeys.length)
+            rehash();
+        return n;
+    }
+
+    /** Index of the node with this key, creating it if new. */
+    public int node(String key) {
+        long k = parseKey(key);
+        if (k != NO_KEY)
+            return node(k);
+        if (named == null)
+            named = new HashMap<>();
+        Integer n = named.get(key);
+        if (n == null) {
+            n = newNode(NO_KEY);
+            named.put(key, n);
+            numericIds = false;
+        }
+        return n;
+    }
+
+    public void position(int node, int nx, int ny) {
+        x[node] = nx;
+        y[node] = ny;
+        placed[node] = true;
+    }
+
+    public void positionX(int node, int nx) {
+        x[node] = nx;
+        placed[node] = true;
+    }
+
+    public void positionY(int node, int ny) {
+        y[node] = ny;
+        placed[node] = true;
+    }
+
+    public void link(int a, int b) {
+        if (linkCount == src.length) {
+            src = Arrays.copyOf(src, linkCount * 2);
+            dst = Arrays.copyOf(dst, linkCount * 2);
+        }
+        src[linkCount] = a;
+        dst[linkCount++] = b;
+    }
+
+    /**
+     * The graph built so far. Unplaced nodes go on a square grid with the
+     * given spacing, below any nodes that do have positions. Link ids are
+     * left 0 for the topology to assign.
+     */
+    public CompactGraph build(int spacing) {
+        int n = nodeCount;
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++)
+            ids[i] = numericIds ? keys[i] : i + 1;
+
+        int unplaced = 0, top = 0, left = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            if (!placed[i]) {
+                unplaced++;
+            } else {
+                left = Math.min(left, x[i]);
+                bottom = Math.max(bottom, y[i]);
+            }
+        }
+        if (unplaced < n)
+            top = bottom + 2 * spacing;
+        else
+            left = 0;
+        int columns = (int) Math.ceil(Math.sqrt(unplaced));
+        for (int i = 0, k = 0; i < n; i++) {
+            if (!placed[i]) {
+                x[i] = left + (k % columns) * spacing;
+                y[i] = top + (k / columns) * spacing;
+                k++;
+            }
+        }
+
+        return CompactGraph.of(ids, Arrays.copyOf(x, n), Arrays.copyOf(y, n), new long[linkCount],
+                Arrays.copyOf(src, linkCount), Arrays.copyOf(dst, linkCount));
+    }
+
+    private int newNode(long key) {
+        if (nodeCount == keys.length) {
+            int c = nodeCount * 2;
+            keys = Arrays.copyOf(keys, c);
+            x = Arrays.copyOf(x, c);
+            y = Arrays.copyOf(y, c);
+            placed = Arrays.copyOf(placed, c);
+        }
+        keys[nodeCount] = key;
+        return nodeCount++;
+    }
+
+    private void rehash() {
+        long[] oldKeys = slotKeys;
+        int[] oldNodes = slotNodes;
+        slotKeys = new long[oldKeys.length * 2];
+        slotNodes = new int[oldKeys.length * 2];
+        int mask = slotKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldNodes[j] == 0)
+                continue;
+            int i = (int) mix(oldKeys[j]) & mask;
+            while (slotNodes[i] != 0)
+                i = (i + 1) & mask;
+            slotKeys[i] = oldKeys[j];
+            slotNodes[i] = oldNodes[j];
+        }
+    }
+
+    private static long mix(long k) {
+        k *= 0x9E3779B97F4A7C15L;
+        return k ^ (k >>> 29);
+    }
+
+    /** The integer in "42" or "n42", or NO_KEY if the key is not of that form. */
+    static long parseKey(String key) {
+        int i = key.startsWith("n") ? 1 : 0;
+        boolean negative = i == 0 && key.startsWith("-");
+        if (negative)
+            i = 1;
+        int len = key.length();
+        if (i == len || len - i > 18)
+            return NO_KEY;
+        long v = 0;
+        for (; i < len; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9')
+                return NO_KEY;
+            v = v * 10 + (c - '0');
+        }
+        return negative ? -v : v;
+    }
+}
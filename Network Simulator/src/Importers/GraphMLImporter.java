@@ -0,0 +1,108 @@
+package Importers;
+
+import Components.CompactGraph;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads GraphML with a streaming (StAX) parser, so memory use depends on
+ * the size of the graph rather than of the XML. Nodes and edges of nested
+ * graphs are imported into one flat topology; hyperedges and ports are
+ * ignored.
+ *
+ * Positions are taken from {@code <data>} values whose key is named "x" or
+ * "y" (as written by Gephi, NetworkX and similar tools) or from yEd's
+ * {@code <y:Geometry x=".." y="..">}; nodes without one are placed on a
+ * grid.
+ */
+public class GraphMLImporter {
+
+    public static CompactGraph read(File file, int spacing) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        GraphBuilder graph = new GraphBuilder();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            XMLStreamReader xml = factory.createXMLStreamReader(in);
+            try {
+                parse(xml, graph);
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException | NumberFormatException ex) {
+            throw new IOException("Invalid GraphML: " + ex.getMessage(), ex);
+        }
+        return graph.build(spacing);
+    }
+
+    private static void parse(XMLStreamReader xml, GraphBuilder graph) throws XMLStreamException, IOException {
+        Set<String> xKeys = new HashSet<>();
+        Set<String> yKeys = new HashSet<>();
+        int node = -1; // node whose element we are inside
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                if ("node".equals(xml.getLocalName()))
+                    node = -1;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT)
+                continue;
+
+            switch (xml.getLocalName()) {
+                case "key" -> {
+                    String name = xml.getAttributeValue(null, "attr.name");
+                    String id = xml.getAttributeValue(null, "id");
+                    String target = xml.getAttributeValue(null, "for");
+                    if (id != null && name != null && (target == null || "node".equals(target) || "all".equals(target))) {
+                        if (name.equalsIgnoreCase("x"))
+                            xKeys.add(id);
+                        else if (name.equalsIgnoreCase("y"))
+                            yKeys.add(id);
+                    }
+                }
+                case "node" -> node = graph.node(required(xml, "id"));
+                case "edge" -> graph.link(graph.node(required(xml, "source")), graph.node(required(xml, "target")));
+                case "data" -> {
+                    if (node < 0)
+                        break;
+                    String key = xml.getAttributeValue(null, "key");
+                    if (xKeys.contains(key))
+                        graph.positionX(node, coordinate(xml.getElementText()));
+                    else if (yKeys.contains(key))
+                        graph.positionY(node, coordinate(xml.getElementText()));
+                }
+                case "Geometry" -> {
+                    String x = xml.getAttributeValue(null, "x");
+                    String y = xml.getAttributeValue(null, "y");
+                    if (node >= 0 && x != null && y != null)
+                        graph.position(node, coordinate(x), coordinate(y));
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static String required(XMLStreamReader xml, String attribute) throws IOException {
+        String v = xml.getAttributeValue(null, attribute);
+        if (v == null)
+            throw new IOException("Line " + xml.getLocation().getLineNumber() + ": <" + xml.getLocalName()
+                    + "> has no " + attribute + " attribute");
+        return v;
+    }
+
+    private static int coordinate(String text) {
+        return (int) Math.round(Double.parseDouble(text.trim()));
+    }
+}
@@ -0,0 +1,81 @@
+package Importers;
+
+import Components.CompactGraph;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the topology back out of NS-2 scripts of the shape NS2TclGenerator
+ * and ItmTclFrame write: {@code set n1 [$ns node]}, {@code $n1 set X_ 96},
+ * {@code $n1 set Y_ 48} and {@code $ns duplex-link $n1 $n2 ...} (or
+ * simplex-link), one command per line. Everything else in the script is
+ * ignored; loops and procedures are not evaluated. Variable names become
+ * node keys, so "n7" keeps id 7.
+ */
+public class TclImporter {
+
+    public static CompactGraph read(File file, int spacing) throws IOException {
+        GraphBuilder graph = new GraphBuilder();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            int lineNo = 0;
+            String[] words = new String[6];
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                int count = split(line, words);
+                if (count == 0)
+                    continue;
+
+                if (count >= 4 && words[0].equals("set") && words[2].equals("[$ns") && words[3].equals("node]")) {
+                    graph.node(words[1]);
+                } else if (count >= 4 && words[0].equals("$ns")
+                        && (words[1].equals("duplex-link") || words[1].equals("simplex-link"))) {
+                    graph.link(node(graph, words[2], lineNo), node(graph, words[3], lineNo));
+                } else if (count >= 4 && words[0].startsWith("$") && words[1].equals("set")
+                        && (words[2].equals("X_") || words[2].equals("Y_"))) {
+                    int n = node(graph, words[0], lineNo);
+                    int v;
+                    try {
+                        v = (int) Math.round(Double.parseDouble(words[3]));
+                    } catch (NumberFormatException ex) {
+                        continue; // computed positions such as [expr ...] are not evaluated
+                    }
+                    if (words[2].equals("X_"))
+                        graph.positionX(n, v);
+                    else
+                        graph.positionY(n, v);
+                }
+            }
+        }
+        return graph.build(spacing);
+    }
+
+    /** The node named by a "$var" reference. */
+    private static int node(GraphBuilder graph, String ref, int lineNo) throws IOException {
+        if (ref.length() < 2 || ref.charAt(0) != '$')
+            throw new IOException("Line " + lineNo + ": expected a node variable, found \"" + ref + "\"");
+        return graph.node(ref.substring(1));
+    }
+
+    /** Splits the first words of a command into {@code words}; comments count as empty. */
+    private static int split(String line, String[] words) {
+        int count = 0, i = 0, len = line.length();
+        while (count < words.length) {
+            while (i < len && Character.isWhitespace(line.charAt(i)))
+                i++;
+            if (i == len || (count == 0 && line.charAt(i) == '#'))
+                break;
+            int start = i;
+            while (i < len && !Character.isWhitespace(line.charAt(i)))
+                i++;
+            words[count++] = line.substring(start, i);
+        }
+        return count;
+    }
+}
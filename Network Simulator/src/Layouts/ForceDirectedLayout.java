@@ -0,0 +1,576 @@
+package Layouts;
+
+import Components.CompactGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Multilevel spring-electrical layout (Fruchterman-Reingold forces with Hu's
+ * adaptive step length) using a Barnes-Hut quadtree for the repulsive forces.
+ *
+ * The graph is first coarsened by repeatedly merging matched neighbours (and
+ * folding leaves into their neighbour), down to a few dozen nodes. The
+ * coarsest graph is laid out, then each finer level starts from its parent's
+ * position and is refined; this avoids the folds and tangles a single-level
+ * run leaves in large graphs and needs far fewer iterations on the finest
+ * level.
+ *
+ * Each iteration builds the quadtree over the current positions (O(n log n),
+ * single-threaded), then computes the forces on every node in parallel:
+ * repulsion by walking the tree and attraction along the node's own links.
+ * A node's force depends only on the previous positions, so worker threads
+ * write disjoint slots and need no locking.
+ *
+ * The model is scale-free, so the result is finally scaled to make the mean
+ * link length {@link #linkLength}. The coarsest level starts from the
+ * averaged current positions, so the result keeps the rough orientation of
+ * the input.
+ */
+public class ForceDirectedLayout implements Layout {
+
+    /** Mean link length of the result, in world units. */
+    public double linkLength = 144;
+    /** Barnes-Hut opening angle; larger is faster and coarser. */
+    public double theta = 0.9;
+    /** Iteration limit per level; 0 picks one that keeps large graphs to a few seconds. */
+    public int iterations = 0;
+    public int threads = Runtime.getRuntime().availableProcessors();
+    public long seed = 1;
+
+    private static final int MAX_DEPTH = 48;
+    private static final double MIN_DISTANCE = 0.01;
+    private static final double REPULSION = 0.2;
+    private static final double COOLING = 0.9;
+    /** A level is done once its step length falls below this (in units of the ideal link length). */
+    private static final double TOLERANCE = 0.01;
+    private static final int COARSEST = 50;
+    private static final long PROGRESS_NANOS = 50_000_000L;
+
+    /** One level of the hierarchy: CSR adjacency without self-loops or parallel links. */
+    private static final class Level {
+        final int n;
+        final int[] adjStart, adjNode;
+        /** Index of each node's merged node on the next coarser level. */
+        int[] parent;
+
+        Level(int n, int[] adjStart, int[] adjNode) {
+            this.n = n;
+            this.adjStart = adjStart;
+            this.adjNode = adjNode;
+        }
+    }
+
+    @Override
+    public void apply(CompactGraph graph, int[] x, int[] y, Progress progress) throws InterruptedException {
+        int n = graph.nodeCount;
+        if (n == 0)
+            return;
+        Random random = new Random(seed);
+        List<Level> levels = new ArrayList<>();
+        levels.add(finest(graph));
+        while (levels.get(levels.size() - 1).n > COARSEST) {
+            Level fine = levels.get(levels.size() - 1);
+            Level coarse = coarsen(fine, random);
+            if (coarse.n > 0.9 * fine.n) {
+                fine.parent = null;
+                break;
+            }
+            levels.add(coarse);
+        }
+
+        // Starting positions for the coarsest level: the mean of each group's
+        // current positions, scaled so the ideal link length is 1.
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, graph.nodeX[i]);
+            maxX = Math.max(maxX, graph.nodeX[i]);
+            minY = Math.min(minY, graph.nodeY[i]);
+            maxY = Math.max(maxY, graph.nodeY[i]);
+        }
+        Level top = levels.get(levels.size() - 1);
+        double unit = Math.max(1, Math.max(maxX - minX, maxY - minY)) / Math.sqrt(top.n);
+        double[] px = new double[top.n], py = new double[top.n];
+        int[] members = new int[top.n];
+        for (int i = 0; i < n; i++) {
+            int c = i;
+            for (int l = 0; l < levels.size() - 1; l++)
+                c = levels.get(l).parent[c];
+            px[c] += (graph.nodeX[i] - minX) / unit;
+            py[c] += (graph.nodeY[i] - minY) / unit;
+            members[c]++;
+        }
+        // Jitter separates nodes that start on top of each other.
+        for (int c = 0; c < top.n; c++) {
+            px[c] = px[c] / members[c] + (random.nextDouble() - 0.5) * 0.1;
+            py[c] = py[c] / members[c] + (random.nextDouble() - 0.5) * 0.1;
+        }
+
+        int workers = Math.max(1, Math.min(threads, n / 2000 + 1));
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "layout");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        try {
+            for (int l = levels.size() - 1; l >= 0; l--) {
+                Level level = levels.get(l);
+                if (l < levels.size() - 1) {
+                    // Prolong: each node starts near its merged node, spread to the finer level's area.
+                    Level coarse = levels.get(l + 1);
+                    double spread = Math.sqrt((double) level.n / coarse.n);
+                    double[] fx = new double[level.n], fy = new double[level.n];
+                    for (int i = 0; i < level.n; i++) {
+                        fx[i] = px[level.parent[i]] * spread + (random.nextDouble() - 0.5) * 0.1;
+                        fy[i] = py[level.parent[i]] * spread + (random.nextDouble() - 0.5) * 0.1;
+                    }
+                    px = fx;
+                    py = fy;
+                }
+                // The coarsest level starts from scratch; finer ones only need to settle.
+                boolean coarsest = l == levels.size() - 1;
+                int budget = coarsest ? 300 : 100;
+                int rounds = iterations > 0 ? iterations
+                        : level.n <= 2000 ? budget : Math.max(budget / 10, (int) (budget * Math.sqrt(2000.0 / level.n)));
+                double stepLength = coarsest ? 1 : 0.2;
+                double levelDone = (levels.size() - 1 - l) / (double) levels.size();
+                refine(levels, l, px, py, rounds, stepLength, pool, workers, graph, x, y, progress, levelDone,
+                        1.0 / levels.size());
+            }
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        round(graph, px, py, x, y);
+    }
+
+    /** Runs force iterations on one level in place, reporting progress at most every PROGRESS_NANOS. */
+    private void refine(List<Level> levels, int l, double[] px, double[] py, int rounds, double stepLength,
+            ExecutorService pool, int workers, CompactGraph graph, int[] x, int[] y, Progress progress,
+            double doneBefore, double share) throws InterruptedException {
+        Level level = levels.get(l);
+        int n = level.n;
+        double[] nx = new double[n], ny = new double[n];
+        double[] cx = px, cy = py;
+        QuadTree tree = new QuadTree(n);
+        double energy = Double.POSITIVE_INFINITY;
+        int improving = 0;
+        long lastUpdate = 0;
+        // Progress shows every finest node at the position of its merged node on this level.
+        int[] toLevel = null;
+        if (progress != null && l > 0) {
+            toLevel = new int[graph.nodeCount];
+            for (int i = 0; i < graph.nodeCount; i++) {
+                int c = i;
+                for (int k = 0; k < l; k++)
+                    c = levels.get(k).parent[c];
+                toLevel[i] = c;
+            }
+        }
+        for (int round = 0; round < rounds; round++) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            tree.build(cx, cy, n);
+            double[] ox = cx, oy = cy, tx = nx, ty = ny;
+            double length = stepLength;
+            double newEnergy = 0;
+            if (pool == null || n < 2000) {
+                newEnergy = step(level, tree, ox, oy, tx, ty, length, 0, n);
+            } else {
+                List<Callable<Double>> tasks = new ArrayList<>();
+                int chunk = (n + workers * 4 - 1) / (workers * 4);
+                for (int from = 0; from < n; from += chunk) {
+                    int lo = from, hi = Math.min(n, from + chunk);
+                    tasks.add(() -> step(level, tree, ox, oy, tx, ty, length, lo, hi));
+                }
+                for (Future<Double> f : pool.invokeAll(tasks)) {
+                    try {
+                        newEnergy += f.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Layout step failed", e.getCause());
+                    }
+                }
+            }
+            double[] swap = cx;
+            cx = nx;
+            nx = swap;
+            swap = cy;
+            cy = ny;
+            ny = swap;
+
+            // Adaptive step: grow it after a run of improvements, shrink it otherwise.
+            if (newEnergy < energy) {
+                if (++improving >= 5) {
+                    improving = 0;
+                    stepLength /= COOLING;
+                }
+            } else {
+                improving = 0;
+                stepLength *= COOLING;
+            }
+            energy = newEnergy;
+
+            boolean converged = stepLength < TOLERANCE;
+            if (progress != null && System.nanoTime() - lastUpdate > PROGRESS_NANOS) {
+                lastUpdate = System.nanoTime();
+                double[] fx = cx, fy = cy;
+                if (toLevel != null) {
+                    fx = new double[graph.nodeCount];
+                    fy = new double[graph.nodeCount];
+                    for (int i = 0; i < graph.nodeCount; i++) {
+                        fx[i] = cx[toLevel[i]];
+                        fy[i] = cy[toLevel[i]];
+                    }
+                }
+                round(graph, fx, fy, x, y);
+                progress.update(x, y, doneBefore + share * (converged ? 1.0 : (round + 1) / (double) rounds));
+            }
+            if (converged)
+                break;
+        }
+        if (cx != px) {
+            System.arraycopy(cx, 0, px, 0, n);
+            System.arraycopy(cy, 0, py, 0, n);
+        }
+    }
+
+    private static Level finest(CompactGraph graph) {
+        int n = graph.nodeCount;
+        int[] start = new int[n + 1];
+        int[] adj = new int[graph.adjNode.length];
+        int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            start[i] = m;
+            mark[i] = i;
+            for (int e = graph.adjStart[i]; e < graph.adjStart[i + 1]; e++) {
+                int j = graph.adjNode[e];
+                if (mark[j] != i) {
+                    mark[j] = i;
+                    adj[m++] = j;
+                }
+            }
+        }
+        start[n] = m;
+        return new Level(n, start, adj);
+    }
+
+    /**
+     * Merges each node with an unmatched neighbour of lowest degree, then
+     * folds nodes left alone with a single neighbour into that neighbour's
+     * group, so stars and trees shrink as fast as meshes.
+     */
+    private static Level coarsen(Level f, Random random) {
+        int n = f.n;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        int[] group = new int[n];
+        Arrays.fill(group, -1);
+        int[] size = new int[n];
+        int groups = 0;
+        for (int u : order) {
+            if (group[u] >= 0)
+                continue;
+            int best = -1;
+            for (int e = f.adjStart[u]; e < f.adjStart[u + 1]; e++) {
+                int v = f.adjNode[e];
+                if (group[v] < 0 && (best < 0 || degree(f, v) < degree(f, best)))
+                    best = v;
+            }
+            group[u] = groups;
+            size[groups] = 1;
+            if (best >= 0) {
+                group[best] = groups;
+                size[groups] = 2;
+            }
+            groups++;
+        }
+        for (int u = 0; u < n; u++) {
+            if (size[group[u]] == 1 && degree(f, u) == 1) {
+                int g = group[f.adjNode[f.adjStart[u]]];
+                if (size[g] >= 1 && g != group[u]) {
+                    size[group[u]] = 0;
+                    group[u] = g;
+                    size[g]++;
+                }
+            }
+        }
+        int[] renumber = new int[groups];
+        int cn = 0;
+        for (int g = 0; g < groups; g++)
+            renumber[g] = size[g] > 0 ? cn++ : -1;
+        for (int u = 0; u < n; u++)
+            group[u] = renumber[group[u]];
+        f.parent = group;
+
+        // Members of each coarse node, then its distinct coarse neighbours.
+        int[] memberStart = new int[cn + 1];
+        for (int u = 0; u < n; u++)
+            memberStart[group[u] + 1]++;
+        for (int c = 0; c < cn; c++)
+            memberStart[c + 1] += memberStart[c];
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(memberStart, cn);
+        for (int u = 0; u < n; u++)
+            members[fill[group[u]]++] = u;
+
+        int[] start = new int[cn + 1];
+        int[] adj = new int[f.adjNode.length];
+        int[] mark = new int[cn];
+        Arrays.fill(mark, -1);
+        int m = 0;
+        for (int c = 0; c < cn; c++) {
+            start[c] = m;
+            mark[c] = c;
+            for (int k = memberStart[c]; k < memberStart[c + 1]; k++) {
+                int u = members[k];
+                for (int e = f.adjStart[u]; e < f.adjStart[u + 1]; e++) {
+                    int d = group[f.adjNode[e]];
+                    if (mark[d] != c) {
+                        mark[d] = c;
+                        adj[m++] = d;
+                    }
+                }
+            }
+        }
+        start[cn] = m;
+        return new Level(cn, start, Arrays.copyOf(adj, m));
+    }
+
+    private static int degree(Level f, int u) {
+        return f.adjStart[u + 1] - f.adjStart[u];
+    }
+
+    /**
+     * Moves nodes lo..hi-1 one step along their net force, writing to tx/ty;
+     * returns the sum of their squared force magnitudes.
+     */
+    private double step(Level level, QuadTree tree, double[] px, double[] py, double[] tx, double[] ty,
+            double length, int lo, int hi) {
+        double theta2 = theta * theta;
+        double energy = 0;
+        int[] stack = new int[4 * MAX_DEPTH + 4];
+        for (int i = lo; i < hi; i++) {
+            double xi = px[i], yi = py[i];
+            double fx = 0, fy = 0;
+
+            // Repulsion: C / d from every other node, far cells taken as one mass.
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int c = stack[--top];
+                int mass = tree.mass[c];
+                if (mass == 0)
+                    continue;
+                int first = tree.child[c];
+                if (first < 0 && tree.body[c] == i) {
+                    if (mass == 1)
+                        continue;
+                    mass--; // a leaf of coincident nodes, this one included
+                }
+                double dx = xi - tree.cell[3 * c];
+                double dy = yi - tree.cell[3 * c + 1];
+                double d2 = dx * dx + dy * dy;
+                // A cell holding this node is always opened, or its own mass would push it outwards.
+                if (first >= 0 && (tree.cell[3 * c + 2] >= theta2 * d2 || (Math.abs(xi - tree.midX[c]) <= tree.half[c]
+                        && Math.abs(yi - tree.midY[c]) <= tree.half[c]))) {
+                    stack[top++] = first;
+                    stack[top++] = first + 1;
+                    stack[top++] = first + 2;
+                    stack[top++] = first + 3;
+                    continue;
+                }
+                if (d2 < MIN_DISTANCE * MIN_DISTANCE) {
+                    // Push coincident nodes apart in a direction fixed per node.
+                    double angle = i * 2.399963;
+                    dx = Math.cos(angle) * MIN_DISTANCE;
+                    dy = Math.sin(angle) * MIN_DISTANCE;
+                    d2 = MIN_DISTANCE * MIN_DISTANCE;
+                }
+                double f = mass * REPULSION / d2;
+                fx += dx * f;
+                fy += dy * f;
+            }
+
+            // Attraction: d^2 along each link.
+            for (int e = level.adjStart[i]; e < level.adjStart[i + 1]; e++) {
+                int j = level.adjNode[e];
+                double dx = px[j] - xi, dy = py[j] - yi;
+                double d = Math.sqrt(dx * dx + dy * dy);
+                fx += dx * d;
+                fy += dy * d;
+            }
+
+            double f2 = fx * fx + fy * fy;
+            energy += f2;
+            double scale = f2 > 0 ? length / Math.sqrt(f2) : 0;
+            tx[i] = xi + fx * scale;
+            ty[i] = yi + fy * scale;
+        }
+        return energy;
+    }
+
+    /**
+     * Scales to the target mean link length and rounds to ints, shifted so
+     * the top-left node sits one link length from the origin.
+     */
+    private void round(CompactGraph graph, double[] px, double[] py, int[] x, int[] y) {
+        int n = graph.nodeCount;
+        double total = 0;
+        int counted = 0;
+        for (int l = 0; l < graph.linkCount; l++) {
+            int a = graph.linkSrc[l], b = graph.linkDst[l];
+            if (a < 0 || a == b)
+                continue;
+            total += Math.hypot(px[a] - px[b], py[a] - py[b]);
+            counted++;
+        }
+        double scale = counted > 0 && total > 0 ? linkLength * counted / total : linkLength;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, px[i]);
+            minY = Math.min(minY, py[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            x[i] = (int) Math.round((px[i] - minX) * scale + linkLength);
+            y[i] = (int) Math.round((py[i] - minY) * scale + linkLength);
+        }
+    }
+
+    /**
+     * Region quadtree in parallel arrays. A cell is a leaf while child < 0;
+     * otherwise its four children are consecutive from child. A leaf holds
+     * one body, or several coincident bodies once MAX_DEPTH is reached.
+     * After building, {@code cell} holds what the force walk reads for every
+     * cell side by side: centre of mass x, y and squared cell width.
+     */
+    private static final class QuadTree {
+        int[] child, body, mass;
+        double[] sumX, sumY, midX, midY, half;
+        double[] cell;
+        int cells;
+
+        QuadTree(int n) {
+            allocate(2 * n + 5);
+        }
+
+        private void allocate(int capacity) {
+            child = new int[capacity];
+            body = new int[capacity];
+            mass = new int[capacity];
+            sumX = new double[capacity];
+            sumY = new double[capacity];
+            midX = new double[capacity];
+            midY = new double[capacity];
+            half = new double[capacity];
+        }
+
+        private void grow() {
+            int capacity = child.length * 2;
+            child = Arrays.copyOf(child, capacity);
+            body = Arrays.copyOf(body, capacity);
+            mass = Arrays.copyOf(mass, capacity);
+            sumX = Arrays.copyOf(sumX, capacity);
+            sumY = Arrays.copyOf(sumY, capacity);
+            midX = Arrays.copyOf(midX, capacity);
+            midY = Arrays.copyOf(midY, capacity);
+            half = Arrays.copyOf(half, capacity);
+        }
+
+        private void reset(int c, double x, double y, double h) {
+            child[c] = -1;
+            body[c] = -1;
+            mass[c] = 0;
+            sumX[c] = 0;
+            sumY[c] = 0;
+            midX[c] = x;
+            midY[c] = y;
+            half[c] = h;
+        }
+
+        void build(double[] px, double[] py, int n) {
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, px[i]);
+                maxX = Math.max(maxX, px[i]);
+                minY = Math.min(minY, py[i]);
+                maxY = Math.max(maxY, py[i]);
+            }
+            double h = Math.max(maxX - minX, maxY - minY) / 2 + 1;
+            cells = 1;
+            reset(0, (minX + maxX) / 2, (minY + maxY) / 2, h);
+            for (int i = 0; i < n; i++)
+                insert(i, px, py);
+            if (cell == null || cell.length < 3 * cells)
+                cell = new double[3 * child.length];
+            for (int c = 0; c < cells; c++) {
+                if (mass[c] > 0) {
+                    cell[3 * c] = sumX[c] / mass[c];
+                    cell[3 * c + 1] = sumY[c] / mass[c];
+                }
+                cell[3 * c + 2] = 4 * half[c] * half[c];
+            }
+        }
+
+        private int quadrant(int c, double x, double y) {
+            return (x >= midX[c] ? 1 : 0) + (y >= midY[c] ? 2 : 0);
+        }
+
+        private void split(int c) {
+            if (cells + 4 > child.length)
+                grow();
+            int first = cells;
+            cells += 4;
+            double q = half[c] / 2;
+            for (int k = 0; k < 4; k++)
+                reset(first + k, midX[c] + ((k & 1) != 0 ? q : -q), midY[c] + ((k & 2) != 0 ? q : -q), q);
+            child[c] = first;
+        }
+
+        private void insert(int b, double[] px, double[] py) {
+            double x = px[b], y = py[b];
+            int c = 0;
+            for (int depth = 0;; depth++) {
+                if (child[c] < 0) {
+                    if (mass[c] == 0 || depth >= MAX_DEPTH) {
+                        if (mass[c] == 0)
+                            body[c] = b;
+                        mass[c]++;
+                        sumX[c] += x;
+                        sumY[c] += y;
+                        return;
+                    }
+                    // Occupied leaf: push its body down one level and keep descending.
+                    int old = body[c];
+                    split(c);
+                    int oc = child[c] + quadrant(c, px[old], py[old]);
+                    body[oc] = old;
+                    mass[oc] = 1;
+                    sumX[oc] = px[old];
+                    sumY[oc] = py[old];
+                    body[c] = -1;
+                }
+                mass[c]++;
+                sumX[c] += x;
+                sumY[c] += y;
+                c = child[c] + quadrant(c, x, y);
+            }
+        }
+    }
+}
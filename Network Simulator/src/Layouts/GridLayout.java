@@ -0,0 +1,51 @@
+package Layouts;
+
+import Components.CompactGraph;
+
+/**
+ * Places nodes on a square grid in breadth-first order, so neighbours tend
+ * to land in nearby cells. Linear time; a quick way to untangle millions of
+ * stacked or unplaced nodes.
+ */
+public class GridLayout implements Layout {
+
+    public int spacing = 96;
+
+    @Override
+    public void apply(CompactGraph graph, int[] x, int[] y, Progress progress) throws InterruptedException {
+        int n = graph.nodeCount;
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(n)));
+        int[] order = breadthFirstOrder(graph);
+        for (int k = 0; k < n; k++) {
+            x[order[k]] = spacing + (k % columns) * spacing;
+            y[order[k]] = spacing + (k / columns) * spacing;
+        }
+        if (progress != null)
+            progress.update(x, y, 1.0);
+    }
+
+    /** All nodes, component by component, each component in breadth-first order. */
+    static int[] breadthFirstOrder(CompactGraph graph) {
+        int n = graph.nodeCount;
+        int[] order = new int[n];
+        boolean[] seen = new boolean[n];
+        int tail = 0;
+        for (int start = 0; start < n; start++) {
+            if (seen[start])
+                continue;
+            seen[start] = true;
+            order[tail++] = start;
+            for (int head = tail - 1; head < tail; head++) {
+                int u = order[head];
+                for (int e = graph.adjStart[u]; e < graph.adjStart[u + 1]; e++) {
+                    int v = graph.adjNode[e];
+                    if (!seen[v]) {
+                        seen[v] = true;
+                        order[tail++] = v;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,96 @@
+package Layouts;
+
+import Components.CompactGraph;
+
+/**
+ * Layered layout for tree-like networks (access/aggregation/core, fat-trees):
+ * each connected component is rooted at its highest-degree node and drawn
+ * top-down by breadth-first level. Breadth-first order already groups the
+ * nodes of a level by the position of their parent, which keeps most links
+ * between neighbouring columns. Levels wider than {@link #wrap} nodes continue
+ * on extra rows. Components are placed side by side. Linear time.
+ */
+public class HierarchicalLayout implements Layout {
+
+    public int spacing = 96;
+    public int levelSpacing = 192;
+    public int wrap = 200;
+
+    @Override
+    public void apply(CompactGraph graph, int[] x, int[] y, Progress progress) throws InterruptedException {
+        int n = graph.nodeCount;
+        int[] queue = new int[n];
+        int[] level = new int[n];
+        boolean[] seen = new boolean[n];
+        int left = spacing;
+        int done = 0;
+
+        for (int pick = 0; pick < n; pick++) {
+            if (seen[pick])
+                continue;
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            // Find the component, then restart the search from its busiest node.
+            int size = collect(graph, pick, queue, done, seen, level);
+            int root = pick;
+            for (int k = done; k < done + size; k++) {
+                if (graph.degree(queue[k]) > graph.degree(root))
+                    root = queue[k];
+                seen[queue[k]] = false;
+            }
+            collect(graph, root, queue, done, seen, level);
+
+            int width = 1;
+            for (int k = done, row = 0; k < done + size;) {
+                int lv = level[queue[k]];
+                int end = k;
+                while (end < done + size && level[queue[end]] == lv)
+                    end++;
+                for (int start = k; start < end; start += wrap, row++) {
+                    int count = Math.min(wrap, end - start);
+                    width = Math.max(width, count);
+                    for (int j = 0; j < count; j++) {
+                        x[queue[start + j]] = j;
+                        y[queue[start + j]] = spacing + row * levelSpacing;
+                    }
+                }
+                k = end;
+            }
+            // Centre every row within the component's width.
+            for (int k = done; k < done + size;) {
+                int rowY = y[queue[k]];
+                int end = k;
+                while (end < done + size && y[queue[end]] == rowY)
+                    end++;
+                int shift = left + (width - (end - k)) * spacing / 2;
+                for (int j = k; j < end; j++)
+                    x[queue[j]] = shift + x[queue[j]] * spacing;
+                k = end;
+            }
+            left += width * spacing + spacing;
+            done += size;
+        }
+        if (progress != null)
+            progress.update(x, y, 1.0);
+    }
+
+    /** Breadth-first search from {@code root}, appending to {@code queue} from {@code from}; returns the count. */
+    private static int collect(CompactGraph graph, int root, int[] queue, int from, boolean[] seen, int[] level) {
+        int tail = from;
+        seen[root] = true;
+        level[root] = 0;
+        queue[tail++] = root;
+        for (int head = from; head < tail; head++) {
+            int u = queue[head];
+            for (int e = graph.adjStart[u]; e < graph.adjStart[u + 1]; e++) {
+                int v = graph.adjNode[e];
+                if (!seen[v]) {
+                    seen[v] = true;
+                    level[v] = level[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+        return tail - from;
+    }
+}
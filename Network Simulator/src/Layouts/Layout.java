@@ -0,0 +1,27 @@
+package Layouts;
+
+import Components.CompactGraph;
+
+/**
+ * Computes node positions for a topology. Implementations read the graph's
+ * current positions (some use them as a starting point) and write the result
+ * into {@code x}/{@code y}, indexed like the graph's nodes. Positions are
+ * non-negative.
+ *
+ * Layouts run off the EDT and stop with an InterruptedException when their
+ * thread is interrupted.
+ */
+public interface Layout {
+
+    void apply(CompactGraph graph, int[] x, int[] y, Progress progress) throws InterruptedException;
+
+    /** Receives intermediate positions while a layout runs. */
+    interface Progress {
+        /**
+         * Called on the layout thread with the positions so far, in the
+         * arrays that will hold the result; copy anything kept past the call.
+         * {@code done} runs from 0 to 1.
+         */
+        void update(int[] x, int[] y, double done);
+    }
+}
@@ -0,0 +1,120 @@
+package Partitioning;
+
+import java.util.Arrays;
+
+/**
+ * Max-heap of vertices keyed by gain, with each vertex's position tracked so
+ * its gain can be changed or the vertex removed in O(log n), as FM
+ * refinement does for the neighbours of every vertex it moves.
+ */
+final class GainHeap {
+    private int[] heap;
+    private long[] key;
+    private int[] pos; // index in heap, or -1
+    private int size;
+
+    GainHeap(int capacity) {
+        heap = new int[capacity];
+        key = new long[capacity];
+        pos = new int[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    /** Empties the heap, growing it to hold vertices below {@code capacity}. */
+    void reset(int capacity) {
+        if (capacity > pos.length) {
+            heap = new int[capacity];
+            key = new long[capacity];
+            pos = new int[capacity];
+            Arrays.fill(pos, -1);
+        } else {
+            for (int i = 0; i < size; i++)
+                pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int v) {
+        return pos[v] >= 0;
+    }
+
+    int top() {
+        return heap[0];
+    }
+
+    long topKey() {
+        return key[heap[0]];
+    }
+
+    void insert(int v, long k) {
+        key[v] = k;
+        heap[size] = v;
+        pos[v] = size;
+        up(size++);
+    }
+
+    void update(int v, long k) {
+        long old = key[v];
+        key[v] = k;
+        if (k > old)
+            up(pos[v]);
+        else
+            down(pos[v]);
+    }
+
+    void remove(int v) {
+        int i = pos[v];
+        pos[v] = -1;
+        int last = heap[--size];
+        if (i == size)
+            return;
+        heap[i] = last;
+        pos[last] = i;
+        up(i);
+        down(pos[last]);
+    }
+
+    int pop() {
+        int v = heap[0];
+        remove(v);
+        return v;
+    }
+
+    private void up(int i) {
+        int v = heap[i];
+        long k = key[v];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (key[heap[parent]] >= k)
+                break;
+            heap[i] = heap[parent];
+            pos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+
+    private void down(int i) {
+        int v = heap[i];
+        long k = key[v];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && key[heap[child + 1]] > key[heap[child]])
+                child++;
+            if (key[heap[child]] <= k)
+                break;
+            heap[i] = heap[child];
+            pos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        pos[v] = i;
+    }
+}
@@ -0,0 +1,307 @@
+package Partitioning;
+
+import Components.CompactGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Multilevel graph partitioner in the manner of METIS: splits the nodes of
+ * a CompactGraph into parts of nearly equal weight while keeping the weight
+ * of the links between parts small.
+ *
+ * k parts come from recursive bisection. Each bisection coarsens the graph
+ * by heavy-edge matching until it is small, bisects the coarsest graph by
+ * greedy growing from several random seeds, then projects the bisection
+ * back level by level, refining it at each level with Fiduccia-Mattheyses
+ * passes: boundary nodes move to the other side in order of gain, kept in a
+ * heap per side, and each pass is rolled back to its best balanced cut.
+ * Results depend only on the graph, the weights and {@link #seed}.
+ */
+public final class GraphPartitioner {
+    /** Allowed excess of the heaviest part over an equal share; 0.03 allows 3%. */
+    public double imbalance = 0.03;
+    public long seed = 1;
+
+    /** Coarsening stops at about this many vertices. */
+    private static final int COARSEST = 100;
+    private static final int INITIAL_TRIALS = 8;
+    private static final int PASSES = 8;
+
+    /** Nodes and links all weigh 1. */
+    public Partition partition(CompactGraph g, int parts) {
+        return partition(g, parts, null, null);
+    }
+
+    /**
+     * Splits {@code g} into {@code parts} parts. {@code nodeWeight} (by node
+     * index) is the work of each node and {@code linkWeight} (by link index)
+     * the cost of cutting each link; either may be null for all 1.
+     */
+    public Partition partition(CompactGraph g, int parts, int[] nodeWeight, int[] linkWeight) {
+        parts = Math.max(1, parts);
+        int[] partOf = new int[g.nodeCount];
+        int[] nodes = new int[g.nodeCount];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = i;
+        int levels = 32 - Integer.numberOfLeadingZeros(parts - 1); // bisections on the way to a part
+        double levelImbalance = Math.pow(1 + imbalance, 1.0 / Math.max(1, levels)) - 1;
+        split(WeightedGraph.of(g, nodeWeight, linkWeight), nodes, 0, parts, partOf, new SplittableRandom(seed),
+                levelImbalance);
+        return new Partition(g, parts, partOf, nodeWeight, linkWeight);
+    }
+
+    /** Assigns the vertices of {@code g} (original nodes {@code nodes}) to parts {@code first .. first + k - 1}. */
+    private static void split(WeightedGraph g, int[] nodes, int first, int k, int[] partOf, SplittableRandom random,
+            double imbalance) {
+        if (k == 1 || g.n == 0) {
+            for (int u : nodes)
+                partOf[u] = first;
+            return;
+        }
+        int k0 = k / 2;
+        int[] side = bisect(g, (double) k0 / k, random, imbalance);
+        int[] index = new int[g.n];
+        for (int s = 0; s < 2; s++) {
+            WeightedGraph sub = g.subgraph(side, s, index);
+            int[] subNodes = new int[sub.n];
+            for (int u = 0; u < g.n; u++) {
+                if (index[u] >= 0)
+                    subNodes[index[u]] = nodes[u];
+            }
+            split(sub, subNodes, s == 0 ? first : first + k0, s == 0 ? k0 : k - k0, partOf, random, imbalance);
+        }
+    }
+
+    /** Sides 0 and 1 for the vertices of {@code g}, side 0 holding about {@code fraction} of the weight. */
+    static int[] bisect(WeightedGraph g, double fraction, SplittableRandom random, double imbalance) {
+        long[] target = new long[2];
+        target[0] = Math.round(g.totalWeight * fraction);
+        target[1] = g.totalWeight - target[0];
+
+        List<WeightedGraph> finer = new ArrayList<>();
+        List<int[]> maps = new ArrayList<>();
+        WeightedGraph coarse = g;
+        long maxVertexWeight = Math.max(1, 3 * g.totalWeight / (2 * COARSEST));
+        while (coarse.n > COARSEST) {
+            int[] coarseOf = new int[coarse.n];
+            WeightedGraph next = coarse.coarsen(random, maxVertexWeight, coarseOf);
+            if (next.n > coarse.n * 0.95)
+                break; // matching has stalled, e.g. on a star
+            finer.add(coarse);
+            maps.add(coarseOf);
+            coarse = next;
+        }
+
+        Refiner refiner = new Refiner(g.n);
+        int[] side = null;
+        long bestCut = Long.MAX_VALUE;
+        boolean bestBalanced = false;
+        for (int trial = 0; trial < INITIAL_TRIALS; trial++) {
+            int[] s = grow(coarse, target[0], random);
+            long cut = refiner.refine(coarse, s, target, imbalance);
+            boolean balanced = refiner.balanced;
+            if (side == null || (balanced && !bestBalanced) || (balanced == bestBalanced && cut < bestCut)) {
+                side = s;
+                bestCut = cut;
+                bestBalanced = balanced;
+            }
+        }
+        for (int level = finer.size() - 1; level >= 0; level--) {
+            WeightedGraph fine = finer.get(level);
+            int[] map = maps.get(level);
+            int[] s = new int[fine.n];
+            for (int u = 0; u < fine.n; u++)
+                s[u] = side[map[u]];
+            side = s;
+            refiner.refine(fine, side, target, imbalance);
+        }
+        return side;
+    }
+
+    /**
+     * Greedy graph growing: side 0 starts from a random vertex and repeatedly
+     * takes the vertex of side 1 that most lowers the cut, until it holds
+     * {@code target} weight. A component used up before then is continued
+     * from another random vertex.
+     */
+    private static int[] grow(WeightedGraph g, long target, SplittableRandom random) {
+        int n = g.n;
+        int[] side = new int[n];
+        Arrays.fill(side, 1);
+        if (n == 0 || target <= 0)
+            return side;
+        long[] gain = new long[n];
+        for (int u = 0; u < n; u++) {
+            for (int e = g.start[u]; e < g.start[u + 1]; e++)
+                gain[u] -= g.weight[e];
+        }
+        GainHeap frontier = new GainHeap(n);
+        long weight = 0;
+        int scan = random.nextInt(n);
+        while (weight < target) {
+            int u = -1;
+            while (!frontier.isEmpty() && u < 0) {
+                int v = frontier.pop();
+                if (weight + g.vertexWeight[v] <= target || weight == 0)
+                    u = v;
+            }
+            if (u < 0) {
+                // A new seed: the next vertex of side 1 from a random starting point.
+                for (int i = 0; i < n && u < 0; i++, scan = scan + 1 == n ? 0 : scan + 1) {
+                    if (side[scan] == 1 && !frontier.contains(scan))
+                        u = scan;
+                }
+                if (u < 0)
+                    break;
+            }
+            side[u] = 0;
+            weight += g.vertexWeight[u];
+            for (int e = g.start[u]; e < g.start[u + 1]; e++) {
+                int v = g.adj[e];
+                if (side[v] != 1)
+                    continue;
+                gain[v] += 2 * g.weight[e];
+                if (frontier.contains(v))
+                    frontier.update(v, gain[v]);
+                else
+                    frontier.insert(v, gain[v]);
+            }
+        }
+        return side;
+    }
+
+    /** Fiduccia-Mattheyses refinement of a bisection, with scratch space reused across levels. */
+    private static final class Refiner {
+        private final GainHeap[] heaps = { new GainHeap(16), new GainHeap(16) };
+        private long[] internal = new long[0], external = new long[0];
+        private int[] moved = new int[0];
+        private boolean[] locked = new boolean[0];
+        /** Whether the last refined bisection is within the allowed imbalance. */
+        boolean balanced;
+
+        Refiner(int capacity) {
+            ensure(capacity);
+        }
+
+        private void ensure(int n) {
+            if (internal.length < n) {
+                internal = new long[n];
+                external = new long[n];
+                moved = new int[n];
+                locked = new boolean[n];
+            }
+        }
+
+        /** Improves {@code side} in place and returns its cut weight. */
+        long refine(WeightedGraph g, int[] side, long[] target, double imbalance) {
+            int n = g.n;
+            ensure(n);
+            long[] in = internal, ex = external;
+            long[] weight = new long[2];
+            long maxVertex = 0;
+            long cut = 0;
+            for (int u = 0; u < n; u++) {
+                weight[side[u]] += g.vertexWeight[u];
+                maxVertex = Math.max(maxVertex, g.vertexWeight[u]);
+                in[u] = ex[u] = 0;
+                for (int e = g.start[u]; e < g.start[u + 1]; e++) {
+                    if (side[g.adj[e]] == side[u])
+                        in[u] += g.weight[e];
+                    else
+                        ex[u] += g.weight[e];
+                }
+                cut += ex[u];
+            }
+            cut /= 2;
+            // Coarse vertices are heavy, so allow at least one vertex of slack.
+            long[] max = new long[2];
+            for (int s = 0; s < 2; s++)
+                max[s] = target[s] + Math.max((long) (target[s] * imbalance), maxVertex);
+            int limit = Math.min(100, Math.max(15, n / 100));
+
+            for (int pass = 0; pass < PASSES; pass++) {
+                heaps[0].reset(n);
+                heaps[1].reset(n);
+                for (int u = 0; u < n; u++) {
+                    if (ex[u] > 0)
+                        heaps[side[u]].insert(u, ex[u] - in[u]);
+                }
+                int moves = 0, best = 0;
+                long bestCut = cut;
+                long bestOff = Math.abs(target[0] - weight[0]);
+                boolean bestFits = weight[0] <= max[0] && weight[1] <= max[1];
+                while (true) {
+                    // Move from the side further above its target.
+                    int from = target[0] - weight[0] < target[1] - weight[1] ? 0 : 1;
+                    if (heaps[from].isEmpty())
+                        break;
+                    int u = heaps[from].pop();
+                    cut -= ex[u] - in[u];
+                    move(g, side, weight, u, true);
+                    locked[u] = true;
+                    moved[moves++] = u;
+
+                    long off = Math.abs(target[0] - weight[0]);
+                    boolean fits = weight[0] <= max[0] && weight[1] <= max[1];
+                    if (fits ? !bestFits || cut < bestCut || (cut == bestCut && off < bestOff)
+                            : !bestFits && off < bestOff) {
+                        best = moves;
+                        bestCut = cut;
+                        bestOff = off;
+                        bestFits = fits;
+                    } else if (moves - best > limit) {
+                        break;
+                    }
+                }
+                for (int i = moves - 1; i >= best; i--) {
+                    int u = moved[i];
+                    cut -= ex[u] - in[u];
+                    move(g, side, weight, u, false);
+                }
+                for (int i = 0; i < moves; i++)
+                    locked[moved[i]] = false;
+                balanced = bestFits;
+                if (best == 0)
+                    break;
+            }
+            return cut;
+        }
+
+        /** Moves {@code u} to the other side, updating its neighbours' degrees and, if asked, their gains. */
+        private void move(WeightedGraph g, int[] side, long[] weight, int u, boolean updateHeaps) {
+            long[] in = internal, ex = external;
+            int to = 1 - side[u];
+            side[u] = to;
+            weight[1 - to] -= g.vertexWeight[u];
+            weight[to] += g.vertexWeight[u];
+            long t = in[u];
+            in[u] = ex[u];
+            ex[u] = t;
+            for (int e = g.start[u]; e < g.start[u + 1]; e++) {
+                int v = g.adj[e];
+                long w = g.weight[e];
+                if (side[v] == to) {
+                    in[v] += w;
+                    ex[v] -= w;
+                } else {
+                    in[v] -= w;
+                    ex[v] += w;
+                }
+                if (!updateHeaps || locked[v])
+                    continue;
+                GainHeap h = heaps[side[v]];
+                if (h.contains(v)) {
+                    if (ex[v] > 0)
+                        h.update(v, ex[v] - in[v]);
+                    else
+                        h.remove(v);
+                } else if (ex[v] > 0) {
+                    h.insert(v, ex[v] - in[v]);
+                }
+            }
+        }
+    }
+}
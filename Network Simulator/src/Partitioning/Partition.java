@@ -0,0 +1,116 @@
+package Partitioning;
+
+import Components.CompactGraph;
+
+/**
+ * Assignment of the nodes of a CompactGraph to parts, as made by
+ * {@link GraphPartitioner}, with the weight of each part and of the cut.
+ */
+public final class Partition {
+    /** Distinct colours for the first parts, as 0xRRGGBB; later parts reuse them darker. */
+    private static final int[] PALETTE = {
+            0x1f77b4, 0xff7f0e, 0x2ca02c, 0xd62728, 0x9467bd, 0x8c564b, 0xe377c2, 0x17becf,
+            0xbcbd22, 0x7f7f7f, 0xaec7e8, 0xffbb78, 0x98df8a, 0xff9896, 0xc5b0d5, 0xf7b6d2,
+    };
+
+    public final CompactGraph graph;
+    public final int parts;
+    /** Part of each node, by node index in {@link #graph}; -1 for a node in no part. */
+    public final int[] partOf;
+    public final long[] partWeight;
+    /** Total weight, and number, of the links whose ends are in different parts. */
+    public final long cutWeight;
+    public final int cutLinks;
+
+    /** Null weights count 1 for every node or link. */
+    public Partition(CompactGraph graph, int parts, int[] partOf, int[] nodeWeight, int[] linkWeight) {
+        this.graph = graph;
+        this.parts = parts;
+        this.partOf = partOf;
+        partWeight = new long[parts];
+        for (int u = 0; u < graph.nodeCount; u++) {
+            if (partOf[u] >= 0)
+                partWeight[partOf[u]] += nodeWeight == null ? 1 : nodeWeight[u];
+        }
+        long cut = 0;
+        int links = 0;
+        for (int l = 0; l < graph.linkCount; l++) {
+            if (isCut(l)) {
+                cut += linkWeight == null ? 1 : linkWeight[l];
+                links++;
+            }
+        }
+        cutWeight = cut;
+        cutLinks = links;
+    }
+
+    /** Part of the node with this id, or -1 if the graph has no such node. */
+    public int partOfId(long nodeId) {
+        int i = graph.indexOf(nodeId);
+        return i < 0 ? -1 : partOf[i];
+    }
+
+    /** Whether link {@code l} joins two parts; false for removed links and nodes in no part. */
+    public boolean isCut(int l) {
+        int s = graph.linkSrc[l];
+        if (s < 0)
+            return false;
+        int a = partOf[s], b = partOf[graph.linkDst[l]];
+        return a >= 0 && b >= 0 && a != b;
+    }
+
+    /**
+     * This partition carried over to {@code g} by node id, e.g. after edits;
+     * nodes it does not know are in no part.
+     */
+    public Partition on(CompactGraph g) {
+        if (g == graph)
+            return this;
+        int[] parts = new int[g.nodeCount];
+        for (int u = 0; u < g.nodeCount; u++)
+            parts[u] = partOfId(g.nodeIds[u]);
+        return new Partition(g, this.parts, parts, null, null);
+    }
+
+    /** Whether every node of the graph is in a part. */
+    public boolean isComplete() {
+        for (int p : partOf) {
+            if (p < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /** Weight of the heaviest part over the average; 1.0 is perfect balance. */
+    public double imbalance() {
+        long max = 0, total = 0;
+        for (long w : partWeight) {
+            max = Math.max(max, w);
+            total += w;
+        }
+        return total == 0 ? 1.0 : (double) max * parts / total;
+    }
+
+    public String summary() {
+        int links = 0;
+        for (int l = 0; l < graph.linkCount; l++) {
+            if (graph.linkSrc[l] >= 0)
+                links++;
+        }
+        return String.format("%d partitions, %d of %d links cut, imbalance %.3f", parts, cutLinks, links,
+                imbalance());
+    }
+
+    /** Display colour of {@code part}, as 0xRRGGBB. */
+    public static int rgb(int part) {
+        int c = PALETTE[part % PALETTE.length];
+        for (int round = part / PALETTE.length % 3; round > 0; round--)
+            c = (c >> 1) & 0x7f7f7f;
+        return c;
+    }
+
+    /** {@link #rgb} as {@code #rrggbb}, the form NAM and Tk take. */
+    public static String hex(int part) {
+        return String.format("#%06x", rgb(part));
+    }
+}
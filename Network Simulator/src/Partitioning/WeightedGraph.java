@@ -0,0 +1,179 @@
+package Partitioning;
+
+import Components.CompactGraph;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Undirected graph with vertex and edge weights in CSR form, the shape the
+ * partitioner works on at every level: vertex u's neighbours are
+ * {@code adj[start[u]] .. adj[start[u + 1] - 1]}, each with its edge weight
+ * in {@code weight}. Each edge is listed from both ends; there are no self
+ * loops, and parallel links are merged into one edge of their total weight.
+ */
+final class WeightedGraph {
+    final int n;
+    final int[] start, adj;
+    final long[] weight;
+    final long[] vertexWeight;
+    final long totalWeight;
+
+    WeightedGraph(int n, int[] start, int[] adj, long[] weight, long[] vertexWeight) {
+        this.n = n;
+        this.start = start;
+        this.adj = adj;
+        this.weight = weight;
+        this.vertexWeight = vertexWeight;
+        long total = 0;
+        for (long w : vertexWeight)
+            total += w;
+        this.totalWeight = total;
+    }
+
+    /** The graph of {@code g}; null weights count 1 for every node or link. */
+    static WeightedGraph of(CompactGraph g, int[] nodeWeight, int[] linkWeight) {
+        int n = g.nodeCount;
+        long[] vw = new long[n];
+        for (int u = 0; u < n; u++)
+            vw[u] = nodeWeight == null ? 1 : Math.max(0, nodeWeight[u]);
+        Builder b = new Builder(n, g.adjStart[n]);
+        for (int u = 0; u < n; u++) {
+            for (int e = g.adjStart[u]; e < g.adjStart[u + 1]; e++) {
+                int l = g.adjLink[e];
+                if (g.linkSrc[l] >= 0)
+                    b.edge(g.adjNode[e], linkWeight == null ? 1 : Math.max(0, linkWeight[l]));
+            }
+            b.next();
+        }
+        return b.build(vw);
+    }
+
+    /** Adds the edges of one vertex after another, merging repeats. */
+    private static final class Builder {
+        final int[] start;
+        final int[] marker; // position of a neighbour in the current vertex's list, + 1
+        int[] adj;
+        long[] weight;
+        int vertex, size, from;
+
+        Builder(int n, int edges) {
+            start = new int[n + 1];
+            marker = new int[n];
+            adj = new int[Math.max(16, edges)];
+            weight = new long[adj.length];
+        }
+
+        void edge(int v, long w) {
+            if (v == vertex)
+                return;
+            int at = marker[v] - 1;
+            if (at >= from) {
+                weight[at] += w;
+                return;
+            }
+            if (size == adj.length) {
+                adj = Arrays.copyOf(adj, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+            }
+            adj[size] = v;
+            weight[size] = w;
+            marker[v] = ++size;
+        }
+
+        void next() {
+            start[++vertex] = size;
+            from = size;
+        }
+
+        WeightedGraph build(long[] vertexWeight) {
+            return new WeightedGraph(vertexWeight.length, start, Arrays.copyOf(adj, size),
+                    Arrays.copyOf(weight, size), vertexWeight);
+        }
+    }
+
+    /**
+     * Coarser graph from a heavy-edge matching: vertices are visited in random
+     * order and each unmatched one is merged with the unmatched neighbour it
+     * shares the heaviest edge with. Merged vertices no heavier than
+     * {@code maxVertexWeight} keep the coarse levels balanceable. Fills
+     * {@code coarseOf} with each vertex's coarse vertex.
+     */
+    WeightedGraph coarsen(SplittableRandom random, long maxVertexWeight, int[] coarseOf) {
+        int[] match = new int[n];
+        Arrays.fill(match, -1);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        for (int u : order) {
+            if (match[u] >= 0)
+                continue;
+            int best = u;
+            long bestWeight = -1;
+            for (int e = start[u]; e < start[u + 1]; e++) {
+                int v = adj[e];
+                if (match[v] < 0 && weight[e] > bestWeight && vertexWeight[u] + vertexWeight[v] <= maxVertexWeight) {
+                    best = v;
+                    bestWeight = weight[e];
+                }
+            }
+            match[u] = best;
+            match[best] = u;
+        }
+
+        int cn = 0;
+        Arrays.fill(coarseOf, -1);
+        for (int u = 0; u < n; u++) {
+            if (coarseOf[u] < 0) {
+                coarseOf[u] = cn;
+                coarseOf[match[u]] = cn;
+                cn++;
+            }
+        }
+        long[] cw = new long[cn];
+        Builder b = new Builder(cn, adj.length);
+        for (int u = 0; u < n; u++) {
+            int c = coarseOf[u];
+            if (match[u] < u)
+                continue; // handled with its partner
+            b.vertex = c;
+            cw[c] = vertexWeight[u];
+            for (int e = start[u]; e < start[u + 1]; e++)
+                b.edge(coarseOf[adj[e]], weight[e]);
+            int v = match[u];
+            if (v != u) {
+                cw[c] += vertexWeight[v];
+                for (int e = start[v]; e < start[v + 1]; e++)
+                    b.edge(coarseOf[adj[e]], weight[e]);
+            }
+            b.next();
+        }
+        return b.build(cw);
+    }
+
+    /** The subgraph of the vertices with {@code side[u] == s}, numbered in order; fills {@code index}. */
+    WeightedGraph subgraph(int[] side, int s, int[] index) {
+        int count = 0;
+        for (int u = 0; u < n; u++)
+            index[u] = side[u] == s ? count++ : -1;
+        long[] vw = new long[count];
+        Builder b = new Builder(count, 0);
+        for (int u = 0; u < n; u++) {
+            if (index[u] < 0)
+                continue;
+            vw[index[u]] = vertexWeight[u];
+            for (int e = start[u]; e < start[u + 1]; e++) {
+                if (index[adj[e]] >= 0)
+                    b.edge(index[adj[e]], weight[e]);
+            }
+            b.next();
+        }
+        return b.build(vw);
+    }
+}
@@ -0,0 +1,524 @@
+package Project;
+
+import Components.CompactGraph;
+import Components.Link;
+import Partitioning.Partition;
+import UI.RoutingConfigDialog.TrafficFlow;
+import UI.SimulationConfigDialog.SimulationConfig;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads and writes project files (.nsp): the topology, the simulation
+ * configuration and the traffic flows.
+ *
+ * Layout, little-endian: the magic "NSPJ", an int format version, then
+ * sections of {int tag, long length, payload}. Node and link sections are
+ * column arrays (all ids, then all x, ...) so they decode with bulk copies out
+ * of one read buffer. Readers skip sections with unknown tags, so newer
+ * files still open as long as the format version is supported.
+ */
+public class ProjectFile {
+
+    public static final String EXTENSION = "nsp";
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x4A50534E; // "NSPJ" read as a little-endian int
+    private static final int NODES = 1;
+    private static final int LINKS = 2;
+    private static final int CONFIG = 3;
+    private static final int FLOWS = 4;
+    private static final int LINK_PARAMETERS = 5;
+    private static final int PARTITION = 6;
+
+    /** What a project file holds. The config and partition are null when none was saved. */
+    public static class Contents {
+        public CompactGraph graph;
+        public SimulationConfig config;
+        public List<TrafficFlow> flows = new ArrayList<>();
+        /** Split of the topology for parallel and distributed runs, by node id. */
+        public Partition partition;
+
+        public Contents(CompactGraph graph, SimulationConfig config, List<TrafficFlow> flows) {
+            this.graph = graph;
+            this.config = config;
+            if (flows != null)
+                this.flows = flows;
+        }
+    }
+
+    // ----- Binary -----
+
+    public static void save(File file, Contents project) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        boolean saved = false;
+        try {
+            try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                SectionWriter out = new SectionWriter(ch);
+                out.buf.putInt(MAGIC).putInt(FORMAT_VERSION);
+
+                CompactGraph g = project.graph;
+                out.begin(NODES, 4 + 16L * g.nodeCount);
+                out.buf.putInt(g.nodeCount);
+                out.putLongs(g.nodeIds, g.nodeCount);
+                out.putInts(g.nodeX, g.nodeCount);
+                out.putInts(g.nodeY, g.nodeCount);
+
+                out.begin(LINKS, 4 + 16L * g.linkCount);
+                out.buf.putInt(g.linkCount);
+                out.putLongs(g.linkIds, g.linkCount);
+                out.putInts(g.linkSrc, g.linkCount);
+                out.putInts(g.linkDst, g.linkCount);
+
+                if (g.linkProfile != null) {
+                    // Profile table (bandwidth, delay, queue limit, queue type columns), then one profile per link.
+                    int p = g.profileBandwidth.length;
+                    out.begin(LINK_PARAMETERS, 8 + 21L * p + 4L * g.linkCount);
+                    out.buf.putInt(p);
+                    out.putDoubles(g.profileBandwidth, p);
+                    out.putDoubles(g.profileDelay, p);
+                    out.putInts(g.profileQueueLimit, p);
+                    out.putBytes(g.profileQueueType, p);
+                    out.buf.putInt(g.linkCount);
+                    out.putInts(g.linkProfile, g.linkCount);
+                }
+                if (project.partition != null) {
+                    int[] partOf = project.partition.on(g).partOf;
+                    out.begin(PARTITION, 8 + 4L * g.nodeCount);
+                    out.putInts(new int[] { project.partition.parts, g.nodeCount }, 2);
+                    out.putInts(partOf, g.nodeCount);
+                }
+                if (project.config != null)
+                    out.putSection(CONFIG, encodeConfig(project.config));
+                out.putSection(FLOWS, encodeFlows(project.flows));
+                out.flush();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            saved = true;
+        } finally {
+            if (!saved)
+                tmp.delete(); // leave no half-written file behind
+        }
+    }
+
+    public static Contents load(File file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer header = read(ch, 0, 8, null);
+            if (size < 8 || header.getInt() != MAGIC)
+                throw new IOException(file.getName() + " is not a Network Simulator project file");
+            int version = header.getInt();
+            if (version > FORMAT_VERSION)
+                throw new IOException("Project file format " + version + " is newer than this version supports ("
+                        + FORMAT_VERSION + ")");
+
+            long[] nodeIds = new long[0], linkIds = new long[0];
+            int[] nodeX = new int[0], nodeY = new int[0], linkSrc = new int[0], linkDst = new int[0];
+            SimulationConfig config = null;
+            List<TrafficFlow> flows = new ArrayList<>();
+            int[] linkProfile = null;
+            double[] profileBandwidth = null, profileDelay = null;
+            byte[] profileQueueType = null;
+            int[] profileQueueLimit = null;
+            int parts = 0;
+            int[] partOf = null;
+
+            // Sections are read into one buffer, grown to the largest, and copied out of it.
+            ByteBuffer buffer = null;
+            long pos = 8;
+            while (pos < size) {
+                if (size - pos < 12)
+                    throw new IOException("Truncated project file");
+                ByteBuffer sh = read(ch, pos, 12, null);
+                int tag = sh.getInt();
+                long length = sh.getLong();
+                pos += 12;
+                if (length < 0 || length > size - pos)
+                    throw new IOException("Truncated project file");
+                if (tag < NODES || tag > PARTITION) {
+                    pos += length; // written by a newer version; not needed here
+                    continue;
+                }
+                if (length > Integer.MAX_VALUE)
+                    throw new IOException("Project section too large: " + length + " bytes");
+                ByteBuffer b = buffer = read(ch, pos, (int) length, buffer);
+                try {
+                    switch (tag) {
+                        case NODES -> {
+                            int n = count(b, 16);
+                            nodeIds = new long[n];
+                            nodeX = new int[n];
+                            nodeY = new int[n];
+                            b.asLongBuffer().get(nodeIds);
+                            b.position(b.position() + 8 * n);
+                            b.asIntBuffer().get(nodeX);
+                            b.position(b.position() + 4 * n);
+                            b.asIntBuffer().get(nodeY);
+                        }
+                        case LINKS -> {
+                            int m = count(b, 16);
+                            linkIds = new long[m];
+                            linkSrc = new int[m];
+                            linkDst = new int[m];
+                            b.asLongBuffer().get(linkIds);
+                            b.position(b.position() + 8 * m);
+                            b.asIntBuffer().get(linkSrc);
+                            b.position(b.position() + 4 * m);
+                            b.asIntBuffer().get(linkDst);
+                        }
+                        case CONFIG -> config = decodeConfig(b);
+                        case FLOWS -> flows = decodeFlows(b);
+                        case LINK_PARAMETERS -> {
+                            int p = count(b, 21);
+                            profileBandwidth = new double[p];
+                            profileDelay = new double[p];
+                            profileQueueLimit = new int[p];
+                            profileQueueType = new byte[p];
+                            b.asDoubleBuffer().get(profileBandwidth);
+                            b.position(b.position() + 8 * p);
+                            b.asDoubleBuffer().get(profileDelay);
+                            b.position(b.position() + 8 * p);
+                            b.asIntBuffer().get(profileQueueLimit);
+                            b.position(b.position() + 4 * p);
+                            b.get(profileQueueType);
+                            linkProfile = new int[count(b, 4)];
+                            b.asIntBuffer().get(linkProfile);
+                            for (int v : linkProfile) {
+                                if (v < 0 || v >= p)
+                                    throw new IOException("Corrupt project section " + tag);
+                            }
+                        }
+                        case PARTITION -> {
+                            parts = b.getInt();
+                            partOf = new int[count(b, 4)];
+                            b.asIntBuffer().get(partOf);
+                            for (int v : partOf) {
+                                if (v < -1 || v >= parts)
+                                    throw new IOException("Corrupt project section " + tag);
+                            }
+                        }
+                        default -> {
+                        }
+                    }
+                } catch (BufferUnderflowException e) {
+                    throw new IOException("Corrupt project section " + tag);
+                }
+                pos += length;
+            }
+
+            int n = nodeIds.length;
+            for (int l = 0; l < linkIds.length; l++) {
+                int a = linkSrc[l], c = linkDst[l];
+                boolean dangling = a == -1 && c == -1;
+                if (!dangling && (a < 0 || a >= n || c < 0 || c >= n))
+                    throw new IOException("Link " + linkIds[l] + " refers to a missing node");
+            }
+            CompactGraph graph = CompactGraph.of(nodeIds, nodeX, nodeY, linkIds, linkSrc, linkDst);
+            if (linkProfile != null) {
+                if (linkProfile.length != linkIds.length)
+                    throw new IOException("Link parameters do not match the links");
+                graph = graph.withLinkParameters(linkProfile, profileBandwidth, profileDelay, profileQueueType,
+                        profileQueueLimit);
+            }
+            Contents project = new Contents(graph, config, flows);
+            if (partOf != null && partOf.length == n)
+                project.partition = new Partition(graph, parts, partOf, null, null);
+            return project;
+        }
+    }
+
+    /** Reads {@code len} bytes at {@code pos}, into {@code reuse} if it is large enough. */
+    private static ByteBuffer read(FileChannel ch, long pos, int len, ByteBuffer reuse) throws IOException {
+        ByteBuffer b = reuse != null && reuse.capacity() >= len ? reuse.clear().limit(len)
+                : ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+        while (b.hasRemaining()) {
+            if (ch.read(b, pos + b.position()) < 0)
+                break;
+        }
+        b.flip();
+        return b;
+    }
+
+    /** Reads an element count and checks the section holds that many records of {@code recordSize} bytes. */
+    private static int count(ByteBuffer b, int recordSize) throws IOException {
+        int n = b.getInt();
+        if (n < 0 || (long) n * recordSize > b.remaining())
+            throw new IOException("Corrupt project section");
+        return n;
+    }
+
+    private static byte[] encodeConfig(SimulationConfig c) {
+        Map<String, String> map = configToMap(c);
+        ByteBuffer b = ByteBuffer.allocate(4 + map.size() * 8 + utf8Length(map)).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            putString(b, e.getKey());
+            putString(b, e.getValue());
+        }
+        return b.array();
+    }
+
+    private static SimulationConfig decodeConfig(ByteBuffer b) throws IOException {
+        int n = count(b, 8);
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++)
+            map.put(getString(b), getString(b));
+        return configFromMap(map);
+    }
+
+    private static byte[] encodeFlows(List<TrafficFlow> flows) {
+        int size = 4;
+        for (TrafficFlow f : flows)
+            size += 36 + f.flowType.getBytes(StandardCharsets.UTF_8).length;
+        ByteBuffer b = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(flows.size());
+        for (TrafficFlow f : flows) {
+            b.putLong(f.srcNodeId).putLong(f.dstNodeId).putDouble(f.startTime).putDouble(f.stopTime);
+            putString(b, f.flowType);
+        }
+        return b.array();
+    }
+
+    private static List<TrafficFlow> decodeFlows(ByteBuffer b) throws IOException {
+        int n = count(b, 36);
+        List<TrafficFlow> flows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long src = b.getLong();
+            long dst = b.getLong();
+            double start = b.getDouble();
+            double stop = b.getDouble();
+            flows.add(new TrafficFlow(src, dst, getString(b), start, stop));
+        }
+        return flows;
+    }
+
+    private static int utf8Length(Map<String, String> map) {
+        int n = 0;
+        for (Map.Entry<String, String> e : map.entrySet())
+            n += e.getKey().getBytes(StandardCharsets.UTF_8).length + e.getValue().getBytes(StandardCharsets.UTF_8).length;
+        return n;
+    }
+
+    private static void putString(ByteBuffer b, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        b.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer b) throws IOException {
+        int len = b.getInt();
+        if (len < 0 || len > b.remaining())
+            throw new IOException("Corrupt project section");
+        byte[] bytes = new byte[len];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Buffered section writer; large arrays go out through a fixed 1 MB buffer. */
+    private static final class SectionWriter {
+        final FileChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        SectionWriter(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void begin(int tag, long length) throws IOException {
+            ensure(12);
+            buf.putInt(tag).putLong(length);
+        }
+
+        void putSection(int tag, byte[] payload) throws IOException {
+            begin(tag, payload.length);
+            int off = 0;
+            while (off < payload.length) {
+                ensure(1);
+                int len = Math.min(buf.remaining(), payload.length - off);
+                buf.put(payload, off, len);
+                off += len;
+            }
+        }
+
+        void putLongs(long[] a, int n) throws IOException {
+            for (int off = 0; off < n;) {
+                ensure(8);
+                int len = Math.min(buf.remaining() / 8, n - off);
+                buf.asLongBuffer().put(a, off, len);
+                buf.position(buf.position() + 8 * len);
+                off += len;
+            }
+        }
+
+        void putDoubles(double[] a, int n) throws IOException {
+            for (int off = 0; off < n;) {
+                ensure(8);
+                int len = Math.min(buf.remaining() / 8, n - off);
+                buf.asDoubleBuffer().put(a, off, len);
+                buf.position(buf.position() + 8 * len);
+                off += len;
+            }
+        }
+
+        void putBytes(byte[] a, int n) throws IOException {
+            for (int off = 0; off < n;) {
+                ensure(1);
+                int len = Math.min(buf.remaining(), n - off);
+                buf.put(a, off, len);
+                off += len;
+            }
+        }
+
+        void putInts(int[] a, int n) throws IOException {
+            for (int off = 0; off < n;) {
+                ensure(4);
+                int len = Math.min(buf.remaining() / 4, n - off);
+                buf.asIntBuffer().put(a, off, len);
+                buf.position(buf.position() + 4 * len);
+                off += len;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes)
+                flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining())
+                ch.write(buf);
+            buf.clear();
+        }
+    }
+
+    // ----- Config mapping -----
+
+    static Map<String, String> configToMap(SimulationConfig c) {
+        Map<String, String> m = new LinkedHashMap<>();
+        putIfSet(m, "engine", c.engine);
+        m.put("threads", Integer.toString(c.threads));
+        m.put("processes", Integer.toString(c.processes));
+        m.put("simTime", Double.toString(c.simTime));
+        putIfSet(m, "bandwidth", c.bandwidth);
+        putIfSet(m, "delay", c.delay);
+        putIfSet(m, "protocol", c.protocol);
+        putIfSet(m, "queueType", c.queueType);
+        putIfSet(m, "routing", c.routing);
+        putIfSet(m, "application", c.application);
+        m.put("packetSize", Integer.toString(c.packetSize));
+        putIfSet(m, "dataRate", c.dataRate);
+        m.put("enableTracing", Boolean.toString(c.enableTracing));
+        m.put("enableNam", Boolean.toString(c.enableNam));
+        m.put("enableDataset", Boolean.toString(c.enableDataset));
+        m.put("datasetPacketCount", Integer.toString(c.datasetPacketCount));
+        putIfSet(m, "datasetScenario", c.datasetScenario);
+        m.put("seed", Long.toString(c.seed));
+        return m;
+    }
+
+    private static void putIfSet(Map<String, String> m, String key, String value) {
+        if (value != null)
+            m.put(key, value);
+    }
+
+    /** Unknown keys are ignored and missing ones keep their defaults. */
+    static SimulationConfig configFromMap(Map<String, String> m) throws IOException {
+        SimulationConfig c = new SimulationConfig();
+        try {
+            for (Map.Entry<String, String> e : m.entrySet()) {
+                String v = e.getValue();
+                switch (e.getKey()) {
+                    case "engine" -> c.engine = v;
+                    case "threads" -> c.threads = Integer.parseInt(v);
+                    case "processes" -> c.processes = Integer.parseInt(v);
+                    case "simTime" -> c.simTime = Double.parseDouble(v);
+                    case "bandwidth" -> c.bandwidth = v;
+                    case "delay" -> c.delay = v;
+                    case "protocol" -> c.protocol = v;
+                    case "queueType" -> c.queueType = v;
+                    case "routing" -> c.routing = v;
+                    case "application" -> c.application = v;
+                    case "packetSize" -> c.packetSize = Integer.parseInt(v);
+                    case "dataRate" -> c.dataRate = v;
+                    case "enableTracing" -> c.enableTracing = Boolean.parseBoolean(v);
+                    case "enableNam" -> c.enableNam = Boolean.parseBoolean(v);
+                    case "enableDataset" -> c.enableDataset = Boolean.parseBoolean(v);
+                    case "datasetPacketCount" -> c.datasetPacketCount = Integer.parseInt(v);
+                    case "datasetScenario" -> c.datasetScenario = v;
+                    case "seed" -> c.seed = Long.parseLong(v);
+                    default -> {
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid configuration value: " + e.getMessage());
+        }
+        return c;
+    }
+
+    // ----- JSON -----
+
+    /**
+     * Writes the project as JSON for other tools. The document is streamed,
+     * so large topologies never exist as one JSONObject in memory.
+     */
+    public static void exportJson(File file, Contents project) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            CompactGraph g = project.graph;
+            w.write("{\n  \"format\": \"network-simulator-project\",\n  \"version\": " + FORMAT_VERSION + ",\n");
+            w.write("  \"nodes\": [");
+            for (int i = 0; i < g.nodeCount; i++) {
+                w.write(i == 0 ? "\n    " : ",\n    ");
+                w.write("{\"id\": " + g.nodeIds[i] + ", \"x\": " + g.nodeX[i] + ", \"y\": " + g.nodeY[i] + "}");
+            }
+            w.write("\n  ],\n  \"links\": [");
+            boolean first = true;
+            for (int l = 0; l < g.linkCount; l++) {
+                if (g.linkSrc[l] < 0)
+                    continue;
+                w.write(first ? "\n    " : ",\n    ");
+                first = false;
+                w.write("{\"id\": " + g.linkIds[l] + ", \"source\": " + g.nodeIds[g.linkSrc[l]] + ", \"target\": "
+                        + g.nodeIds[g.linkDst[l]]);
+                if (!Double.isNaN(g.bandwidth(l)))
+                    w.write(", \"bandwidth\": " + g.bandwidth(l));
+                if (!Double.isNaN(g.delay(l)))
+                    w.write(", \"delay\": " + g.delay(l));
+                if (g.queueType(l) >= 0)
+                    w.write(", \"queueType\": \"" + Link.QUEUE_TYPES[g.queueType(l)] + "\"");
+                if (g.queueLimit(l) >= 0)
+                    w.write(", \"queueLimit\": " + g.queueLimit(l));
+                w.write("}");
+            }
+            w.write("\n  ],\n");
+            if (project.config != null)
+                w.write("  \"config\": " + new JSONObject(configToMap(project.config)) + ",\n");
+            w.write("  \"flows\": [");
+            for (int i = 0; i < project.flows.size(); i++) {
+                TrafficFlow f = project.flows.get(i);
+                w.write(i == 0 ? "\n    " : ",\n    ");
+                w.write(String.format(Locale.ROOT, "{\"source\": %d, \"target\": %d, \"type\": %s, \"start\": %s, \"stop\": %s}",
+                        f.srcNodeId, f.dstNodeId, JSONObject.quote(f.flowType), Double.toString(f.startTime),
+                        Double.toString(f.stopTime)));
+            }
+            w.write("\n  ]\n}\n");
+        }
+    }
+}
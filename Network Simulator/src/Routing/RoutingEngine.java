@@ -0,0 +1,314 @@
+package Routing;
+
+import Components.CompactGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Shortest-path routing over a CompactGraph, one destination at a time: a
+ * BFS (fewest hops) or Dijkstra (lowest delay) from the destination gives
+ * every node's distance to it. Links are duplex with the same delay both
+ * ways, so that is also each node's distance from the destination's side.
+ * A node's next hops are the neighbours one link closer; together they are
+ * the equal-cost multipath set, and the first in adjacency order is the one
+ * stored, which makes the result independent of thread scheduling.
+ *
+ * Rows are computed on a thread pool and kept for the last graph, metric
+ * and default delay asked for, so with an unchanged topology (the same
+ * CompactGraph) only destinations not asked for before are computed. Once
+ * the kept rows hold more than MAX_CACHED_ENTRIES entries, the least
+ * recently used are dropped; tables already returned keep theirs.
+ */
+public final class RoutingEngine {
+
+    public enum Metric {
+        HOPS("Precomputed (fewest hops)"),
+        /** Link delays in whole microseconds; links shorter than 1 us count as 1 us. */
+        DELAY("Precomputed (lowest delay)");
+
+        /** How the choice is shown and stored in {@code SimulationConfig.routing}. */
+        public final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        /** The metric with this label, or null (routing left to the simulator). */
+        public static Metric of(String label) {
+            for (Metric m : values()) {
+                if (m.label.equals(label))
+                    return m;
+            }
+            return null;
+        }
+    }
+
+    /** Label of the choice that leaves route computation to NS-2. */
+    public static final String SIMULATOR_ROUTING = "NS-2 (computed at startup)";
+
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    private static final long MAX_CACHED_ENTRIES = 1L << 24;
+    /** Below this many nodes times rows the pool costs more than it saves. */
+    private static final long PARALLEL_WORK = 1L << 16;
+
+    private CompactGraph graph;
+    private Metric metric;
+    private double defaultDelay;
+    private int[] weight;
+    private final LinkedHashMap<Integer, RoutingTable.Row> rows = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Routes toward {@code destinations} (node indices; null for every node).
+     * {@code defaultDelay} is the delay in seconds of links without their own.
+     */
+    public synchronized RoutingTable table(CompactGraph g, Metric metric, double defaultDelay, int[] destinations)
+            throws InterruptedException {
+        if (g != graph || metric != this.metric || Double.compare(defaultDelay, this.defaultDelay) != 0) {
+            rows.clear();
+            graph = g;
+            this.metric = metric;
+            this.defaultDelay = defaultDelay;
+            weight = weights(g, metric, defaultDelay);
+        }
+        int[] dst = destinations == null ? identity(g.nodeCount)
+                : Arrays.stream(destinations).filter(d -> d >= 0 && d < g.nodeCount).sorted().distinct().toArray();
+
+        RoutingTable.Row[] rowOf = new RoutingTable.Row[g.nodeCount];
+        int[] missing = new int[dst.length];
+        int count = 0;
+        for (int d : dst) {
+            rowOf[d] = rows.get(d);
+            if (rowOf[d] == null)
+                missing[count++] = d;
+        }
+        compute(g, weight, Arrays.copyOf(missing, count), rowOf);
+        for (int i = 0; i < count; i++)
+            rows.put(missing[i], rowOf[missing[i]]);
+        trim(g.nodeCount);
+        return new RoutingTable(g, metric, weight, rowOf, dst);
+    }
+
+    private void trim(int n) {
+        long limit = Math.max(1, MAX_CACHED_ENTRIES / Math.max(1, n));
+        Iterator<Map.Entry<Integer, RoutingTable.Row>> it = rows.entrySet().iterator();
+        while (rows.size() > limit && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static int[] identity(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++)
+            a[i] = i;
+        return a;
+    }
+
+    /** Per-link costs, or null when every link costs one hop. */
+    private static int[] weights(CompactGraph g, Metric metric, double defaultDelay) {
+        if (metric == Metric.HOPS)
+            return null;
+        int[] w = new int[g.linkCount];
+        for (int l = 0; l < g.linkCount; l++) {
+            double d = g.delay(l);
+            double us = (Double.isNaN(d) ? defaultDelay : d) * 1e6;
+            w[l] = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, Math.round(us)));
+        }
+        return w;
+    }
+
+    /** Fills {@code rowOf} for each of {@code dst}, splitting the work over the pool when it is large. */
+    private void compute(CompactGraph g, int[] weight, int[] dst, RoutingTable.Row[] rowOf)
+            throws InterruptedException {
+        if (dst.length == 0)
+            return;
+        int workers = (int) Math.max(1, Math.min(Math.min(threads, dst.length),
+                (long) dst.length * (g.nodeCount + g.linkCount) / PARALLEL_WORK));
+        if (workers == 1) {
+            Search s = new Search(g, weight);
+            for (int d : dst) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                rowOf[d] = s.row(d);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "routing");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            int chunk = (dst.length + workers * 4 - 1) / (workers * 4);
+            for (int from = 0; from < dst.length; from += chunk) {
+                int lo = from, hi = Math.min(dst.length, from + chunk);
+                tasks.add(() -> {
+                    Search s = new Search(g, weight);
+                    for (int i = lo; i < hi; i++) {
+                        if (Thread.interrupted())
+                            throw new InterruptedException();
+                        rowOf[dst[i]] = s.row(dst[i]); // distinct slots per task
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Route computation failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** One worker's scratch space: BFS queue or Dijkstra heap, reused across rows. */
+    private static final class Search {
+        final CompactGraph g;
+        final int[] weight;
+        final boolean wide;
+        final int[] queue;
+        long[] heap = new long[64]; // distance << 32 | node, lazily deleted
+        int[] via; // for nodes at MAX_DISTANCE, the neighbour that reached them first; allocated when needed
+
+        Search(CompactGraph g, int[] weight) {
+            this.g = g;
+            this.weight = weight;
+            int maxDegree = 0;
+            for (int i = 0; i < g.nodeCount; i++)
+                maxDegree = Math.max(maxDegree, g.degree(i));
+            this.wide = maxDegree >= RoutingTable.Row.NONE;
+            this.queue = weight == null ? new int[g.nodeCount] : null;
+        }
+
+        RoutingTable.Row row(int dst) {
+            int n = g.nodeCount;
+            int[] dist = new int[n];
+            Arrays.fill(dist, RoutingTable.UNREACHABLE);
+            dist[dst] = 0;
+            if (weight == null)
+                bfs(dist, dst);
+            else
+                dijkstra(dist, dst);
+
+            char[] slot = wide ? null : new char[n];
+            int[] wideSlot = wide ? new int[n] : null;
+            for (int u = 0; u < n; u++) {
+                int s = -1;
+                if (u != dst && dist[u] == RoutingTable.MAX_DISTANCE) {
+                    // Sums are clamped there, so follow the search tree instead of comparing them.
+                    int start = g.adjStart[u];
+                    for (int e = start; s < 0 && e < g.adjStart[u + 1]; e++) {
+                        if (g.adjNode[e] == via[u])
+                            s = e - start;
+                    }
+                } else if (u != dst && dist[u] != RoutingTable.UNREACHABLE) {
+                    int start = g.adjStart[u];
+                    for (int e = start; e < g.adjStart[u + 1]; e++) {
+                        int v = g.adjNode[e];
+                        int w = weight == null ? 1 : weight[g.adjLink[e]];
+                        if (dist[v] != RoutingTable.UNREACHABLE && (long) dist[v] + w == dist[u]) {
+                            s = e - start;
+                            break;
+                        }
+                    }
+                }
+                if (wide)
+                    wideSlot[u] = s;
+                else
+                    slot[u] = s < 0 ? RoutingTable.Row.NONE : (char) s;
+            }
+            return new RoutingTable.Row(dist, slot, wideSlot);
+        }
+
+        private void bfs(int[] dist, int dst) {
+            int head = 0, tail = 0;
+            queue[tail++] = dst;
+            while (head < tail) {
+                int u = queue[head++];
+                int d = dist[u] + 1;
+                for (int e = g.adjStart[u]; e < g.adjStart[u + 1]; e++) {
+                    int v = g.adjNode[e];
+                    if (dist[v] == RoutingTable.UNREACHABLE) {
+                        dist[v] = d;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+        }
+
+        private void dijkstra(int[] dist, int dst) {
+            int size = 0;
+            heap[size++] = dst;
+            while (size > 0) {
+                long top = heap[0];
+                heap[0] = heap[--size];
+                siftDown(size);
+                int u = (int) top;
+                int d = (int) (top >>> 32);
+                if (d != dist[u])
+                    continue; // stale entry
+                for (int e = g.adjStart[u]; e < g.adjStart[u + 1]; e++) {
+                    int v = g.adjNode[e];
+                    long nd = Math.min((long) d + weight[g.adjLink[e]], RoutingTable.MAX_DISTANCE);
+                    if (nd < dist[v]) {
+                        dist[v] = (int) nd;
+                        if (nd == RoutingTable.MAX_DISTANCE) {
+                            // u is settled, so these links form a tree that leads back to exact distances.
+                            if (via == null)
+                                via = new int[g.nodeCount];
+                            via[v] = u;
+                        }
+                        if (size == heap.length)
+                            heap = Arrays.copyOf(heap, size * 2);
+                        siftUp(size++, nd << 32 | v);
+                    }
+                }
+            }
+        }
+
+        private void siftUp(int i, long key) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= key)
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = key;
+        }
+
+        private void siftDown(int size) {
+            if (size == 0)
+                return;
+            long key = heap[0];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && heap[child + 1] < heap[child])
+                    child++;
+                if (heap[child] >= key)
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = key;
+        }
+    }
+}
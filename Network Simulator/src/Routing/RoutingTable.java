@@ -0,0 +1,136 @@
+package Routing;
+
+import Components.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * Routes toward a set of destination nodes, as computed by
+ * {@link RoutingEngine}. For each destination there is one row holding every
+ * node's distance to it and the adjacency slot of the node's first next hop;
+ * slots are stored as offsets into the node's adjacency list, in chars when
+ * no node has 65535 or more links, so a row costs 6 bytes per node.
+ *
+ * Distances are in hops or, for {@link RoutingEngine.Metric#DELAY}, whole
+ * microseconds; longer routes than {@link #MAX_DISTANCE} (about 35 minutes
+ * of delay) are reported at that distance. Tables are immutable and safe to
+ * share between threads.
+ */
+public final class RoutingTable {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    /** Distance of every node whose route is at least this long; it still has a next hop. */
+    public static final int MAX_DISTANCE = UNREACHABLE - 1;
+
+    public final CompactGraph graph;
+    public final RoutingEngine.Metric metric;
+    private final int[] weight; // per link; null for hop count
+    private final Row[] rowOf;  // by destination node index
+    private final int[] destinations;
+
+    /** Distances and first next hops of every node toward one destination. */
+    static final class Row {
+        static final char NONE = 0xFFFF;
+
+        final int[] dist;
+        final char[] slot;     // offset from adjStart, or NONE
+        final int[] wideSlot;  // instead of slot for nodes of very high degree; -1 for none
+
+        Row(int[] dist, char[] slot, int[] wideSlot) {
+            this.dist = dist;
+            this.slot = slot;
+            this.wideSlot = wideSlot;
+        }
+
+        int slot(int node) {
+            if (slot != null)
+                return slot[node] == NONE ? -1 : slot[node];
+            return wideSlot[node];
+        }
+    }
+
+    RoutingTable(CompactGraph graph, RoutingEngine.Metric metric, int[] weight, Row[] rowOf, int[] destinations) {
+        this.graph = graph;
+        this.metric = metric;
+        this.weight = weight;
+        this.rowOf = rowOf;
+        this.destinations = destinations;
+    }
+
+    /** Node indices of the destinations this table has routes to, ascending. */
+    public int[] destinations() {
+        return destinations.clone();
+    }
+
+    public boolean has(int dst) {
+        return dst >= 0 && dst < rowOf.length && rowOf[dst] != null;
+    }
+
+    private Row row(int dst) {
+        if (!has(dst))
+            throw new IllegalArgumentException("No routes to node index " + dst + " in this table");
+        return rowOf[dst];
+    }
+
+    /** Distance from {@code node} to {@code dst}, or UNREACHABLE. */
+    public int distance(int node, int dst) {
+        return row(dst).dist[node];
+    }
+
+    /** The link {@code node} forwards on toward {@code dst}; -1 at {@code dst} itself or if unreachable. */
+    public int nextLink(int node, int dst) {
+        int s = row(dst).slot(node);
+        return s < 0 ? -1 : graph.adjLink[graph.adjStart[node] + s];
+    }
+
+    /** The neighbour {@code node} forwards to toward {@code dst}, or -1. */
+    public int nextHop(int node, int dst) {
+        int s = row(dst).slot(node);
+        return s < 0 ? -1 : graph.adjNode[graph.adjStart[node] + s];
+    }
+
+    /**
+     * Every link on a shortest path from {@code node} toward {@code dst}
+     * (the equal-cost multipath set), in adjacency order; the first is
+     * {@link #nextLink}. Empty at {@code dst} itself or if unreachable; only
+     * the first for a node at {@link #MAX_DISTANCE}.
+     */
+    public int[] nextLinks(int node, int dst) {
+        int[] dist = row(dst).dist;
+        if (node == dst || dist[node] == UNREACHABLE)
+            return new int[0];
+        if (dist[node] == MAX_DISTANCE)
+            return new int[] { nextLink(node, dst) };
+        int[] links = new int[graph.degree(node)];
+        int count = 0;
+        for (int e = graph.adjStart[node]; e < graph.adjStart[node + 1]; e++) {
+            int v = graph.adjNode[e];
+            if (dist[v] != UNREACHABLE && (long) dist[v] + weight(graph.adjLink[e]) == dist[node])
+                links[count++] = graph.adjLink[e];
+        }
+        return Arrays.copyOf(links, count);
+    }
+
+    /** Node indices along the route from {@code src} to {@code dst}, both included; null if unreachable. */
+    public int[] path(int src, int dst) {
+        Row row = row(dst);
+        if (row.dist[src] == UNREACHABLE)
+            return null;
+        // Every hop strictly lowers the distance, or at MAX_DISTANCE climbs the search tree, so the walk ends.
+        int[] path = new int[16];
+        int length = 0;
+        for (int u = src; ; u = graph.adjNode[graph.adjStart[u] + row.slot(u)]) {
+            if (length == path.length)
+                path = Arrays.copyOf(path, length * 2);
+            path[length++] = u;
+            if (u == dst)
+                break;
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /** Cost of {@code link} in this table's units. */
+    public int weight(int link) {
+        return weight == null ? 1 : weight[link];
+    }
+}
@@ -0,0 +1,264 @@
+package Simulation;
+
+import java.util.Arrays;
+
+/**
+ * Calendar queue (Brown, 1988): pending events are hashed by time into a
+ * ring of buckets, each one "day" wide, and dequeuing walks the ring like
+ * the days of a calendar, so push and pop cost O(1) on average however
+ * many events are pending. Each bucket is a list kept in time order, with
+ * an event placed after those of equal time, which gives the FIFO order of
+ * {@link Scheduler} without a sequence number; events pushed in time order
+ * are appended at a bucket's tail in constant time. Simulations schedule
+ * many events at exactly the same time, so each run of equal times records
+ * its last entry and an insertion steps over whole runs.
+ *
+ * The ring doubles when it holds more than two events per bucket and halves
+ * below one per two buckets. Each resize sets the bucket width to three
+ * times the average gap between the earliest pending times, leaving out
+ * gaps more than twice the average, as Brown suggests; the times sampled
+ * are distinct, since gaps of zero between tied events would shrink the
+ * width without spreading the runs. A width set during a
+ * burst of closely spaced events is far too narrow for the sparse events
+ * after it, and the other way round, so, as in Oh and Ahn's dynamic
+ * calendar queue, the queue also rebuilds at its current size once the
+ * buckets scanned and entries stepped over beyond the first have averaged
+ * more than a few per operation; the limit is set so that rebuilding costs
+ * at most a fixed fraction of the work it saves. Entries live in primitive
+ * arrays with a free list, so a steady-state run allocates nothing.
+ */
+public final class CalendarQueue implements Scheduler {
+    private static final int MIN_BUCKETS = 16;
+    /** Earliest events whose gaps set the bucket width. */
+    private static final int SAMPLE = 25;
+    private static final int NONE = -1;
+    /** Average excess work per operation that makes the queue re-estimate its width. */
+    private static final int EXCESS_LIMIT = 4;
+
+    private double[] eTime = new double[1024];
+    private long[] eData = new long[1024];
+    private int[] eNext = new int[1024];
+    /** For the first entry of a run of equal times, the last entry of the run. */
+    private int[] eLast = new int[1024];
+    private int used;
+    private int free = NONE;
+
+    private int[] head = new int[MIN_BUCKETS];
+    private int[] tail = new int[MIN_BUCKETS];
+    /** First entry of the run that ends at the tail. */
+    private int[] tailRun = new int[MIN_BUCKETS];
+    private int mask = MIN_BUCKETS - 1;
+    private double width = 1.0;
+    /** Day (time / width) the scan has reached; no pending event is earlier. */
+    private long day;
+    private int size;
+    /** Operations and excess work (extra buckets scanned, entries stepped over) since the last rebuild. */
+    private long operations, excess;
+
+    public CalendarQueue() {
+        Arrays.fill(head, NONE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(head, NONE);
+        used = 0;
+        free = NONE;
+        size = 0;
+        day = 0;
+        operations = excess = 0;
+    }
+
+    private long dayOf(double t) {
+        return (long) (t / width);
+    }
+
+    @Override
+    public void push(double t, long d) {
+        int e = allocate();
+        eTime[e] = t;
+        eData[e] = d;
+        long v = dayOf(t);
+        if (size == 0 || v < day)
+            day = v;
+        insert(e, (int) v & mask);
+        if (++size > 2 * (mask + 1))
+            resize((mask + 1) * 2);
+        else
+            account();
+    }
+
+    /** Rebuilds with a fresh width once excess work has outgrown the cost of doing so. */
+    private void account() {
+        operations++;
+        if (excess > EXCESS_LIMIT * (operations + size + mask + 1))
+            resize(mask + 1);
+    }
+
+    private int allocate() {
+        if (free != NONE) {
+            int e = free;
+            free = eNext[e];
+            return e;
+        }
+        if (used == eTime.length) {
+            eTime = Arrays.copyOf(eTime, used * 2);
+            eData = Arrays.copyOf(eData, used * 2);
+            eNext = Arrays.copyOf(eNext, used * 2);
+            eLast = Arrays.copyOf(eLast, used * 2);
+        }
+        return used++;
+    }
+
+    /** Links entry {@code e} into bucket {@code b} after every entry of equal or earlier time. */
+    private void insert(int e, int b) {
+        double t = eTime[e];
+        int h = head[b];
+        eLast[e] = e;
+        if (h == NONE) {
+            eNext[e] = NONE;
+            head[b] = tail[b] = tailRun[b] = e;
+        } else if (eTime[tail[b]] <= t) {
+            eNext[e] = NONE;
+            eNext[tail[b]] = e;
+            if (eTime[tail[b]] == t)
+                eLast[tailRun[b]] = e;
+            else
+                tailRun[b] = e;
+            tail[b] = e;
+        } else if (t < eTime[h]) {
+            eNext[e] = h;
+            head[b] = e;
+        } else {
+            // Some run has a time after t, so the walk stops before the end.
+            int run = h;
+            int last = eLast[run];
+            while (eTime[eNext[last]] <= t) {
+                run = eNext[last];
+                last = eLast[run];
+                excess++;
+            }
+            if (eTime[run] == t)
+                eLast[run] = e;
+            eNext[e] = eNext[last];
+            eNext[last] = e;
+        }
+    }
+
+    /** Bucket whose head is the next event; the queue must not be empty. */
+    private int next() {
+        int buckets = mask + 1;
+        for (int i = 0; i < buckets; i++) {
+            int b = (int) (day + i) & mask;
+            int h = head[b];
+            if (h != NONE && dayOf(eTime[h]) <= day + i) {
+                day += i;
+                excess += i;
+                return b;
+            }
+        }
+        excess += 2L * buckets;
+        // Nothing within a year of the current day: take the earliest head directly.
+        int best = NONE;
+        for (int b = 0; b < buckets; b++) {
+            int h = head[b];
+            if (h != NONE && (best == NONE || eTime[h] < eTime[head[best]]))
+                best = b;
+        }
+        day = dayOf(eTime[head[best]]);
+        return best;
+    }
+
+    @Override
+    public double peekTime() {
+        return eTime[head[next()]];
+    }
+
+    @Override
+    public long pop() {
+        int b = next();
+        int e = head[b];
+        int after = eNext[e];
+        head[b] = after;
+        if (eLast[e] != e) {
+            eLast[after] = eLast[e];
+            if (tailRun[b] == e)
+                tailRun[b] = after;
+        }
+        long d = eData[e];
+        eNext[e] = free;
+        free = e;
+        if (--size < (mask + 1) / 2 && mask + 1 > MIN_BUCKETS)
+            resize((mask + 1) / 2);
+        else
+            account();
+        return d;
+    }
+
+    private void resize(int buckets) {
+        operations = excess = 0;
+        int[] oldHead = head;
+        double[] sample = new double[SAMPLE + 1];
+        int sampled = 0;
+        for (int h : oldHead) {
+            for (int e = h; e != NONE; e = eNext[e]) {
+                double t = eTime[e];
+                if (sampled == sample.length && t >= sample[sampled - 1])
+                    continue;
+                int i = sampled;
+                while (i > 0 && sample[i - 1] > t)
+                    i--;
+                if (i > 0 && sample[i - 1] == t)
+                    continue;
+                int end = sampled == sample.length ? sampled - 1 : sampled++;
+                System.arraycopy(sample, i, sample, i + 1, end - i);
+                sample[i] = t;
+            }
+        }
+        double w = estimateWidth(sample, sampled);
+        if (w > 0 && Double.isFinite(w))
+            width = w;
+
+        head = new int[buckets];
+        tail = new int[buckets];
+        tailRun = new int[buckets];
+        Arrays.fill(head, NONE);
+        mask = buckets - 1;
+        day = sampled > 0 ? dayOf(sample[0]) : 0;
+        // Equal times share a day and so an old bucket, and move in their order.
+        for (int h : oldHead) {
+            for (int e = h; e != NONE;) {
+                int after = eNext[e];
+                insert(e, (int) dayOf(eTime[e]) & mask);
+                e = after;
+            }
+        }
+    }
+
+    /** Three times the average gap between the sorted sample times, outliers left out; 0 if undefined. */
+    private static double estimateWidth(double[] t, int n) {
+        if (n < 2)
+            return 0;
+        double average = (t[n - 1] - t[0]) / (n - 1);
+        double sum = 0;
+        int count = 0;
+        for (int i = 1; i < n; i++) {
+            double gap = t[i] - t[i - 1];
+            if (gap <= 2 * average) {
+                sum += gap;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : 3 * sum / count;
+    }
+}
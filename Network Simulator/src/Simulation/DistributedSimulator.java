@@ -0,0 +1,457 @@
+package Simulation;
+
+import Project.ProjectFile;
+import UI.SimulationConfigDialog.SimulationConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run of a {@link Simulator} across worker processes: each partition of the
+ * topology is simulated by a {@link SimulationWorker} JVM, started on this
+ * machine, that connects back to this coordinator over a loopback socket.
+ *
+ * Time advances in the same windows as in {@link ParallelSimulator}, bounded
+ * by the smallest propagation delay of a cut link, with one round trip per
+ * window. Each worker runs its events up to the window's end and sends back
+ * the packets leaving its partition, its trace lines and the time of its
+ * next event. The coordinator merges the trace lines into the output and
+ * plans the next window from those times and the arrival times of the
+ * packets in flight, then sends each worker the packets for its partition,
+ * in partition order, with the new window's end. The workers rebuild the model
+ * from the project (topology, config and flows) sent to them and draw the
+ * same random numbers as the threads of a parallel run would, so a run gives
+ * the same results and trace as a threaded run with the same partitions.
+ *
+ * Workers need nothing but the coordinator's address and the run's token,
+ * which they read from stdin, so they could as well run on other machines;
+ * this class only starts them locally.
+ */
+final class DistributedSimulator {
+    /** Extra JVM options for the workers, e.g. "-Xmx2g". */
+    private static final String WORKER_OPTIONS = System.getProperty("simulation.worker.options", "");
+    private static final long CONNECT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final int ACCEPT_POLL_MILLIS = 250;
+    private static final int STDERR_TAIL_LINES = 20;
+
+    private final Simulator model;
+    /** Partition of each node. */
+    final int[] partOf;
+    private final int count;
+    private final double lookahead;
+    private final double stop;
+
+    private final Process[] workers;
+    private final Socket[] sockets;
+    private final DataInputStream[] in;
+    private final DataOutputStream[] out;
+    private final File[] logs;
+    /** Worker being talked to, for error messages. */
+    private int current = -1;
+
+    private DistributedSimulator(Simulator model, int[] partOf, int count, double lookahead) {
+        this.model = model;
+        this.partOf = partOf;
+        this.count = count;
+        this.lookahead = lookahead;
+        this.stop = Math.nextUp(model.simTime);
+        workers = new Process[count];
+        sockets = new Socket[count];
+        in = new DataInputStream[count];
+        out = new DataOutputStream[count];
+        logs = new File[count];
+    }
+
+    /**
+     * A distributed run of {@code model}'s simulation over {@code processes}
+     * partitions, whose routes must be set up. Returns null, leaving the run
+     * to the caller, when the topology is too small to split or a cut link
+     * has no propagation delay to give a lookahead.
+     */
+    static DistributedSimulator of(Simulator model, int processes) {
+        int count = Math.min(processes, model.graph.nodeCount);
+        if (count < 2)
+            return null;
+        int[] partOf = ParallelSimulator.split(model, count);
+        double lookahead = ParallelSimulator.lookahead(model, partOf);
+        if (!(lookahead > 0))
+            return null;
+        return new DistributedSimulator(model, partOf, count, lookahead);
+    }
+
+    Simulator.Result run() throws IOException {
+        Path dir = Files.createTempDirectory("simulation_workers_");
+        try (ServerSocket server = new ServerSocket(0, count, InetAddress.getLoopbackAddress())) {
+            long token = new SecureRandom().nextLong();
+            for (int i = 0; i < count; i++)
+                workers[i] = launch(dir, server.getLocalPort(), token, i);
+            connect(server, token);
+            return simulate(dir);
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException || current < 0)
+                throw e;
+            throw failed(current, e);
+        } finally {
+            for (Socket s : sockets) {
+                if (s != null)
+                    s.close();
+            }
+            for (Process p : workers) {
+                if (p != null && !waitFor(p, 2000))
+                    p.destroyForcibly();
+            }
+            for (File log : logs) {
+                if (log != null)
+                    log.delete();
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private Process launch(Path dir, int port, long token, int index) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : WORKER_OPTIONS.trim().split("\\s+")) {
+            if (!option.isEmpty())
+                command.add(option);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SimulationWorker.class.getName());
+        command.add(InetAddress.getLoopbackAddress().getHostAddress());
+        command.add(Integer.toString(port));
+        command.add(Integer.toString(index));
+        logs[index] = dir.resolve("worker-" + index + ".log").toFile();
+        Process p = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(logs[index])
+                .start();
+        // The token goes through the worker's stdin: a command line can be read by any local user.
+        try (OutputStream stdin = p.getOutputStream()) {
+            stdin.write((token + "\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            // The worker is already gone; connect() reports it with its stderr.
+        }
+        return p;
+    }
+
+    /** Accepts a connection from every worker; connections without the token are dropped. */
+    private void connect(ServerSocket server, long token) throws IOException {
+        server.setSoTimeout(ACCEPT_POLL_MILLIS);
+        long deadline = System.nanoTime() + CONNECT_TIMEOUT_NANOS;
+        int connected = 0;
+        while (connected < count) {
+            if (Thread.interrupted())
+                throw new InterruptedIOException("Simulation interrupted");
+            for (int i = 0; i < count; i++) {
+                if (sockets[i] == null && !workers[i].isAlive())
+                    throw failed(i, null);
+            }
+            if (System.nanoTime() > deadline)
+                throw new IOException("Simulation workers did not connect within "
+                        + TimeUnit.NANOSECONDS.toSeconds(CONNECT_TIMEOUT_NANOS) + " s");
+            Socket s;
+            try {
+                s = server.accept();
+            } catch (SocketTimeoutException e) {
+                continue;
+            }
+            try {
+                s.setTcpNoDelay(true);
+                s.setSoTimeout(ACCEPT_POLL_MILLIS * 20);
+                DataInputStream i = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                int index = i.readLong() == token ? i.readInt() : -1;
+                if (index < 0 || index >= count || sockets[index] != null) {
+                    s.close();
+                    continue;
+                }
+                s.setSoTimeout(0);
+                sockets[index] = s;
+                in[index] = i;
+                out[index] = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+                connected++;
+            } catch (IOException e) {
+                s.close();
+            }
+        }
+    }
+
+    private Simulator.Result simulate(Path dir) throws IOException {
+        // The workers rebuild the model from the project, as it would be saved.
+        File file = dir.resolve("model." + ProjectFile.EXTENSION).toFile();
+        byte[] project;
+        try {
+            ProjectFile.save(file, new ProjectFile.Contents(model.graph, model.config, model.flows));
+            project = Files.readAllBytes(file.toPath());
+        } finally {
+            file.delete();
+        }
+        for (int i = 0; i < count; i++) {
+            current = i;
+            DataOutputStream o = out[i];
+            o.writeInt(count);
+            o.writeBoolean(model.tr != null);
+            o.writeBoolean(model.nam != null);
+            o.writeInt(partOf.length);
+            for (int p : partOf)
+                o.writeInt(p);
+            o.writeInt(project.length);
+            o.write(project);
+            o.flush();
+        }
+
+        ParallelSimulator.Lines[] trLines = new ParallelSimulator.Lines[count];
+        ParallelSimulator.Lines[] namLines = new ParallelSimulator.Lines[count];
+        for (int i = 0; i < count; i++) {
+            trLines[i] = new ParallelSimulator.Lines();
+            namLines[i] = new ParallelSimulator.Lines();
+        }
+        long[][] inbox = new long[count][1024];
+        int[] inboxSize = new int[count];
+        byte[] scratch = new byte[1 << 16];
+        double next = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            current = i;
+            next = Math.min(next, in[i].readDouble());
+        }
+        while (true) {
+            if (Thread.interrupted())
+                throw new InterruptedIOException("Simulation interrupted");
+            // Packets arriving after the end are dropped with the rest of the run.
+            boolean done = next >= stop;
+            double windowEnd = done ? Double.NaN : Math.min(next + lookahead, stop);
+            for (int to = 0; to < count; to++) {
+                current = to;
+                DataOutputStream o = out[to];
+                int longs = done ? 0 : inboxSize[to];
+                o.writeInt(longs / ParallelSimulator.RECORD);
+                for (int k = 0; k < longs; k++)
+                    o.writeLong(inbox[to][k]);
+                o.writeDouble(windowEnd);
+                o.flush();
+                inboxSize[to] = 0;
+            }
+            if (done)
+                break;
+
+            next = Double.POSITIVE_INFINITY;
+            for (int from = 0; from < count; from++) {
+                current = from;
+                DataInputStream i = in[from];
+                for (int to = 0; to < count; to++) {
+                    if (to == from)
+                        continue;
+                    int longs = i.readInt() * ParallelSimulator.RECORD;
+                    if (inboxSize[to] + longs > inbox[to].length)
+                        inbox[to] = Arrays.copyOf(inbox[to], Math.max(inbox[to].length * 2, inboxSize[to] + longs));
+                    long[] box = inbox[to];
+                    for (int k = inboxSize[to], e = k + longs; k < e; k += ParallelSimulator.RECORD) {
+                        for (int j = 0; j < ParallelSimulator.RECORD; j++)
+                            box[k + j] = i.readLong();
+                        next = Math.min(next, Double.longBitsToDouble(box[k])); // arrival time
+                    }
+                    inboxSize[to] += longs;
+                }
+                if (model.tr != null)
+                    scratch = readLines(i, trLines[from], scratch);
+                if (model.nam != null)
+                    scratch = readLines(i, namLines[from], scratch);
+                next = Math.min(next, i.readDouble());
+            }
+            if (model.tr != null)
+                ParallelSimulator.merge(model.tr, trLines);
+            if (model.nam != null)
+                ParallelSimulator.merge(model.nam, namLines);
+        }
+
+        Simulator.Result result = new Simulator.Result();
+        result.flowBytes = new long[model.flowCount];
+        result.partitions = count;
+        result.processes = count;
+        for (int i = 0; i < count; i++) {
+            current = i;
+            DataInputStream r = in[i];
+            result.events += r.readLong();
+            result.packetsSent += r.readLong();
+            result.packetsDelivered += r.readLong();
+            result.packetsDropped += r.readLong();
+            result.packetsUnroutable += r.readLong();
+            for (int f = 0; f < model.flowCount; f++)
+                result.flowBytes[f] += r.readLong();
+        }
+        current = -1;
+        return result;
+    }
+
+    /** The error for worker {@code index} having failed, with the end of what it wrote to stderr. */
+    private IOException failed(int index, IOException cause) {
+        Process p = workers[index];
+        StringBuilder message = new StringBuilder("Simulation worker ").append(index);
+        if (p != null && waitFor(p, 2000))
+            message.append(" exited with status ").append(p.exitValue());
+        else
+            message.append(" stopped responding");
+        try {
+            List<String> lines = Files.readAllLines(logs[index].toPath());
+            if (!lines.isEmpty()) {
+                message.append(":");
+                for (String line : lines.subList(Math.max(0, lines.size() - STDERR_TAIL_LINES), lines.size()))
+                    message.append('\n').append(line);
+            }
+        } catch (IOException | RuntimeException e) {
+            // no log to show
+        }
+        return new IOException(message.toString(), cause);
+    }
+
+    private static boolean waitFor(Process p, long millis) {
+        try {
+            return p.waitFor(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ----- Worker side -----
+
+    /**
+     * Simulates the partition the coordinator at the other end of
+     * {@code in} and {@code out} assigns to worker {@code index}, until it
+     * says the run is over.
+     */
+    static void work(int index, DataInputStream in, DataOutputStream out) throws IOException {
+        int count = in.readInt();
+        boolean trace = in.readBoolean(), nam = in.readBoolean();
+        int[] partOf = new int[in.readInt()];
+        for (int i = 0; i < partOf.length; i++)
+            partOf[i] = in.readInt();
+        byte[] project = new byte[in.readInt()];
+        in.readFully(project);
+
+        File file = File.createTempFile("simulation_worker_", "." + ProjectFile.EXTENSION);
+        ProjectFile.Contents contents;
+        try {
+            Files.write(file.toPath(), project);
+            contents = ProjectFile.load(file);
+        } finally {
+            file.delete();
+        }
+        SimulationConfig config = contents.config;
+        config.threads = 1;
+        config.processes = 1;
+        Simulator model = new Simulator(contents.graph, config, contents.flows);
+        model.route();
+        Simulator s = new Simulator(model, index, partOf, count);
+        s.random = ParallelSimulator.random(model.seed, index);
+        s.routes = model.routes;
+        if (trace)
+            s.tr = (s.trLines = new ParallelSimulator.Lines()).out;
+        if (nam)
+            s.nam = (s.namLines = new ParallelSimulator.Lines()).out;
+        for (int to = 0; to < count; to++) {
+            if (to != index)
+                s.outbox[to] = new SpscQueue(ParallelSimulator.RECORD);
+        }
+
+        s.start();
+        out.writeDouble(s.nextTime());
+        out.flush();
+        long[] record = new long[ParallelSimulator.RECORD];
+        long[] sent = new long[1024];
+        while (true) {
+            for (int n = in.readInt(); n > 0; n--) {
+                for (int k = 0; k < record.length; k++)
+                    record[k] = in.readLong();
+                s.receive(record);
+            }
+            double end = in.readDouble();
+            if (Double.isNaN(end))
+                break;
+            s.process(end);
+            for (int to = 0; to < count; to++) {
+                if (to == index)
+                    continue;
+                // The queue's producer is this thread and idle, so it may be drained here.
+                int size = 0;
+                while (s.outbox[to].poll(record)) {
+                    if (size + record.length > sent.length)
+                        sent = Arrays.copyOf(sent, sent.length * 2);
+                    System.arraycopy(record, 0, sent, size, record.length);
+                    size += record.length;
+                }
+                out.writeInt(size / record.length);
+                for (int k = 0; k < size; k++)
+                    out.writeLong(sent[k]);
+            }
+            if (trace)
+                writeLines(out, s.trLines);
+            if (nam)
+                writeLines(out, s.namLines);
+            out.writeDouble(s.nextTime());
+            out.flush();
+        }
+
+        out.writeLong(s.processed);
+        out.writeLong(s.result.packetsSent);
+        out.writeLong(s.result.packetsDelivered);
+        out.writeLong(s.result.packetsDropped);
+        out.writeLong(s.result.packetsUnroutable);
+        for (long b : s.result.flowBytes)
+            out.writeLong(b);
+        out.flush();
+    }
+
+    // Trace lines of a window: the count, each line's time and end, then the text.
+
+    private static void writeLines(DataOutputStream out, ParallelSimulator.Lines lines) throws IOException {
+        out.writeInt(lines.count);
+        for (int i = 0; i < lines.count; i++) {
+            out.writeDouble(lines.time[i]);
+            out.writeInt(lines.end[i]);
+        }
+        lines.out.writeTo(out);
+        lines.reset();
+    }
+
+    /** Reads lines into {@code lines}, through {@code scratch}; returns the scratch buffer, grown if need be. */
+    private static byte[] readLines(DataInputStream in, ParallelSimulator.Lines lines, byte[] scratch)
+            throws IOException {
+        int n = in.readInt();
+        if (n > lines.time.length) {
+            lines.time = Arrays.copyOf(lines.time, Math.max(n, lines.time.length * 2));
+            lines.end = Arrays.copyOf(lines.end, lines.time.length);
+        }
+        for (int i = 0; i < n; i++) {
+            lines.time[i] = in.readDouble();
+            lines.end[i] = in.readInt();
+        }
+        lines.count = n;
+        int size = n == 0 ? 0 : lines.end[n - 1];
+        if (size > scratch.length)
+            scratch = new byte[Math.max(size, scratch.length * 2)];
+        in.readFully(scratch, 0, size);
+        lines.out.reset();
+        lines.out.bytes(scratch, 0, size);
+        return scratch;
+    }
+}
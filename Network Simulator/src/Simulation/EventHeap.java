@@ -0,0 +1,90 @@
+package Simulation;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of pending events in primitive arrays. An event is a
+ * time and a long of event data; there are no event objects. Events with
+ * equal times come out in the order they were pushed, which keeps runs
+ * deterministic.
+ */
+public final class EventHeap implements Scheduler {
+    private double[] time = new double[1024];
+    private long[] seq = new long[1024];
+    private long[] data = new long[1024];
+    private int size;
+    private long pushed;
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public void push(double t, long d) {
+        if (size == time.length) {
+            time = Arrays.copyOf(time, size * 2);
+            seq = Arrays.copyOf(seq, size * 2);
+            data = Arrays.copyOf(data, size * 2);
+        }
+        long s = pushed++;
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (time[parent] < t || (time[parent] == t && seq[parent] < s))
+                break;
+            time[i] = time[parent];
+            seq[i] = seq[parent];
+            data[i] = data[parent];
+            i = parent;
+        }
+        time[i] = t;
+        seq[i] = s;
+        data[i] = d;
+    }
+
+    @Override
+    public double peekTime() {
+        return time[0];
+    }
+
+    @Override
+    public long pop() {
+        long top = data[0];
+        int n = --size;
+        if (n == 0)
+            return top;
+        double t = time[n];
+        long s = seq[n];
+        long d = data[n];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n)
+                break;
+            int right = child + 1;
+            if (right < n && (time[right] < time[child] || (time[right] == time[child] && seq[right] < seq[child])))
+                child = right;
+            if (t < time[child] || (t == time[child] && s < seq[child]))
+                break;
+            time[i] = time[child];
+            seq[i] = seq[child];
+            data[i] = data[child];
+            i = child;
+        }
+        time[i] = t;
+        seq[i] = s;
+        data[i] = d;
+        return top;
+    }
+}
@@ -0,0 +1,350 @@
+package Simulation;
+
+import Components.CompactGraph;
+import Exporters.TclWriter;
+import Partitioning.GraphPartitioner;
+import Partitioning.Partition;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Conservative parallel run of a {@link Simulator}. The nodes are split into
+ * partitions by {@link GraphPartitioner}, each simulated by its own Simulator
+ * instance on its own thread. The only way one partition affects another is a packet crossing a
+ * cut link, which arrives no sooner than the link's propagation delay after
+ * it finishes transmitting; the smallest such delay is the lookahead.
+ *
+ * Time advances in windows (YAWNS): with T the earliest pending event over
+ * all partitions, every partition runs its events before T + lookahead
+ * without waiting for the others, since no packet sent within the window can
+ * arrive before its end. Packets crossing partitions go through a lock-free
+ * SPSC queue per ordered pair of partitions. At the end of a window the
+ * threads meet at a barrier, take in the packets sent to them, meet again
+ * while the next window is planned, and carry on. Packets are taken in
+ * partition by partition in the order they were sent, so a run is
+ * deterministic for a given partitioning and seed.
+ *
+ * Each partition writes its trace lines to memory with their times; between
+ * windows they are merged in time order (equal times in partition order)
+ * into the output, so the trace looks like a sequential run's.
+ */
+final class ParallelSimulator {
+    /** Longs per packet handed over: arrival time, timestamp, flow/seq, size/destination, link/uid, type. */
+    static final int RECORD = 6;
+
+    /** One partition's trace lines of the current window: text, and each line's time and end. */
+    static final class Lines {
+        final TclWriter out = new TclWriter();
+        double[] time = new double[1024];
+        int[] end = new int[1024];
+        int count;
+
+        void mark(double t) {
+            if (count == time.length) {
+                time = Arrays.copyOf(time, count * 2);
+                end = Arrays.copyOf(end, count * 2);
+            }
+            time[count] = t;
+            end[count++] = out.size();
+        }
+
+        void reset() {
+            out.reset();
+            count = 0;
+        }
+    }
+
+    /** Weight of a link that must not be cut, far above any sum of flow counts. */
+    private static final int UNCUTTABLE = 1 << 24;
+
+    private final Simulator model;
+    /** Partition of each node. */
+    final int[] partOf;
+    private final Simulator[] parts;
+    /** {@code queues[from][to]}; null on the diagonal. */
+    private final SpscQueue[][] queues;
+    private final double lookahead;
+    /** Events at or after this time are past the end of the simulation. */
+    private final double stop;
+    private final double[] next;
+    private final CyclicBarrier sent, planned;
+    // Written by the barrier action, read by every thread after the barrier.
+    private double windowEnd;
+    private boolean done;
+
+    private ParallelSimulator(Simulator model, int[] partOf, int count, double lookahead) {
+        this.model = model;
+        this.partOf = partOf;
+        this.lookahead = lookahead;
+        this.stop = Math.nextUp(model.simTime);
+        parts = new Simulator[count];
+        queues = new SpscQueue[count][count];
+        next = new double[count];
+        for (int i = 0; i < count; i++) {
+            Simulator s = new Simulator(model, i, partOf, count);
+            s.random = random(model.seed, i);
+            s.routes = model.routes;
+            if (model.tr != null)
+                s.tr = (s.trLines = new Lines()).out;
+            if (model.nam != null)
+                s.nam = (s.namLines = new Lines()).out;
+            parts[i] = s;
+        }
+        for (int from = 0; from < count; from++) {
+            for (int to = 0; to < count; to++) {
+                if (from != to)
+                    parts[from].outbox[to] = queues[from][to] = new SpscQueue(RECORD);
+            }
+        }
+        sent = new CyclicBarrier(count);
+        planned = new CyclicBarrier(count, () -> {
+            try {
+                merge();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            plan();
+        });
+    }
+
+    /**
+     * A parallel run of {@code model}'s simulation over {@code threads}
+     * partitions, whose routes must be set up. Returns null, leaving the run
+     * to the caller, when the topology is too small to split or a cut link
+     * has no propagation delay to give a lookahead.
+     */
+    static ParallelSimulator of(Simulator model, int threads) {
+        CompactGraph g = model.graph;
+        int count = Math.min(threads, g.nodeCount);
+        if (count < 2)
+            return null;
+        int[] partOf = split(model, count);
+        double lookahead = lookahead(model, partOf);
+        if (!(lookahead > 0))
+            return null;
+        return new ParallelSimulator(model, partOf, count, lookahead);
+    }
+
+    /** Partition of each node: the model's own partition if it fits, otherwise {@link #partition}. */
+    static int[] split(Simulator model, int count) {
+        if (model.partition != null && model.partition.parts == count) {
+            Partition p = model.partition.on(model.graph);
+            if (p.isComplete())
+                return p.partOf;
+        }
+        return partition(model, count).partOf;
+    }
+
+    /** Smallest propagation delay of a link between partitions; 0 if one has none. */
+    static double lookahead(Simulator model, int[] partOf) {
+        CompactGraph g = model.graph;
+        double lookahead = Double.POSITIVE_INFINITY;
+        for (int l = 0; l < g.linkCount; l++) {
+            if (g.linkSrc[l] >= 0 && partOf[g.linkSrc[l]] != partOf[g.linkDst[l]])
+                lookahead = Math.min(lookahead, Math.min(model.dlDelay[2 * l], model.dlDelay[2 * l + 1]));
+        }
+        return lookahead;
+    }
+
+    /** Random numbers of partition {@code part}, the same wherever the partition runs. */
+    static SplittableRandom random(long seed, int part) {
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom r = random.split();
+        for (int i = 0; i < part; i++)
+            r = random.split();
+        return r;
+    }
+
+    /**
+     * Splits the nodes into {@code count} partitions of nearly equal work and
+     * few packets between them: a node weighs 1 plus the flows routed through
+     * it, and a link 1 plus the flows crossing it. Links without propagation
+     * delay would leave no lookahead, so they are all but never cut.
+     */
+    static Partition partition(Simulator model, int count) {
+        CompactGraph g = model.graph;
+        int[] nodeWeight = new int[g.nodeCount];
+        int[] linkWeight = new int[g.linkCount];
+        Arrays.fill(nodeWeight, 1);
+        Arrays.fill(linkWeight, 1);
+        for (int f = 0; f < model.flowCount; f++) {
+            int dst = model.fDst[f];
+            int u = model.fSrc[f];
+            nodeWeight[u]++;
+            for (int l; (l = model.routes.nextLink(u, dst)) >= 0; ) {
+                linkWeight[l]++;
+                u = g.opposite(l, u);
+                nodeWeight[u]++;
+            }
+        }
+        for (int l = 0; l < g.linkCount; l++) {
+            if (!(model.dlDelay[2 * l] > 0 && model.dlDelay[2 * l + 1] > 0))
+                linkWeight[l] = UNCUTTABLE;
+        }
+        GraphPartitioner partitioner = new GraphPartitioner();
+        partitioner.seed = model.seed;
+        return partitioner.partition(g, count, nodeWeight, linkWeight);
+    }
+
+    Simulator.Result run() throws IOException {
+        int count = parts.length;
+        for (int i = 0; i < count; i++) {
+            parts[i].start();
+            next[i] = parts[i].nextTime();
+        }
+        plan();
+
+        if (!done) {
+            ExecutorService pool = Executors.newFixedThreadPool(count, r -> {
+                Thread t = new Thread(r, "simulation");
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                CompletionService<Void> workers = new ExecutorCompletionService<>(pool);
+                for (int i = 0; i < count; i++) {
+                    int index = i;
+                    workers.submit(() -> {
+                        work(index);
+                        return null;
+                    });
+                }
+                // A failed thread never reaches the next barrier, so the first failure stops the
+                // others. Those that find the barrier broken report the failure of another.
+                Throwable broken = null;
+                for (int i = 0; i < count; i++) {
+                    try {
+                        workers.take().get();
+                    } catch (ExecutionException e) {
+                        if (!(e.getCause() instanceof BrokenBarrierException))
+                            throw failure(e.getCause());
+                        broken = e.getCause();
+                    }
+                }
+                if (broken != null)
+                    throw new IllegalStateException("Simulation failed", broken);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Simulation interrupted");
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        Simulator.Result result = new Simulator.Result();
+        result.flowBytes = new long[model.flowCount];
+        result.partitions = count;
+        for (Simulator s : parts) {
+            result.events += s.processed;
+            result.packetsSent += s.result.packetsSent;
+            result.packetsDelivered += s.result.packetsDelivered;
+            result.packetsDropped += s.result.packetsDropped;
+            result.packetsUnroutable += s.result.packetsUnroutable;
+            for (int f = 0; f < model.flowCount; f++)
+                result.flowBytes[f] += s.result.flowBytes[f];
+        }
+        return result;
+    }
+
+    /** The exception to rethrow for a thread's failure, thrown directly if unchecked. */
+    private static IOException failure(Throwable cause) {
+        if (cause instanceof UncheckedIOException u)
+            return u.getCause();
+        if (cause instanceof IOException io)
+            return io;
+        if (cause instanceof InterruptedException)
+            return new InterruptedIOException("Simulation interrupted");
+        if (cause instanceof RuntimeException r)
+            throw r;
+        throw new IllegalStateException("Simulation failed", cause);
+    }
+
+    /** One partition's thread: a window of events, the exchange of packets, the next window. */
+    private void work(int index) throws IOException, InterruptedException, BrokenBarrierException {
+        Simulator s = parts[index];
+        while (true) {
+            s.process(windowEnd);
+            sent.await();
+            for (int from = 0; from < parts.length; from++) {
+                if (from != index)
+                    s.receive(queues[from][index]);
+            }
+            next[index] = s.nextTime();
+            planned.await();
+            if (done)
+                return;
+        }
+    }
+
+    private void plan() {
+        double t = Double.POSITIVE_INFINITY;
+        for (double n : next)
+            t = Math.min(t, n);
+        done = t >= stop;
+        windowEnd = Math.min(t + lookahead, stop);
+    }
+
+    /** Writes the window's trace lines of all partitions in time order and empties the buffers. */
+    private void merge() throws IOException {
+        Lines[] lines = new Lines[parts.length];
+        if (model.tr != null) {
+            for (int i = 0; i < parts.length; i++)
+                lines[i] = parts[i].trLines;
+            merge(model.tr, lines);
+        }
+        if (model.nam != null) {
+            for (int i = 0; i < parts.length; i++)
+                lines[i] = parts[i].namLines;
+            merge(model.nam, lines);
+        }
+    }
+
+    /** Writes the lines of all partitions to {@code target} in time order, equal times in partition order. */
+    static void merge(TclWriter target, Lines[] lines) throws IOException {
+        int count = lines.length;
+        int[] at = new int[count];
+        while (true) {
+            // The partition with the earliest next line, and the earliest line of the others.
+            int best = -1, second = -1;
+            for (int i = 0; i < count; i++) {
+                Lines b = lines[i];
+                if (at[i] == b.count)
+                    continue;
+                if (best < 0 || b.time[at[i]] < lines[best].time[at[best]]) {
+                    second = best;
+                    best = i;
+                } else if (second < 0 || b.time[at[i]] < lines[second].time[at[second]]) {
+                    second = i;
+                }
+            }
+            if (best < 0)
+                break;
+            // Copy the best partition's lines up to the other's next one in a single piece.
+            Lines b = lines[best];
+            int first = at[best];
+            int last = first + 1;
+            if (second < 0) {
+                last = b.count;
+            } else {
+                double limit = lines[second].time[at[second]];
+                while (last < b.count && (b.time[last] < limit || (b.time[last] == limit && best < second)))
+                    last++;
+            }
+            b.out.copyTo(target, first == 0 ? 0 : b.end[first - 1], b.end[last - 1]);
+            at[best] = last;
+        }
+        for (Lines b : lines)
+            b.reset();
+    }
+}
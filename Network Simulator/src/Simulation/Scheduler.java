@@ -0,0 +1,27 @@
+package Simulation;
+
+/**
+ * The pending-event set of a discrete-event simulation. An event is a time
+ * and a long of event data; events come out in time order, and in the
+ * order they were pushed among equal times, so runs are deterministic
+ * whichever implementation is used. {@link EventHeap} is O(log n) per
+ * operation; {@link CalendarQueue} is O(1) on average and pulls ahead once
+ * many events are pending.
+ */
+public interface Scheduler {
+
+    void push(double time, long data);
+
+    boolean isEmpty();
+
+    int size();
+
+    /** Time of the next event; the scheduler must not be empty. */
+    double peekTime();
+
+    /** Removes the next event and returns its data. */
+    long pop();
+
+    /** Removes all events, keeping the storage for reuse. */
+    void clear();
+}
@@ -0,0 +1,149 @@
+package Simulation;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Hold-model benchmark of the schedulers: with n events pending, each step
+ * pops the earliest and pushes one at its time plus an increment drawn from
+ * a distribution, so the queue size stays at n. Compares a
+ * java.util.PriorityQueue of pooled event objects (the usual Java
+ * approach), {@link EventHeap} and {@link CalendarQueue}.
+ *
+ * Increments come from exponential, uniform and bimodal distributions and,
+ * given a .nam file as the argument, from the trace itself: the gaps
+ * between consecutive events of each packet (enqueue, dequeue, hop,
+ * receive, drop), which are the transmission and propagation times a
+ * simulation of that network schedules.
+ *
+ * Usage: java Simulation.SchedulerBenchmark [trace.nam]
+ */
+public final class SchedulerBenchmark {
+    private static final int[] SIZES = { 1_000, 100_000, 1_000_000 };
+    private static final long OPS = 5_000_000;
+
+    private SchedulerBenchmark() {
+    }
+
+    /** Increments drawn up front so the timed loop measures only the queue. */
+    private static double[] draw(String name, double[] empirical, SplittableRandom random, int n) {
+        double[] d = new double[n];
+        for (int i = 0; i < n; i++) {
+            d[i] = switch (name) {
+                case "exponential" -> -Math.log(1 - random.nextDouble());
+                case "uniform" -> 2 * random.nextDouble();
+                case "bimodal" -> random.nextDouble() < 0.9 ? 0.1 * random.nextDouble() : 10 + random.nextDouble();
+                default -> empirical[random.nextInt(empirical.length)];
+            };
+        }
+        return d;
+    }
+
+    /** Per-packet event gaps in a NAM trace. */
+    static double[] namIncrements(String path) throws IOException {
+        Map<Long, Double> last = new HashMap<>();
+        double[] gaps = new double[1024];
+        int count = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || "+-hrd".indexOf(line.charAt(0)) < 0 || line.charAt(1) != ' ')
+                    continue;
+                String[] f = line.split(" ");
+                double t = Double.NaN;
+                long uid = -1;
+                for (int i = 1; i + 1 < f.length; i++) {
+                    if (f[i].equals("-t"))
+                        t = Double.parseDouble(f[i + 1]);
+                    else if (f[i].equals("-i"))
+                        uid = Long.parseLong(f[i + 1]);
+                }
+                if (Double.isNaN(t) || uid < 0)
+                    continue;
+                Double prev = last.put(uid, t);
+                if (prev != null) {
+                    if (count == gaps.length)
+                        gaps = Arrays.copyOf(gaps, count * 2);
+                    gaps[count++] = t - prev;
+                }
+            }
+        }
+        return Arrays.copyOf(gaps, count);
+    }
+
+    private static double hold(Scheduler s, int n, double[] inc) {
+        s.clear();
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            s.push(inc[k], i);
+            k = (k + 1) % inc.length;
+        }
+        long start = System.nanoTime();
+        for (long op = 0; op < OPS; op++) {
+            double t = s.peekTime();
+            long d = s.pop();
+            s.push(t + inc[k], d);
+            if (++k == inc.length)
+                k = 0;
+        }
+        return OPS / ((System.nanoTime() - start) * 1e-9);
+    }
+
+    private static final class Event {
+        double time;
+        long seq;
+        long data;
+    }
+
+    private static double holdPriorityQueue(int n, double[] inc) {
+        PriorityQueue<Event> q = new PriorityQueue<>(n, (a, b) -> a.time != b.time
+                ? Double.compare(a.time, b.time) : Long.compare(a.seq, b.seq));
+        long seq = 0;
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            Event e = new Event();
+            e.time = inc[k];
+            e.seq = seq++;
+            e.data = i;
+            q.add(e);
+            k = (k + 1) % inc.length;
+        }
+        long start = System.nanoTime();
+        for (long op = 0; op < OPS; op++) {
+            Event e = q.poll(); // reused for the new event
+            e.time += inc[k];
+            e.seq = seq++;
+            q.add(e);
+            if (++k == inc.length)
+                k = 0;
+        }
+        return OPS / ((System.nanoTime() - start) * 1e-9);
+    }
+
+    public static void main(String[] args) throws IOException {
+        double[] empirical = args.length > 0 ? namIncrements(args[0]) : null;
+        String[] names = empirical != null && empirical.length > 0
+                ? new String[] { "exponential", "uniform", "bimodal", "trace" }
+                : new String[] { "exponential", "uniform", "bimodal" };
+        if (empirical != null)
+            System.out.println(empirical.length + " increments read from " + args[0]);
+        System.out.printf("%-12s %10s %15s %15s %15s%n", "increments", "pending", "PriorityQueue", "EventHeap",
+                "CalendarQueue");
+        for (String name : names) {
+            double[] inc = draw(name, empirical, new SplittableRandom(1), 1 << 20);
+            for (int n : SIZES) {
+                double pq = holdPriorityQueue(n, inc);
+                double heap = hold(new EventHeap(), n, inc);
+                double calendar = hold(new CalendarQueue(), n, inc);
+                System.out.printf("%-12s %10d %13.2fM %13.2fM %13.2fM%n", name, n, pq / 1e6, heap / 1e6,
+                        calendar / 1e6);
+            }
+        }
+    }
+}
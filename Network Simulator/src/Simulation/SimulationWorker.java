@@ -0,0 +1,56 @@
+package Simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Worker process of a distributed simulation run: connects to the
+ * coordinator, identifies itself with the run's token and its index, and
+ * simulates the partition it is given (see {@link DistributedSimulator}).
+ * The token is read from the first line of stdin, so that it does not show
+ * on the command line. Exits with status 0 when the run is over, 1 on
+ * failure, which it reports on stderr.
+ *
+ * Usage: SimulationWorker host port index &lt; token
+ */
+public final class SimulationWorker {
+    private SimulationWorker() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: SimulationWorker <host> <port> <index> < token");
+            System.exit(2);
+        }
+        try {
+            String line = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII)).readLine();
+            if (line == null)
+                throw new EOFException("No token on stdin");
+            run(args[0], Integer.parseInt(args[1]), Long.parseLong(line.trim()), Integer.parseInt(args[2]));
+        } catch (Throwable e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String host, int port, long token, int index) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            out.writeLong(token);
+            out.writeInt(index);
+            out.flush();
+            DistributedSimulator.work(index, in, out);
+        }
+    }
+}
@@ -0,0 +1,885 @@
+package Simulation;
+
+import Components.CompactGraph;
+import Components.Link;
+import Components.Units;
+import Exporters.TclWriter;
+import Partitioning.Partition;
+import Routing.RoutingEngine;
+import Routing.RoutingTable;
+import UI.RoutingConfigDialog.TrafficFlow;
+import UI.SimulationConfigDialog.SimulationConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Embedded discrete-event packet simulator: runs a topology in-process
+ * instead of sending the NS-2 script to a simulator. It reads the same
+ * CompactGraph, SimulationConfig and flows as NS2TclGenerator and models
+ * what that script sets up:
+ * <ul>
+ * <li>duplex links with a FIFO queue per direction (DropTail or RED; the
+ * other queue types behave as DropTail), transmission delay from the
+ * bandwidth and the propagation delay;
+ * <li>static shortest-path routes from {@link RoutingEngine} (fewest hops,
+ * or lowest delay if the config asks for it);
+ * <li>UDP sources with CBR or exponential on/off traffic into a null sink,
+ * and TCP Reno or NewReno senders (Vegas runs as Reno) fed by FTP or Telnet
+ * into a sink that acknowledges every packet.
+ * </ul>
+ * It writes an NS-2 trace (.tr) and a NAM trace (.nam) in the formats the
+ * script would produce; either may be left off.
+ *
+ * All state is kept in primitive arrays: packets in a pool of parallel
+ * arrays indexed by slot, per-direction link queues as rings of slots, and
+ * pending events in a {@link Scheduler} as (time, long) pairs, so the event
+ * loop allocates nothing. Runs are deterministic for a given seed.
+ *
+ * With more than one thread the topology is split into partitions that
+ * {@link ParallelSimulator} runs side by side, each in an instance of this
+ * class that simulates the nodes of its partition; such runs are
+ * deterministic for a given seed and thread count. With more than one
+ * process, {@link DistributedSimulator} runs the same partitions in worker
+ * JVMs instead, and gives the same results as threads for the same split.
+ */
+public final class Simulator {
+
+    /** Shown in the simulation dialog and stored in {@code SimulationConfig.engine}. */
+    public static final String ENGINE_REMOTE = "Remote NS-3 API";
+    public static final String ENGINE_BUILT_IN = "Built-in simulator";
+
+    /** Counters of a finished run. */
+    public static final class Result {
+        public long events;
+        /** Packets created by agents, including TCP acknowledgements and retransmissions. */
+        public long packetsSent;
+        public long packetsDelivered;
+        public long packetsDropped;
+        /** Packets that could not be sent because the destination is unreachable. */
+        public long packetsUnroutable;
+        public double simulatedTime;
+        public long wallNanos;
+        /** Partitions simulated in parallel; 1 for a sequential run. */
+        public int partitions = 1;
+        /** Worker processes the partitions ran in; 1 when they ran in this one. */
+        public int processes = 1;
+        /** Payload bytes delivered to each flow's sink, in flow order. */
+        public long[] flowBytes;
+
+        public String summary() {
+            double seconds = wallNanos / 1e9;
+            return String.format("Simulated %.3f s in %.3f s wall time%s: %,d events (%,.0f events/s)%n"
+                    + "Packets: %,d sent, %,d delivered, %,d dropped, %,d without a route",
+                    simulatedTime, seconds, processes > 1 ? " in " + processes + " processes"
+                            : partitions > 1 ? " on " + partitions + " threads" : "", events,
+                    seconds > 0 ? events / seconds : 0.0, packetsSent, packetsDelivered, packetsDropped,
+                    packetsUnroutable);
+        }
+    }
+
+    // ns-2 defaults where the script does not set a value.
+    private static final int DEFAULT_QUEUE_LIMIT = 50;
+    private static final int TCP_HEADER = 40;
+    private static final int ACK_SIZE = 40;
+    private static final int TCP_WINDOW = 20;
+    private static final double INITIAL_RTO = 3.0, MIN_RTO = 0.2, MAX_RTO = 64;
+    private static final double TELNET_INTERVAL = 1.0;
+    private static final double BURST_TIME = 0.5, IDLE_TIME = 0.5;
+    private static final double RED_MIN = 5, RED_MAX = 15, RED_WEIGHT = 0.002, RED_MAX_P = 0.1;
+
+    // Event kinds, in the low 4 bits of the event data; the argument follows.
+    private static final int TX_END = 0, ARRIVE = 1, APP = 2, STOP = 3, RTO = 4;
+
+    // Flow kinds.
+    private static final byte TCP_FTP = 0, TCP_TELNET = 1, UDP_CBR = 2, UDP_EXP = 3;
+    // Packet types.
+    private static final byte DATA = 0, ACK = 1, CBR = 2, EXP = 3;
+    private static final String[] TYPE_NAMES = { "tcp", "ack", "cbr", "exp" };
+
+    final CompactGraph graph;
+    // As given, for worker processes to rebuild the model from.
+    final SimulationConfig config;
+    final List<TrafficFlow> flows;
+    final double simTime;
+    private final RoutingEngine routing;
+    private final RoutingEngine.Metric metric;
+    private final double defaultDelay;
+    final long seed;
+
+    // Directed links: 2 * link + 0 runs linkSrc -> linkDst, + 1 the other way.
+    private final int[] dlFrom, dlTo;
+    private final double[] dlBandwidth;
+    final double[] dlDelay;
+    private final boolean[] dlRed;
+    private final int[] dlLimit;
+    private final int[][] dlQueue;
+    private final int[] dlHead, dlCount;
+    private final int[] dlSending; // packet on the wire, or -1
+    private final double[] redAvg, redIdleSince;
+    private final int[] redCount;
+
+    // Flows.
+    final int flowCount;
+    final int[] fSrc, fDst;
+    private final int[] fSrcPort, fDstPort, fSize;
+    private final byte[] fKind;
+    private final boolean[] fNewReno, fStopped;
+    private final double[] fStart, fStop, fInterval, fOnUntil;
+
+    // TCP senders and sinks, by flow.
+    private final double[] cwnd, ssthresh, srtt, rttvar, rto;
+    private final int[] nextSeq, highestAck, maxSent, curseq, dupacks, recover, rtoGen;
+    private final boolean[] inRecovery, rtoArmed;
+    private final int[] sinkNext;
+    private final BitSet[] sinkAhead;
+
+    // Packet pool.
+    private int[] pFlow = new int[256], pSeq = new int[256], pSize = new int[256], pDst = new int[256],
+            pLink = new int[256], pUid = new int[256];
+    private byte[] pType = new byte[256];
+    private double[] pStamp = new double[256];
+    private int[] free = new int[256];
+    private int freeCount, poolSize;
+    private int nextUid, uidStride = 1;
+
+    /**
+     * Pending-event set; any implementation gives the same run. The calendar
+     * queue is the faster up to about a million pending events, the heap
+     * beyond (see {@link SchedulerBenchmark}).
+     */
+    public Scheduler events = new CalendarQueue();
+    /** Threads to run on; more than one splits the topology as described above. */
+    public int threads;
+    /** Worker processes to run in; more than one splits the topology, and takes precedence over threads. */
+    public int processes;
+    /**
+     * How to split the topology, used when it covers every node and has as
+     * many parts as threads or processes; otherwise a split is computed.
+     */
+    public Partition partition;
+    RoutingTable routes;
+    SplittableRandom random;
+    private double now;
+    TclWriter tr, nam;
+    Result result;
+    long processed;
+
+    // Partitioned runs: the partition simulated, every node's partition and the queues of
+    // packets leaving for other partitions (null outside partitioned runs).
+    final int part;
+    final int[] partOf;
+    final SpscQueue[] outbox;
+    /** Where each trace line is, for merging partitions' traces in time order. */
+    ParallelSimulator.Lines trLines, namLines;
+    private final long[] record = new long[ParallelSimulator.RECORD];
+
+    public Simulator(CompactGraph graph, SimulationConfig config, List<TrafficFlow> flows) {
+        this(graph, config, flows, new RoutingEngine());
+    }
+
+    /** Takes routes from {@code routing}, which may already hold them for this graph. */
+    public Simulator(CompactGraph graph, SimulationConfig config, List<TrafficFlow> flows, RoutingEngine routing) {
+        this.graph = graph;
+        this.config = config;
+        this.flows = flows;
+        this.simTime = config.simTime;
+        this.routing = routing;
+        RoutingEngine.Metric m = RoutingEngine.Metric.of(config.routing);
+        this.metric = m != null ? m : RoutingEngine.Metric.HOPS;
+        this.seed = config.seed;
+        this.threads = Math.max(1, config.threads);
+        this.processes = Math.max(1, config.processes);
+        this.part = 0;
+        this.partOf = null;
+        this.outbox = null;
+        this.defaultDelay = Units.parseTime(config.delay);
+        double defaultBandwidth = Units.parseBandwidth(config.bandwidth);
+        int defaultQueue = Link.queueTypeCode(config.queueType);
+
+        int dl = graph.linkCount * 2;
+        dlFrom = new int[dl];
+        dlTo = new int[dl];
+        dlBandwidth = new double[dl];
+        dlDelay = new double[dl];
+        dlRed = new boolean[dl];
+        dlLimit = new int[dl];
+        dlQueue = new int[dl][];
+        dlHead = new int[dl];
+        dlCount = new int[dl];
+        dlSending = new int[dl];
+        redAvg = new double[dl];
+        redIdleSince = new double[dl];
+        redCount = new int[dl];
+        for (int l = 0; l < graph.linkCount; l++) {
+            double bw = graph.bandwidth(l), d = graph.delay(l);
+            int q = graph.queueType(l), limit = graph.queueLimit(l);
+            for (int dir = 0; dir < 2; dir++) {
+                int i = 2 * l + dir;
+                dlFrom[i] = dir == 0 ? graph.linkSrc[l] : graph.linkDst[l];
+                dlTo[i] = dir == 0 ? graph.linkDst[l] : graph.linkSrc[l];
+                dlBandwidth[i] = Double.isNaN(bw) ? defaultBandwidth : bw;
+                dlDelay[i] = Double.isNaN(d) ? defaultDelay : d;
+                dlRed[i] = (q < 0 ? defaultQueue : q) == 1;
+                dlLimit[i] = limit < 0 ? DEFAULT_QUEUE_LIMIT : limit;
+                dlSending[i] = -1;
+            }
+        }
+
+        // The same flows the script would set up, skipping those with unknown nodes.
+        List<int[]> ends = new ArrayList<>();
+        List<TrafficFlow> valid = new ArrayList<>();
+        if (flows != null && !flows.isEmpty()) {
+            for (TrafficFlow f : flows) {
+                int s = graph.indexOf(f.srcNodeId), t = graph.indexOf(f.dstNodeId);
+                if (s >= 0 && t >= 0 && s != t) {
+                    ends.add(new int[] { s, t });
+                    valid.add(f);
+                }
+            }
+        } else if (graph.nodeCount >= 2) {
+            ends.add(new int[] { 0, graph.nodeCount - 1 });
+            String type = config.protocol.startsWith("TCP")
+                    ? "TCP/" + config.application + (config.protocol.contains("/")
+                            ? "/" + config.protocol.substring(config.protocol.indexOf('/') + 1) : "")
+                    : "UDP/" + config.application;
+            valid.add(new TrafficFlow(graph.nodeIds[0], graph.nodeIds[graph.nodeCount - 1], type, 0.5,
+                    config.simTime - 0.5));
+        }
+        flowCount = valid.size();
+        fSrc = new int[flowCount];
+        fDst = new int[flowCount];
+        fSrcPort = new int[flowCount];
+        fDstPort = new int[flowCount];
+        fSize = new int[flowCount];
+        fKind = new byte[flowCount];
+        fNewReno = new boolean[flowCount];
+        fStopped = new boolean[flowCount];
+        fStart = new double[flowCount];
+        fStop = new double[flowCount];
+        fInterval = new double[flowCount];
+        fOnUntil = new double[flowCount];
+        int[] ports = new int[graph.nodeCount];
+        double rate = Units.parseBandwidth(config.dataRate);
+        for (int f = 0; f < flowCount; f++) {
+            TrafficFlow flow = valid.get(f);
+            String[] parts = flow.flowType.split("/");
+            boolean tcp = parts[0].equals("TCP");
+            String app = parts.length > 1 ? parts[1] : tcp ? "FTP" : "CBR";
+            fSrc[f] = ends.get(f)[0];
+            fDst[f] = ends.get(f)[1];
+            fSrcPort[f] = ports[fSrc[f]]++;
+            fDstPort[f] = ports[fDst[f]]++;
+            fKind[f] = tcp ? (app.equals("Telnet") ? TCP_TELNET : TCP_FTP)
+                    : (app.equals("Exponential") ? UDP_EXP : UDP_CBR);
+            fNewReno[f] = tcp && parts.length > 2 && parts[2].equalsIgnoreCase("Newreno");
+            fSize[f] = config.packetSize;
+            fStart[f] = flow.startTime;
+            fStop[f] = flow.stopTime;
+            fInterval[f] = config.packetSize * 8 / rate;
+        }
+
+        cwnd = new double[flowCount];
+        ssthresh = new double[flowCount];
+        srtt = new double[flowCount];
+        rttvar = new double[flowCount];
+        rto = new double[flowCount];
+        nextSeq = new int[flowCount];
+        highestAck = new int[flowCount];
+        maxSent = new int[flowCount];
+        curseq = new int[flowCount];
+        dupacks = new int[flowCount];
+        recover = new int[flowCount];
+        rtoGen = new int[flowCount];
+        inRecovery = new boolean[flowCount];
+        rtoArmed = new boolean[flowCount];
+        sinkNext = new int[flowCount];
+        sinkAhead = new BitSet[flowCount];
+    }
+
+    /**
+     * Simulator of partition {@code part} of {@code model}'s network. It shares
+     * the model's link and flow state: a link direction's queue belongs to the
+     * partition of the node sending on it, a flow's sender to its source's
+     * partition and its sink to its destination's, so no two partitions
+     * write the same entry.
+     */
+    Simulator(Simulator model, int part, int[] partOf, int parts) {
+        graph = model.graph;
+        config = model.config;
+        flows = model.flows;
+        simTime = model.simTime;
+        routing = model.routing;
+        metric = model.metric;
+        defaultDelay = model.defaultDelay;
+        seed = model.seed;
+        threads = 1;
+        processes = 1;
+        this.part = part;
+        this.partOf = partOf;
+        outbox = new SpscQueue[parts];
+        nextUid = part;
+        uidStride = parts;
+
+        dlFrom = model.dlFrom;
+        dlTo = model.dlTo;
+        dlBandwidth = model.dlBandwidth;
+        dlDelay = model.dlDelay;
+        dlRed = model.dlRed;
+        dlLimit = model.dlLimit;
+        dlQueue = model.dlQueue;
+        dlHead = model.dlHead;
+        dlCount = model.dlCount;
+        dlSending = model.dlSending;
+        redAvg = model.redAvg;
+        redIdleSince = model.redIdleSince;
+        redCount = model.redCount;
+
+        flowCount = model.flowCount;
+        fSrc = model.fSrc;
+        fDst = model.fDst;
+        fSrcPort = model.fSrcPort;
+        fDstPort = model.fDstPort;
+        fSize = model.fSize;
+        fKind = model.fKind;
+        fNewReno = model.fNewReno;
+        fStopped = model.fStopped;
+        fStart = model.fStart;
+        fStop = model.fStop;
+        fInterval = model.fInterval;
+        fOnUntil = model.fOnUntil;
+
+        cwnd = model.cwnd;
+        ssthresh = model.ssthresh;
+        srtt = model.srtt;
+        rttvar = model.rttvar;
+        rto = model.rto;
+        nextSeq = model.nextSeq;
+        highestAck = model.highestAck;
+        maxSent = model.maxSent;
+        curseq = model.curseq;
+        dupacks = model.dupacks;
+        recover = model.recover;
+        rtoGen = model.rtoGen;
+        inRecovery = model.inRecovery;
+        rtoArmed = model.rtoArmed;
+        sinkNext = model.sinkNext;
+        sinkAhead = model.sinkAhead;
+    }
+
+    /**
+     * Runs the simulation to the configured end time, writing the NS-2 trace
+     * to {@code trace} and the NAM trace to {@code namTrace} (either may be
+     * null). The streams are flushed, not closed.
+     */
+    public Result run(OutputStream trace, OutputStream namTrace) throws IOException {
+        long started = System.nanoTime();
+        tr = trace != null ? new TclWriter(trace) : null;
+        nam = namTrace != null ? new TclWriter(namTrace) : null;
+        route();
+        DistributedSimulator distributed = processes > 1 ? DistributedSimulator.of(this, processes) : null;
+        ParallelSimulator parallel = distributed == null && threads > 1 ? ParallelSimulator.of(this, threads) : null;
+        if (nam != null)
+            writeNamHeader(distributed != null ? distributed.partOf : parallel != null ? parallel.partOf : null);
+
+        if (distributed != null) {
+            result = distributed.run();
+        } else if (parallel != null) {
+            result = parallel.run();
+        } else {
+            random = new SplittableRandom(seed);
+            start();
+            process(Math.nextUp(simTime));
+            result.events = processed;
+        }
+        result.simulatedTime = simTime;
+        if (tr != null)
+            tr.flush();
+        if (nam != null)
+            nam.flush();
+        result.wallNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    /** Computes the routes between the ends of the flows. */
+    void route() throws IOException {
+        int[] dst = new int[flowCount * 2];
+        for (int f = 0; f < flowCount; f++) {
+            dst[2 * f] = fSrc[f];
+            dst[2 * f + 1] = fDst[f];
+        }
+        try {
+            routes = routing.table(graph, metric, defaultDelay, dst);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Simulation interrupted");
+        }
+    }
+
+    /** Clears the counters and schedules the flows whose source this instance simulates. */
+    void start() {
+        result = new Result();
+        result.flowBytes = new long[flowCount];
+        processed = 0;
+        events.clear();
+        for (int f = 0; f < flowCount; f++) {
+            if (partOf != null && partOf[fSrc[f]] != part)
+                continue;
+            resetTcp(f);
+            events.push(fStart[f], APP | (long) f << 4);
+            events.push(fStop[f], STOP | (long) f << 4);
+        }
+    }
+
+    /** Time of the next pending event; infinite when there is none. */
+    double nextTime() {
+        return events.isEmpty() ? Double.POSITIVE_INFINITY : events.peekTime();
+    }
+
+    /** Runs the events before {@code end}. */
+    void process(double end) throws IOException {
+        while (!events.isEmpty() && events.peekTime() < end) {
+            now = events.peekTime();
+            long e = events.pop();
+            int arg = (int) (e >>> 4);
+            switch ((int) (e & 15)) {
+                case TX_END -> transmitted(arg);
+                case ARRIVE -> arrived(arg);
+                case APP -> appTimer(arg);
+                case STOP -> stop(arg);
+                case RTO -> timeout(arg, (int) (e >>> 36));
+                default -> throw new IllegalStateException("Unknown event " + e);
+            }
+            if ((++processed & 0xFFFFF) == 0 && Thread.interrupted())
+                throw new InterruptedIOException("Simulation interrupted");
+        }
+    }
+
+    // ----- Links -----
+
+    /** Sends packet {@code p}, which is at node {@code u}, on toward its destination. */
+    private void forward(int p, int u) throws IOException {
+        int link = routes.nextLink(u, pDst[p]);
+        if (link < 0) {
+            result.packetsUnroutable++;
+            release(p);
+            return;
+        }
+        enqueue(graph.linkSrc[link] == u ? 2 * link : 2 * link + 1, p);
+    }
+
+    private void enqueue(int dl, int p) throws IOException {
+        pLink[p] = dl;
+        trace('+', dl, p);
+        if (dlRed[dl] && redDrop(dl)) {
+            drop(dl, p);
+            return;
+        }
+        if (dlSending[dl] < 0) {
+            send(dl, p);
+            return;
+        }
+        if (dlCount[dl] >= dlLimit[dl]) {
+            drop(dl, p);
+            return;
+        }
+        int[] q = dlQueue[dl];
+        if (q == null || dlCount[dl] == q.length) {
+            int[] grown = new int[q == null ? 8 : q.length * 2];
+            for (int i = 0; i < dlCount[dl]; i++)
+                grown[i] = q[(dlHead[dl] + i) % q.length];
+            dlQueue[dl] = q = grown;
+            dlHead[dl] = 0;
+        }
+        q[(dlHead[dl] + dlCount[dl]++) % q.length] = p;
+    }
+
+    /**
+     * RED's drop decision for a packet arriving at {@code dl}: the average
+     * queue length decays over idle time as if empty packets had been sent,
+     * then the drop probability rises linearly between the thresholds.
+     */
+    private boolean redDrop(int dl) {
+        double avg = redAvg[dl];
+        if (dlSending[dl] < 0) {
+            double typical = 1000 * 8 / dlBandwidth[dl];
+            avg *= Math.pow(1 - RED_WEIGHT, (now - redIdleSince[dl]) / typical);
+        }
+        avg = (1 - RED_WEIGHT) * avg + RED_WEIGHT * dlCount[dl];
+        redAvg[dl] = avg;
+        if (avg < RED_MIN) {
+            redCount[dl] = -1;
+            return false;
+        }
+        if (avg >= RED_MAX) {
+            redCount[dl] = 0;
+            return true;
+        }
+        redCount[dl]++;
+        double pb = RED_MAX_P * (avg - RED_MIN) / (RED_MAX - RED_MIN);
+        double pa = redCount[dl] * pb >= 1 ? 1 : pb / (1 - redCount[dl] * pb);
+        if (random.nextDouble() < pa) {
+            redCount[dl] = 0;
+            return true;
+        }
+        return false;
+    }
+
+    private void send(int dl, int p) throws IOException {
+        dlSending[dl] = p;
+        trace('-', dl, p);
+        if (nam != null)
+            namEvent('h', dl, p);
+        events.push(now + pSize[p] * 8 / dlBandwidth[dl], TX_END | (long) dl << 4);
+    }
+
+    private void transmitted(int dl) throws IOException {
+        int p = dlSending[dl];
+        if (partOf != null && partOf[dlTo[dl]] != part)
+            migrate(p, now + dlDelay[dl], partOf[dlTo[dl]]);
+        else
+            events.push(now + dlDelay[dl], ARRIVE | (long) p << 4);
+        if (dlCount[dl] > 0) {
+            int[] q = dlQueue[dl];
+            int next = q[dlHead[dl]];
+            dlHead[dl] = (dlHead[dl] + 1) % q.length;
+            dlCount[dl]--;
+            send(dl, next);
+        } else {
+            dlSending[dl] = -1;
+            redIdleSince[dl] = now;
+        }
+    }
+
+    private void arrived(int p) throws IOException {
+        int dl = pLink[p];
+        trace('r', dl, p);
+        int u = dlTo[dl];
+        if (u == pDst[p])
+            deliver(p);
+        else
+            forward(p, u);
+    }
+
+    private void drop(int dl, int p) throws IOException {
+        trace('d', dl, p);
+        result.packetsDropped++;
+        release(p);
+    }
+
+    // ----- Agents -----
+
+    private void deliver(int p) throws IOException {
+        int f = pFlow[p];
+        result.packetsDelivered++;
+        switch (pType[p]) {
+            case DATA -> {
+                result.flowBytes[f] += pSize[p] - TCP_HEADER;
+                int seq = pSeq[p];
+                double stamp = pStamp[p];
+                release(p);
+                if (seq == sinkNext[f]) {
+                    int next = seq + 1;
+                    BitSet ahead = sinkAhead[f];
+                    if (ahead != null && !ahead.isEmpty()) {
+                        next = ahead.nextClearBit(next);
+                        ahead.clear(0, next);
+                    }
+                    sinkNext[f] = next;
+                } else if (seq > sinkNext[f]) {
+                    if (sinkAhead[f] == null)
+                        sinkAhead[f] = new BitSet();
+                    sinkAhead[f].set(seq);
+                }
+                int ack = packet(f, ACK, sinkNext[f] - 1, ACK_SIZE, fSrc[f]);
+                pStamp[ack] = stamp;
+                forward(ack, fDst[f]);
+            }
+            case ACK -> {
+                int seq = pSeq[p];
+                double stamp = pStamp[p];
+                release(p);
+                acked(f, seq, stamp);
+            }
+            default -> {
+                result.flowBytes[f] += pSize[p];
+                release(p);
+            }
+        }
+    }
+
+    private void appTimer(int f) throws IOException {
+        if (fStopped[f])
+            return;
+        switch (fKind[f]) {
+            case TCP_FTP -> {
+                curseq[f] = Integer.MAX_VALUE - 1;
+                tcpSend(f);
+            }
+            case TCP_TELNET -> {
+                curseq[f] = Math.max(curseq[f], nextSeq[f] - 1) + 1;
+                tcpSend(f);
+                events.push(now + exponential(TELNET_INTERVAL), APP | (long) f << 4);
+            }
+            case UDP_CBR -> {
+                forward(packet(f, CBR, 0, fSize[f], fDst[f]), fSrc[f]);
+                events.push(now + fInterval[f], APP | (long) f << 4);
+            }
+            case UDP_EXP -> {
+                if (now >= fOnUntil[f])
+                    fOnUntil[f] = now + exponential(BURST_TIME);
+                forward(packet(f, EXP, 0, fSize[f], fDst[f]), fSrc[f]);
+                double next = now + fInterval[f];
+                if (next >= fOnUntil[f])
+                    next = fOnUntil[f] + exponential(IDLE_TIME);
+                events.push(next, APP | (long) f << 4);
+            }
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    /** The application stops making data; TCP still delivers what it has sent. */
+    private void stop(int f) {
+        fStopped[f] = true;
+        curseq[f] = Math.min(curseq[f], nextSeq[f] - 1);
+    }
+
+    private double exponential(double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    // ----- TCP sender -----
+
+    private void resetTcp(int f) {
+        cwnd[f] = 1;
+        ssthresh[f] = TCP_WINDOW;
+        srtt[f] = -1;
+        rto[f] = INITIAL_RTO;
+        highestAck[f] = -1;
+        maxSent[f] = -1;
+        curseq[f] = -1;
+    }
+
+    /** Sends new data while the window allows. */
+    private void tcpSend(int f) throws IOException {
+        int window = (int) Math.min(cwnd[f], TCP_WINDOW);
+        while (nextSeq[f] <= curseq[f] && nextSeq[f] <= highestAck[f] + window)
+            sendData(f, nextSeq[f]++);
+    }
+
+    private void sendData(int f, int seq) throws IOException {
+        int p = packet(f, DATA, seq, fSize[f] + TCP_HEADER, fDst[f]);
+        pStamp[p] = now;
+        maxSent[f] = Math.max(maxSent[f], seq);
+        if (!rtoArmed[f])
+            armTimer(f);
+        forward(p, fSrc[f]);
+    }
+
+    private void armTimer(int f) {
+        rtoArmed[f] = true;
+        int gen = ++rtoGen[f] & 0xFFFFFFF;
+        events.push(now + rto[f], RTO | (long) f << 4 | (long) gen << 36);
+    }
+
+    private void cancelTimer(int f) {
+        rtoArmed[f] = false;
+        rtoGen[f]++;
+    }
+
+    private void timeout(int i, int gen) throws IOException {
+        if (!rtoArmed[i] || gen != (rtoGen[i] & 0xFFFFFFF))
+            return; // cancelled or re-armed since
+        rtoArmed[i] = false;
+        ssthresh[i] = Math.max(Math.min(cwnd[i], TCP_WINDOW) / 2, 2);
+        cwnd[i] = 1;
+        rto[i] = Math.min(rto[i] * 2, MAX_RTO);
+        dupacks[i] = 0;
+        inRecovery[i] = false;
+        nextSeq[i] = highestAck[i] + 1;
+        tcpSend(i);
+    }
+
+    private void acked(int f, int ack, double stamp) throws IOException {
+        if (ack > highestAck[f]) {
+            double rtt = now - stamp;
+            if (srtt[f] < 0) {
+                srtt[f] = rtt;
+                rttvar[f] = rtt / 2;
+            } else {
+                rttvar[f] = 0.75 * rttvar[f] + 0.25 * Math.abs(srtt[f] - rtt);
+                srtt[f] = 0.875 * srtt[f] + 0.125 * rtt;
+            }
+            rto[f] = Math.max(MIN_RTO, Math.min(MAX_RTO, srtt[f] + 4 * rttvar[f]));
+
+            if (inRecovery[f] && fNewReno[f] && ack < recover[f]) {
+                // Partial ack: the next hole was lost too; resend it and stay in recovery.
+                cwnd[f] = Math.max(1, cwnd[f] - (ack - highestAck[f]) + 1);
+                highestAck[f] = ack;
+                sendData(f, ack + 1);
+            } else {
+                if (inRecovery[f]) {
+                    inRecovery[f] = false;
+                    cwnd[f] = ssthresh[f];
+                } else if (cwnd[f] < ssthresh[f]) {
+                    cwnd[f] += 1;
+                } else {
+                    cwnd[f] += 1 / cwnd[f];
+                }
+                highestAck[f] = ack;
+            }
+            dupacks[f] = 0;
+            if (nextSeq[f] <= highestAck[f])
+                nextSeq[f] = highestAck[f] + 1;
+            if (highestAck[f] >= maxSent[f])
+                cancelTimer(f);
+            else
+                armTimer(f);
+            tcpSend(f);
+        } else if (ack == highestAck[f] && highestAck[f] < maxSent[f]) {
+            if (++dupacks[f] == 3 && !inRecovery[f]) {
+                ssthresh[f] = Math.max(Math.min(cwnd[f], TCP_WINDOW) / 2, 2);
+                cwnd[f] = ssthresh[f] + 3;
+                inRecovery[f] = true;
+                recover[f] = maxSent[f];
+                sendData(f, ack + 1);
+            } else if (inRecovery[f]) {
+                cwnd[f] += 1;
+                tcpSend(f);
+            }
+        }
+    }
+
+    // ----- Packet pool -----
+
+    private int packet(int flow, byte type, int seq, int size, int dst) {
+        int p = allocate();
+        pFlow[p] = flow;
+        pType[p] = type;
+        pSeq[p] = seq;
+        pSize[p] = size;
+        pDst[p] = dst;
+        pUid[p] = nextUid;
+        nextUid += uidStride;
+        result.packetsSent++;
+        return p;
+    }
+
+    private int allocate() {
+        if (freeCount > 0)
+            return free[--freeCount];
+        if (poolSize == pFlow.length)
+            growPool();
+        return poolSize++;
+    }
+
+    /** Hands packet {@code p}, arriving at {@code time} in partition {@code to}, over to that partition. */
+    private void migrate(int p, double time, int to) {
+        long[] r = record;
+        r[0] = Double.doubleToRawLongBits(time);
+        r[1] = Double.doubleToRawLongBits(pStamp[p]);
+        r[2] = (long) pFlow[p] << 32 | (pSeq[p] & 0xFFFFFFFFL);
+        r[3] = (long) pSize[p] << 32 | (pDst[p] & 0xFFFFFFFFL);
+        r[4] = (long) pLink[p] << 32 | (pUid[p] & 0xFFFFFFFFL);
+        r[5] = pType[p];
+        outbox[to].put(r);
+        release(p);
+    }
+
+    /** Takes in the packets another partition has handed over through {@code q}. */
+    void receive(SpscQueue q) {
+        long[] r = record;
+        while (q.poll(r))
+            receive(r);
+    }
+
+    /** Takes in one packet handed over by another partition, as {@link ParallelSimulator#RECORD} longs. */
+    void receive(long[] r) {
+        int p = allocate();
+        pStamp[p] = Double.longBitsToDouble(r[1]);
+        pFlow[p] = (int) (r[2] >>> 32);
+        pSeq[p] = (int) r[2];
+        pSize[p] = (int) (r[3] >>> 32);
+        pDst[p] = (int) r[3];
+        pLink[p] = (int) (r[4] >>> 32);
+        pUid[p] = (int) r[4];
+        pType[p] = (byte) r[5];
+        events.push(Double.longBitsToDouble(r[0]), ARRIVE | (long) p << 4);
+    }
+
+    private void release(int p) {
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, free.length * 2);
+        free[freeCount++] = p;
+    }
+
+    private void growPool() {
+        int n = pFlow.length * 2;
+        pFlow = Arrays.copyOf(pFlow, n);
+        pSeq = Arrays.copyOf(pSeq, n);
+        pSize = Arrays.copyOf(pSize, n);
+        pDst = Arrays.copyOf(pDst, n);
+        pLink = Arrays.copyOf(pLink, n);
+        pUid = Arrays.copyOf(pUid, n);
+        pType = Arrays.copyOf(pType, n);
+        pStamp = Arrays.copyOf(pStamp, n);
+    }
+
+    // ----- Traces -----
+
+    /**
+     * One line of the NS-2 trace, "event time from to type size flags fid
+     * src.port dst.port seq uid", and the same event in the NAM trace.
+     */
+    private void trace(char event, int dl, int p) throws IOException {
+        if (tr != null) {
+            int f = pFlow[p];
+            boolean back = pType[p] == ACK;
+            tr.text(event).text(' ').decimal(now, 9).text(' ').number(dlFrom[dl]).text(' ').number(dlTo[dl])
+                    .text(' ').text(TYPE_NAMES[pType[p]]).text(' ').number(pSize[p]).text(" ------- ").number(f)
+                    .text(' ').number(back ? fDst[f] : fSrc[f]).text('.').number(back ? fDstPort[f] : fSrcPort[f])
+                    .text(' ').number(back ? fSrc[f] : fDst[f]).text('.').number(back ? fSrcPort[f] : fDstPort[f])
+                    .text(' ').number(pSeq[p]).text(' ').number(pUid[p]).line();
+            if (trLines != null)
+                trLines.mark(now);
+        }
+        if (nam != null)
+            namEvent(event, dl, p);
+    }
+
+    private void namEvent(char event, int dl, int p) throws IOException {
+        int f = pFlow[p];
+        boolean back = pType[p] == ACK;
+        nam.text(event).text(" -t ").decimal(now, 9).text(" -s ").number(dlFrom[dl]).text(" -d ")
+                .number(dlTo[dl]).text(" -p ").text(TYPE_NAMES[pType[p]]).text(" -e ").number(pSize[p])
+                .text(" -c ").number(f).text(" -i ").number(pUid[p]).text(" -a ").number(f).text(" -x {")
+                .number(back ? fDst[f] : fSrc[f]).text(".").number(back ? fDstPort[f] : fSrcPort[f]).text(' ')
+                .number(back ? fSrc[f] : fDst[f]).text(".").number(back ? fSrcPort[f] : fDstPort[f]).text(' ')
+                .number(pSeq[p]).line(" ------- null}");
+        if (namLines != null)
+            namLines.mark(now);
+    }
+
+    /** Node and link lines; with {@code partOf}, nodes are coloured by partition. */
+    private void writeNamHeader(int[] partOf) throws IOException {
+        nam.line("V -t * -v 1.0a5 -a 0");
+        for (int n = 0; n < graph.nodeCount; n++) {
+            nam.text("n -t * -a ").number(n).text(" -s ").number(n).text(" -S UP -v circle -c ")
+                    .text(partOf != null ? Partition.hex(partOf[n]) : "black").text(" -i black -x ")
+                    .number(graph.nodeX[n]).text(" -y ").number(graph.nodeY[n]).line();
+        }
+        for (int l = 0; l < graph.linkCount; l++) {
+            if (graph.linkSrc[l] < 0)
+                continue;
+            nam.text("l -t * -s ").number(graph.linkSrc[l]).text(" -d ").number(graph.linkDst[l])
+                    .text(" -S UP -r ").decimal(dlBandwidth[2 * l], 3).text(" -D ").decimal(dlDelay[2 * l], 9)
+                    .line(" -c black");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package Simulation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer, single-consumer queue of fixed-size records of
+ * longs, used to hand packets from one partition's thread to another's. The
+ * records sit in a ring of primitive slots; the producer publishes its tail
+ * with a release store after writing a record and the consumer its head
+ * after reading one, so neither side ever blocks or allocates.
+ *
+ * A producer that finds the ring full keeps further records in a private
+ * overflow instead of waiting, since the consumer may itself be busy until
+ * the next barrier. The consumer reads the overflow after the ring, which is
+ * only safe while the producer is stopped at a barrier; ParallelSimulator
+ * drains its queues there.
+ */
+final class SpscQueue {
+    private static final int CAPACITY = 1 << 10;
+
+    private final int record;
+    /** Allocated by the producer on first use; most partition pairs never exchange packets. */
+    private long[] ring;
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    private long producerTail, cachedHead;
+    private long consumerHead;
+    private long[] overflow;
+    private int overflowCount, overflowRead;
+
+    /** Queue of records of {@code record} longs. */
+    SpscQueue(int record) {
+        this.record = record;
+    }
+
+    /** Appends the record in {@code r}; producer thread only. */
+    void put(long[] r) {
+        if (overflowCount == 0) {
+            if (ring == null)
+                ring = new long[CAPACITY * record];
+            if (producerTail - cachedHead == CAPACITY)
+                cachedHead = head.get();
+            if (producerTail - cachedHead < CAPACITY) {
+                System.arraycopy(r, 0, ring, (int) (producerTail & (CAPACITY - 1)) * record, record);
+                tail.lazySet(++producerTail);
+                return;
+            }
+        }
+        if (overflow == null)
+            overflow = new long[CAPACITY * record];
+        else if ((overflowCount + 1) * record > overflow.length)
+            overflow = Arrays.copyOf(overflow, overflow.length * 2);
+        System.arraycopy(r, 0, overflow, overflowCount++ * record, record);
+    }
+
+    /**
+     * Copies the oldest record into {@code r} and removes it; false if there
+     * is none. Consumer thread only, and only while the producer waits at a
+     * barrier once the ring has overflowed.
+     */
+    boolean poll(long[] r) {
+        if (consumerHead < tail.get()) {
+            System.arraycopy(ring, (int) (consumerHead & (CAPACITY - 1)) * record, r, 0, record);
+            head.lazySet(++consumerHead);
+            return true;
+        }
+        if (overflowRead < overflowCount) {
+            System.arraycopy(overflow, overflowRead++ * record, r, 0, record);
+            return true;
+        }
+        overflowCount = overflowRead = 0;
+        return false;
+    }
+}
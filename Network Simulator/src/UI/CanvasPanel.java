@@ -1,7 +1,11 @@
 package UI;
 
 import Components.Node;
+import Components.CompactGraph;
 import Components.Link;
+import Components.Topology;
+import Components.TopologySnapshot;
+import Partitioning.Partition;
 
 import javax.swing.*;
 import java.awt.*;
@@ -24,45 +28,291 @@ public class CanvasPanel extends JPanel {
     private Point rubberLineEnd = null;
     private Point selectionStart = null;
     private Rectangle selectionRect = null;
-    private final List<Node> clipboard = new ArrayList<>();
-    private final List<CopiedLink> clipboardLinks = new ArrayList<>();
+    private CopiedSubgraph clipboard;
     private final java.util.Set<Node> selected = new java.util.HashSet<>();
-    private final List<Node> nodes = new ArrayList<>();
-    private final List<Link> links = new ArrayList<>();
+    private Topology topology = new Topology();
+    private final SpatialIndex nodeIndex = new SpatialIndex(4 * GRID);
+    private final LinkIndex linkIndex = new LinkIndex(4 * GRID);
     private final JLabel statusLabel;
+    private Partition partition;
+    private Color[] partColors;
 
     private boolean panning = false;
     private Point panAnchor = null;
     private double panStartX = 0.0, panStartY = 0.0;
 
-    private class CopiedLink {
-        Node a, b;
+    // Undo history limit in megabytes, and a directory to spill older steps to instead of dropping them.
+    private static final long UNDO_LIMIT_MB = Long.getLong("undo.memory.mb", 64);
+    private static final String UNDO_SPILL_DIR = System.getProperty("undo.spill.dir", "");
 
-        CopiedLink(Node a, Node b) {
-            this.a = a;
-            this.b = b;
+    private final CommandHistory history = new CommandHistory(new HistoryCodec(), UNDO_LIMIT_MB << 20,
+            UNDO_SPILL_DIR.isEmpty() ? null : new java.io.File(UNDO_SPILL_DIR));
+
+    // Accessor methods for export functionality
+    public java.util.Collection<Node> getNodes() {
+        return topology.snapshot().nodes();
+    }
+
+    public java.util.Collection<Link> getLinks() {
+        return topology.snapshot().links();
+    }
+
+    /** Immutable view of the canvas topology; O(1), and the same object until the next edit. */
+    public TopologySnapshot getSnapshot() {
+        return topology.snapshot();
+    }
+
+    /** Array form of the canvas topology, cached until the next edit. */
+    public CompactGraph getGraph() {
+        return topology.compact();
+    }
+
+    /** Partition to show, or null. */
+    public Partition getPartition() {
+        return partition;
+    }
+
+    /**
+     * Colours nodes by their part of {@code p} and draws the links between
+     * parts in {@link #CUT_LINK}; null shows the topology plainly again.
+     * Nodes added since {@code p} was made keep the usual colour.
+     */
+    public void setPartition(Partition p) {
+        partition = p;
+        partColors = null;
+        if (p != null) {
+            partColors = new Color[p.parts];
+            for (int i = 0; i < p.parts; i++)
+                partColors[i] = new Color(Partition.rgb(i));
         }
+        tiles.clear();
+        repaint();
     }
 
-    private final java.util.Deque<Command> undoStack = new java.util.ArrayDeque<>();
-    private final java.util.Deque<Command> redoStack = new java.util.ArrayDeque<>();
+    /** Colour of node {@code n}'s part, or null outside a partition. */
+    private Color partColor(Node n) {
+        if (partition == null)
+            return null;
+        int part = partition.partOfId(n.id);
+        return part < 0 ? null : partColors[part];
+    }
 
-    // Accessor methods for export functionality
-    public List<Node> getNodes() {
-        return new ArrayList<>(nodes);
+    private boolean isCut(Link l) {
+        if (partition == null)
+            return false;
+        int a = partition.partOfId(l.node1.id), b = partition.partOfId(l.node2.id);
+        return a >= 0 && b >= 0 && a != b;
+    }
+
+    /**
+     * Replaces everything on the canvas with {@code g}, keeping its ids, and
+     * zooms to fit. Loading is not undoable: the undo history is cleared.
+     */
+    public void loadGraph(CompactGraph g) {
+        Topology t = new Topology();
+        Node[] nodes = nodesOf(g);
+        for (Node n : nodes)
+            t.addNode(n);
+        for (Link l : linksOf(g, nodes))
+            t.addLink(l);
+
+        topology = t;
+        nodeIndex.clear();
+        for (Node n : nodes)
+            nodeIndex.add(n);
+        linkIndex.rebuild(t.getLinks());
+        selected.clear();
+        selectionRect = null;
+        selectedForLink = null;
+        dragNode = null;
+        dragLinks = new ArrayList<>();
+        history.clear();
+        partition = null;
+        tiles.clear();
+        fitToContents();
+        updateStatus();
+        repaint();
+    }
+
+    /**
+     * Adds {@code g} to the canvas as a single undoable edit and zooms to fit.
+     * Ids already used on the canvas are replaced by fresh ones.
+     */
+    public void importGraph(CompactGraph g) {
+        Node[] nodes = nodesOf(g);
+        BulkAddCommand cmd = new BulkAddCommand(nodes, linksOf(g, nodes));
+        cmd.execute();
+        history.push(cmd);
+        fitToContents();
+        updateStatus();
+        repaint();
+    }
+
+    /**
+     * Moves {@code nodes} to the given positions without an undo step, e.g.
+     * to show a layout in progress. Nodes no longer on the canvas are skipped.
+     */
+    public void previewPositions(Node[] nodes, int[] x, int[] y) {
+        moveAll(nodes, x, y);
+        repaint();
+    }
+
+    /** Links with both ends selected, or every link when nothing is selected. */
+    public Link[] getSelectedLinks() {
+        if (selected.isEmpty())
+            return topology.getLinks().toArray(new Link[0]);
+        List<Link> links = new ArrayList<>();
+        for (Node n : selected) {
+            for (Link l : topology.linksOf(n)) {
+                // Seen from both ends; keep it from node1's side.
+                if (l.node1 == n && selected.contains(l.node2))
+                    links.add(l);
+            }
+        }
+        return links.toArray(new Link[0]);
+    }
+
+    /** Applies {@code edit} to {@code links} as a single undoable edit. */
+    public void editLinks(Link[] links, LinkPropertiesDialog.Edit edit) {
+        LinkParametersCommand cmd = new LinkParametersCommand(links, edit);
+        cmd.execute();
+        history.push(cmd);
+    }
+
+    /** Moves {@code nodes} from the old to the new positions as a single undoable edit. */
+    public void commitPositions(Node[] nodes, int[] oldX, int[] oldY, int[] x, int[] y) {
+        BulkMoveCommand cmd = new BulkMoveCommand(nodes, oldX, oldY, x, y);
+        cmd.execute();
+        history.push(cmd);
+        repaint();
+    }
+
+    /**
+     * Moves many nodes, re-filing each affected link once rather than once
+     * per moved end, or rebuilding the link index when most nodes or links
+     * move, e.g. in a layout preview.
+     */
+    private void moveAll(Node[] nodes, int[] x, int[] y) {
+        java.util.Set<Link> affected = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+        boolean rebuild = nodes.length > topology.nodeCount() / 2;
+        for (int i = 0; i < nodes.length && !rebuild; i++) {
+            Node n = nodes[i];
+            if (topology.contains(n) && (n.x != x[i] || n.y != y[i]))
+                affected.addAll(topology.linksOf(n));
+            rebuild = affected.size() > topology.linkCount() / 2;
+        }
+        if (!rebuild) {
+            for (Link l : affected)
+                linkIndex.remove(l);
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            Node n = nodes[i];
+            if (!topology.contains(n) || (n.x == x[i] && n.y == y[i]))
+                continue;
+            int fromX = n.x, fromY = n.y;
+            topology.moveNode(n, x[i], y[i]);
+            nodeIndex.moved(n, fromX, fromY);
+        }
+        if (rebuild) {
+            linkIndex.rebuild(topology.getLinks());
+        } else {
+            for (Link l : affected)
+                linkIndex.add(l);
+        }
+        tiles.clear();
+    }
+
+    // Topology edits that keep the node and link indexes in step.
+
+    private void moveNode(Node n, int x, int y) {
+        int fromX = n.x, fromY = n.y;
+        topology.moveNode(n, x, y);
+        nodeIndex.moved(n, fromX, fromY);
+        for (Link l : topology.linksOf(n))
+            linkIndex.moved(l, n, fromX, fromY);
     }
 
-    public List<Link> getLinks() {
-        return new ArrayList<>(links);
+    private void addNode(Node n) {
+        if (topology.contains(n))
+            return;
+        topology.addNode(n);
+        nodeIndex.add(n);
     }
 
-    private interface Command {
-        void execute();
+    /** Removes {@code n} and its links; returns the removed links. */
+    private List<Link> removeNode(Node n) {
+        for (Link l : topology.linksOf(n))
+            linkIndex.remove(l);
+        nodeIndex.remove(n);
+        return topology.removeNode(n);
+    }
+
+    private void addLink(Link l) {
+        if (topology.contains(l))
+            return;
+        topology.addLink(l);
+        linkIndex.add(l);
+    }
+
+    private void removeLink(Link l) {
+        if (!topology.contains(l))
+            return;
+        linkIndex.remove(l);
+        topology.removeLink(l);
+    }
 
-        void undo();
+    private static Node[] nodesOf(CompactGraph g) {
+        Node[] nodes = new Node[g.nodeCount];
+        for (int i = 0; i < g.nodeCount; i++)
+            nodes[i] = new Node(g.nodeX[i], g.nodeY[i], g.nodeIds[i]);
+        return nodes;
+    }
+
+    private static Link[] linksOf(CompactGraph g, Node[] nodes) {
+        int m = 0;
+        Link[] links = new Link[g.linkCount];
+        for (int l = 0; l < g.linkCount; l++) {
+            if (g.linkSrc[l] < 0)
+                continue;
+            Link link = new Link(nodes[g.linkSrc[l]], nodes[g.linkDst[l]], g.linkIds[l]);
+            if (g.linkProfile != null) {
+                link.bandwidth = g.bandwidth(l);
+                link.delay = g.delay(l);
+                link.queueType = (byte) g.queueType(l);
+                link.queueLimit = g.queueLimit(l);
+            }
+            links[m++] = link;
+        }
+        return m == links.length ? links : java.util.Arrays.copyOf(links, m);
+    }
+
+    /** Centres the view on the nodes and zooms out, if needed, until they all fit. */
+    public void fitToContents() {
+        if (topology.nodeCount() == 0) {
+            scale = 1.0;
+            panX = 0;
+            panY = 0;
+            repaint();
+            return;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Node n : topology.getNodes()) {
+            minX = Math.min(minX, n.x);
+            minY = Math.min(minY, n.y);
+            maxX = Math.max(maxX, n.x);
+            maxY = Math.max(maxY, n.y);
+        }
+        double w = getWidth() > 0 ? getWidth() : 800;
+        double h = getHeight() > 0 ? getHeight() : 600;
+        double margin = 2 * NODE_RADIUS;
+        scale = Math.min(1.0, Math.min(w / (maxX - minX + 2 * margin), h / (maxY - minY + 2 * margin)));
+        panX = (minX + maxX) / 2.0;
+        panY = (minY + maxY) / 2.0;
+        repaint();
     }
 
-    private class AddNodeCommand implements Command {
+    private class AddNodeCommand implements CommandHistory.Command {
         private final Node node;
 
         AddNodeCommand(Node n) {
@@ -70,17 +320,25 @@ public class CanvasPanel extends JPanel {
         }
 
         public void execute() {
-            nodes.add(node);
+            addNode(node);
+            invalidateNode(node);
         }
 
         public void undo() {
-            links.removeIf(l -> l.node1 == node || l.node2 == node);
-            nodes.remove(node);
-            Components.Node.releaseId(node.id);
+            invalidateNodeAndLinks(node);
+            removeNode(node);
+        }
+
+        public long bytes() {
+            return CommandHistory.COMMAND_BYTES + CommandHistory.NODE_BYTES;
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            out.accept(node);
         }
     }
 
-    private class RemoveNodeCommand implements Command {
+    private class RemoveNodeCommand implements CommandHistory.Command {
         private final Node node;
         private final List<Link> removedLinks = new ArrayList<>();
 
@@ -89,27 +347,37 @@ public class CanvasPanel extends JPanel {
         }
 
         public void execute() {
-            for (Link l : new ArrayList<>(links)) {
-                if (l.node1 == node || l.node2 == node)
-                    removedLinks.add(l);
-            }
-            links.removeAll(removedLinks);
-            nodes.remove(node);
-            Components.Node.releaseId(node.id);
+            invalidateNodeAndLinks(node);
+            removedLinks.clear();
+            removedLinks.addAll(removeNode(node));
         }
 
         public void undo() {
-            boolean reserved = Components.Node.reserveId(node.id);
-            if (!reserved)
-                node.id = Components.Node.nextId();
-            nodes.add(node);
-            links.addAll(removedLinks);
+            addNode(node);
+            for (Link l : removedLinks)
+                addLink(l);
+            invalidateNodeAndLinks(node);
+        }
+
+        public long bytes() {
+            return 2 * CommandHistory.COMMAND_BYTES + CommandHistory.NODE_BYTES
+                    + removedLinks.size() * (CommandHistory.REF_BYTES + CommandHistory.LINK_BYTES);
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            out.accept(node);
+            removedLinks.forEach(out);
         }
     }
 
-    private class MoveNodeCommand implements Command {
+    /** Drags of the same node that follow one another within this time are undone as one step. */
+    private static final long COALESCE_NANOS = 1_500_000_000L;
+
+    private class MoveNodeCommand implements CommandHistory.Command {
         private final Node node;
-        private final int oldX, oldY, newX, newY;
+        private final int oldX, oldY;
+        private int newX, newY;
+        private long time = System.nanoTime();
 
         MoveNodeCommand(Node n, int ox, int oy, int nx, int ny) {
             node = n;
@@ -120,17 +388,38 @@ public class CanvasPanel extends JPanel {
         }
 
         public void execute() {
-            node.x = newX;
-            node.y = newY;
+            invalidateNodeAndLinks(node);
+            moveNode(node, newX, newY);
+            invalidateNodeAndLinks(node);
         }
 
         public void undo() {
-            node.x = oldX;
-            node.y = oldY;
+            invalidateNodeAndLinks(node);
+            moveNode(node, oldX, oldY);
+            invalidateNodeAndLinks(node);
+        }
+
+        public long bytes() {
+            return CommandHistory.COMMAND_BYTES;
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            out.accept(node);
+        }
+
+        @Override
+        public boolean absorb(CommandHistory.Command next) {
+            if (!(next instanceof MoveNodeCommand m) || m.node != node || m.oldX != newX || m.oldY != newY
+                    || m.time - time > COALESCE_NANOS)
+                return false;
+            newX = m.newX;
+            newY = m.newY;
+            time = m.time;
+            return true;
         }
     }
 
-    private class AddLinkCommand implements Command {
+    private class AddLinkCommand implements CommandHistory.Command {
         private final Node a, b;
         private Link created;
 
@@ -141,29 +430,320 @@ public class CanvasPanel extends JPanel {
 
         public void execute() {
             created = new Link(a, b);
-            links.add(created);
+            addLink(created);
+            invalidateLink(created);
+        }
+
+        public void undo() {
+            removeLink(created);
+            invalidateLink(created);
+        }
+
+        public long bytes() {
+            return CommandHistory.COMMAND_BYTES + CommandHistory.LINK_BYTES;
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            out.accept(a);
+            out.accept(b);
+            if (created != null)
+                out.accept(created);
+        }
+    }
+
+    /**
+     * Adds many nodes and links at once, e.g. an imported topology. Holds
+     * only the two arrays, and redraws the whole canvas once instead of
+     * invalidating element by element.
+     */
+    private class BulkAddCommand implements CommandHistory.Command {
+        private final Node[] nodes;
+        private final Link[] links;
+
+        BulkAddCommand(Node[] nodes, Link[] links) {
+            this.nodes = nodes;
+            this.links = links;
+        }
+
+        public void execute() {
+            for (Node n : nodes)
+                addNode(n);
+            if (links.length > topology.linkCount()) {
+                // Mostly new links, e.g. an import onto an empty canvas: index them all in one pass.
+                for (Link l : links) {
+                    if (!topology.contains(l))
+                        topology.addLink(l);
+                }
+                linkIndex.rebuild(topology.getLinks());
+            } else {
+                for (Link l : links)
+                    addLink(l);
+            }
+            tiles.clear();
+        }
+
+        public void undo() {
+            for (int i = links.length - 1; i >= 0; --i)
+                removeLink(links[i]);
+            for (int i = nodes.length - 1; i >= 0; --i) {
+                removeNode(nodes[i]);
+                selected.remove(nodes[i]);
+            }
+            tiles.clear();
+        }
+
+        public long bytes() {
+            return bulkBytes(nodes, links);
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            java.util.Arrays.asList(nodes).forEach(out);
+            java.util.Arrays.asList(links).forEach(out);
+        }
+    }
+
+    /**
+     * Removes many nodes, with their links, at once, e.g. a cut. The removed
+     * links are gathered into one array on execution rather than kept per
+     * node, and the canvas is redrawn once.
+     */
+    private class BulkRemoveCommand implements CommandHistory.Command {
+        private final Node[] nodes;
+        private Link[] links;
+
+        BulkRemoveCommand(Node[] nodes) {
+            this(nodes, new Link[0]);
+        }
+
+        BulkRemoveCommand(Node[] nodes, Link[] links) {
+            this.nodes = nodes;
+            this.links = links;
+        }
+
+        public void execute() {
+            List<Link> removed = new ArrayList<>();
+            for (Node n : nodes) {
+                removed.addAll(removeNode(n));
+                selected.remove(n);
+            }
+            links = removed.toArray(new Link[0]);
+            tiles.clear();
         }
 
         public void undo() {
-            links.remove(created);
+            for (Node n : nodes)
+                addNode(n);
+            for (Link l : links)
+                addLink(l);
+            tiles.clear();
+        }
+
+        public long bytes() {
+            return bulkBytes(nodes, links);
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            java.util.Arrays.asList(nodes).forEach(out);
+            java.util.Arrays.asList(links).forEach(out);
         }
     }
 
-    private class CompositeCommand implements Command {
-        private final List<Command> parts = new ArrayList<>();
+    private static long bulkBytes(Node[] nodes, Link[] links) {
+        return 2 * CommandHistory.COMMAND_BYTES
+                + nodes.length * (CommandHistory.REF_BYTES + CommandHistory.NODE_BYTES)
+                + links.length * (CommandHistory.REF_BYTES + CommandHistory.LINK_BYTES);
+    }
 
-        void add(Command c) {
-            parts.add(c);
+    /** Moves many nodes at once, e.g. an automatic layout; positions are kept in plain arrays. */
+    private class BulkMoveCommand implements CommandHistory.Command {
+        private final Node[] nodes;
+        private final int[] oldX, oldY, newX, newY;
+
+        BulkMoveCommand(Node[] nodes, int[] oldX, int[] oldY, int[] newX, int[] newY) {
+            this.nodes = nodes;
+            this.oldX = oldX;
+            this.oldY = oldY;
+            this.newX = newX;
+            this.newY = newY;
         }
 
         public void execute() {
-            for (Command c : parts)
-                c.execute();
+            moveAll(nodes, newX, newY);
         }
 
         public void undo() {
-            for (int i = parts.size() - 1; i >= 0; --i)
-                parts.get(i).undo();
+            moveAll(nodes, oldX, oldY);
+        }
+
+        public long bytes() {
+            return 5 * CommandHistory.COMMAND_BYTES + nodes.length * (CommandHistory.REF_BYTES + 16);
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            java.util.Arrays.asList(nodes).forEach(out);
+        }
+    }
+
+    /** Changes the parameters of many links at once; their previous values are kept in plain arrays. */
+    private class LinkParametersCommand implements CommandHistory.Command {
+        private final Link[] links;
+        private final LinkPropertiesDialog.Edit edit;
+        private final double[] oldBandwidth, oldDelay;
+        private final byte[] oldQueueType;
+        private final int[] oldQueueLimit;
+
+        LinkParametersCommand(Link[] links, LinkPropertiesDialog.Edit edit) {
+            this(links, edit, new double[links.length], new double[links.length], new byte[links.length],
+                    new int[links.length]);
+            for (int i = 0; i < links.length; i++) {
+                oldBandwidth[i] = links[i].bandwidth;
+                oldDelay[i] = links[i].delay;
+                oldQueueType[i] = links[i].queueType;
+                oldQueueLimit[i] = links[i].queueLimit;
+            }
+        }
+
+        LinkParametersCommand(Link[] links, LinkPropertiesDialog.Edit edit, double[] oldBandwidth, double[] oldDelay,
+                byte[] oldQueueType, int[] oldQueueLimit) {
+            this.links = links;
+            this.edit = edit;
+            this.oldBandwidth = oldBandwidth;
+            this.oldDelay = oldDelay;
+            this.oldQueueType = oldQueueType;
+            this.oldQueueLimit = oldQueueLimit;
+        }
+
+        public void execute() {
+            for (int i = 0; i < links.length; i++) {
+                topology.setLinkParameters(links[i], edit.setBandwidth ? edit.bandwidth : oldBandwidth[i],
+                        edit.setDelay ? edit.delay : oldDelay[i], edit.setQueueType ? edit.queueType : oldQueueType[i],
+                        edit.setQueueLimit ? edit.queueLimit : oldQueueLimit[i]);
+            }
+        }
+
+        public void undo() {
+            for (int i = 0; i < links.length; i++)
+                topology.setLinkParameters(links[i], oldBandwidth[i], oldDelay[i], oldQueueType[i], oldQueueLimit[i]);
+        }
+
+        public long bytes() {
+            return 6 * CommandHistory.COMMAND_BYTES + links.length * (CommandHistory.REF_BYTES + 21);
+        }
+
+        public void references(java.util.function.Consumer<Object> out) {
+            for (Link l : links)
+                out.accept(l);
+        }
+    }
+
+    /** Writes the commands above to undo spill files and reads them back. */
+    private class HistoryCodec implements CommandHistory.Codec {
+        private static final int ADD_NODE = 1, REMOVE_NODE = 2, MOVE_NODE = 3, ADD_LINK = 4,
+                BULK_ADD = 5, BULK_REMOVE = 6, BULK_MOVE = 7, LINK_PARAMETERS = 8;
+
+        public void write(CommandHistory.Command command, CommandHistory.SpillOutput out) throws java.io.IOException {
+            if (command instanceof AddNodeCommand c) {
+                out.writeInt(ADD_NODE);
+                out.writeNode(c.node);
+            } else if (command instanceof RemoveNodeCommand c) {
+                out.writeInt(REMOVE_NODE);
+                out.writeNode(c.node);
+                out.writeLinks(c.removedLinks.toArray(new Link[0]));
+            } else if (command instanceof MoveNodeCommand c) {
+                out.writeInt(MOVE_NODE);
+                out.writeNode(c.node);
+                out.writeInts(new int[] { c.oldX, c.oldY, c.newX, c.newY });
+            } else if (command instanceof AddLinkCommand c) {
+                out.writeInt(ADD_LINK);
+                out.writeNode(c.a);
+                out.writeNode(c.b);
+                out.writeLink(c.created);
+            } else if (command instanceof BulkAddCommand c) {
+                out.writeInt(BULK_ADD);
+                out.writeNodes(c.nodes);
+                out.writeLinks(c.links);
+            } else if (command instanceof BulkRemoveCommand c) {
+                out.writeInt(BULK_REMOVE);
+                out.writeNodes(c.nodes);
+                out.writeLinks(c.links);
+            } else if (command instanceof BulkMoveCommand c) {
+                out.writeInt(BULK_MOVE);
+                out.writeNodes(c.nodes);
+                out.writeInts(c.oldX);
+                out.writeInts(c.oldY);
+                out.writeInts(c.newX);
+                out.writeInts(c.newY);
+            } else if (command instanceof LinkParametersCommand c) {
+                out.writeInt(LINK_PARAMETERS);
+                out.writeLinks(c.links);
+                out.writeInt((c.edit.setBandwidth ? 1 : 0) | (c.edit.setDelay ? 2 : 0) | (c.edit.setQueueType ? 4 : 0)
+                        | (c.edit.setQueueLimit ? 8 : 0));
+                out.writeDouble(c.edit.bandwidth);
+                out.writeDouble(c.edit.delay);
+                out.writeInt(c.edit.queueType);
+                out.writeInt(c.edit.queueLimit);
+                out.writeDoubles(c.oldBandwidth);
+                out.writeDoubles(c.oldDelay);
+                out.writeBytes(c.oldQueueType);
+                out.writeInts(c.oldQueueLimit);
+            } else {
+                throw new java.io.IOException("Cannot spill " + command.getClass().getSimpleName());
+            }
+        }
+
+        public CommandHistory.Command read(CommandHistory.SpillInput in) throws java.io.IOException {
+            switch (in.readInt()) {
+                case ADD_NODE:
+                    return new AddNodeCommand(in.readNode());
+                case REMOVE_NODE: {
+                    RemoveNodeCommand c = new RemoveNodeCommand(in.readNode());
+                    c.removedLinks.addAll(java.util.Arrays.asList(in.readLinks()));
+                    return c;
+                }
+                case MOVE_NODE: {
+                    Node n = in.readNode();
+                    int[] p = in.readInts();
+                    return new MoveNodeCommand(n, p[0], p[1], p[2], p[3]);
+                }
+                case ADD_LINK: {
+                    AddLinkCommand c = new AddLinkCommand(in.readNode(), in.readNode());
+                    c.created = in.readLink();
+                    return c;
+                }
+                case BULK_ADD: {
+                    Node[] nodes = in.readNodes();
+                    return new BulkAddCommand(nodes, in.readLinks());
+                }
+                case BULK_REMOVE: {
+                    Node[] nodes = in.readNodes();
+                    return new BulkRemoveCommand(nodes, in.readLinks());
+                }
+                case BULK_MOVE: {
+                    Node[] nodes = in.readNodes();
+                    return new BulkMoveCommand(nodes, in.readInts(), in.readInts(), in.readInts(), in.readInts());
+                }
+                case LINK_PARAMETERS: {
+                    Link[] links = in.readLinks();
+                    LinkPropertiesDialog.Edit edit = new LinkPropertiesDialog.Edit();
+                    int set = in.readInt();
+                    edit.setBandwidth = (set & 1) != 0;
+                    edit.setDelay = (set & 2) != 0;
+                    edit.setQueueType = (set & 4) != 0;
+                    edit.setQueueLimit = (set & 8) != 0;
+                    edit.bandwidth = in.readDouble();
+                    edit.delay = in.readDouble();
+                    edit.queueType = in.readInt();
+                    edit.queueLimit = in.readInt();
+                    return new LinkParametersCommand(links, edit, in.readDoubles(), in.readDoubles(), in.readBytes(),
+                            in.readInts());
+                }
+                default:
+                    throw new java.io.IOException("Corrupt undo file");
+            }
+        }
+
+        public boolean live(Object ref) {
+            return ref instanceof Node n ? topology.contains(n) : topology.contains((Link) ref);
         }
     }
 
@@ -209,6 +789,9 @@ public class CanvasPanel extends JPanel {
                             Point2D.Double w = screenToWorld(e.getX(), e.getY());
                             dragOffset = new Point2D.Double(w.x - hit.x, w.y - hit.y);
                             dragOriginal = new Point(hit.x, hit.y);
+                            // The dragged node and its links leave the tile cache until released.
+                            dragLinks = new ArrayList<>(topology.linksOf(hit));
+                            invalidateNodeAndLinks(hit);
                             updateStatus();
                         }
                     } else {
@@ -221,29 +804,23 @@ public class CanvasPanel extends JPanel {
                             int sy = snapToGridWorld((int) Math.round(w.y));
                             AddNodeCommand cmd = new AddNodeCommand(new Node(sx, sy));
                             cmd.execute();
-                            undoStack.push(cmd);
-                            redoStack.clear();
+                            history.push(cmd);
                         }
                     }
                     repaint();
                 } else if (SwingUtilities.isRightMouseButton(e)) {
                     if (hit != null) {
                         if (!selected.isEmpty() && selected.contains(hit)) {
-                            CompositeCommand comp = new CompositeCommand();
-                            for (Node r : new ArrayList<>(selected)) {
-                                comp.add(new RemoveNodeCommand(r));
-                            }
-                            comp.execute();
-                            undoStack.push(comp);
-                            redoStack.clear();
+                            BulkRemoveCommand cmd = new BulkRemoveCommand(selected.toArray(new Node[0]));
+                            cmd.execute();
+                            history.push(cmd);
                             selected.clear();
                             updateStatus();
                             repaint();
                         } else {
                             RemoveNodeCommand cmd = new RemoveNodeCommand(hit);
                             cmd.execute();
-                            undoStack.push(cmd);
-                            redoStack.clear();
+                            history.push(cmd);
                             repaint();
                         }
                     }
@@ -257,8 +834,7 @@ public class CanvasPanel extends JPanel {
                     if (dest != null && dest != selectedForLink) {
                         AddLinkCommand cmd = new AddLinkCommand(selectedForLink, dest);
                         cmd.execute();
-                        undoStack.push(cmd);
-                        redoStack.clear();
+                        history.push(cmd);
                     }
                     selectedForLink = null;
                     rubberLineEnd = null;
@@ -266,11 +842,7 @@ public class CanvasPanel extends JPanel {
                 }
                 if (selectionStart != null && selectionRect != null) {
                     selected.clear();
-                    for (Node n : nodes) {
-                        Point sn = worldToScreen(n.x, n.y);
-                        if (selectionRect.contains(sn))
-                            selected.add(n);
-                    }
+                    selected.addAll(nodesInSelectionRect());
                     selectionStart = null;
                     selectionRect = null;
                     updateStatus();
@@ -281,11 +853,13 @@ public class CanvasPanel extends JPanel {
                     if (dragNode.x != dragOriginal.x || dragNode.y != dragOriginal.y) {
                         MoveNodeCommand mv = new MoveNodeCommand(dragNode, dragOriginal.x, dragOriginal.y,
                                 dragNode.x, dragNode.y);
-                        undoStack.push(mv);
-                        redoStack.clear();
+                        history.push(mv);
                     }
                 }
+                if (dragNode != null)
+                    invalidateNodeAndLinks(dragNode);
                 dragNode = null;
+                dragLinks = new ArrayList<>();
                 dragOffset = null;
                 dragOriginal = null;
             }
@@ -321,8 +895,7 @@ public class CanvasPanel extends JPanel {
                     double nyd = w.y - dragOffset.y;
                     int nx = snapToGridWorld((int) Math.round(nxd));
                     int ny = snapToGridWorld((int) Math.round(nyd));
-                    dragNode.x = nx;
-                    dragNode.y = ny;
+                    moveNode(dragNode, nx, ny);
                     repaint();
                     return;
                 }
@@ -382,14 +955,22 @@ public class CanvasPanel extends JPanel {
         return new Point(sx, sy);
     }
 
+    // Overlapping nodes resolve to the one whose centre is closest.
     private Node findNodeAtWorld(double wx, double wy) {
-        for (Node n : nodes) {
-            double dx = n.x - wx;
-            double dy = n.y - wy;
-            if (dx * dx + dy * dy <= (double) NODE_RADIUS * (double) NODE_RADIUS)
-                return n;
-        }
-        return null;
+        return nodeIndex.nearest(wx, wy, NODE_RADIUS);
+    }
+
+    private List<Node> nodesInSelectionRect() {
+        List<Node> inside = new ArrayList<>();
+        Point2D.Double min = screenToWorld(selectionRect.x, selectionRect.y);
+        Point2D.Double max = screenToWorld(selectionRect.x + selectionRect.width,
+                selectionRect.y + selectionRect.height);
+        double slack = 1 / scale; // screen positions are rounded
+        nodeIndex.query(min.x - slack, min.y - slack, max.x + slack, max.y + slack, n -> {
+            if (selectionRect.contains(worldToScreen(n.x, n.y)))
+                inside.add(n);
+        });
+        return inside;
     }
 
     private void updateStatus() {
@@ -405,84 +986,66 @@ public class CanvasPanel extends JPanel {
     }
 
     private void undo() {
-        if (undoStack.isEmpty())
-            return;
-        Command cmd = undoStack.pop();
-        cmd.undo();
-        redoStack.push(cmd);
+        history.undo();
         repaint();
     }
 
     private void redo() {
-        if (redoStack.isEmpty())
-            return;
-        Command cmd = redoStack.pop();
-        cmd.execute();
-        undoStack.push(cmd);
+        history.redo();
         repaint();
     }
 
+    /** Caps the memory held by undo and redo steps; the oldest steps go first. */
+    public void setUndoMemoryLimit(long bytes) {
+        history.setLimit(bytes);
+    }
+
+    /** Older undo steps are written to files in {@code dir} instead of being dropped; null to drop them. */
+    public void setUndoSpillDirectory(java.io.File dir) {
+        history.setSpillDirectory(dir);
+    }
+
     private void copySelection() {
-        clipboard.clear();
-        clipboardLinks.clear();
         java.util.List<Node> toCopy = new ArrayList<>();
         if (selectionRect != null) {
-            for (Node n : nodes) {
-                Point sn = worldToScreen(n.x, n.y);
-                if (selectionRect.contains(sn))
-                    toCopy.add(n);
-            }
+            toCopy.addAll(nodesInSelectionRect());
         } else {
             toCopy.addAll(selected);
         }
-
-        java.util.Map<Node, Node> map = new java.util.HashMap<>();
-        for (Node n : toCopy) {
-            Node copy = new Node(n.x, n.y);
-            clipboard.add(copy);
-            map.put(n, copy);
-        }
-
-        for (Link l : links) {
-            if (map.containsKey(l.node1) && map.containsKey(l.node2)) {
-                clipboardLinks.add(new CopiedLink(l.node1, l.node2));
+        clipboard = CopiedSubgraph.copy(toCopy, topology);
+        java.awt.datatransfer.Clipboard system = systemClipboard();
+        if (system != null) {
+            try {
+                system.setContents(clipboard, clipboard);
+            } catch (IllegalStateException ex) {
+                // Clipboard busy; the copy is still available to this editor.
             }
         }
         updateStatus();
     }
 
     private void pasteClipboard() {
-        if (clipboard.isEmpty())
+        // Prefer the system clipboard so nodes copied in another editor window can be pasted here.
+        java.awt.datatransfer.Clipboard system = systemClipboard();
+        CopiedSubgraph copied = system != null ? CopiedSubgraph.from(system) : null;
+        if (copied == null)
+            copied = clipboard;
+        if (copied == null || copied.nodeCount == 0)
             return;
-        CompositeCommand comp = new CompositeCommand();
         int offset = GRID;
+        Node[] nodes = copied.newNodes(offset, offset);
+        BulkAddCommand cmd = new BulkAddCommand(nodes, copied.newLinks(nodes));
+        cmd.execute();
+        history.push(cmd);
+        repaint();
+    }
 
-        java.util.Map<Node, Node> createdMap = new java.util.HashMap<>();
-        for (Node cn : clipboard) {
-            Node p = new Node(cn.x + offset, cn.y + offset);
-            comp.add(new AddNodeCommand(p));
-            createdMap.put(cn, p);
-        }
-
-        for (CopiedLink l : clipboardLinks) {
-            Node a = null, b = null;
-            for (Node key : createdMap.keySet()) {
-                if (key.x == l.a.x && key.y == l.a.y) {
-                    a = createdMap.get(key);
-                }
-                if (key.x == l.b.x && key.y == l.b.y) {
-                    b = createdMap.get(key);
-                }
-            }
-            if (a != null && b != null) {
-                comp.add(new AddLinkCommand(a, b));
-            }
+    private java.awt.datatransfer.Clipboard systemClipboard() {
+        try {
+            return getToolkit().getSystemClipboard();
+        } catch (HeadlessException | SecurityException ex) {
+            return null;
         }
-
-        comp.execute();
-        undoStack.push(comp);
-        redoStack.clear();
-        repaint();
     }
 
     private void setupKeyBindings() {
@@ -529,109 +1092,391 @@ public class CanvasPanel extends JPanel {
 
     private void cutSelection() {
         copySelection();
-        CompositeCommand comp = new CompositeCommand();
         List<Node> toRemove = new ArrayList<>();
         if (selectionRect != null) {
-            for (Node n : nodes) {
-                Point sn = worldToScreen(n.x, n.y);
-                if (selectionRect.contains(sn))
-                    toRemove.add(n);
-            }
+            toRemove.addAll(nodesInSelectionRect());
         } else {
             toRemove.addAll(selected);
         }
-        for (Node r : toRemove) {
-            comp.add(new RemoveNodeCommand(r));
-        }
-        comp.execute();
-        undoStack.push(comp);
-        redoStack.clear();
+        BulkRemoveCommand cmd = new BulkRemoveCommand(toRemove.toArray(new Node[0]));
+        cmd.execute();
+        history.push(cmd);
         selectionRect = null;
         selected.clear();
         updateStatus();
         repaint();
     }
 
+    private static final Color GRID_COLOR = new Color(230, 230, 230);
+    private static final Color LINK_COLOR = new Color(120, 120, 120);
+    private static final Color CUT_LINK = new Color(255, 0, 160);
+    private static final Color NODE_SHADOW = new Color(0, 0, 0, 40);
+    private static final Color NODE_LIGHT = new Color(80, 160, 240);
+    private static final Color NODE_DARK = new Color(30, 90, 200);
+    private static final Color NODE_OUTLINE = new Color(20, 45, 130);
+    private static final Color SELECTION_RING = new Color(255, 200, 50, 180);
+    private static final Color LINK_MODE = new Color(200, 50, 50);
+    private static final Color RUBBER_LINE = new Color(200, 50, 50, 180);
+    private static final Color SELECTION_FILL = new Color(50, 120, 200, 60);
+    private static final Color SELECTION_EDGE = new Color(50, 120, 200);
+    private static final BasicStroke THIN = new BasicStroke(1f);
+    private static final BasicStroke LINK_STROKE = new BasicStroke(2f);
+    private static final BasicStroke RUBBER_STROKE = new BasicStroke(2f, BasicStroke.CAP_ROUND,
+            BasicStroke.JOIN_ROUND, 0, new float[] { 6f }, 0);
+
+    // Level-of-detail thresholds, in screen pixels of node radius / grid spacing.
+    // Below LABEL_RADIUS nodes lose their label, shadow and gradient; below
+    // DOT_RADIUS they become squares.
+    private static final double DOT_RADIUS = 4;
+    private static final double LABEL_RADIUS = 10;
+    private static final double MIN_GRID_SPACING = 6;
+
+    // Static scene (grid, links, nodes) is rendered into world-aligned tiles of
+    // TILE x TILE pixels at the current zoom. Panning reuses them; edits drop
+    // the tiles they touch and zooming drops them all. Selection, the dragged
+    // node and its links, and the rubber-band shapes are drawn over the tiles
+    // every frame.
+    private static final int TILE = 256;
+    private static final int MIN_CACHED_TILES = 64;
+    private final java.util.LinkedHashMap<Long, java.awt.image.BufferedImage> tiles =
+            new java.util.LinkedHashMap<>(128, 0.75f, true);
+    private double tileScale = Double.NaN;
+    private List<Link> dragLinks = new ArrayList<>();
+
+    // Per-zoom paint state, rebuilt only when the node radius on screen changes.
+    private int cachedRadius = -1;
+    private GradientPaint nodeGradient;
+    private BasicStroke outlineStroke;
+    private BasicStroke selectionStroke;
+    private final Path2D.Float linkPath = new Path2D.Float();
+    private final Path2D.Float cutPath = new Path2D.Float();
+
+    private static long tileKey(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+
+    /** Largest distance, in world units, that a node's pixels reach beyond its centre. */
+    private double nodeExtent() {
+        return (Math.max(6, NODE_RADIUS * scale) + 8) / scale;
+    }
+
+    /** Drops cached tiles overlapping the given world rectangle, widened by the node extent. */
+    private void invalidateWorld(double minX, double minY, double maxX, double maxY) {
+        if (tiles.isEmpty())
+            return;
+        double pad = nodeExtent();
+        double size = TILE / tileScale;
+        int tx0 = (int) Math.floor((minX - pad) / size), tx1 = (int) Math.floor((maxX + pad) / size);
+        int ty0 = (int) Math.floor((minY - pad) / size), ty1 = (int) Math.floor((maxY + pad) / size);
+        if ((long) (tx1 - tx0 + 1) * (ty1 - ty0 + 1) > tiles.size()) {
+            tiles.keySet().removeIf(k -> {
+                int tx = (int) (k >> 32), ty = (int) (long) k;
+                return tx >= tx0 && tx <= tx1 && ty >= ty0 && ty <= ty1;
+            });
+            return;
+        }
+        for (int tx = tx0; tx <= tx1; tx++)
+            for (int ty = ty0; ty <= ty1; ty++)
+                tiles.remove(tileKey(tx, ty));
+    }
+
+    private void invalidateNode(Node n) {
+        invalidateWorld(n.x, n.y, n.x, n.y);
+    }
+
+    private void invalidateLink(Link l) {
+        invalidateWorld(Math.min(l.node1.x, l.node2.x), Math.min(l.node1.y, l.node2.y),
+                Math.max(l.node1.x, l.node2.x), Math.max(l.node1.y, l.node2.y));
+    }
+
+    private void invalidateNodeAndLinks(Node n) {
+        invalidateNode(n);
+        for (Link l : topology.linksOf(n))
+            invalidateLink(l);
+    }
+
+    private void updatePaintState(int r) {
+        if (r == cachedRadius)
+            return;
+        cachedRadius = r;
+        // Defined around the origin; each node is drawn with the graphics translated to its centre.
+        nodeGradient = new GradientPaint(-r, -r, NODE_LIGHT, r, r, NODE_DARK);
+        outlineStroke = new BasicStroke(Math.max(1f, (float) (2f * scale)));
+        selectionStroke = new BasicStroke(Math.max(2f, (float) (3f * scale)));
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D) g;
+        int width = getWidth();
+        int height = getHeight();
+        double offX = width / 2.0 - panX * scale;
+        double offY = height / 2.0 - panY * scale;
+        double nodeRadius = NODE_RADIUS * scale;
+        boolean dots = nodeRadius < DOT_RADIUS;
+        int r = (int) Math.max(dots ? 1 : 6, Math.round(nodeRadius));
+        updatePaintState(r);
+
+        if (tileScale != scale) {
+            tiles.clear();
+            tileScale = scale;
+        }
+        double tileWorld = TILE / scale;
+        Point2D.Double topLeft = screenToWorld(0, 0);
+        Point2D.Double bottomRight = screenToWorld(width, height);
+        int tx0 = (int) Math.floor(topLeft.x / tileWorld), tx1 = (int) Math.floor(bottomRight.x / tileWorld);
+        int ty0 = (int) Math.floor(topLeft.y / tileWorld), ty1 = (int) Math.floor(bottomRight.y / tileWorld);
+        int capacity = Math.max(MIN_CACHED_TILES, 2 * (tx1 - tx0 + 1) * (ty1 - ty0 + 1));
+        List<Long> missing = new ArrayList<>();
+        for (int tx = tx0; tx <= tx1; tx++) {
+            for (int ty = ty0; ty <= ty1; ty++) {
+                if (tiles.get(tileKey(tx, ty)) == null)
+                    missing.add(tileKey(tx, ty));
+            }
+        }
+        if (!missing.isEmpty()) {
+            renderTiles(missing);
+            java.util.Iterator<Long> eldest = tiles.keySet().iterator();
+            for (int excess = tiles.size() - capacity; excess > 0; excess--) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        for (int tx = tx0; tx <= tx1; tx++) {
+            for (int ty = ty0; ty <= ty1; ty++) {
+                // Rounding the tile origin keeps neighbouring tiles exactly TILE pixels apart.
+                g2.drawImage(tiles.get(tileKey(tx, ty)), (int) Math.round(tx * tileWorld * scale + offX),
+                        (int) Math.round(ty * tileWorld * scale + offY), null);
+            }
+        }
+
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
-        g2.setColor(new Color(230, 230, 230));
-        Point2D.Double topLeft = screenToWorld(0, 0);
-        Point2D.Double bottomRight = screenToWorld(getWidth(), getHeight());
-        int startX = (int) Math.floor(topLeft.x / GRID) * GRID;
-        int endX = (int) Math.ceil(bottomRight.x / GRID) * GRID;
-        for (int x = startX; x <= endX; x += GRID) {
-            Point sx = worldToScreen(x, 0);
-            g2.drawLine(sx.x, 0, sx.x, getHeight());
+        if (selectionRect != null) {
+            g2.setColor(SELECTION_FILL);
+            g2.fill(selectionRect);
+            g2.setColor(SELECTION_EDGE);
+            g2.setStroke(THIN);
+            g2.draw(selectionRect);
         }
-        int startY = (int) Math.floor(topLeft.y / GRID) * GRID;
-        int endY = (int) Math.ceil(bottomRight.y / GRID) * GRID;
-        for (int y = startY; y <= endY; y += GRID) {
-            Point sy = worldToScreen(0, y);
-            g2.drawLine(0, sy.y, getWidth(), sy.y);
+
+        if (dragNode != null) {
+            drawLinks(g2, dragLinks, offX, offY, topLeft.x, topLeft.y, bottomRight.x, bottomRight.y, false);
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    dots ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+            drawNode(g2, dragNode, (int) Math.round(dragNode.x * scale + offX),
+                    (int) Math.round(dragNode.y * scale + offY), r, nodeRadius);
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         }
 
-        g2.setStroke(new BasicStroke(2f));
-        g2.setColor(new Color(120, 120, 120));
-        for (Link l : links) {
-            Point a = worldToScreen(l.node1.x, l.node1.y);
-            Point b = worldToScreen(l.node2.x, l.node2.y);
-            g2.drawLine(a.x, a.y, b.x, b.y);
+        if (!selected.isEmpty()) {
+            double margin = nodeExtent();
+            g2.setColor(SELECTION_RING);
+            g2.setStroke(dots ? THIN : selectionStroke);
+            for (Node n : selected) {
+                if (n.x < topLeft.x - margin || n.x > bottomRight.x + margin
+                        || n.y < topLeft.y - margin || n.y > bottomRight.y + margin)
+                    continue;
+                int sx = (int) Math.round(n.x * scale + offX);
+                int sy = (int) Math.round(n.y * scale + offY);
+                if (dots)
+                    g2.drawRect(sx - r - 2, sy - r - 2, r * 2 + 4, r * 2 + 4);
+                else
+                    g2.drawOval(sx - r - 4, sy - r - 4, r * 2 + 8, r * 2 + 8);
+            }
         }
 
         if (selectedForLink != null && rubberLineEnd != null) {
             Point a = worldToScreen(selectedForLink.x, selectedForLink.y);
-            g2.setColor(new Color(200, 50, 50, 180));
-            g2.setStroke(
-                    new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0, new float[] { 6f }, 0));
+            g2.setColor(RUBBER_LINE);
+            g2.setStroke(RUBBER_STROKE);
             g2.drawLine(a.x, a.y, rubberLineEnd.x, rubberLineEnd.y);
         }
 
-        if (selectionRect != null) {
-            g2.setColor(new Color(50, 120, 200, 60));
-            g2.fill(selectionRect);
-            g2.setColor(new Color(50, 120, 200));
-            g2.setStroke(new BasicStroke(1f));
-            g2.draw(selectionRect);
+        if (selectedForLink != null) {
+            Point s = worldToScreen(selectedForLink.x, selectedForLink.y);
+            g2.setColor(LINK_MODE);
+            g2.setStroke(LINK_STROKE);
+            g2.drawOval(s.x - NODE_RADIUS - 4, s.y - NODE_RADIUS - 4, NODE_RADIUS * 2 + 8, NODE_RADIUS * 2 + 8);
         }
+    }
 
-        for (Node n : nodes) {
-            Point s = worldToScreen(n.x, n.y);
-            int r = (int) Math.max(6, Math.round(NODE_RADIUS * scale));
-            g2.setColor(new Color(0, 0, 0, 40));
-            g2.fillOval(s.x - r + 2, s.y - r + 3, r * 2, r * 2);
+    /**
+     * Renders and caches the tiles with the given keys. The links and nodes
+     * of the whole area are looked up once and handed to the tiles they
+     * reach, rather than each tile querying the indexes on its own: zoomed
+     * out, a tile spans many index cells and separate queries would each
+     * visit most of the topology.
+     */
+    private void renderTiles(List<Long> keys) {
+        double tileWorld = TILE / scale;
+        java.util.HashMap<Long, Integer> slot = new java.util.HashMap<>();
+        int tx0 = Integer.MAX_VALUE, ty0 = Integer.MAX_VALUE, tx1 = Integer.MIN_VALUE, ty1 = Integer.MIN_VALUE;
+        List<List<Link>> links = new ArrayList<>(keys.size());
+        List<List<Node>> nodes = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            int tx = (int) (key >> 32), ty = (int) key;
+            tx0 = Math.min(tx0, tx);
+            ty0 = Math.min(ty0, ty);
+            tx1 = Math.max(tx1, tx);
+            ty1 = Math.max(ty1, ty);
+            slot.put(key, links.size());
+            links.add(new ArrayList<>());
+            nodes.add(new ArrayList<>());
+        }
+        double minX = tx0 * tileWorld, minY = ty0 * tileWorld;
+        double maxX = (tx1 + 1) * tileWorld, maxY = (ty1 + 1) * tileWorld;
+
+        double pad = 2 / scale; // link stroke width
+        linkIndex.query(minX - pad, minY - pad, maxX + pad, maxY + pad,
+                l -> LinkIndex.crossed(l.node1.x, l.node1.y, l.node2.x, l.node2.y, tileWorld, pad, key -> {
+                    Integer i = slot.get(key);
+                    if (i != null)
+                        links.get(i).add(l);
+                }));
+        double margin = nodeExtent();
+        nodeIndex.query(minX - margin, minY - margin, maxX + margin, maxY + margin, n -> {
+            int nx1 = (int) Math.floor((n.x + margin) / tileWorld), ny1 = (int) Math.floor((n.y + margin) / tileWorld);
+            for (int tx = (int) Math.floor((n.x - margin) / tileWorld); tx <= nx1; tx++) {
+                for (int ty = (int) Math.floor((n.y - margin) / tileWorld); ty <= ny1; ty++) {
+                    Integer i = slot.get(tileKey(tx, ty));
+                    if (i != null)
+                        nodes.get(i).add(n);
+                }
+            }
+        });
 
-            GradientPaint gp = new GradientPaint(s.x - r, s.y - r, new Color(80, 160, 240), s.x + r, s.y + r,
-                    new Color(30, 90, 200));
-            g2.setPaint(gp);
-            g2.fillOval(s.x - r, s.y - r, r * 2, r * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            long key = keys.get(i);
+            tiles.put(key, renderTile((int) (key >> 32), (int) key, links.get(i), nodes.get(i)));
+        }
+    }
 
-            g2.setColor(new Color(20, 45, 130));
-            g2.setStroke(new BasicStroke(Math.max(1f, (float) (2f * scale))));
-            g2.drawOval(s.x - r, s.y - r, r * 2, r * 2);
+    /** Renders the static scene for one tile: grid, the given links and nodes, except the one being dragged. */
+    private java.awt.image.BufferedImage renderTile(int tx, int ty, List<Link> links, List<Node> nodes) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        java.awt.image.BufferedImage tile = gc != null
+                ? gc.createCompatibleImage(TILE, TILE, Transparency.OPAQUE)
+                : new java.awt.image.BufferedImage(TILE, TILE, java.awt.image.BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = tile.createGraphics();
+        g2.setColor(getBackground());
+        g2.fillRect(0, 0, TILE, TILE);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setFont(getFont());
+
+        double tileWorld = TILE / scale;
+        double minX = tx * tileWorld, minY = ty * tileWorld;
+        double maxX = minX + tileWorld, maxY = minY + tileWorld;
+        double offX = -minX * scale, offY = -minY * scale;
+        double nodeRadius = NODE_RADIUS * scale;
+        boolean dots = nodeRadius < DOT_RADIUS;
+        int r = (int) Math.max(dots ? 1 : 6, Math.round(nodeRadius));
+
+        if (GRID * scale >= MIN_GRID_SPACING) {
+            g2.setColor(GRID_COLOR);
+            for (int x = (int) Math.floor(minX / GRID) * GRID; x <= maxX; x += GRID) {
+                int sx = (int) Math.round(x * scale + offX);
+                g2.drawLine(sx, 0, sx, TILE);
+            }
+            for (int y = (int) Math.floor(minY / GRID) * GRID; y <= maxY; y += GRID) {
+                int sy = (int) Math.round(y * scale + offY);
+                g2.drawLine(0, sy, TILE, sy);
+            }
+        }
 
-            g2.setColor(Color.WHITE);
-            String id = Long.toString(n.id);
-            FontMetrics fm = g2.getFontMetrics();
-            int tw = fm.stringWidth(id);
-            g2.drawString(id, s.x - tw / 2, s.y + fm.getAscent() / 2 - 2);
+        double pad = 2 / scale; // link stroke width
+        drawLinks(g2, links, offX, offY, minX - pad, minY - pad, maxX + pad, maxY + pad, true);
 
-            if (selected.contains(n)) {
-                g2.setColor(new Color(255, 200, 50, 180));
-                g2.setStroke(new BasicStroke(Math.max(2f, (float) (3f * scale))));
-                g2.drawOval(s.x - r - 4, s.y - r - 4, r * 2 + 8, r * 2 + 8);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                dots ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+        for (Node n : nodes) {
+            if (n != dragNode)
+                drawNode(g2, n, (int) Math.round(n.x * scale + offX), (int) Math.round(n.y * scale + offY), r,
+                        nodeRadius);
+        }
+        g2.dispose();
+        return tile;
+    }
+
+    /**
+     * Draws the links whose bounding boxes meet the given world rectangle.
+     * Zoomed in, each link is drawn with the antialiased stroke. Zoomed out,
+     * they go into one path stroked as an aliased hairline in a single call;
+     * an antialiased stroke of one large path is much slower in Java2D than
+     * separate lines. Links between partitions are drawn in their own colour.
+     */
+    private void drawLinks(Graphics2D g2, java.util.Collection<Link> toDraw, double offX, double offY,
+            double minX, double minY, double maxX, double maxY, boolean skipDragged) {
+        boolean detailed = NODE_RADIUS * scale >= LABEL_RADIUS;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                detailed ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2.setColor(LINK_COLOR);
+        g2.setStroke(detailed ? LINK_STROKE : THIN);
+        linkPath.reset();
+        cutPath.reset();
+        for (Link l : toDraw) {
+            int ax = l.node1.x, ay = l.node1.y, bx = l.node2.x, by = l.node2.y;
+            if (Math.max(ax, bx) < minX || Math.min(ax, bx) > maxX
+                    || Math.max(ay, by) < minY || Math.min(ay, by) > maxY)
+                continue;
+            if (skipDragged && dragNode != null && (l.node1 == dragNode || l.node2 == dragNode))
+                continue;
+            float x1 = (float) (ax * scale + offX), y1 = (float) (ay * scale + offY);
+            float x2 = (float) (bx * scale + offX), y2 = (float) (by * scale + offY);
+            boolean cut = isCut(l);
+            if (detailed) {
+                g2.setColor(cut ? CUT_LINK : LINK_COLOR);
+                g2.drawLine(Math.round(x1), Math.round(y1), Math.round(x2), Math.round(y2));
+            } else {
+                Path2D.Float path = cut ? cutPath : linkPath;
+                path.moveTo(x1, y1);
+                path.lineTo(x2, y2);
             }
         }
+        if (!detailed) {
+            g2.draw(linkPath);
+            linkPath.reset();
+            if (partition != null) {
+                g2.setColor(CUT_LINK);
+                g2.draw(cutPath);
+                cutPath.reset();
+            }
+        }
+    }
 
-        if (selectedForLink != null) {
-            Point s = worldToScreen(selectedForLink.x, selectedForLink.y);
-            g2.setColor(new Color(200, 50, 50));
-            g2.setStroke(new BasicStroke(2f));
-            g2.drawOval(s.x - NODE_RADIUS - 4, s.y - NODE_RADIUS - 4, NODE_RADIUS * 2 + 8, NODE_RADIUS * 2 + 8);
+    private void drawNode(Graphics2D g2, Node n, int sx, int sy, int r, double nodeRadius) {
+        Color part = partColor(n);
+        if (nodeRadius < DOT_RADIUS) {
+            g2.setColor(part != null ? part : NODE_DARK);
+            g2.fillRect(sx - r, sy - r, r * 2, r * 2);
+            return;
+        }
+        boolean labels = nodeRadius >= LABEL_RADIUS;
+        g2.translate(sx, sy);
+        if (labels) {
+            g2.setColor(NODE_SHADOW);
+            g2.fillOval(-r + 2, -r + 3, r * 2, r * 2);
+        }
+        if (part != null)
+            g2.setColor(part);
+        else if (labels)
+            g2.setPaint(nodeGradient);
+        else
+            g2.setColor(NODE_DARK);
+        g2.fillOval(-r, -r, r * 2, r * 2);
+
+        g2.setColor(NODE_OUTLINE);
+        g2.setStroke(outlineStroke);
+        g2.drawOval(-r, -r, r * 2, r * 2);
+
+        if (labels) {
+            g2.setColor(Color.WHITE);
+            String id = Long.toString(n.id);
+            FontMetrics fm = g2.getFontMetrics();
+            g2.drawString(id, -fm.stringWidth(id) / 2, fm.getAscent() / 2 - 2);
         }
+        g2.translate(-sx, -sy);
     }
 }
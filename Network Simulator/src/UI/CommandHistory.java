@@ -0,0 +1,432 @@
+package UI;
+
+import Components.Link;
+import Components.Node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Undo and redo stacks with a memory limit. Every command reports roughly how
+ * many bytes it holds; once the total passes the limit the oldest undo steps
+ * are dropped, or, if a spill directory is set, written to a file there and
+ * read back when undo reaches them. The most recent step is always kept.
+ *
+ * Spilled commands refer to nodes and links in two ways. Objects that are on
+ * the canvas, or that a command still in memory refers to, stay in memory and
+ * are written as an index into the spill's kept table, so undo after reading
+ * the file acts on the very same objects. All others (nodes and links removed
+ * by the spilled steps themselves) are written out in full and re-created on
+ * reading; the large removals are what make spilling worthwhile.
+ */
+final class CommandHistory {
+
+    /** An undoable edit. */
+    interface Command {
+        void execute();
+
+        void undo();
+
+        /** Approximate heap bytes held by this command, counting the nodes and links it refers to. */
+        long bytes();
+
+        /** Passes each node and link this command refers to to {@code out}. */
+        void references(Consumer<Object> out);
+
+        /** Folds {@code next}, done right after this command, into it; false if the two stay separate steps. */
+        default boolean absorb(Command next) {
+            return false;
+        }
+    }
+
+    /** Writes commands to spill files and reads them back. */
+    interface Codec {
+        void write(Command command, SpillOutput out) throws IOException;
+
+        Command read(SpillInput in) throws IOException;
+
+        /** Whether {@code ref} (a node or link) is currently on the canvas. */
+        boolean live(Object ref);
+    }
+
+    // Rough object sizes used by Command.bytes().
+    static final long COMMAND_BYTES = 32;
+    static final long REF_BYTES = 8;
+    static final long NODE_BYTES = 64;
+    static final long LINK_BYTES = 48;
+
+    private static final int NEW_KEPT = -1, NEW_NODE = -2, NEW_LINK = -3;
+
+    private final Codec codec;
+    private final Deque<Command> undo = new ArrayDeque<>();
+    private final Deque<Command> redo = new ArrayDeque<>();
+    private final Deque<Spill> spills = new ArrayDeque<>(); // newest first; all older than undo's contents
+    private long bytes;
+    private long limit;
+    private File spillDir;
+
+    CommandHistory(Codec codec, long limit, File spillDir) {
+        this.codec = codec;
+        this.limit = limit;
+        this.spillDir = spillDir;
+    }
+
+    void setLimit(long limit) {
+        this.limit = limit;
+        trim();
+    }
+
+    long limit() {
+        return limit;
+    }
+
+    /** Directory for spill files; null drops old steps instead. */
+    void setSpillDirectory(File dir) {
+        spillDir = dir;
+        trim();
+    }
+
+    /** Bytes held in memory by the undo and redo steps. */
+    long bytes() {
+        return bytes;
+    }
+
+    /** Records {@code command}, which has just been executed, and forgets what could be redone. */
+    void push(Command command) {
+        for (Command c : redo)
+            bytes -= c.bytes();
+        redo.clear();
+        Command last = undo.peek();
+        if (last != null) {
+            long before = last.bytes();
+            if (last.absorb(command)) {
+                bytes += last.bytes() - before;
+                return;
+            }
+        }
+        undo.push(command);
+        bytes += command.bytes();
+        trim();
+    }
+
+    boolean canUndo() {
+        return !undo.isEmpty() || !spills.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    void undo() {
+        if (undo.isEmpty() && !spills.isEmpty())
+            restore();
+        Command c = undo.poll();
+        if (c == null)
+            return;
+        c.undo();
+        redo.push(c);
+    }
+
+    void redo() {
+        Command c = redo.poll();
+        if (c == null)
+            return;
+        c.execute();
+        undo.push(c);
+    }
+
+    void clear() {
+        undo.clear();
+        redo.clear();
+        bytes = 0;
+        for (Spill s : spills)
+            s.file.delete();
+        spills.clear();
+    }
+
+    private void trim() {
+        while (bytes > limit && undo.size() > 1) {
+            if (spillDir == null || !spill())
+                bytes -= undo.removeLast().bytes();
+        }
+    }
+
+    /** Moves the oldest steps, about a quarter of the limit, to a new spill file. */
+    private boolean spill() {
+        List<Command> batch = new ArrayList<>(); // oldest first
+        long batchBytes = 0;
+        while (undo.size() > 1 && (batch.isEmpty() || batchBytes < limit / 4)) {
+            Command c = undo.removeLast();
+            batch.add(c);
+            batchBytes += c.bytes();
+        }
+
+        Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Command c : undo)
+            c.references(shared::add);
+        for (Command c : redo)
+            c.references(shared::add);
+        for (Spill s : spills)
+            Collections.addAll(shared, s.kept);
+
+        File file = null;
+        try {
+            file = File.createTempFile("undo-", ".bin", spillDir);
+            file.deleteOnExit();
+            SpillOutput out = new SpillOutput(file, shared, codec);
+            try {
+                out.writeInt(batch.size());
+                for (Command c : batch)
+                    codec.write(c, out);
+            } finally {
+                out.data.close();
+            }
+            spills.push(new Spill(file, out.kept.toArray()));
+            bytes -= batchBytes;
+            return true;
+        } catch (IOException ex) {
+            // Disk full or not writable: stop spilling and drop old steps instead.
+            if (file != null)
+                file.delete();
+            spillDir = null;
+            for (int i = batch.size() - 1; i >= 0; --i)
+                undo.addLast(batch.get(i));
+            return false;
+        }
+    }
+
+    /** Reads the newest spill file back under the steps in memory. */
+    private void restore() {
+        Spill s = spills.pop();
+        try (SpillInput in = new SpillInput(s.file, s.kept)) {
+            int count = in.readInt();
+            Command[] batch = new Command[count];
+            for (int i = 0; i < count; i++)
+                batch[i] = codec.read(in);
+            for (int i = count - 1; i >= 0; --i) {
+                undo.addLast(batch[i]);
+                bytes += batch[i].bytes();
+            }
+        } catch (IOException ex) {
+            // Unreadable: the steps in this file and everything older are lost.
+            for (Spill older : spills)
+                older.file.delete();
+            spills.clear();
+        } finally {
+            s.file.delete();
+        }
+    }
+
+    private static final class Spill {
+        final File file;
+        final Object[] kept;
+
+        Spill(File file, Object[] kept) {
+            this.file = file;
+            this.kept = kept;
+        }
+    }
+
+    /** Spill file writer; nodes and links are numbered in order of first appearance. */
+    static final class SpillOutput {
+        final DataOutputStream data;
+        private final Set<Object> shared;
+        private final Codec codec;
+        private final IdentityHashMap<Object, Integer> handles = new IdentityHashMap<>();
+        final List<Object> kept = new ArrayList<>();
+
+        private SpillOutput(File file, Set<Object> shared, Codec codec) throws IOException {
+            this.data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            this.shared = shared;
+            this.codec = codec;
+        }
+
+        void writeInt(int v) throws IOException {
+            data.writeInt(v);
+        }
+
+        void writeDouble(double v) throws IOException {
+            data.writeDouble(v);
+        }
+
+        void writeDoubles(double[] v) throws IOException {
+            data.writeInt(v.length);
+            for (double x : v)
+                data.writeDouble(x);
+        }
+
+        void writeBytes(byte[] v) throws IOException {
+            data.writeInt(v.length);
+            data.write(v);
+        }
+
+        void writeInts(int[] v) throws IOException {
+            data.writeInt(v.length);
+            for (int x : v)
+                data.writeInt(x);
+        }
+
+        void writeNode(Node n) throws IOException {
+            if (reference(n))
+                return;
+            data.writeInt(NEW_NODE);
+            data.writeInt(n.x);
+            data.writeInt(n.y);
+            data.writeLong(n.id);
+        }
+
+        void writeLink(Link l) throws IOException {
+            if (reference(l))
+                return;
+            data.writeInt(NEW_LINK);
+            writeNode(l.node1);
+            writeNode(l.node2);
+            data.writeLong(l.id);
+            data.writeDouble(l.bandwidth);
+            data.writeDouble(l.delay);
+            data.writeByte(l.queueType);
+            data.writeInt(l.queueLimit);
+        }
+
+        void writeNodes(Node[] nodes) throws IOException {
+            data.writeInt(nodes.length);
+            for (Node n : nodes)
+                writeNode(n);
+        }
+
+        void writeLinks(Link[] links) throws IOException {
+            data.writeInt(links.length);
+            for (Link l : links)
+                writeLink(l);
+        }
+
+        /** Writes {@code ref} as a handle if it was seen before or is kept in memory; false if it must be written out. */
+        private boolean reference(Object ref) throws IOException {
+            Integer h = handles.get(ref);
+            if (h != null) {
+                data.writeInt(h);
+                return true;
+            }
+            handles.put(ref, handles.size());
+            if (shared.contains(ref) || codec.live(ref)) {
+                data.writeInt(NEW_KEPT);
+                data.writeInt(kept.size());
+                kept.add(ref);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /** Spill file reader; re-creates the nodes and links that were written out. */
+    static final class SpillInput implements AutoCloseable {
+        private final DataInputStream data;
+        private final Object[] kept;
+        private final List<Object> objects = new ArrayList<>();
+
+        private SpillInput(File file, Object[] kept) throws IOException {
+            this.data = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            this.kept = kept;
+        }
+
+        int readInt() throws IOException {
+            return data.readInt();
+        }
+
+        double readDouble() throws IOException {
+            return data.readDouble();
+        }
+
+        double[] readDoubles() throws IOException {
+            double[] v = new double[data.readInt()];
+            for (int i = 0; i < v.length; i++)
+                v[i] = data.readDouble();
+            return v;
+        }
+
+        byte[] readBytes() throws IOException {
+            byte[] v = new byte[data.readInt()];
+            data.readFully(v);
+            return v;
+        }
+
+        int[] readInts() throws IOException {
+            int[] v = new int[data.readInt()];
+            for (int i = 0; i < v.length; i++)
+                v[i] = data.readInt();
+            return v;
+        }
+
+        Node readNode() throws IOException {
+            int h = data.readInt();
+            if (h == NEW_NODE) {
+                Node n = new Node(data.readInt(), data.readInt(), data.readLong());
+                objects.add(n);
+                return n;
+            }
+            return (Node) object(h);
+        }
+
+        Link readLink() throws IOException {
+            int h = data.readInt();
+            if (h == NEW_LINK) {
+                int slot = objects.size();
+                objects.add(null);
+                Node a = readNode();
+                Node b = readNode();
+                Link l = new Link(a, b, data.readLong());
+                l.bandwidth = data.readDouble();
+                l.delay = data.readDouble();
+                l.queueType = data.readByte();
+                l.queueLimit = data.readInt();
+                objects.set(slot, l);
+                return l;
+            }
+            return (Link) object(h);
+        }
+
+        Node[] readNodes() throws IOException {
+            Node[] nodes = new Node[data.readInt()];
+            for (int i = 0; i < nodes.length; i++)
+                nodes[i] = readNode();
+            return nodes;
+        }
+
+        Link[] readLinks() throws IOException {
+            Link[] links = new Link[data.readInt()];
+            for (int i = 0; i < links.length; i++)
+                links[i] = readLink();
+            return links;
+        }
+
+        private Object object(int h) throws IOException {
+            if (h == NEW_KEPT) {
+                Object ref = kept[data.readInt()];
+                objects.add(ref);
+                return ref;
+            }
+            if (h < 0 || h >= objects.size())
+                throw new IOException("Corrupt undo file");
+            return objects.get(h);
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+}
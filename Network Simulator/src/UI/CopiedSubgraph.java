@@ -0,0 +1,224 @@
+package UI;
+
+import Components.Link;
+import Components.Node;
+import Components.Topology;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+
+/**
+ * Copied nodes and the links among them, with nodes numbered 0..n-1 and
+ * links stored as pairs of those numbers, so copying and pasting are linear
+ * in the size of the selection and do not depend on node positions. Link
+ * parameters are kept in parallel arrays, which are null when every copied
+ * link uses the defaults.
+ *
+ * Also the clipboard transfer object: editors in the same JVM exchange the
+ * object itself, other programs (or another editor process) get the text
+ * form from {@link #toText()}, which {@link #parse} reads back.
+ */
+public final class CopiedSubgraph implements Transferable, ClipboardOwner {
+
+    /** In-JVM flavor: handed over as the object itself, never serialized. */
+    public static final DataFlavor FLAVOR = new DataFlavor(
+            DataFlavor.javaJVMLocalObjectMimeType + ";class=" + CopiedSubgraph.class.getName(), "Network Simulator nodes");
+    private static final String HEADER = "# network-simulator subgraph 1";
+    /** Same as version 1, with "bandwidth delay queueType queueLimit" after each link's node pair. */
+    private static final String HEADER_PARAMETERS = "# network-simulator subgraph 2";
+
+    public final int nodeCount;
+    public final int[] x, y;
+    public final int linkCount;
+    public final int[] linkA, linkB;
+    public final double[] bandwidth, delay;
+    public final byte[] queueType;
+    public final int[] queueLimit;
+
+    private CopiedSubgraph(int[] x, int[] y, int[] linkA, int[] linkB, double[] bandwidth, double[] delay,
+            byte[] queueType, int[] queueLimit) {
+        this.nodeCount = x.length;
+        this.x = x;
+        this.y = y;
+        this.linkCount = linkA.length;
+        this.linkA = linkA;
+        this.linkB = linkB;
+        this.bandwidth = bandwidth;
+        this.delay = delay;
+        this.queueType = queueType;
+        this.queueLimit = queueLimit;
+    }
+
+    /** Copies {@code nodes} and every link of {@code topology} with both ends among them. */
+    public static CopiedSubgraph copy(Collection<Node> nodes, Topology topology) {
+        int n = nodes.size();
+        int[] x = new int[n], y = new int[n];
+        IdentityHashMap<Node, Integer> index = new IdentityHashMap<>(n);
+        for (Node node : nodes) {
+            x[index.size()] = node.x;
+            y[index.size()] = node.y;
+            index.put(node, index.size());
+        }
+
+        int m = 0;
+        int[] a = new int[16], b = new int[16];
+        Link[] copied = new Link[16];
+        boolean parameters = false;
+        for (Node node : nodes) {
+            int i = index.get(node);
+            for (Link l : topology.linksOf(node)) {
+                // Each internal link is seen from both ends; keep it from node1's side.
+                Integer j = l.node1 == node ? index.get(l.node2) : null;
+                if (j == null)
+                    continue;
+                if (m == a.length) {
+                    a = Arrays.copyOf(a, m * 2);
+                    b = Arrays.copyOf(b, m * 2);
+                    copied = Arrays.copyOf(copied, m * 2);
+                }
+                parameters |= !Double.isNaN(l.bandwidth) || !Double.isNaN(l.delay) || l.queueType >= 0
+                        || l.queueLimit >= 0;
+                copied[m] = l;
+                a[m] = i;
+                b[m++] = j;
+            }
+        }
+        if (!parameters)
+            return new CopiedSubgraph(x, y, Arrays.copyOf(a, m), Arrays.copyOf(b, m), null, null, null, null);
+        double[] bw = new double[m], d = new double[m];
+        byte[] q = new byte[m];
+        int[] limit = new int[m];
+        for (int l = 0; l < m; l++) {
+            bw[l] = copied[l].bandwidth;
+            d[l] = copied[l].delay;
+            q[l] = copied[l].queueType;
+            limit[l] = copied[l].queueLimit;
+        }
+        return new CopiedSubgraph(x, y, Arrays.copyOf(a, m), Arrays.copyOf(b, m), bw, d, q, limit);
+    }
+
+    /** Fresh nodes at the copied positions shifted by (dx, dy), in copy order. */
+    public Node[] newNodes(int dx, int dy) {
+        Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
+            nodes[i] = new Node(x[i] + dx, y[i] + dy);
+        return nodes;
+    }
+
+    /** Fresh links between the given nodes, as returned by {@link #newNodes}. */
+    public Link[] newLinks(Node[] nodes) {
+        Link[] links = new Link[linkCount];
+        for (int l = 0; l < linkCount; l++) {
+            links[l] = new Link(nodes[linkA[l]], nodes[linkB[l]]);
+            if (bandwidth != null) {
+                links[l].bandwidth = bandwidth[l];
+                links[l].delay = delay[l];
+                links[l].queueType = queueType[l];
+                links[l].queueLimit = queueLimit[l];
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Plain-text form: a header line, the node count, "x y" lines, the link
+     * count, "a b" lines; with link parameters, each link line continues with
+     * "bandwidth delay queueType queueLimit" (NaN / -1 for defaults).
+     */
+    public String toText() {
+        String header = bandwidth != null ? HEADER_PARAMETERS : HEADER;
+        StringBuilder out = new StringBuilder(header.length() + 16 * (nodeCount + linkCount) + 32);
+        out.append(header).append('\n').append(nodeCount).append('\n');
+        for (int i = 0; i < nodeCount; i++)
+            out.append(x[i]).append(' ').append(y[i]).append('\n');
+        out.append(linkCount).append('\n');
+        for (int l = 0; l < linkCount; l++) {
+            out.append(linkA[l]).append(' ').append(linkB[l]);
+            if (bandwidth != null) {
+                out.append(' ').append(bandwidth[l]).append(' ').append(delay[l]).append(' ').append(queueType[l])
+                        .append(' ').append(queueLimit[l]);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Reads {@link #toText()} output; null if {@code text} is not in that form. */
+    public static CopiedSubgraph parse(String text) {
+        boolean parameters = text.startsWith(HEADER_PARAMETERS);
+        if (!parameters && !text.startsWith(HEADER))
+            return null;
+        try {
+            String[] t = text.substring(HEADER.length()).trim().split("\\s+");
+            int k = 0;
+            int n = Integer.parseInt(t[k++]);
+            int[] x = new int[n], y = new int[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = Integer.parseInt(t[k++]);
+                y[i] = Integer.parseInt(t[k++]);
+            }
+            int m = Integer.parseInt(t[k++]);
+            int[] a = new int[m], b = new int[m];
+            double[] bw = parameters ? new double[m] : null, d = parameters ? new double[m] : null;
+            byte[] q = parameters ? new byte[m] : null;
+            int[] limit = parameters ? new int[m] : null;
+            for (int l = 0; l < m; l++) {
+                a[l] = Integer.parseInt(t[k++]);
+                b[l] = Integer.parseInt(t[k++]);
+                if (a[l] < 0 || a[l] >= n || b[l] < 0 || b[l] >= n)
+                    return null;
+                if (parameters) {
+                    bw[l] = Double.parseDouble(t[k++]);
+                    d[l] = Double.parseDouble(t[k++]);
+                    q[l] = (byte) Math.max(-1, Math.min(Link.QUEUE_TYPES.length - 1, Integer.parseInt(t[k++])));
+                    limit[l] = Math.max(-1, Integer.parseInt(t[k++]));
+                }
+            }
+            return new CopiedSubgraph(x, y, a, b, bw, d, q, limit);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException | NegativeArraySizeException ex) {
+            return null;
+        }
+    }
+
+    /** What {@code clipboard} holds, if it is nodes copied from an editor; otherwise null. */
+    public static CopiedSubgraph from(Clipboard clipboard) {
+        try {
+            if (clipboard.isDataFlavorAvailable(FLAVOR))
+                return (CopiedSubgraph) clipboard.getData(FLAVOR);
+            if (clipboard.isDataFlavorAvailable(DataFlavor.stringFlavor))
+                return parse((String) clipboard.getData(DataFlavor.stringFlavor));
+        } catch (UnsupportedFlavorException | java.io.IOException | IllegalStateException ex) {
+            // Clipboard busy or changed under us: nothing to paste.
+        }
+        return null;
+    }
+
+    @Override
+    public DataFlavor[] getTransferDataFlavors() {
+        return new DataFlavor[] { FLAVOR, DataFlavor.stringFlavor };
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor flavor) {
+        return FLAVOR.equals(flavor) || DataFlavor.stringFlavor.equals(flavor);
+    }
+
+    @Override
+    public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+        if (FLAVOR.equals(flavor))
+            return this;
+        if (DataFlavor.stringFlavor.equals(flavor))
+            return toText();
+        throw new UnsupportedFlavorException(flavor);
+    }
+
+    @Override
+    public void lostOwnership(Clipboard clipboard, Transferable contents) {
+    }
+}
@@ -0,0 +1,184 @@
+package UI;
+
+import Components.Link;
+import Components.Node;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Uniform grid over link segments in world coordinates, the counterpart of
+ * {@link SpatialIndex} for links. Each link is filed under every cell its
+ * segment crosses, so a rectangle query only looks at the links passing
+ * through the cells it overlaps instead of every link. Links crossing more
+ * than {@link #MAX_CELLS} cells are kept in a separate list that every query
+ * tests, so a long link costs one entry rather than hundreds.
+ *
+ * Like {@link SpatialIndex}, the index does not observe the topology: whoever
+ * moves a node calls {@link #moved(Link, Node, int, int)} for each of its
+ * links afterwards, and links are removed while still at their indexed
+ * position. Bulk changes are cheaper through {@link #rebuild(Collection)}.
+ */
+class LinkIndex {
+
+    /** Links that would be filed under more cells than this go to {@link #longLinks} instead. */
+    static final int MAX_CELLS = 8;
+
+    private final int cellSize;
+    private final HashMap<Long, Set<Link>> cells = new HashMap<>();
+    private final Set<Link> longLinks = identitySet(16);
+    /** Links spanning several cells already reported by the running query. */
+    private final Set<Link> reported = identitySet(16);
+
+    LinkIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    private static Set<Link> identitySet(int expected) {
+        return Collections.newSetFromMap(new IdentityHashMap<>(expected));
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    void add(Link l) {
+        int ax = l.node1.x, ay = l.node1.y, bx = l.node2.x, by = l.node2.y;
+        if (isLong(ax, ay, bx, by))
+            longLinks.add(l);
+        else
+            cells(ax, ay, bx, by, k -> cells.computeIfAbsent(k, c -> identitySet(4)).add(l));
+    }
+
+    /** Removes {@code l}, whose ends must still be where they were when it was indexed. */
+    void remove(Link l) {
+        detach(l, l.node1.x, l.node1.y, l.node2.x, l.node2.y);
+    }
+
+    /** Re-files {@code l} after its end {@code moved} went away from (oldX, oldY). */
+    void moved(Link l, Node moved, int oldX, int oldY) {
+        int ax = l.node1 == moved ? oldX : l.node1.x, ay = l.node1 == moved ? oldY : l.node1.y;
+        int bx = l.node2 == moved ? oldX : l.node2.x, by = l.node2 == moved ? oldY : l.node2.y;
+        detach(l, ax, ay, bx, by);
+        add(l);
+    }
+
+    /** Replaces the contents of the index with {@code links}. */
+    void rebuild(Collection<Link> links) {
+        clear();
+        for (Link l : links)
+            add(l);
+    }
+
+    void clear() {
+        cells.clear();
+        longLinks.clear();
+    }
+
+    /** Whether a segment from (ax, ay) to (bx, by) may cross more than {@link #MAX_CELLS} cells. */
+    private boolean isLong(int ax, int ay, int bx, int by) {
+        return Math.abs(cell(ax) - cell(bx)) + Math.abs(cell(ay) - cell(by)) >= MAX_CELLS;
+    }
+
+    private void detach(Link l, int ax, int ay, int bx, int by) {
+        if (isLong(ax, ay, bx, by))
+            longLinks.remove(l);
+        else
+            cells(ax, ay, bx, by, k -> detach(l, k));
+    }
+
+    private void detach(Link l, long k) {
+        Set<Link> bucket = cells.get(k);
+        if (bucket == null)
+            return;
+        bucket.remove(l);
+        if (bucket.isEmpty())
+            cells.remove(k);
+    }
+
+    private void cells(int ax, int ay, int bx, int by, LongConsumer out) {
+        crossed(ax, ay, bx, by, cellSize, 0, out);
+    }
+
+    /**
+     * Passes the key of every square cell of side {@code size}, widened by
+     * {@code pad} on each side, that the segment from (ax, ay) to (bx, by)
+     * crosses to {@code out}. Keys are (column, row) packed as in
+     * {@link #key(int, int)}.
+     */
+    static void crossed(double ax, double ay, double bx, double by, double size, double pad, LongConsumer out) {
+        if (ax > bx) {
+            double t = ax;
+            ax = bx;
+            bx = t;
+            t = ay;
+            ay = by;
+            by = t;
+        }
+        int cx1 = (int) Math.floor((bx + pad) / size);
+        for (int cx = (int) Math.floor((ax - pad) / size); cx <= cx1; cx++) {
+            // The part of the segment inside this column of cells.
+            double x0 = Math.max(ax, cx * size - pad);
+            double x1 = Math.min(bx, (cx + 1) * size + pad);
+            double y0 = ay, y1 = by;
+            if (bx != ax) {
+                double slope = (by - ay) / (bx - ax);
+                y0 = ay + slope * (x0 - ax);
+                y1 = ay + slope * (x1 - ax);
+            }
+            int cy1 = (int) Math.floor((Math.max(y0, y1) + pad) / size);
+            for (int cy = (int) Math.floor((Math.min(y0, y1) - pad) / size); cy <= cy1; cy++)
+                out.accept(key(cx, cy));
+        }
+    }
+
+    /**
+     * Passes every link whose segment meets the given world rectangle
+     * (inclusive) to {@code out}, once each. A few links that only pass near
+     * it may be passed too; none whose bounding box misses it are.
+     */
+    void query(double minX, double minY, double maxX, double maxY, Consumer<Link> out) {
+        int x0 = cell(minX), x1 = cell(maxX);
+        int y0 = cell(minY), y1 = cell(maxY);
+        try {
+            collect(longLinks, minX, minY, maxX, maxY, out);
+            // A huge rectangle over a sparse grid is cheaper to answer from the buckets directly.
+            if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > cells.size()) {
+                for (Set<Link> bucket : cells.values())
+                    collect(bucket, minX, minY, maxX, maxY, out);
+                return;
+            }
+            for (int cx = x0; cx <= x1; cx++) {
+                for (int cy = y0; cy <= y1; cy++) {
+                    Set<Link> bucket = cells.get(key(cx, cy));
+                    if (bucket != null)
+                        collect(bucket, minX, minY, maxX, maxY, out);
+                }
+            }
+        } finally {
+            reported.clear();
+        }
+    }
+
+    private void collect(Set<Link> bucket, double minX, double minY, double maxX, double maxY,
+            Consumer<Link> out) {
+        for (Link l : bucket) {
+            int ax = l.node1.x, ay = l.node1.y, bx = l.node2.x, by = l.node2.y;
+            if (Math.max(ax, bx) < minX || Math.min(ax, bx) > maxX
+                    || Math.max(ay, by) < minY || Math.min(ay, by) > maxY)
+                continue;
+            boolean spans = cell(ax) != cell(bx) || cell(ay) != cell(by);
+            if (!spans || reported.add(l))
+                out.accept(l);
+        }
+    }
+}
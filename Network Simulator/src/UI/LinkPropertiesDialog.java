@@ -0,0 +1,146 @@
+package UI;
+
+import Components.Link;
+import Components.Units;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Edits bandwidth, delay, queue type and queue limit of many links at once.
+ * Only the parameters whose box is ticked are changed; a ticked parameter
+ * with an empty field (or "Default" queue type) goes back to the simulation's
+ * default. Fields start with the value the links share, if they all share one.
+ */
+public class LinkPropertiesDialog extends JDialog {
+    private final JCheckBox bandwidthCheck = new JCheckBox("Bandwidth:");
+    private final JCheckBox delayCheck = new JCheckBox("Delay:");
+    private final JCheckBox queueTypeCheck = new JCheckBox("Queue Type:");
+    private final JCheckBox queueLimitCheck = new JCheckBox("Queue Limit (packets):");
+    private final JTextField bandwidthField = new JTextField(15);
+    private final JTextField delayField = new JTextField(15);
+    private final JComboBox<String> queueTypeCombo;
+    private final JTextField queueLimitField = new JTextField(15);
+    private Edit edit;
+
+    /** Parameter changes; NaN or -1 resets a parameter to the default. */
+    public static class Edit {
+        public boolean setBandwidth, setDelay, setQueueType, setQueueLimit;
+        public double bandwidth = Double.NaN;
+        public double delay = Double.NaN;
+        public int queueType = -1;
+        public int queueLimit = -1;
+    }
+
+    public LinkPropertiesDialog(JFrame parent, Link[] links) {
+        super(parent, "Link Properties (" + links.length + (links.length == 1 ? " link)" : " links)"), true);
+        setLayout(new BorderLayout(10, 10));
+
+        String[] queueTypes = new String[Link.QUEUE_TYPES.length + 1];
+        queueTypes[0] = "Default";
+        System.arraycopy(Link.QUEUE_TYPES, 0, queueTypes, 1, Link.QUEUE_TYPES.length);
+        queueTypeCombo = new JComboBox<>(queueTypes);
+
+        JPanel mainPanel = new JPanel(new GridBagLayout());
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.insets = new Insets(5, 5, 5, 5);
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        addRow(mainPanel, gbc, 0, bandwidthCheck, bandwidthField, "e.g. 10Mb; empty for the simulation default");
+        addRow(mainPanel, gbc, 1, delayCheck, delayField, "e.g. 5ms; empty for the simulation default");
+        addRow(mainPanel, gbc, 2, queueTypeCheck, queueTypeCombo, null);
+        addRow(mainPanel, gbc, 3, queueLimitCheck, queueLimitField, "Empty for the simulator's default");
+        add(mainPanel, BorderLayout.CENTER);
+
+        setFields(links);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton okButton = new JButton("Apply");
+        JButton cancelButton = new JButton("Cancel");
+        okButton.addActionListener(e -> {
+            try {
+                edit = readEdit();
+                dispose();
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage(), "Invalid value", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        cancelButton.addActionListener(e -> {
+            edit = null;
+            dispose();
+        });
+        buttonPanel.add(okButton);
+        buttonPanel.add(cancelButton);
+        add(buttonPanel, BorderLayout.SOUTH);
+
+        pack();
+        setLocationRelativeTo(parent);
+    }
+
+    private static void addRow(JPanel panel, GridBagConstraints gbc, int row, JCheckBox check, JComponent field,
+            String tip) {
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        panel.add(check, gbc);
+        gbc.gridx = 1;
+        field.setToolTipText(tip);
+        field.setEnabled(false);
+        check.addActionListener(e -> field.setEnabled(check.isSelected()));
+        panel.add(field, gbc);
+    }
+
+    private void setFields(Link[] links) {
+        if (links.length == 0)
+            return;
+        Link first = links[0];
+        boolean bw = true, d = true, q = true, limit = true;
+        for (Link l : links) {
+            bw &= Double.compare(l.bandwidth, first.bandwidth) == 0;
+            d &= Double.compare(l.delay, first.delay) == 0;
+            q &= l.queueType == first.queueType;
+            limit &= l.queueLimit == first.queueLimit;
+        }
+        if (bw && !Double.isNaN(first.bandwidth))
+            bandwidthField.setText(Units.formatBandwidth(first.bandwidth));
+        if (d && !Double.isNaN(first.delay))
+            delayField.setText(Units.formatTime(first.delay));
+        if (q)
+            queueTypeCombo.setSelectedIndex(first.queueType + 1);
+        if (limit && first.queueLimit >= 0)
+            queueLimitField.setText(Integer.toString(first.queueLimit));
+    }
+
+    private Edit readEdit() {
+        Edit e = new Edit();
+        e.setBandwidth = bandwidthCheck.isSelected();
+        e.setDelay = delayCheck.isSelected();
+        e.setQueueType = queueTypeCheck.isSelected();
+        e.setQueueLimit = queueLimitCheck.isSelected();
+        String text = bandwidthField.getText().trim();
+        if (e.setBandwidth && !text.isEmpty()) {
+            e.bandwidth = Units.parseBandwidth(text);
+            if (!(e.bandwidth > 0))
+                throw new NumberFormatException("Bandwidth must be positive");
+        }
+        text = delayField.getText().trim();
+        if (e.setDelay && !text.isEmpty()) {
+            e.delay = Units.parseTime(text);
+            if (!(e.delay >= 0))
+                throw new NumberFormatException("Delay cannot be negative");
+        }
+        e.queueType = queueTypeCombo.getSelectedIndex() - 1;
+        text = queueLimitField.getText().trim();
+        if (e.setQueueLimit && !text.isEmpty()) {
+            e.queueLimit = Integer.parseInt(text);
+            if (e.queueLimit < 0)
+                throw new NumberFormatException("Queue limit cannot be negative");
+        }
+        return e;
+    }
+
+    /** The changes to make, or null if the dialog was cancelled. */
+    public Edit getEdit() {
+        return edit;
+    }
+}
@@ -3,9 +3,25 @@ package UI;
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import Components.CompactGraph;
+import Components.Link;
+import Components.TopologySnapshot;
+import Components.Units;
 import Exporters.ItmTclFrame;
 import Exporters.NS2TclGenerator;
 import Exporters.NS3ApiClient;
+import Importers.EdgeListImporter;
+import Importers.GraphMLImporter;
+import Importers.TclImporter;
+import Layouts.ForceDirectedLayout;
+import Layouts.GridLayout;
+import Layouts.HierarchicalLayout;
+import Layouts.Layout;
+import Partitioning.GraphPartitioner;
+import Partitioning.Partition;
+import Components.Node;
+import Project.ProjectFile;
+import Simulation.Simulator;
 import UI.SimulationConfigDialog.SimulationConfig;
 import AI.GeminiPacketGenerator;
 import AI.GeminiPacketGenerator.NetworkPacket;
@@ -15,6 +31,19 @@ public class NetworkEditor extends JFrame {
     private final JLabel statusLabel = new JLabel("Ready");
     private SimulationResultsWindow resultsWindow;
 
+    private SwingWorker<int[][], int[][]> layoutWorker;
+    // Script text from earlier runs; the next run re-renders only what changed.
+    private final NS2TclGenerator.Cache tclCache = new NS2TclGenerator.Cache();
+
+    // Spacing of the grid that imported nodes without coordinates are placed on.
+    private static final int IMPORT_SPACING = 96;
+    private static final long LAYOUT_FRAME_NANOS = 100_000_000L;
+
+    // Project state: saved with the topology and offered again by the dialogs.
+    private File projectFile;
+    private SimulationConfig projectConfig;
+    private java.util.List<RoutingConfigDialog.TrafficFlow> projectFlows = new java.util.ArrayList<>();
+
     public NetworkEditor() {
         super("Network Simulator - Editor");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -28,15 +57,69 @@ public class NetworkEditor extends JFrame {
         JMenuBar menuBar = new JMenuBar();
 
         JMenu fileMenu = new JMenu("File");
+        JMenuItem openProject = new JMenuItem("Open Project...");
+        openProject.addActionListener(e -> openProject());
+        fileMenu.add(openProject);
+        JMenuItem importTopology = new JMenuItem("Import Topology...");
+        importTopology.addActionListener(e -> importTopology());
+        fileMenu.add(importTopology);
+        JMenuItem saveProject = new JMenuItem("Save Project");
+        saveProject.addActionListener(e -> saveProject(false));
+        fileMenu.add(saveProject);
+        JMenuItem saveProjectAs = new JMenuItem("Save Project As...");
+        saveProjectAs.addActionListener(e -> saveProject(true));
+        fileMenu.add(saveProjectAs);
+        JMenuItem exportJson = new JMenuItem("Export Project as JSON...");
+        exportJson.addActionListener(e -> exportProjectJson());
+        fileMenu.add(exportJson);
+        fileMenu.addSeparator();
         JMenuItem exportTcl = new JMenuItem("Export to NS-2 TCL...");
         exportTcl.addActionListener(e -> exportToTcl());
         fileMenu.add(exportTcl);
         menuBar.add(fileMenu);
 
+        JMenu editMenu = new JMenu("Edit");
+        JMenuItem linkProperties = new JMenuItem("Link Properties...");
+        linkProperties.addActionListener(e -> editLinkProperties());
+        editMenu.add(linkProperties);
+        menuBar.add(editMenu);
+
+        JMenu layoutMenu = new JMenu("Layout");
+        JMenuItem forceLayout = new JMenuItem("Force-Directed");
+        forceLayout.addActionListener(e -> runLayout(new ForceDirectedLayout()));
+        layoutMenu.add(forceLayout);
+        JMenuItem hierarchicalLayout = new JMenuItem("Hierarchical");
+        hierarchicalLayout.addActionListener(e -> runLayout(new HierarchicalLayout()));
+        layoutMenu.add(hierarchicalLayout);
+        JMenuItem gridLayout = new JMenuItem("Grid");
+        gridLayout.addActionListener(e -> runLayout(new GridLayout()));
+        layoutMenu.add(gridLayout);
+        layoutMenu.addSeparator();
+        JMenuItem stopLayout = new JMenuItem("Stop Layout");
+        stopLayout.addActionListener(e -> {
+            if (layoutWorker != null)
+                layoutWorker.cancel(true);
+        });
+        layoutMenu.add(stopLayout);
+        menuBar.add(layoutMenu);
+
         JMenu simulateMenu = new JMenu("Simulate");
         JMenuItem runSimulation = new JMenuItem("Run Simulation...");
         runSimulation.addActionListener(e -> runSimulation());
         simulateMenu.add(runSimulation);
+        JMenuItem inspectRoutes = new JMenuItem("Inspect Routes...");
+        inspectRoutes.addActionListener(e -> inspectRoutes());
+        simulateMenu.add(inspectRoutes);
+        simulateMenu.addSeparator();
+        JMenuItem partitionTopology = new JMenuItem("Partition Topology...");
+        partitionTopology.addActionListener(e -> partitionTopology());
+        simulateMenu.add(partitionTopology);
+        JMenuItem clearPartitions = new JMenuItem("Clear Partitions");
+        clearPartitions.addActionListener(e -> {
+            canvas.setPartition(null);
+            statusLabel.setText("Ready");
+        });
+        simulateMenu.add(clearPartitions);
         menuBar.add(simulateMenu);
 
         setJMenuBar(menuBar);
@@ -49,6 +132,234 @@ public class NetworkEditor extends JFrame {
         add(south, BorderLayout.SOUTH);
     }
 
+    /** Edits the links among the selected nodes, or all links if none are selected. */
+    private void editLinkProperties() {
+        Link[] links = canvas.getSelectedLinks();
+        if (links.length == 0) {
+            JOptionPane.showMessageDialog(this, "There are no links to edit.", "Link Properties",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        LinkPropertiesDialog dialog = new LinkPropertiesDialog(this, links);
+        dialog.setVisible(true);
+        if (dialog.getEdit() != null)
+            canvas.editLinks(links, dialog.getEdit());
+    }
+
+    private JFileChooser projectChooser() {
+        JFileChooser fc = new JFileChooser(projectFile != null ? projectFile.getParentFile() : null);
+        fc.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                "Network Simulator project (*." + ProjectFile.EXTENSION + ")", ProjectFile.EXTENSION));
+        return fc;
+    }
+
+    private void setProjectFile(File file) {
+        projectFile = file;
+        setTitle("Network Simulator - Editor" + (file != null ? " - " + file.getName() : ""));
+    }
+
+    private void openProject() {
+        JFileChooser fc = projectChooser();
+        fc.setDialogTitle("Open Project");
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        File file = fc.getSelectedFile();
+        statusLabel.setText("Loading " + file.getName() + "...");
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        new SwingWorker<ProjectFile.Contents, Void>() {
+            @Override
+            protected ProjectFile.Contents doInBackground() throws Exception {
+                return ProjectFile.load(file);
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    ProjectFile.Contents project = get();
+                    canvas.loadGraph(project.graph);
+                    canvas.setPartition(project.partition);
+                    projectConfig = project.config;
+                    projectFlows = project.flows;
+                    setProjectFile(file);
+                    statusLabel.setText("Loaded " + project.graph.nodeCount + " nodes, "
+                            + project.graph.linkCount + " links");
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    statusLabel.setText("Ready");
+                    JOptionPane.showMessageDialog(NetworkEditor.this, "Could not open project: " + cause.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void importTopology() {
+        JFileChooser fc = new JFileChooser(projectFile != null ? projectFile.getParentFile() : null);
+        fc.setDialogTitle("Import Topology");
+        javax.swing.filechooser.FileNameExtensionFilter edgeList = new javax.swing.filechooser.FileNameExtensionFilter(
+                "Edge list (*.txt, *.edges, *.csv)", "txt", "edges", "el", "csv");
+        fc.addChoosableFileFilter(edgeList);
+        fc.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("GraphML (*.graphml)",
+                "graphml", "xml"));
+        fc.addChoosableFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("NS-2 script (*.tcl)", "tcl"));
+        fc.setFileFilter(edgeList);
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        File file = fc.getSelectedFile();
+        String name = file.getName().toLowerCase();
+        statusLabel.setText("Importing " + file.getName() + "...");
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        new SwingWorker<CompactGraph, Void>() {
+            @Override
+            protected CompactGraph doInBackground() throws Exception {
+                if (name.endsWith(".graphml") || name.endsWith(".xml"))
+                    return GraphMLImporter.read(file, IMPORT_SPACING);
+                if (name.endsWith(".tcl"))
+                    return TclImporter.read(file, IMPORT_SPACING);
+                return EdgeListImporter.read(file, IMPORT_SPACING);
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    CompactGraph graph = get();
+                    canvas.importGraph(graph);
+                    statusLabel.setText("Imported " + graph.nodeCount + " nodes, " + graph.linkCount + " links");
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    statusLabel.setText("Ready");
+                    JOptionPane.showMessageDialog(NetworkEditor.this, "Could not import topology: " + cause.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Runs {@code layout} in the background on a snapshot of the canvas,
+     * showing intermediate positions as they arrive. The finished layout is
+     * one undoable edit; stopping it puts the nodes back.
+     */
+    private void runLayout(Layout layout) {
+        if (layoutWorker != null)
+            return;
+        TopologySnapshot snapshot = canvas.getSnapshot();
+        if (snapshot.nodeCount() == 0)
+            return;
+        CompactGraph graph = snapshot.compact();
+        Node[] nodes = snapshot.nodes().toArray(new Node[0]);
+        statusLabel.setText("Layout running...");
+
+        layoutWorker = new SwingWorker<int[][], int[][]>() {
+            private long lastPublish;
+
+            @Override
+            protected int[][] doInBackground() throws Exception {
+                int[] x = new int[graph.nodeCount], y = new int[graph.nodeCount];
+                layout.apply(graph, x, y, (px, py, done) -> {
+                    long now = System.nanoTime();
+                    if (now - lastPublish > LAYOUT_FRAME_NANOS) {
+                        lastPublish = now;
+                        publish(new int[][] { px.clone(), py.clone() });
+                        setProgress((int) (done * 100));
+                    }
+                });
+                return new int[][] { x, y };
+            }
+
+            @Override
+            protected void process(java.util.List<int[][]> frames) {
+                if (isCancelled())
+                    return;
+                int[][] last = frames.get(frames.size() - 1);
+                canvas.previewPositions(nodes, last[0], last[1]);
+                statusLabel.setText("Layout running... " + getProgress() + "%");
+            }
+
+            @Override
+            protected void done() {
+                layoutWorker = null;
+                try {
+                    int[][] result = get();
+                    canvas.commitPositions(nodes, graph.nodeX, graph.nodeY, result[0], result[1]);
+                    canvas.fitToContents();
+                    statusLabel.setText("Layout finished");
+                } catch (java.util.concurrent.CancellationException ex) {
+                    canvas.previewPositions(nodes, graph.nodeX, graph.nodeY);
+                    statusLabel.setText("Layout stopped");
+                } catch (Exception ex) {
+                    canvas.previewPositions(nodes, graph.nodeX, graph.nodeY);
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    statusLabel.setText("Ready");
+                    JOptionPane.showMessageDialog(NetworkEditor.this, "Layout failed: " + cause.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        layoutWorker.execute();
+    }
+
+    private void saveProject(boolean chooseFile) {
+        File file = projectFile;
+        if (chooseFile || file == null) {
+            JFileChooser fc = projectChooser();
+            fc.setDialogTitle("Save Project");
+            fc.setSelectedFile(file != null ? file : new File("network." + ProjectFile.EXTENSION));
+            if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+                return;
+            file = fc.getSelectedFile();
+            if (!file.getName().contains("."))
+                file = new File(file.getPath() + "." + ProjectFile.EXTENSION);
+        }
+        File target = file;
+        // The snapshot is immutable, so editing can continue while it is written.
+        ProjectFile.Contents project = new ProjectFile.Contents(canvas.getGraph(), projectConfig,
+                new java.util.ArrayList<>(projectFlows));
+        project.partition = canvas.getPartition();
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                ProjectFile.save(target, project);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    setProjectFile(target);
+                    statusLabel.setText("Saved " + target.getName());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(NetworkEditor.this, "Could not save project: " + cause.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void exportProjectJson() {
+        JFileChooser fc = new JFileChooser(projectFile != null ? projectFile.getParentFile() : null);
+        fc.setDialogTitle("Export Project as JSON");
+        fc.setSelectedFile(new File("network.json"));
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try {
+            ProjectFile.exportJson(fc.getSelectedFile(), new ProjectFile.Contents(canvas.getGraph(), projectConfig,
+                    projectFlows));
+            JOptionPane.showMessageDialog(this, "Project exported to:\n" + fc.getSelectedFile(),
+                    "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "Export failed: " + ex.getMessage(), "Error",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     private void exportToTcl() {
         JFileChooser fc = new JFileChooser();
         fc.setDialogTitle("Export to NS-2 TCL");
@@ -78,8 +389,7 @@ public class NetworkEditor extends JFrame {
             String bandwidth = bandwidthField.getText().trim();
             String delay = delayField.getText().trim();
 
-            ItmTclFrame.writeTcl(fc.getSelectedFile(), canvas.getNodes(), canvas.getLinks(), simTime, bandwidth,
-                    delay);
+            ItmTclFrame.writeTcl(fc.getSelectedFile(), canvas.getGraph(), simTime, bandwidth, delay);
 
             JOptionPane.showMessageDialog(this, "TCL file exported successfully to:\n" + fc.getSelectedFile(),
                     "Export Complete", JOptionPane.INFORMATION_MESSAGE);
@@ -92,8 +402,73 @@ public class NetworkEditor extends JFrame {
         }
     }
 
+    /** Shows the precomputed routes of the current topology, using the link delay of the last simulation. */
+    private void inspectRoutes() {
+        CompactGraph graph = canvas.getGraph();
+        if (graph.nodeCount == 0) {
+            JOptionPane.showMessageDialog(this, "Please create some nodes first.", "No Network",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        double delay = 0.010;
+        if (projectConfig != null && projectConfig.delay != null) {
+            try {
+                delay = Units.parseTime(projectConfig.delay);
+            } catch (NumberFormatException ex) {
+                // keep the dialog's default
+            }
+        }
+        new RoutingTableDialog(this, graph, tclCache.routing, delay).setVisible(true);
+    }
+
+    /**
+     * Splits the topology into the number of parts asked for, as a
+     * distributed or parallel run would, and colours the canvas by part.
+     */
+    private void partitionTopology() {
+        CompactGraph graph = canvas.getGraph();
+        if (graph.nodeCount < 2) {
+            JOptionPane.showMessageDialog(this, "Please create some nodes first.", "No Network",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        int initial = canvas.getPartition() != null ? canvas.getPartition().parts
+                : projectConfig != null && projectConfig.threads > 1 ? projectConfig.threads : 4;
+        JSpinner parts = new JSpinner(new SpinnerNumberModel(Math.min(initial, graph.nodeCount), 2,
+                graph.nodeCount, 1));
+        if (JOptionPane.showConfirmDialog(this, parts, "Number of Partitions", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.QUESTION_MESSAGE) != JOptionPane.OK_OPTION)
+            return;
+        int count = (Integer) parts.getValue();
+        statusLabel.setText("Partitioning...");
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        new SwingWorker<Partition, Void>() {
+            @Override
+            protected Partition doInBackground() {
+                return new GraphPartitioner().partition(graph, count);
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    Partition partition = get();
+                    canvas.setPartition(partition);
+                    statusLabel.setText(partition.summary());
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    statusLabel.setText("Ready");
+                    JOptionPane.showMessageDialog(NetworkEditor.this, "Could not partition topology: "
+                            + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     private void runSimulation() {
-        if (canvas.getNodes().isEmpty()) {
+        TopologySnapshot snapshot = canvas.getSnapshot();
+        if (snapshot.nodeCount() == 0) {
             JOptionPane.showMessageDialog(this,
                     "Please create some nodes before running simulation.",
                     "No Network",
@@ -101,7 +476,7 @@ public class NetworkEditor extends JFrame {
             return;
         }
 
-        SimulationConfigDialog configDialog = new SimulationConfigDialog(this);
+        SimulationConfigDialog configDialog = new SimulationConfigDialog(this, projectConfig);
         configDialog.setVisible(true);
 
         if (!configDialog.isConfirmed()) {
@@ -109,8 +484,9 @@ public class NetworkEditor extends JFrame {
         }
 
         SimulationConfig config = configDialog.getConfig();
+        projectConfig = config;
 
-        RoutingConfigDialog routingDialog = new RoutingConfigDialog(this, canvas.getNodes());
+        RoutingConfigDialog routingDialog = new RoutingConfigDialog(this, snapshot.nodes(), projectFlows);
         routingDialog.setVisible(true);
 
         if (!routingDialog.isConfirmed()) {
@@ -118,6 +494,9 @@ public class NetworkEditor extends JFrame {
         }
 
         java.util.List<RoutingConfigDialog.TrafficFlow> flows = routingDialog.getFlows();
+        projectFlows = flows;
+        CompactGraph graph = snapshot.compact();
+        Partition partition = canvas.getPartition();
 
         JDialog progressDialog = new JDialog(this, "Running Simulation", true);
         progressDialog.setLayout(new BorderLayout(10, 10));
@@ -134,9 +513,15 @@ public class NetworkEditor extends JFrame {
 
             @Override
             protected NS3ApiClient.SimulationResult doInBackground() throws Exception {
+                if (Simulator.ENGINE_BUILT_IN.equals(config.engine)) {
+                    publish("Running built-in simulator...");
+                    return runBuiltIn(graph, config, flows, partition);
+                }
                 publish("Generating NS-2 TCL script with custom flows...");
                 File tempTcl = File.createTempFile("network_sim_", ".tcl");
-                NS2TclGenerator.generateTcl(tempTcl, canvas.getNodes(), canvas.getLinks(), config, flows);
+                synchronized (tclCache) {
+                    NS2TclGenerator.generateTcl(tempTcl, graph, config, flows, tclCache, partition);
+                }
 
                 publish("Uploading to NS-3 API...");
                 NS3ApiClient.SimulationResult result = NS3ApiClient.runSimulation(tempTcl);
@@ -182,8 +567,8 @@ public class NetworkEditor extends JFrame {
                                     System.out.println("DEBUG: Calling Gemini API with simulation config...");
                                     java.util.List<NetworkPacket> packets = GeminiPacketGenerator
                                             .generatePacketsFromTopology(
-                                                    canvas.getNodes(),
-                                                    canvas.getLinks(),
+                                                    graph,
+                                                    flows,
                                                     config.datasetPacketCount,
                                                     config.datasetScenario,
                                                     config);
@@ -233,6 +618,40 @@ public class NetworkEditor extends JFrame {
         progressDialog.setVisible(true);
     }
 
+    /** Lines of the trace shown in the log viewer; the whole trace stays in the file. */
+    private static final int TRACE_PREVIEW_LINES = 20000;
+
+    /** Runs the simulation in-process, writing network.tr and network.nam to a temporary directory. */
+    private NS3ApiClient.SimulationResult runBuiltIn(CompactGraph graph, SimulationConfig config,
+            java.util.List<RoutingConfigDialog.TrafficFlow> flows, Partition partition) throws java.io.IOException {
+        File dir = java.nio.file.Files.createTempDirectory("network_sim_").toFile();
+        File trace = new File(dir, "network.tr"), nam = new File(dir, "network.nam");
+        Simulator.Result run;
+        try (java.io.OutputStream tr = config.enableTracing ? new java.io.FileOutputStream(trace) : null;
+                java.io.OutputStream nm = config.enableNam ? new java.io.FileOutputStream(nam) : null) {
+            Simulator simulator = new Simulator(graph, config, flows, tclCache.routing);
+            simulator.partition = partition;
+            run = simulator.run(tr, nm);
+        }
+
+        NS3ApiClient.SimulationResult result = new NS3ApiClient.SimulationResult();
+        result.success = true;
+        StringBuilder logs = new StringBuilder(run.summary()).append("\n");
+        if (config.enableTracing) {
+            logs.append("Trace: ").append(trace).append("\n\n");
+            try (java.io.BufferedReader in = java.nio.file.Files.newBufferedReader(trace.toPath())) {
+                String line;
+                for (int i = 0; i < TRACE_PREVIEW_LINES && (line = in.readLine()) != null; i++)
+                    logs.append(line).append('\n');
+                if (in.readLine() != null)
+                    logs.append("... (first ").append(TRACE_PREVIEW_LINES).append(" lines shown)\n");
+            }
+        }
+        result.traceLogs = logs.toString();
+        result.namFile = config.enableNam ? nam : null;
+        return result;
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             NetworkEditor ne = new NetworkEditor();
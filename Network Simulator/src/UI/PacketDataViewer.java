@@ -1,5 +1,6 @@
 package UI;
 
+import AI.FieldDictionary;
 import AI.GeminiPacketGenerator.NetworkPacket;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -43,14 +44,14 @@ public class PacketDataViewer extends JFrame {
         JPanel panel = new JPanel(new GridLayout(2, 1, 5, 5));
         panel.setBorder(BorderFactory.createTitledBorder("📊 Dataset Statistics"));
 
-        long normalCount = packets.stream().filter(p -> "Normal".equals(p.trafficType)).count();
-        long attackCount = packets.stream().filter(p -> "Attack".equals(p.trafficType)).count();
-        long tcpCount = packets.stream().filter(p -> "TCP".equals(p.protocol)).count();
-        long udpCount = packets.stream().filter(p -> "UDP".equals(p.protocol)).count();
-        long icmpCount = packets.stream().filter(p -> "ICMP".equals(p.protocol)).count();
+        long normalCount = packets.stream().filter(p -> "Normal".equals(p.getTrafficType())).count();
+        long attackCount = packets.stream().filter(p -> "Attack".equals(p.getTrafficType())).count();
+        long tcpCount = packets.stream().filter(p -> "TCP".equals(p.getProtocol())).count();
+        long udpCount = packets.stream().filter(p -> "UDP".equals(p.getProtocol())).count();
+        long icmpCount = packets.stream().filter(p -> "ICMP".equals(p.getProtocol())).count();
 
         double avgPacketSize = packets.stream().mapToInt(p -> p.packetSize).average().orElse(0);
-        double avgLatency = packets.stream().mapToDouble(p -> p.latency).average().orElse(0);
+        double avgLatency = packets.stream().filter(p -> !p.dropped).mapToDouble(p -> p.latency).average().orElse(0);
 
         JLabel line1 = new JLabel(String.format(
                 "   Total: %d packets  |  Normal: %d (%.1f%%)  |  Attack: %d (%.1f%%)  |  Avg Size: %.0f bytes  |  Avg Latency: %.3f ms",
@@ -90,20 +91,20 @@ public class PacketDataViewer extends JFrame {
 
         for (NetworkPacket pkt : packets) {
             tableModel.addRow(new Object[] {
-                    pkt.packetId,
+                    pkt.getPacketId(),
                     String.format("%.3f", pkt.timestamp - packets.get(0).timestamp),
-                    pkt.sourceIP,
-                    pkt.destIP,
+                    pkt.getSourceIP(),
+                    pkt.getDestIP(),
                     pkt.sourcePort,
                     pkt.destPort,
-                    pkt.protocol,
+                    pkt.getProtocol(),
                     pkt.packetSize,
-                    pkt.trafficType,
-                    pkt.attackType != null ? pkt.attackType : "-",
-                    String.format("%.3f ms", pkt.latency * 1000),
+                    pkt.getTrafficType(),
+                    pkt.attackTypeCode != FieldDictionary.NONE ? pkt.getAttackType() : "-",
+                    pkt.dropped ? "dropped" : String.format("%.3f ms", pkt.latency * 1000),
                     String.format("%.1f pps", pkt.packetRate),
-                    pkt.flags,
-                    pkt.applicationType,
+                    pkt.getFlags(),
+                    pkt.getApplicationType(),
                     pkt.retransmissions,
                     String.format("%.2f%%", pkt.errorRate * 100)
             });
@@ -16,7 +16,7 @@ public class RoutingConfigDialog extends JDialog {
     private JTextField startTimeField;
     private JTextField stopTimeField;
     private List<TrafficFlow> flows;
-    private Collection<Node> nodes;
+    private final long[] nodeIds;
     private boolean confirmed = false;
 
     public static class TrafficFlow {
@@ -42,8 +42,16 @@ public class RoutingConfigDialog extends JDialog {
     }
 
     public RoutingConfigDialog(JFrame parent, Collection<Node> nodes) {
+        this(parent, nodes, null);
+    }
+
+    /** Starts from {@code initial} flows instead of the default first-to-last flow when any are given. */
+    public RoutingConfigDialog(JFrame parent, Collection<Node> nodes, List<TrafficFlow> initial) {
         super(parent, "Configure Packet Flows", true);
-        this.nodes = nodes;
+        this.nodeIds = new long[nodes.size()];
+        int i = 0;
+        for (Node n : nodes)
+            nodeIds[i++] = n.id;
         this.flows = new ArrayList<>();
 
         setLayout(new BorderLayout(10, 10));
@@ -61,8 +69,8 @@ public class RoutingConfigDialog extends JDialog {
         topPanel.add(new JLabel("Source Node:"), gbc);
         gbc.gridx = 1;
         srcNodeCombo = new JComboBox<>();
-        for (Node n : nodes) {
-            srcNodeCombo.addItem("Node " + n.id);
+        for (long id : nodeIds) {
+            srcNodeCombo.addItem("Node " + id);
         }
         topPanel.add(srcNodeCombo, gbc);
 
@@ -70,8 +78,8 @@ public class RoutingConfigDialog extends JDialog {
         topPanel.add(new JLabel("Destination:"), gbc);
         gbc.gridx = 3;
         dstNodeCombo = new JComboBox<>();
-        for (Node n : nodes) {
-            dstNodeCombo.addItem("Node " + n.id);
+        for (long id : nodeIds) {
+            dstNodeCombo.addItem("Node " + id);
         }
         topPanel.add(dstNodeCombo, gbc);
 
@@ -159,17 +167,21 @@ public class RoutingConfigDialog extends JDialog {
         bottomPanel.add(cancelButton);
         add(bottomPanel, BorderLayout.SOUTH);
 
-        addDefaultFlows();
+        if (initial != null && !initial.isEmpty()) {
+            flows.addAll(initial);
+            updateTable();
+        } else {
+            addDefaultFlows();
+        }
 
         setLocationRelativeTo(parent);
     }
 
     private void addDefaultFlows() {
-        List<Node> nodeList = new ArrayList<>(nodes);
-        if (nodeList.size() >= 2) {
+        if (nodeIds.length >= 2) {
             flows.add(new TrafficFlow(
-                    nodeList.get(0).id,
-                    nodeList.get(nodeList.size() - 1).id,
+                    nodeIds[0],
+                    nodeIds[nodeIds.length - 1],
                     "TCP/FTP",
                     0.5,
                     9.5));
@@ -196,9 +208,8 @@ public class RoutingConfigDialog extends JDialog {
                 return;
             }
 
-            List<Node> nodeList = new ArrayList<>(nodes);
-            long srcId = nodeList.get(srcIdx).id;
-            long dstId = nodeList.get(dstIdx).id;
+            long srcId = nodeIds[srcIdx];
+            long dstId = nodeIds[dstIdx];
             String flowType = (String) flowTypeCombo.getSelectedItem();
             double startTime = Double.parseDouble(startTimeField.getText().trim());
             double stopTime = Double.parseDouble(stopTimeField.getText().trim());
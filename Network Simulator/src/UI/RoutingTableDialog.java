@@ -0,0 +1,154 @@
+package UI;
+
+import Components.CompactGraph;
+import Components.Units;
+import Routing.RoutingEngine;
+import Routing.RoutingTable;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+
+/**
+ * Shows the precomputed routes toward one destination: every node's next
+ * hop, its equal-cost alternatives and its distance. Rows are formatted only
+ * as the table scrolls to them, so large topologies open instantly; the
+ * routes come from the engine's cache when the topology has not changed.
+ */
+public class RoutingTableDialog extends JDialog {
+    private final CompactGraph graph;
+    private final RoutingEngine engine;
+    private final double defaultDelay;
+    private final JTextField destinationField = new JTextField(10);
+    private final JComboBox<String> metricCombo;
+    private final JLabel summaryLabel = new JLabel(" ");
+    private final RoutesModel model = new RoutesModel();
+
+    /** {@code defaultDelay} is the delay in seconds of links without their own. */
+    public RoutingTableDialog(JFrame parent, CompactGraph graph, RoutingEngine engine, double defaultDelay) {
+        super(parent, "Routing Table", true);
+        this.graph = graph;
+        this.engine = engine;
+        this.defaultDelay = defaultDelay;
+        setLayout(new BorderLayout(10, 10));
+        setSize(640, 480);
+
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        topPanel.add(new JLabel("Routes to node:"));
+        destinationField.setText(Long.toString(graph.nodeIds[0]));
+        destinationField.addActionListener(e -> showRoutes());
+        topPanel.add(destinationField);
+        topPanel.add(new JLabel("Metric:"));
+        metricCombo = new JComboBox<>(new String[] { RoutingEngine.Metric.HOPS.label,
+                RoutingEngine.Metric.DELAY.label });
+        metricCombo.addActionListener(e -> showRoutes());
+        topPanel.add(metricCombo);
+        JButton showButton = new JButton("Show");
+        showButton.addActionListener(e -> showRoutes());
+        topPanel.add(showButton);
+        add(topPanel, BorderLayout.NORTH);
+
+        JTable table = new JTable(model);
+        table.getTableHeader().setReorderingAllowed(false);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
+        bottomPanel.add(summaryLabel, BorderLayout.CENTER);
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+        bottomPanel.add(closeButton, BorderLayout.EAST);
+        add(bottomPanel, BorderLayout.SOUTH);
+
+        showRoutes();
+        setLocationRelativeTo(parent);
+    }
+
+    private void showRoutes() {
+        int dst;
+        try {
+            dst = graph.indexOf(Long.parseLong(destinationField.getText().trim()));
+        } catch (NumberFormatException ex) {
+            dst = -1;
+        }
+        if (dst < 0) {
+            JOptionPane.showMessageDialog(this, "There is no node with that id.", "Routing Table",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        RoutingEngine.Metric metric = RoutingEngine.Metric.of((String) metricCombo.getSelectedItem());
+        RoutingTable routes;
+        try {
+            routes = engine.table(graph, metric, defaultDelay, new int[] { dst });
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        int reachable = 0;
+        for (int i = 0; i < graph.nodeCount; i++) {
+            if (i != dst && routes.distance(i, dst) != RoutingTable.UNREACHABLE)
+                reachable++;
+        }
+        summaryLabel.setText(reachable + " of " + (graph.nodeCount - 1) + " other nodes can reach node "
+                + graph.nodeIds[dst]);
+        model.show(routes, dst);
+    }
+
+    private final class RoutesModel extends AbstractTableModel {
+        private final String[] columns = { "Node", "Next Hop", "Equal-Cost Next Hops", "Distance" };
+        private RoutingTable routes;
+        private int dst;
+
+        void show(RoutingTable routes, int dst) {
+            this.routes = routes;
+            this.dst = dst;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return routes == null ? 0 : graph.nodeCount;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0:
+                    return "Node " + graph.nodeIds[row];
+                case 1: {
+                    int next = routes.nextHop(row, dst);
+                    return row == dst ? "(destination)" : next < 0 ? "unreachable" : "Node " + graph.nodeIds[next];
+                }
+                case 2: {
+                    int[] links = routes.nextLinks(row, dst);
+                    if (links.length < 2)
+                        return "";
+                    StringBuilder text = new StringBuilder();
+                    for (int l : links) {
+                        if (text.length() > 0)
+                            text.append(", ");
+                        text.append(graph.nodeIds[graph.opposite(l, row)]);
+                    }
+                    return text.toString();
+                }
+                default: {
+                    int d = routes.distance(row, dst);
+                    if (d == RoutingTable.UNREACHABLE)
+                        return "";
+                    return routes.metric == RoutingEngine.Metric.HOPS ? (d == 1 ? "1 hop" : d + " hops")
+                            : Units.formatTime(d * 1e-6);
+                }
+            }
+        }
+    }
+}
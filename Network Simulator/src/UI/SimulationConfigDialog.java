@@ -1,5 +1,9 @@
 package UI;
 
+import AI.GeminiPacketGenerator;
+import Routing.RoutingEngine;
+import Simulation.Simulator;
+
 import javax.swing.*;
 import java.awt.*;
 
@@ -9,6 +13,10 @@ public class SimulationConfigDialog extends JDialog {
     private JTextField delayField;
     private JComboBox<String> protocolCombo;
     private JComboBox<String> queueTypeCombo;
+    private JComboBox<String> routingCombo;
+    private JComboBox<String> engineCombo;
+    private JSpinner threadsSpinner;
+    private JSpinner processesSpinner;
     private JComboBox<String> applicationCombo;
     private JTextField packetSizeField;
     private JTextField dataRateField;
@@ -17,9 +25,15 @@ public class SimulationConfigDialog extends JDialog {
     private JCheckBox enableDatasetCheck;
     private JTextField datasetPacketCountField;
     private JComboBox<String> datasetScenarioCombo;
+    private JTextField datasetSeedField;
     private boolean confirmed = false;
 
     public SimulationConfigDialog(JFrame parent) {
+        this(parent, null);
+    }
+
+    /** Opens with the fields filled from {@code initial}, e.g. the config saved in a project. */
+    public SimulationConfigDialog(JFrame parent, SimulationConfig initial) {
         super(parent, "Simulation Configuration", true);
         setLayout(new BorderLayout(10, 10));
 
@@ -32,6 +46,35 @@ public class SimulationConfigDialog extends JDialog {
 
         int row = 0;
 
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        mainPanel.add(new JLabel("Simulator:"), gbc);
+        gbc.gridx = 1;
+        engineCombo = new JComboBox<>(new String[] { Simulator.ENGINE_REMOTE, Simulator.ENGINE_BUILT_IN });
+        engineCombo.setToolTipText("The built-in simulator runs in this process and needs no network access");
+        mainPanel.add(engineCombo, gbc);
+        row++;
+
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        mainPanel.add(new JLabel("Simulator Threads:"), gbc);
+        gbc.gridx = 1;
+        threadsSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 256, 1));
+        threadsSpinner.setToolTipText("More than one splits the topology and simulates the parts in parallel"
+                + " (built-in simulator only; " + Runtime.getRuntime().availableProcessors() + " processors here)");
+        mainPanel.add(threadsSpinner, gbc);
+        row++;
+
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        mainPanel.add(new JLabel("Worker Processes:"), gbc);
+        gbc.gridx = 1;
+        processesSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 256, 1));
+        processesSpinner.setToolTipText("More than one simulates the parts of the topology in separate Java"
+                + " processes on this machine, instead of threads (built-in simulator only)");
+        mainPanel.add(processesSpinner, gbc);
+        row++;
+
         gbc.gridx = 0;
         gbc.gridy = row;
         mainPanel.add(new JLabel("Simulation Time (sec):"), gbc);
@@ -72,6 +115,17 @@ public class SimulationConfigDialog extends JDialog {
         mainPanel.add(queueTypeCombo, gbc);
         row++;
 
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        mainPanel.add(new JLabel("Routing:"), gbc);
+        gbc.gridx = 1;
+        routingCombo = new JComboBox<>(new String[] { RoutingEngine.SIMULATOR_ROUTING,
+                RoutingEngine.Metric.HOPS.label, RoutingEngine.Metric.DELAY.label });
+        routingCombo.setToolTipText("Precomputed routes are written into the script, so NS-2 skips its own "
+                + "route computation at startup");
+        mainPanel.add(routingCombo, gbc);
+        row++;
+
         gbc.gridx = 0;
         gbc.gridy = row;
         mainPanel.add(new JLabel("Application:"), gbc);
@@ -127,6 +181,7 @@ public class SimulationConfigDialog extends JDialog {
             boolean enabled = enableDatasetCheck.isSelected();
             datasetPacketCountField.setEnabled(enabled);
             datasetScenarioCombo.setEnabled(enabled);
+            datasetSeedField.setEnabled(enabled);
         });
         mainPanel.add(enableDatasetCheck, gbc);
         gbc.gridwidth = 1;
@@ -152,9 +207,22 @@ public class SimulationConfigDialog extends JDialog {
         datasetScenarioCombo.setSelectedIndex(3); // Default to Mixed Traffic
         datasetScenarioCombo.setEnabled(false);
         mainPanel.add(datasetScenarioCombo, gbc);
+        row++;
+
+        gbc.gridx = 0;
+        gbc.gridy = row;
+        mainPanel.add(new JLabel("  Random Seed:"), gbc);
+        gbc.gridx = 1;
+        datasetSeedField = new JTextField(Long.toString(GeminiPacketGenerator.DEFAULT_SEED), 15);
+        datasetSeedField.setToolTipText("The same seed, topology and settings produce the same dataset");
+        datasetSeedField.setEnabled(false);
+        mainPanel.add(datasetSeedField, gbc);
 
         add(mainPanel, BorderLayout.CENTER);
 
+        if (initial != null)
+            setFields(initial);
+
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton okButton = new JButton("Run Simulation");
         JButton cancelButton = new JButton("Cancel");
@@ -177,17 +245,55 @@ public class SimulationConfigDialog extends JDialog {
         setLocationRelativeTo(parent);
     }
 
+    private void setFields(SimulationConfig c) {
+        if (c.engine != null)
+            engineCombo.setSelectedItem(c.engine);
+        threadsSpinner.setValue(Math.max(1, Math.min(256, c.threads)));
+        processesSpinner.setValue(Math.max(1, Math.min(256, c.processes)));
+        simTimeField.setText(Double.toString(c.simTime));
+        if (c.bandwidth != null)
+            bandwidthField.setText(c.bandwidth);
+        if (c.delay != null)
+            delayField.setText(c.delay);
+        if (c.protocol != null)
+            protocolCombo.setSelectedItem(c.protocol);
+        if (c.queueType != null)
+            queueTypeCombo.setSelectedItem(c.queueType);
+        if (c.routing != null)
+            routingCombo.setSelectedItem(c.routing);
+        if (c.application != null)
+            applicationCombo.setSelectedItem(c.application);
+        packetSizeField.setText(Integer.toString(c.packetSize));
+        if (c.dataRate != null)
+            dataRateField.setText(c.dataRate);
+        enableTracingCheck.setSelected(c.enableTracing);
+        enableNamCheck.setSelected(c.enableNam);
+        enableDatasetCheck.setSelected(c.enableDataset);
+        if (c.datasetPacketCount > 0)
+            datasetPacketCountField.setText(Integer.toString(c.datasetPacketCount));
+        if (c.datasetScenario != null)
+            datasetScenarioCombo.setSelectedItem(c.datasetScenario);
+        datasetSeedField.setText(Long.toString(c.seed));
+        datasetPacketCountField.setEnabled(c.enableDataset);
+        datasetScenarioCombo.setEnabled(c.enableDataset);
+        datasetSeedField.setEnabled(c.enableDataset);
+    }
+
     public boolean isConfirmed() {
         return confirmed;
     }
 
     public SimulationConfig getConfig() {
         SimulationConfig config = new SimulationConfig();
+        config.engine = (String) engineCombo.getSelectedItem();
+        config.threads = (Integer) threadsSpinner.getValue();
+        config.processes = (Integer) processesSpinner.getValue();
         config.simTime = Double.parseDouble(simTimeField.getText().trim());
         config.bandwidth = bandwidthField.getText().trim();
         config.delay = delayField.getText().trim();
         config.protocol = (String) protocolCombo.getSelectedItem();
         config.queueType = (String) queueTypeCombo.getSelectedItem();
+        config.routing = (String) routingCombo.getSelectedItem();
         config.application = (String) applicationCombo.getSelectedItem();
         config.packetSize = Integer.parseInt(packetSizeField.getText().trim());
         config.dataRate = dataRateField.getText().trim();
@@ -197,16 +303,25 @@ public class SimulationConfigDialog extends JDialog {
         if (config.enableDataset) {
             config.datasetPacketCount = Integer.parseInt(datasetPacketCountField.getText().trim());
             config.datasetScenario = (String) datasetScenarioCombo.getSelectedItem();
+            config.seed = Long.parseLong(datasetSeedField.getText().trim());
         }
         return config;
     }
 
     public static class SimulationConfig {
+        /** {@link Simulator#ENGINE_REMOTE} (also when null) or {@link Simulator#ENGINE_BUILT_IN}. */
+        public String engine;
+        /** Threads of the built-in simulator; more than one runs partitions of the topology in parallel. */
+        public int threads = 1;
+        /** Worker processes of the built-in simulator; more than one runs each partition in its own JVM. */
+        public int processes = 1;
         public double simTime;
         public String bandwidth;
         public String delay;
         public String protocol;
         public String queueType;
+        /** A {@link RoutingEngine.Metric} label, or null / SIMULATOR_ROUTING to leave routing to NS-2. */
+        public String routing;
         public String application;
         public int packetSize;
         public String dataRate;
@@ -215,5 +330,6 @@ public class SimulationConfigDialog extends JDialog {
         public boolean enableDataset;
         public int datasetPacketCount;
         public String datasetScenario;
+        public long seed = GeminiPacketGenerator.DEFAULT_SEED;
     }
 }
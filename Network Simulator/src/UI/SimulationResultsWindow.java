@@ -7,7 +7,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.util.List;
+import AI.FieldDictionary;
 import AI.GeminiPacketGenerator.NetworkPacket;
+import AI.IPv4;
 
 public class SimulationResultsWindow extends JFrame {
     private LogViewerPanel logViewer;
@@ -263,14 +265,15 @@ public class SimulationResultsWindow extends JFrame {
                 }
             }
 
-            long normalCount = packets.stream().filter(p -> "Normal".equals(p.trafficType)).count();
-            long attackCount = packets.stream().filter(p -> "Attack".equals(p.trafficType)).count();
-            long tcpCount = packets.stream().filter(p -> "TCP".equals(p.protocol)).count();
-            long udpCount = packets.stream().filter(p -> "UDP".equals(p.protocol)).count();
-            long icmpCount = packets.stream().filter(p -> "ICMP".equals(p.protocol)).count();
+            long normalCount = packets.stream().filter(p -> "Normal".equals(p.getTrafficType())).count();
+            long attackCount = packets.stream().filter(p -> "Attack".equals(p.getTrafficType())).count();
+            long tcpCount = packets.stream().filter(p -> "TCP".equals(p.getProtocol())).count();
+            long udpCount = packets.stream().filter(p -> "UDP".equals(p.getProtocol())).count();
+            long icmpCount = packets.stream().filter(p -> "ICMP".equals(p.getProtocol())).count();
 
             double avgPacketSize = packets.stream().mapToInt(p -> p.packetSize).average().orElse(0);
-            double avgLatency = packets.stream().mapToDouble(p -> p.latency).average().orElse(0);
+            double avgLatency = packets.stream().filter(p -> !p.dropped).mapToDouble(p -> p.latency).average()
+                    .orElse(0);
 
             String stats = String.format(
                     "<html><body style='padding:5px'>" +
@@ -301,20 +304,21 @@ public class SimulationResultsWindow extends JFrame {
             
             for (NetworkPacket pkt : packets) {
                 java.util.Vector<Object> row = new java.util.Vector<>();
-                row.add(pkt.packetId);
+                row.add(pkt.getPacketId());
                 row.add(String.format("%.3f", pkt.timestamp - baseTimestamp));
-                row.add(pkt.sourceIP);
-                row.add(pkt.destIP);
+                row.add(pkt.getSourceIP());
+                row.add(pkt.getDestIP());
                 row.add(pkt.sourcePort);
                 row.add(pkt.destPort);
-                row.add(pkt.protocol);
+                row.add(pkt.getProtocol());
                 row.add(pkt.packetSize);
-                row.add(pkt.trafficType);
-                row.add(pkt.attackType != null ? pkt.attackType : "-");
-                row.add(pkt.payload != null ? pkt.payload : "");
-                row.add(String.format("%.2f ms", pkt.latency * 1000));
+                row.add(pkt.getTrafficType());
+                row.add(pkt.attackTypeCode != FieldDictionary.NONE ? pkt.getAttackType() : "-");
+                String payload = pkt.getPayload();
+                row.add(payload != null ? payload : "");
+                row.add(pkt.dropped ? "dropped" : String.format("%.2f ms", pkt.latency * 1000));
                 row.add(String.format("%.1f pps", pkt.packetRate));
-                row.add(pkt.applicationType);
+                row.add(pkt.getApplicationType());
                 dataVector.add(row);
             }
             
@@ -361,16 +365,16 @@ public class SimulationResultsWindow extends JFrame {
         correlation.append("Generated ").append(packets.size())
                 .append(" AI-powered network packets based on this topology:\n\n");
 
-        java.util.Map<String, List<NetworkPacket>> packetsBySource = packets.stream()
-                .collect(java.util.stream.Collectors.groupingBy(p -> p.sourceIP));
+        java.util.Map<Integer, List<NetworkPacket>> packetsBySource = packets.stream()
+                .collect(java.util.stream.Collectors.groupingBy(p -> p.sourceAddress));
 
         correlation.append("Traffic Summary by Node:\n");
         correlation.append("─────────────────────────────────────────────────────────────\n");
 
-        packetsBySource.forEach((srcIP, srcPackets) -> {
-            long attacks = srcPackets.stream().filter(p -> "Attack".equals(p.trafficType)).count();
+        packetsBySource.forEach((srcAddress, srcPackets) -> {
+            long attacks = srcPackets.stream().filter(p -> "Attack".equals(p.getTrafficType())).count();
             correlation.append(String.format("  %s: %d packets sent (%d attacks)\n",
-                    srcIP, srcPackets.size(), attacks));
+                    IPv4.toString(srcAddress), srcPackets.size(), attacks));
         });
 
         correlation.append("\nTop 10 Packet Flow Samples:\n");
@@ -379,8 +383,8 @@ public class SimulationResultsWindow extends JFrame {
         for (int i = 0; i < Math.min(10, packets.size()); i++) {
             NetworkPacket p = packets.get(i);
             correlation.append(String.format("  [Packet %s] %.3fs: %s:%d → %s:%d (%s, %db, %s)\n",
-                    p.packetId, p.timestamp, p.sourceIP, p.sourcePort, p.destIP, p.destPort,
-                    p.protocol, p.packetSize, p.attackType != null ? p.attackType : "Normal"));
+                    p.getPacketId(), p.timestamp, p.getSourceIP(), p.sourcePort, p.getDestIP(), p.destPort,
+                    p.getProtocol(), p.packetSize, p.attackTypeCode != FieldDictionary.NONE ? p.getAttackType() : "Normal"));
         }
 
         if (packets.size() > 10) {
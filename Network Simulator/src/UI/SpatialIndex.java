@@ -0,0 +1,116 @@
+package UI;
+
+import Components.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Uniform grid over node positions in world coordinates. Each node is filed
+ * under the cell containing its centre, so a hit test or rectangle query only
+ * looks at the cells the query area overlaps instead of every node.
+ *
+ * The index does not observe nodes: whoever changes a node's position calls
+ * {@link #moved(Node, int, int)} afterwards with the old position.
+ */
+class SpatialIndex {
+
+    private final int cellSize;
+    private final HashMap<Long, List<Node>> cells = new HashMap<>();
+
+    SpatialIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    void add(Node n) {
+        cells.computeIfAbsent(key(cell(n.x), cell(n.y)), c -> new ArrayList<>(8)).add(n);
+    }
+
+    /** Removes {@code n}, which must still be at the position it was indexed at. */
+    void remove(Node n) {
+        detach(n, key(cell(n.x), cell(n.y)));
+    }
+
+    /** Re-files {@code n} after it moved away from (oldX, oldY). */
+    void moved(Node n, int oldX, int oldY) {
+        long previous = key(cell(oldX), cell(oldY));
+        long k = key(cell(n.x), cell(n.y));
+        if (previous == k)
+            return;
+        detach(n, previous);
+        cells.computeIfAbsent(k, c -> new ArrayList<>(8)).add(n);
+    }
+
+    void clear() {
+        cells.clear();
+    }
+
+    private void detach(Node n, long k) {
+        List<Node> bucket = cells.get(k);
+        if (bucket == null)
+            return;
+        bucket.remove(n);
+        if (bucket.isEmpty())
+            cells.remove(k);
+    }
+
+    /** The node whose centre is closest to (wx, wy) within {@code radius}, or null. */
+    Node nearest(double wx, double wy, double radius) {
+        Node best = null;
+        double bestDist = radius * radius;
+        for (int cx = cell(wx - radius); cx <= cell(wx + radius); cx++) {
+            for (int cy = cell(wy - radius); cy <= cell(wy + radius); cy++) {
+                List<Node> bucket = cells.get(key(cx, cy));
+                if (bucket == null)
+                    continue;
+                for (Node n : bucket) {
+                    double dx = n.x - wx;
+                    double dy = n.y - wy;
+                    double d = dx * dx + dy * dy;
+                    if (d <= bestDist) {
+                        bestDist = d;
+                        best = n;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Passes every node whose centre lies in the given world rectangle (inclusive) to {@code out}. */
+    void query(double minX, double minY, double maxX, double maxY, Consumer<Node> out) {
+        int x0 = cell(minX), x1 = cell(maxX);
+        int y0 = cell(minY), y1 = cell(maxY);
+        // A huge rectangle over a sparse grid is cheaper to answer from the buckets directly.
+        if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > cells.size()) {
+            for (List<Node> bucket : cells.values())
+                collect(bucket, minX, minY, maxX, maxY, out);
+            return;
+        }
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                List<Node> bucket = cells.get(key(cx, cy));
+                if (bucket != null)
+                    collect(bucket, minX, minY, maxX, maxY, out);
+            }
+        }
+    }
+
+    private static void collect(List<Node> bucket, double minX, double minY, double maxX, double maxY,
+            Consumer<Node> out) {
+        for (Node n : bucket) {
+            if (n.x >= minX && n.x <= maxX && n.y >= minY && n.y <= maxY)
+                out.accept(n);
+        }
+    }
+}